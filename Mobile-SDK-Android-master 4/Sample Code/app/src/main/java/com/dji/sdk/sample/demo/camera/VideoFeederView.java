@@ -318,12 +318,10 @@ public class VideoFeederView extends LinearLayout
         updateM210SeriesButtons();
         updateM300Buttons();
         if (product != null) {
-            VideoFeeder.VideoDataListener primaryVideoDataListener =
+            if (isOpen) {
                 primaryVideoFeed.registerLiveVideo(VideoFeeder.getInstance().getPrimaryVideoFeed(), true);
-            VideoFeeder.VideoDataListener secondaryVideoDataListener =
                 fpvVideoFeed.registerLiveVideo(VideoFeeder.getInstance().getSecondaryVideoFeed(), false);
 
-            if (isOpen) {
                 String newText =
                     "Primary Source: " + VideoFeeder.getInstance().getPrimaryVideoFeed().getVideoSource().name();
                 ToastUtils.setResultToText(primaryVideoFeedTitle, newText);
@@ -337,12 +335,8 @@ public class VideoFeederView extends LinearLayout
                 VideoFeeder.getInstance().addPhysicalSourceListener(sourceListener);
             } else {
                 VideoFeeder.getInstance().removePhysicalSourceListener(sourceListener);
-                VideoFeeder.getInstance().getPrimaryVideoFeed().removeVideoDataListener(primaryVideoDataListener);
-                if (Helper.isMultiStreamPlatform()) {
-                    VideoFeeder.getInstance()
-                               .getSecondaryVideoFeed()
-                               .removeVideoDataListener(secondaryVideoDataListener);
-                }
+                primaryVideoFeed.unregisterLiveVideo();
+                fpvVideoFeed.unregisterLiveVideo();
             }
         }
     }
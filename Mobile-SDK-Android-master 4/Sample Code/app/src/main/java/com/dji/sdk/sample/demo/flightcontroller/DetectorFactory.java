@@ -0,0 +1,540 @@
+package com.dji.sdk.sample.demo.flightcontroller;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Log;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectionResults;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.LabelMap;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.SsdPostProcessor;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvFrame;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvFramePool;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.gpu.CompatibilityList;
+import org.tensorflow.lite.gpu.GpuDelegate;
+import org.tensorflow.lite.nnapi.NnApiDelegate;
+import org.tensorflow.lite.support.image.TensorImage;
+import org.tensorflow.lite.support.metadata.MetadataExtractor;
+import org.tensorflow.lite.task.core.BaseOptions;
+import org.tensorflow.lite.task.vision.detector.ObjectDetector;
+import org.tensorflow.lite.task.vision.detector.ObjectDetector.ObjectDetectorOptions;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 同梱モデルから物体検出器を作るファクトリ。
+ * 使えるバックエンド（CPU → NNAPI → GPU の順）とCPUのスレッド数の組み合わせを実機で計測し、
+ * 最も速い構成の検出器を返す。作成に失敗したバックエンドは飛ばして次を試す。
+ * Task Library の ObjectDetector と、Interpreter を直接使う {@link InterpreterDetector} のどちらも作れる。
+ * モデルは初回に assets からアプリの領域へ展開し、以降はそのファイルをメモリマップで読む
+ * （APK 内で圧縮されていても使え、ページはプロセス内の全検出器で共有される）。
+ * 時間がかかるので、UIスレッド以外から呼ぶこと。
+ */
+public class DetectorFactory {
+    private static final String TAG = "DetectorFactory";
+    public static final String MODEL_MOBILENET_V1 = "mobilenetv1.tflite";
+    // 確認用の重いモデル（同梱する場合は assets に置く）
+    public static final String MODEL_EFFICIENTDET_LITE2 = "efficientdet_lite2.tflite";
+    private static final String MODEL_EXTENSION = ".tflite";
+    private static final int WARMUP_RUNS = 2;
+    private static final int TIMED_RUNS = 5;
+    private static final int[] THREAD_CANDIDATES = {1, 2, 4};
+    private static final int PROBE_WIDTH = 640;
+    private static final int PROBE_HEIGHT = 360;
+    private static final String LABEL_FILE = "labelmap.txt";
+    private static final String MODEL_DIR = "models";
+
+    public enum Backend {
+        // Task Library では TFLite の既定で、Interpreter では明示的に XNNPACK を使う
+        CPU,
+        NNAPI,
+        GPU
+    }
+
+    /** 1つの構成の計測結果。作成や推論に失敗した場合は error に理由が入る。 */
+    public static class BackendTiming {
+        private final Backend backend;
+        private final int numThreads;
+        private final long warmupMillis;
+        private final float medianMillis;
+        private final String error;
+
+        BackendTiming(Backend backend, int numThreads, long warmupMillis, float medianMillis, String error) {
+            this.backend = backend;
+            this.numThreads = numThreads;
+            this.warmupMillis = warmupMillis;
+            this.medianMillis = medianMillis;
+            this.error = error;
+        }
+
+        public Backend getBackend() {
+            return backend;
+        }
+
+        public int getNumThreads() {
+            return numThreads;
+        }
+
+        public long getWarmupMillis() {
+            return warmupMillis;
+        }
+
+        /** 推論1回の中央値。失敗した構成では Float.NaN。 */
+        public float getMedianMillis() {
+            return medianMillis;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isAvailable() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) {
+                return String.format(Locale.US, "%s/%d: unavailable (%s)", backend, numThreads, error);
+            }
+            return String.format(Locale.US, "%s/%d: warmup=%dms median=%.1fms",
+                    backend, numThreads, warmupMillis, medianMillis);
+        }
+    }
+
+    /** 選ばれた検出器と、全構成の計測結果。 */
+    public static class Selection<T> {
+        private final String modelName;
+        private final T detector;
+        private final BackendTiming chosen;
+        private final List<BackendTiming> timings;
+
+        Selection(String modelName, T detector, BackendTiming chosen, List<BackendTiming> timings) {
+            this.modelName = modelName;
+            this.detector = detector;
+            this.chosen = chosen;
+            this.timings = Collections.unmodifiableList(timings);
+        }
+
+        public String getModelName() {
+            return modelName;
+        }
+
+        public T getDetector() {
+            return detector;
+        }
+
+        public BackendTiming getChosen() {
+            return chosen;
+        }
+
+        public List<BackendTiming> getTimings() {
+            return timings;
+        }
+
+        @Override
+        public String toString() {
+            return modelName + " -> " + chosen + " " + timings;
+        }
+    }
+
+    private final Context context;
+    private float scoreThreshold = 0.5f;
+    private int maxResults = 1;
+    // 前回選ばれた構成だけを試すとき（null なら全構成）
+    private Backend onlyBackend;
+    private int onlyThreads;
+    private int batchSize = 1;
+
+    public DetectorFactory(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public DetectorFactory scoreThreshold(float scoreThreshold) {
+        this.scoreThreshold = scoreThreshold;
+        return this;
+    }
+
+    public DetectorFactory maxResults(int maxResults) {
+        this.maxResults = maxResults;
+        return this;
+    }
+
+    /**
+     * 指定した構成だけを計測して作る（前回選ばれた構成で作り直すとき）。
+     * その構成で作れなければ {@link IllegalStateException} になる。
+     */
+    public DetectorFactory onlyCandidate(Backend backend, int numThreads) {
+        this.onlyBackend = backend;
+        this.onlyThreads = numThreads;
+        return this;
+    }
+
+    /**
+     * {@link #createInterpreter} の入力のバッチを変える（複数の映像を1回で推論するとき）。
+     * モデルがそのバッチで動かなければ、その構成は作れない扱いになる。計測は全枠を使った推論1回の時間。
+     */
+    public DetectorFactory batchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    /** assets に同梱されている .tflite モデルのファイル名一覧。 */
+    public List<String> listBundledModels() {
+        List<String> models = new ArrayList<>();
+        try {
+            String[] assets = context.getAssets().list("");
+            if (assets != null) {
+                for (String asset : assets) {
+                    if (asset.endsWith(MODEL_EXTENSION)) {
+                        models.add(asset);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to list bundled models.", e);
+        }
+        return models;
+    }
+
+    /**
+     * 指定した同梱モデルで全構成を計測し、最も速い Task Library の検出器を返す。
+     *
+     * @throws IllegalArgumentException モデルが同梱されていない場合
+     * @throws IllegalStateException    どの構成でも検出器を作れなかった場合
+     */
+    public Selection<ObjectDetector> create(String modelName) {
+        checkBundled(modelName);
+        File modelFile;
+        try {
+            modelFile = extractModel(modelName);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to extract " + modelName, e);
+        }
+        TensorImage probeImage = createProbeImage();
+        return select(modelName, new Engine<ObjectDetector>() {
+            @Override
+            public ObjectDetector create(Candidate candidate) throws IOException {
+                return ObjectDetector.createFromFileAndOptions(modelFile, buildOptions(candidate));
+            }
+
+            @Override
+            public void run(ObjectDetector detector) {
+                detector.detect(probeImage);
+            }
+
+            @Override
+            public void close(ObjectDetector detector) {
+                detector.close();
+            }
+        });
+    }
+
+    /**
+     * 指定した同梱モデルで全構成を計測し、最も速い {@link InterpreterDetector} を返す。
+     * モデルは展開したファイルをメモリマップで読み込む。
+     *
+     * @param classIds 後処理で通すクラスID（空なら全クラス）
+     * @throws IllegalArgumentException モデルが同梱されていない場合
+     * @throws IllegalStateException    どの構成でも検出器を作れなかった場合
+     */
+    public Selection<InterpreterDetector> createInterpreter(String modelName, int... classIds) throws IOException {
+        checkBundled(modelName);
+        MappedByteBuffer model = loadModel(modelName);
+        YuvFrame probeFrame = createProbeFrame();
+        DetectionResults probeResults = new DetectionResults(maxResults);
+        // バッチのときは全枠に同じフレームを入れて計測する
+        YuvFrame[] probeFrames = new YuvFrame[batchSize];
+        DetectionResults[] probeOuts = new DetectionResults[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            probeFrames[i] = probeFrame;
+            probeOuts[i] = new DetectionResults(maxResults);
+        }
+        return select(modelName, new Engine<InterpreterDetector>() {
+            @Override
+            public InterpreterDetector create(Candidate candidate) {
+                Interpreter.Options options = new Interpreter.Options().setNumThreads(candidate.numThreads);
+                Delegate delegate = null;
+                if (candidate.backend == Backend.CPU) {
+                    options.setUseXNNPACK(true);
+                } else if (candidate.backend == Backend.NNAPI) {
+                    delegate = new NnApiDelegate();
+                } else {
+                    CompatibilityList compatibilityList = new CompatibilityList();
+                    try {
+                        delegate = new GpuDelegate(compatibilityList.getBestOptionsForThisDevice());
+                    } finally {
+                        compatibilityList.close();
+                    }
+                }
+                if (delegate != null) {
+                    options.addDelegate(delegate);
+                }
+                SsdPostProcessor postProcessor = new SsdPostProcessor(100)
+                        .scoreThreshold(scoreThreshold)
+                        .maxResults(maxResults)
+                        .allowClasses(classIds);
+                Interpreter interpreter = null;
+                try {
+                    interpreter = new Interpreter(model, options);
+                    if (batchSize > 1) {
+                        int[] shape = interpreter.getInputTensor(0).shape().clone();
+                        shape[0] = batchSize;
+                        interpreter.resizeInput(0, shape);
+                        interpreter.allocateTensors();
+                    }
+                    InterpreterDetector detector = new InterpreterDetector(interpreter, delegate, postProcessor);
+                    detector.warmUp();
+                    return detector;
+                } catch (RuntimeException e) {
+                    if (interpreter != null) {
+                        interpreter.close();
+                    }
+                    if (delegate instanceof AutoCloseable) {
+                        try {
+                            ((AutoCloseable) delegate).close();
+                        } catch (Exception ignored) {
+                            // 作成に失敗したデリゲートの後始末なので無視する
+                        }
+                    }
+                    throw e;
+                }
+            }
+
+            @Override
+            public void run(InterpreterDetector detector) {
+                if (batchSize > 1) {
+                    detector.detectBatch(probeFrames, probeOuts, batchSize);
+                } else {
+                    detector.detect(probeFrame, probeResults);
+                }
+            }
+
+            @Override
+            public void close(InterpreterDetector detector) {
+                detector.close();
+            }
+        });
+    }
+
+    /** モデルのメタデータに含まれるラベルファイルを読む。 */
+    public LabelMap loadLabels(String modelName) throws IOException {
+        ByteBuffer model = loadModel(modelName);
+        MetadataExtractor extractor = new MetadataExtractor(model);
+        List<String> labels = new ArrayList<>();
+        try (InputStream stream = extractor.getAssociatedFile(LABEL_FILE);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                labels.add(line.trim());
+            }
+        }
+        return new LabelMap(labels);
+    }
+
+    /** 展開したモデルファイルを読み取り専用でメモリマップする。 */
+    public MappedByteBuffer loadModel(String modelName) throws IOException {
+        try (FileInputStream stream = new FileInputStream(extractModel(modelName));
+             FileChannel channel = stream.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // アプリの更新より古い展開済みファイルは作り直す。書き込み途中のファイルを読まないよう一時ファイルから置き換える
+    private File extractModel(String modelName) throws IOException {
+        File dir = new File(context.getNoBackupFilesDir(), MODEL_DIR);
+        File file = new File(dir, modelName);
+        if (file.isFile() && file.lastModified() >= installedMillis()) {
+            return file;
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        File partial = new File(dir, modelName + ".partial");
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = context.getAssets().open(modelName);
+             OutputStream out = new FileOutputStream(partial)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Failed to move " + partial + " to " + file);
+        }
+        Log.d(TAG, "Extracted " + modelName + " (" + file.length() + " bytes)");
+        return file;
+    }
+
+    private long installedMillis() {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private void checkBundled(String modelName) {
+        if (!listBundledModels().contains(modelName)) {
+            throw new IllegalArgumentException("Model is not bundled: " + modelName
+                    + ", available: " + listBundledModels());
+        }
+    }
+
+    private <T> Selection<T> select(String modelName, Engine<T> engine) {
+        List<BackendTiming> timings = new ArrayList<>();
+        T bestDetector = null;
+        BackendTiming bestTiming = null;
+
+        for (Candidate candidate : candidates()) {
+            T detector = null;
+            BackendTiming timing;
+            try {
+                detector = engine.create(candidate);
+                timing = measure(engine, detector, candidate);
+            } catch (Exception | UnsatisfiedLinkError e) {
+                timing = new BackendTiming(candidate.backend, candidate.numThreads, 0, Float.NaN, e.toString());
+            }
+            timings.add(timing);
+            Log.d(TAG, timing.toString());
+
+            if (timing.isAvailable() && (bestTiming == null || timing.getMedianMillis() < bestTiming.getMedianMillis())) {
+                if (bestDetector != null) {
+                    engine.close(bestDetector);
+                }
+                bestDetector = detector;
+                bestTiming = timing;
+            } else if (detector != null) {
+                engine.close(detector);
+            }
+        }
+
+        if (bestDetector == null) {
+            throw new IllegalStateException("No backend could run " + modelName + ": " + timings);
+        }
+        Selection<T> selection = new Selection<>(modelName, bestDetector, bestTiming, timings);
+        Log.d(TAG, "Selected " + selection);
+        return selection;
+    }
+
+    private <T> BackendTiming measure(Engine<T> engine, T detector, Candidate candidate) {
+        long warmupStart = System.currentTimeMillis();
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            engine.run(detector);
+        }
+        long warmupMillis = System.currentTimeMillis() - warmupStart;
+
+        float[] runs = new float[TIMED_RUNS];
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            long start = System.nanoTime();
+            engine.run(detector);
+            runs[i] = (System.nanoTime() - start) / 1e6f;
+        }
+        Arrays.sort(runs);
+        return new BackendTiming(candidate.backend, candidate.numThreads, warmupMillis, runs[TIMED_RUNS / 2], null);
+    }
+
+    private ObjectDetectorOptions buildOptions(Candidate candidate) {
+        BaseOptions.Builder baseOptions = BaseOptions.builder().setNumThreads(candidate.numThreads);
+        if (candidate.backend == Backend.NNAPI) {
+            baseOptions.useNnapi();
+        } else if (candidate.backend == Backend.GPU) {
+            baseOptions.useGpu();
+        }
+        return ObjectDetectorOptions.builder()
+                .setMaxResults(maxResults)
+                .setScoreThreshold(scoreThreshold)
+                .setBaseOptions(baseOptions.build())
+                .build();
+    }
+
+    private List<Candidate> candidates() {
+        List<Candidate> candidates = new ArrayList<>();
+        if (onlyBackend != null) {
+            candidates.add(new Candidate(onlyBackend, onlyThreads));
+            return candidates;
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : THREAD_CANDIDATES) {
+            if (threads <= cores) {
+                candidates.add(new Candidate(Backend.CPU, threads));
+            }
+        }
+        // NNAPI は Android 8.1 以降のみ
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            candidates.add(new Candidate(Backend.NNAPI, 1));
+        }
+        if (isGpuSupported()) {
+            candidates.add(new Candidate(Backend.GPU, 1));
+        }
+        return candidates;
+    }
+
+    private static boolean isGpuSupported() {
+        try {
+            CompatibilityList compatibilityList = new CompatibilityList();
+            try {
+                return compatibilityList.isDelegateSupportedOnThisDevice();
+            } finally {
+                compatibilityList.close();
+            }
+        } catch (Exception | UnsatisfiedLinkError e) {
+            return false;
+        }
+    }
+
+    // 実際の映像に近い大きさの画像で計測する（入力サイズへの縮小も含めた時間になる）
+    private static YuvFrame createProbeFrame() {
+        int size = PROBE_WIDTH * PROBE_HEIGHT * 3 / 2;
+        YuvFrame frame = new YuvFramePool(1, size).acquire(size);
+        frame.copyFrom(ByteBuffer.allocate(size), size, PROBE_WIDTH, PROBE_HEIGHT, YuvFrame.FORMAT_NV12, System.nanoTime());
+        return frame;
+    }
+
+    private static TensorImage createProbeImage() {
+        Bitmap bitmap = Bitmap.createBitmap(PROBE_WIDTH, PROBE_HEIGHT, Bitmap.Config.ARGB_8888);
+        TensorImage image = new TensorImage(DataType.UINT8);
+        image.load(bitmap);
+        return image;
+    }
+
+    private interface Engine<T> {
+        T create(Candidate candidate) throws Exception;
+
+        void run(T detector);
+
+        void close(T detector);
+    }
+
+    private static class Candidate {
+        final Backend backend;
+        final int numThreads;
+
+        Candidate(Backend backend, int numThreads) {
+            this.backend = backend;
+            this.numThreads = numThreads;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.dji.sdk.sample.demo.flightcontroller;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.LabelMap;
+
+import org.tensorflow.lite.task.vision.detector.ObjectDetector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * プロセスで共有する物体検出器。
+ * モデルの読み込み・バックエンドの計測は1回だけ行い、検出器と推論スレッドを全画面で使い回す。
+ * 検出器は推論スレッド（{@link #execute}）からだけ使うので、画面ごとの {@link ObjectDetectorHelper} が
+ * 同じ Interpreter を共有できる。
+ * <p>
+ * アプリの起動時に {@link #preload} で裏で読み込んでおき、使う画面が {@link #acquire} / {@link #release} を
+ * 対で呼ぶ（参照カウント）。最後の利用者が離れてしばらく使われなければ、ネイティブのメモリを解放する。
+ * {@link #onTrimMemory} では、使われていなければ全部を、使用中でメモリが逼迫していれば確認用の重いモデルだけを解放する。
+ * 解放した後に再び使うときは、前回選ばれたバックエンドだけを計測して作り直す（確認用のモデルだけを解放したときは、
+ * 次の {@link #acquire} でそれだけを作り直す）。読み込みに失敗したときは {@link #getLastError} に理由を残し、
+ * 次の {@link #preload} / {@link #acquire} で読み込み直す。
+ * <p>
+ * 複数の映像を検出するときは {@link #getBatchDetector} でバッチ推論用の検出器を別に作る（最初に使うときだけ）。
+ */
+public final class DetectorPool {
+    private static final String TAG = "DetectorPool";
+    static final String MODEL_NAME = DetectorFactory.MODEL_MOBILENET_V1;
+    // 確認用の重いモデル。同梱されていなければ軽いモデルだけで検出する
+    static final String CONFIRMATION_MODEL_NAME = DetectorFactory.MODEL_EFFICIENTDET_LITE2;
+    static final int MAX_RESULTS = 5;
+    private static final float SCORE_THRESHOLD = 0.5f;
+    // バッチ推論でまとめる映像の数（主・副のフィード）
+    static final int BATCH_SIZE = 2;
+    // 画面を開き直したときに作り直さないよう、最後の利用者が離れてから少し待って解放する
+    private static final long RELEASE_DELAY_MS = 30_000;
+
+    private static DetectorPool instance;
+
+    // 検出器の作成・推論・解放はすべてこのスレッドで行う
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, TAG));
+
+    private Context context;
+    private String[] targetLabels;
+    private int users;
+    private boolean loadRequested;
+    // メモリの逼迫で確認用のモデルだけを解放した（次の acquire で作り直す）
+    private boolean confirmationTrimmed;
+    private ScheduledFuture<?> pendingRelease;
+
+    // 推論スレッドで作って解放し、他のスレッドからは読むだけ
+    private volatile InterpreterDetector interpreterDetector;
+    private volatile ObjectDetector objectDetector;
+    private volatile DetectorFactory.Selection<?> detectorSelection;
+    private volatile LabelMap labelMap;
+    private volatile int[] targetClassIds = new int[0];
+    private volatile InterpreterDetector confirmationDetector;
+    private volatile LabelMap confirmationLabelMap;
+    private volatile long confirmationInferenceNanos;
+    // バッチ推論用（推論スレッドでのみ使う）。モデルが対応しない・速くならないと分かったら作らない
+    private InterpreterDetector batchDetector;
+    private boolean batchUnsupported;
+    private volatile String lastError;
+    // モデルごとに前回選ばれた構成（推論スレッドでのみ使う）
+    private final Map<String, DetectorFactory.BackendTiming> chosenTimings = new HashMap<>();
+
+    private DetectorPool() {
+    }
+
+    public static synchronized DetectorPool getInstance() {
+        if (instance == null) {
+            instance = new DetectorPool();
+        }
+        return instance;
+    }
+
+    /** 使う予定の検出器を裏で読み込んでおく（アプリの起動時）。参照カウントは増やさない。 */
+    public synchronized void preload(Context context, String... targetLabels) {
+        configure(context, targetLabels);
+        requestLoad();
+    }
+
+    /**
+     * 検出器を使い始める。読み込んでいなければ推論スレッドで読み込む。
+     *
+     * @param targetLabels 後処理で通すラベル（空なら全クラス）。プロセスで1通りだけ
+     * @throws IllegalArgumentException 既に別のラベルで読み込んでいる場合
+     */
+    public synchronized void acquire(Context context, String... targetLabels) {
+        configure(context, targetLabels);
+        users++;
+        if (pendingRelease != null) {
+            pendingRelease.cancel(false);
+            pendingRelease = null;
+        }
+        requestLoad();
+    }
+
+    /** {@link #acquire} と対で呼ぶ。最後の利用者なら、しばらくして検出器を解放する。 */
+    public synchronized void release() {
+        if (users == 0 || --users > 0) {
+            return;
+        }
+        pendingRelease = executor.schedule(this::unloadIfUnused, RELEASE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Application.onTrimMemory から呼ぶ。 */
+    public synchronized void onTrimMemory(int level) {
+        if (users == 0 && loadRequested) {
+            Log.d(TAG, "Releasing unused detectors (trim level " + level + ").");
+            executor.execute(this::unloadIfUnused);
+        } else if (users > 0 && level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            confirmationTrimmed = true;
+            executor.execute(() -> {
+                closeConfirmationDetector();
+                closeBatchDetector();
+            });
+        }
+    }
+
+    private void configure(Context context, String[] targetLabels) {
+        if (this.targetLabels != null && !Arrays.equals(this.targetLabels, targetLabels)) {
+            throw new IllegalArgumentException("Detector pool is configured for " + Arrays.toString(this.targetLabels)
+                    + ", requested " + Arrays.toString(targetLabels));
+        }
+        this.context = context.getApplicationContext();
+        this.targetLabels = targetLabels.clone();
+    }
+
+    private void requestLoad() {
+        if (!loadRequested) {
+            loadRequested = true;
+            confirmationTrimmed = false;
+            executor.execute(this::loadDetectors);
+        } else if (confirmationTrimmed) {
+            confirmationTrimmed = false;
+            executor.execute(this::reloadConfirmationDetector);
+        }
+    }
+
+    // 読み込みに失敗した。次の preload / acquire で読み込み直せるようにする。
+    // 理由は lastError に残し、読み込みの後に推論スレッドで状態を確かめる利用者（ObjectDetectorHelper）に知らせる
+    private void onLoadFailed(String error, Exception e) {
+        Log.e(TAG, error, e);
+        lastError = error + ": " + e.getMessage();
+        synchronized (this) {
+            loadRequested = false;
+        }
+    }
+
+    /** 推論スレッドで実行する。検出器はこのスレッドからだけ使うこと。 */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    private void loadDetectors() {
+        if (interpreterDetector != null || objectDetector != null) {
+            return;
+        }
+        long start = SystemClock.elapsedRealtime();
+        String[] labels;
+        synchronized (this) {
+            labels = targetLabels;
+        }
+        try {
+            LabelMap map = newFactory().loadLabels(MODEL_NAME);
+            targetClassIds = classIds(MODEL_NAME, map, labels);
+            labelMap = map;
+        } catch (Exception e) {
+            onLoadFailed("Failed to load labels", e);
+            return;
+        }
+
+        try {
+            DetectorFactory.Selection<InterpreterDetector> selection = createInterpreter(MODEL_NAME, targetClassIds);
+            interpreterDetector = selection.getDetector();
+            detectorSelection = selection;
+            Log.d(TAG, "Interpreter detector was successfully created in "
+                    + (SystemClock.elapsedRealtime() - start) + " ms: " + selection);
+            lastError = null;
+            loadConfirmationDetector(labels);
+            return;
+        } catch (Exception e) {
+            Log.w(TAG, "Interpreter detector is not available, falling back to Task Library.", e);
+        }
+
+        try {
+            DetectorFactory.Selection<ObjectDetector> selection = newFactory().create(MODEL_NAME);
+            objectDetector = selection.getDetector();
+            detectorSelection = selection;
+            Log.d(TAG, "Object detector was successfully created: " + selection);
+            lastError = null;
+        } catch (Exception e) {
+            onLoadFailed("Failed to create object detector", e);
+        }
+    }
+
+    // onTrimMemory で解放した確認用のモデルを作り直す（軽いモデルが使えるときだけ）
+    private void reloadConfirmationDetector() {
+        if (confirmationDetector != null || interpreterDetector == null) {
+            return;
+        }
+        String[] labels;
+        synchronized (this) {
+            labels = targetLabels;
+        }
+        loadConfirmationDetector(labels);
+    }
+
+    private void loadConfirmationDetector(String[] labels) {
+        DetectorFactory factory = newFactory();
+        if (!factory.listBundledModels().contains(CONFIRMATION_MODEL_NAME)) {
+            Log.d(TAG, "Confirmation model " + CONFIRMATION_MODEL_NAME + " is not bundled, using "
+                    + MODEL_NAME + " only.");
+            return;
+        }
+        try {
+            LabelMap map = factory.loadLabels(CONFIRMATION_MODEL_NAME);
+            DetectorFactory.Selection<InterpreterDetector> selection =
+                    createInterpreter(CONFIRMATION_MODEL_NAME, classIds(CONFIRMATION_MODEL_NAME, map,
+                            sharedLabels(labelMap, labels)));
+            confirmationLabelMap = map;
+            confirmationInferenceNanos = (long) (selection.getChosen().getMedianMillis() * 1_000_000L);
+            confirmationDetector = selection.getDetector();
+            Log.d(TAG, "Confirmation detector was successfully created: " + selection);
+        } catch (Exception e) {
+            Log.w(TAG, "Confirmation detector is not available, using " + MODEL_NAME + " only.", e);
+        }
+    }
+
+    // 前回選ばれた構成があればそれだけを計測する。作れなければ全構成から選び直す
+    private DetectorFactory.Selection<InterpreterDetector> createInterpreter(String modelName, int[] classIds)
+            throws Exception {
+        DetectorFactory.BackendTiming previous = chosenTimings.get(modelName);
+        DetectorFactory.Selection<InterpreterDetector> selection = null;
+        if (previous != null) {
+            try {
+                selection = newFactory().onlyCandidate(previous.getBackend(), previous.getNumThreads())
+                        .createInterpreter(modelName, classIds);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Previous backend " + previous + " is not available for " + modelName, e);
+            }
+        }
+        if (selection == null) {
+            selection = newFactory().createInterpreter(modelName, classIds);
+        }
+        chosenTimings.put(modelName, selection.getChosen());
+        return selection;
+    }
+
+    private DetectorFactory newFactory() {
+        return new DetectorFactory(context)
+                .scoreThreshold(SCORE_THRESHOLD)
+                .maxResults(MAX_RESULTS);
+    }
+
+    // モデルのクラスIDにする。モデルにないラベルは警告して除き、1つもなければ何も通らない検出器を作らないよう例外にする
+    private static int[] classIds(String modelName, LabelMap map, String[] labels) {
+        int[] classIds = new int[labels.length];
+        int count = 0;
+        for (String label : labels) {
+            int classId = map.getClassId(label);
+            if (classId == LabelMap.UNKNOWN_CLASS) {
+                Log.w(TAG, "Model " + modelName + " has no label \"" + label + "\", ignoring it.");
+            } else {
+                classIds[count++] = classId;
+            }
+        }
+        if (labels.length > 0 && count == 0) {
+            throw new IllegalArgumentException("Model " + modelName + " has none of the labels "
+                    + Arrays.toString(labels));
+        }
+        return Arrays.copyOf(classIds, count);
+    }
+
+    // 確認用のモデルの結果は軽いモデルのラベル表で引くので、軽いモデルにあるラベルだけを確認する
+    private static String[] sharedLabels(LabelMap map, String[] labels) {
+        List<String> shared = new ArrayList<>();
+        for (String label : labels) {
+            if (map.getClassId(label) != LabelMap.UNKNOWN_CLASS) {
+                shared.add(label);
+            }
+        }
+        return shared.toArray(new String[0]);
+    }
+
+    private void unloadIfUnused() {
+        synchronized (this) {
+            if (users > 0) {
+                return;
+            }
+            loadRequested = false;
+            pendingRelease = null;
+        }
+        closeConfirmationDetector();
+        closeBatchDetector();
+        if (interpreterDetector != null) {
+            interpreterDetector.close();
+            interpreterDetector = null;
+        }
+        if (objectDetector != null) {
+            objectDetector.close();
+            objectDetector = null;
+        }
+        detectorSelection = null;
+        Log.d(TAG, "Detectors released.");
+    }
+
+    private void closeConfirmationDetector() {
+        InterpreterDetector detector = confirmationDetector;
+        if (detector != null) {
+            confirmationDetector = null;
+            detector.close();
+            Log.d(TAG, "Confirmation detector released.");
+        }
+    }
+
+    private void closeBatchDetector() {
+        if (batchDetector != null) {
+            batchDetector.close();
+            batchDetector = null;
+            Log.d(TAG, "Batch detector released.");
+        }
+    }
+
+    /**
+     * 軽いモデルで {@link #BATCH_SIZE} 枚を1回で推論する検出器。推論スレッドからだけ呼ぶこと。
+     * 最初に呼んだときに軽いモデルと同じ構成で作り、1枚ずつ推論するより速いときだけ使う。
+     * モデルの出力がバッチに対応していない（後処理付きの SSD に多い）・速くならないときは null。
+     */
+    public InterpreterDetector getBatchDetector() {
+        if (batchDetector != null || batchUnsupported || interpreterDetector == null) {
+            return batchDetector;
+        }
+        DetectorFactory.BackendTiming single = chosenTimings.get(MODEL_NAME);
+        try {
+            DetectorFactory.Selection<InterpreterDetector> selection = newFactory()
+                    .onlyCandidate(single.getBackend(), single.getNumThreads())
+                    .batchSize(BATCH_SIZE)
+                    .createInterpreter(MODEL_NAME, targetClassIds);
+            float batchMillis = selection.getChosen().getMedianMillis();
+            if (batchMillis < single.getMedianMillis() * BATCH_SIZE) {
+                batchDetector = selection.getDetector();
+                Log.d(TAG, "Batch detector was successfully created: " + selection);
+                return batchDetector;
+            }
+            selection.getDetector().close();
+            Log.d(TAG, "Batch inference is not faster (" + batchMillis + " ms for " + BATCH_SIZE
+                    + " frames, " + single.getMedianMillis() + " ms per frame), inferring frames one by one.");
+        } catch (Exception e) {
+            Log.d(TAG, "Model " + MODEL_NAME + " does not support batch " + BATCH_SIZE
+                    + ", inferring frames one by one: " + e.getMessage());
+        }
+        batchUnsupported = true;
+        return null;
+    }
+
+    /** 軽いモデルの Interpreter 検出器。作成前・解放後・Task Library に戻したときは null。 */
+    public InterpreterDetector getInterpreterDetector() {
+        return interpreterDetector;
+    }
+
+    /** Interpreter を使えないときの Task Library の検出器。 */
+    public ObjectDetector getObjectDetector() {
+        return objectDetector;
+    }
+
+    /** 確認用の重いモデル。同梱されていない・解放したときは null。 */
+    public InterpreterDetector getConfirmationDetector() {
+        return confirmationDetector;
+    }
+
+    /** 重いモデルの推論1回の時間（作成時の計測値）。 */
+    public long getConfirmationInferenceNanos() {
+        return confirmationInferenceNanos;
+    }
+
+    public LabelMap getConfirmationLabelMap() {
+        return confirmationLabelMap;
+    }
+
+    /** 選ばれた検出器の構成と、計測した全構成の時間。作成前は null。 */
+    public DetectorFactory.Selection<?> getDetectorSelection() {
+        return detectorSelection;
+    }
+
+    /** 軽いモデルのラベル表。結果のクラスIDはこの表で引く。作成前は null。 */
+    public LabelMap getLabelMap() {
+        return labelMap;
+    }
+
+    public int[] getTargetClassIds() {
+        return targetClassIds;
+    }
+
+    /** どちらかの検出器が使える状態なら true。 */
+    public boolean isReady() {
+        return interpreterDetector != null || objectDetector != null;
+    }
+
+    /** 最後に読み込みに失敗した理由。 */
+    public String getLastError() {
+        return lastError;
+    }
+}
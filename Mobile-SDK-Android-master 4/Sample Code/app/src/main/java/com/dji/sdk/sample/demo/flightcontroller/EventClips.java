@@ -0,0 +1,103 @@
+package com.dji.sdk.sample.demo.flightcontroller;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.dji.sdk.sample.internal.utils.EventClipRecorder;
+import com.dji.sdk.sample.internal.utils.VideoFeedHub;
+import com.dji.sdk.sample.internal.video.PacketRing;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 主のフィードの直近 {@link #PRE_ROLL_NANOS} 分を常にメモリに持っておき、しばらくぶりに人を見つけたときと
+ * {@link #save} でその前後をクリップに書く（外部ファイル領域の events/ 以下、{@link EventClipRecorder}）。
+ * {@link TrackingService} が {@link #start} から {@link #stop} まで持つ。メインスレッドで使う。
+ */
+final class EventClips {
+    private static final String TAG = "EventClips";
+    /** クリップに残す、きっかけより前の時間。 */
+    public static final long PRE_ROLL_NANOS = 10_000_000_000L;
+    /** クリップに残す、きっかけより後の時間。 */
+    public static final long POST_ROLL_NANOS = 10_000_000_000L;
+    // 直近の映像とクリップに使うメモリの上限（1080p で 20 秒分に余裕を持たせた大きさ）
+    private static final long BUFFER_BYTES = 48L * 1024 * 1024;
+    /** クリップの合計の上限。 */
+    public static final long QUOTA_BYTES = 1024L * 1024 * 1024;
+    // 人がこれだけ見えていなかった後に見つけたら、新しいイベントとしてクリップを作る
+    private static final long QUIET_NANOS = 10_000_000_000L;
+
+    private final Context context;
+    // 外部ストレージがなければ null のまま
+    private EventClipRecorder recorder;
+    private PacketRing.Reader reader;
+    // 最後に人が写っていたフレームの時刻（0 ならまだ見ていない）
+    private long lastPersonNanos;
+
+    EventClips(Context context) {
+        this.context = context;
+    }
+
+    /** 直近の映像を持ち始める。 */
+    void start() {
+        if (recorder != null) {
+            return;
+        }
+        File filesDir = context.getExternalFilesDir(null);
+        if (filesDir == null) {
+            Log.e(TAG, "外部ストレージが利用できません。イベントのクリップを残せません。");
+            return;
+        }
+        try {
+            recorder = new EventClipRecorder(new File(filesDir, "events"), PRE_ROLL_NANOS, POST_ROLL_NANOS,
+                    BUFFER_BYTES, QUOTA_BYTES);
+        } catch (IOException e) {
+            Log.e(TAG, "イベントのクリップの準備エラー: " + e.getMessage());
+            return;
+        }
+        reader = VideoFeedHub.getPrimary().open("events", recorder);
+        VideoFeedHub.getPrimary().startFromKeyFrame(reader);
+    }
+
+    /** 作っている途中のクリップを書き終えて止める。 */
+    void stop() {
+        if (recorder == null) {
+            return;
+        }
+        VideoFeedHub.getPrimary().close(reader);
+        EventClipRecorder closing = recorder;
+        recorder = null;
+        reader = null;
+        lastPersonNanos = 0;
+        // 作っている途中のクリップを書き終えるまで待つので、メインスレッドの外で閉じる
+        new Thread(closing::close, "EventClipFinish").start();
+    }
+
+    /** 人が写っていたフレームごとに呼ぶ。しばらく人が写っていなかった後なら、見つける前からのクリップを残す。 */
+    void onPersonDetected(long frameNanos) {
+        if (recorder != null && (lastPersonNanos == 0 || frameNanos - lastPersonNanos >= QUIET_NANOS)) {
+            recorder.trigger(EventClipRecorder.Reason.PERSON);
+            Log.d(TAG, "人を検出したため前後の映像を残します。");
+        }
+        lastPersonNanos = Math.max(lastPersonNanos, frameNanos);
+    }
+
+    /**
+     * 直近 {@link #PRE_ROLL_NANOS} からの映像をクリップに残す（操縦者が残したいとき）。
+     *
+     * @return 外部ストレージがなく残せないときは false
+     */
+    boolean save() {
+        if (recorder == null) {
+            return false;
+        }
+        recorder.trigger(EventClipRecorder.Reason.MANUAL);
+        return true;
+    }
+
+    /** HUD に出すクリップの状態。持っていなければ null。 */
+    String getStatusText() {
+        return recorder != null ? recorder.toString() : null;
+    }
+}
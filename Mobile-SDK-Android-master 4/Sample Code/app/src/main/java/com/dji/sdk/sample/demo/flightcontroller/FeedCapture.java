@@ -0,0 +1,131 @@
+package com.dji.sdk.sample.demo.flightcontroller;
+
+import android.content.Context;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.dji.sdk.sample.internal.utils.VideoFeedHub;
+import com.dji.sdk.sample.internal.video.PacketRecorder;
+import com.dji.sdk.sample.internal.video.PacketReplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * 主のフィードの受信をそのまま録り（外部ファイル領域の recordings/ 以下）、録ったものを機体の映像の代わりに
+ * 流し直す（{@link VideoFeedHub#startRecording}、{@link VideoFeedHub#startReplay}）。
+ * {@link TrackingService} が持ち、サービスを止めるときに {@link #stop} で録画と流し直しを止める。
+ * メインスレッドで使う。
+ */
+final class FeedCapture {
+    private static final String TAG = "FeedCapture";
+
+    private final Context context;
+
+    FeedCapture(Context context) {
+        this.context = context;
+    }
+
+    boolean isRecording() {
+        return VideoFeedHub.getPrimary().getRecorder() != null;
+    }
+
+    /** 主のフィードを録り始めるか、録っていれば止める。 */
+    void toggleRecording() {
+        if (stopRecording()) {
+            return;
+        }
+        File directory = getRecordingDirectory();
+        if (directory == null) {
+            Log.e(TAG, "外部ストレージが利用できません。生データを記録できません。");
+            return;
+        }
+        String name = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(directory, "feed-" + name + ".djvr");
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            VideoFeedHub.getPrimary().startRecording(file);
+            Log.d(TAG, "生データの記録を開始しました: " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "生データの記録の開始エラー: " + e.getMessage());
+        }
+    }
+
+    // 録っていれば止めて true を返す
+    private boolean stopRecording() {
+        PacketRecorder recorder = VideoFeedHub.getPrimary().stopRecording();
+        if (recorder == null) {
+            return false;
+        }
+        Log.d(TAG, "生データの記録を終了しました: " + recorder + " " + recorder.getFile());
+        Toast.makeText(context, "生データを保存しました: " + recorder.getFile().getName(), Toast.LENGTH_SHORT).show();
+        return true;
+    }
+
+    /**
+     * 録ったファイルを主のフィードとして流し直す。流している間は機体の映像を使わない。
+     *
+     * @param file     録ったファイル。null なら最後に録ったもの
+     * @param realTime 録ったときの間隔どおりに流すなら true、待たずに流すなら false
+     */
+    void startReplay(File file, boolean realTime) {
+        if (file == null) {
+            file = findLatestRecording();
+        }
+        if (file == null) {
+            Log.e(TAG, "流し直す録画がありません。");
+            return;
+        }
+        try {
+            VideoFeedHub.getPrimary().startReplay(file, realTime, 1);
+        } catch (IOException e) {
+            Log.e(TAG, "録画の読み込みエラー: " + e.getMessage());
+            return;
+        }
+        Log.d(TAG, "録画を流し直します: " + file);
+    }
+
+    /** 録画と流し直しを止める。録画は止める前に索引を書く（通知は出さない）。 */
+    void stop() {
+        VideoFeedHub.getPrimary().stopRecording();
+        VideoFeedHub.getPrimary().stopReplay();
+    }
+
+    /** HUD に出す録画と流し直しの状態。どちらもしていなければ null。 */
+    String getStatusText() {
+        PacketRecorder recorder = VideoFeedHub.getPrimary().getRecorder();
+        PacketReplay replay = VideoFeedHub.getPrimary().getReplay();
+        if (recorder == null && replay == null) {
+            return null;
+        }
+        if (recorder == null || replay == null) {
+            return String.valueOf(recorder != null ? recorder : replay);
+        }
+        return recorder + "\n" + replay;
+    }
+
+    private File getRecordingDirectory() {
+        File filesDir = context.getExternalFilesDir(null);
+        return filesDir != null ? new File(filesDir, "recordings") : null;
+    }
+
+    // 最後に録ったファイル。なければ null
+    private File findLatestRecording() {
+        File directory = getRecordingDirectory();
+        File[] files = directory != null ? directory.listFiles((dir, name) -> name.endsWith(".djvr")) : null;
+        File latest = null;
+        if (files != null) {
+            for (File file : files) {
+                if (latest == null || file.lastModified() > latest.lastModified()) {
+                    latest = file;
+                }
+            }
+        }
+        return latest;
+    }
+}
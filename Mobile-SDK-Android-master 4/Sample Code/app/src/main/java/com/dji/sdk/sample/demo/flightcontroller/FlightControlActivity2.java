@@ -14,12 +14,12 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.dji.sdk.sample.R;
 import com.dji.sdk.sample.internal.utils.OnScreenJoystick;
 import com.dji.sdk.sample.internal.utils.OnScreenJoystickListener;
+import com.dji.sdk.sample.internal.utils.VideoFeedHub;
+import com.dji.sdk.sample.internal.video.PacketRing;
 
 import dji.common.error.DJIError;
-import dji.common.flightcontroller.virtualstick.FlightControlData;
 import dji.common.util.CommonCallbacks;
 import dji.sdk.base.BaseProduct;
-import dji.sdk.camera.VideoFeeder;
 import dji.sdk.codec.DJICodecManager;
 import dji.sdk.flightcontroller.FlightController;
 import dji.sdk.products.Aircraft;
@@ -30,12 +30,14 @@ public class FlightControlActivity2 extends AppCompatActivity implements Surface
     private static final String TAG = "FlightControlActivity2";
 
     private FlightController flightController;
-    private DJICodecManager codecManager;
+    private volatile DJICodecManager codecManager;
+    private PacketRing.Reader videoReader;
     private SurfaceView videoSurface;
     private SurfaceHolder surfaceHolder;
     private OnScreenJoystick joystickLeft;
     private OnScreenJoystick joystickRight;
     private TextView commandTextView;
+    private final VirtualStickLoop stickLoop = VirtualStickLoop.getInstance();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -81,6 +83,18 @@ public class FlightControlActivity2 extends AppCompatActivity implements Surface
         });
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        stickLoop.start(flightController);
+    }
+
+    @Override
+    protected void onPause() {
+        stickLoop.stop();
+        super.onPause();
+    }
+
     private void initFlightController() {
         BaseProduct product = DJISDKManager.getInstance().getProduct();
         if (product != null && product.isConnected()) {
@@ -105,7 +119,10 @@ public class FlightControlActivity2 extends AppCompatActivity implements Surface
         if (codecManager == null) {
             codecManager = new DJICodecManager(this, holder, holder.getSurfaceFrame().width(), holder.getSurfaceFrame().height());
         }
-        VideoFeeder.getInstance().getPrimaryVideoFeed().addVideoDataListener(videoDataListener);
+        if (videoReader == null) {
+            videoReader = VideoFeedHub.getPrimary().open("flight-control", videoConsumer);
+            VideoFeedHub.getPrimary().startFromKeyFrame(videoReader);
+        }
     }
 
     @Override
@@ -119,15 +136,19 @@ public class FlightControlActivity2 extends AppCompatActivity implements Surface
             codecManager.cleanSurface();
             codecManager = null;
         }
-        VideoFeeder.getInstance().getPrimaryVideoFeed().removeVideoDataListener(videoDataListener);
+        if (videoReader != null) {
+            VideoFeedHub.getPrimary().close(videoReader);
+            videoReader = null;
+        }
     }
 
-    private VideoFeeder.VideoDataListener videoDataListener = new VideoFeeder.VideoDataListener() {
-        @Override
-        public void onReceive(byte[] videoBuffer, int size) {
-            if (codecManager != null) {
-                codecManager.sendDataToDecoder(videoBuffer, size);
+    private final PacketRing.Consumer videoConsumer = (packet, gap) -> {
+        DJICodecManager manager = codecManager;
+        if (manager != null) {
+            if (gap) {
+                manager.resetKeyFrame();
             }
+            manager.sendDataToDecoder(packet.getData(), packet.getSize());
         }
     };
 
@@ -192,15 +213,8 @@ public class FlightControlActivity2 extends AppCompatActivity implements Surface
             Log.d(TAG, "左ジョイスティック: " + action);
             updateCommandTextView("左ジョイスティック: " + action);
 
-            flightController.sendVirtualStickFlightControlData(new FlightControlData(roll, pitch, 0, 0), new CommonCallbacks.CompletionCallback() {
-                @Override
-                public void onResult(DJIError djiError) {
-                    if (djiError != null) {
-                        showToast("Failed to send control data: " + djiError.getDescription());
-                        updateCommandTextView("Failed to send control data: " + djiError.getDescription());
-                    }
-                }
-            });
+            // 送信は制御ループが一定周期で行う。スティックを止めている間はイベントが来ないので値を保持する
+            stickLoop.set(VirtualStickLoop.AXES_PITCH_ROLL, roll, pitch, 0, 0, VirtualStickLoop.HOLD_UNTIL_CHANGED);
         }
     }
 
@@ -223,15 +237,7 @@ public class FlightControlActivity2 extends AppCompatActivity implements Surface
             Log.d(TAG, "右ジョイスティック: " + action);
             updateCommandTextView("右ジョイスティック: " + action);
 
-            flightController.sendVirtualStickFlightControlData(new FlightControlData(0, 0, yaw, throttle), new CommonCallbacks.CompletionCallback() {
-                @Override
-                public void onResult(DJIError djiError) {
-                    if (djiError != null) {
-                        showToast("Failed to send control data: " + djiError.getDescription());
-                        updateCommandTextView("Failed to send control data: " + djiError.getDescription());
-                    }
-                }
-            });
+            stickLoop.set(VirtualStickLoop.AXES_YAW_THROTTLE, 0, 0, yaw, throttle, VirtualStickLoop.HOLD_UNTIL_CHANGED);
         }
     }
 }
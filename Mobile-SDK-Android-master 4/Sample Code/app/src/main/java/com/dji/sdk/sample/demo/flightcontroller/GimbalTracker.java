@@ -0,0 +1,204 @@
+package com.dji.sdk.sample.demo.flightcontroller;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.dji.sdk.sample.demo.flightcontroller.control.ControlLoopStats;
+import com.dji.sdk.sample.demo.flightcontroller.control.GimbalTrackingController;
+
+import java.util.Map;
+
+import dji.common.gimbal.CapabilityKey;
+import dji.common.gimbal.GimbalState;
+import dji.common.gimbal.Rotation;
+import dji.common.gimbal.RotationMode;
+import dji.common.util.CommonCallbacks;
+import dji.common.util.DJIParamCapability;
+import dji.common.util.DJIParamMinMaxCapability;
+import dji.sdk.gimbal.Gimbal;
+
+/**
+ * 検出した対象をジンバルで画面中央に捉え続ける。
+ * GimbalState の姿勢を {@link GimbalTrackingController} に流し、一定周期で速度指令を送る。
+ * 可動範囲は GimbalCapabilityView と同じく ADJUST_PITCH / ADJUST_YAW の能力値から読む。
+ * <p>
+ * ジンバルの状態コールバックは1つしか登録できないので、{@link #start} から {@link #stop} までは
+ * ほかの画面（PushGimbalDataView など）の登録を上書きする。
+ */
+public final class GimbalTracker {
+    private static final String TAG = "GimbalTracker";
+    public static final int DEFAULT_RATE_HZ = 20;
+    private static final float MAX_SPEED = 60.0f;
+    private static final int FAILURE_LOG_INTERVAL = 20;
+    // 同じ速度指令はこの間隔でだけ送り直す（速度の指令は一定時間で切れるため、止めたままにはしない）
+    private static final long REPEAT_NANOS = 200_000_000L;
+
+    private final Gimbal gimbal;
+    private final GimbalTrackingController controller = GimbalTrackingController.withDefaultGains();
+    private final ControlLoopStats stats = new ControlLoopStats();
+    private final long periodNanos = 1_000_000_000L / DEFAULT_RATE_HZ;
+    private boolean yawSupported;
+    private boolean pitchSupported;
+
+    private HandlerThread thread;
+    private volatile Handler handler;
+
+    // 以下はループのスレッドでのみ使う
+    private final float[] speeds = new float[2];
+    private final Rotation.Builder rotationBuilder = new Rotation.Builder()
+            .mode(RotationMode.SPEED)
+            .roll(Rotation.NO_ROTATION);
+    private float sentPitch = Float.NaN;
+    private float sentYaw = Float.NaN;
+    private long sentNanos;
+    private boolean moving;
+    private long nextTickNanos;
+    private long lastTickNanos;
+
+    private final GimbalState.Callback stateCallback = new GimbalState.Callback() {
+        @Override
+        public void onUpdate(GimbalState gimbalState) {
+            controller.onAttitude(gimbalState.getAttitudeInDegrees().getPitch(),
+                    gimbalState.getAttitudeInDegrees().getYaw(),
+                    (float) gimbalState.getYawRelativeToAircraftHeading(),
+                    System.nanoTime());
+        }
+    };
+
+    private final CommonCallbacks.CompletionCallback rotateCallback = djiError -> {
+        stats.onCompleted(System.nanoTime(), djiError == null);
+        if (djiError != null && stats.getFailed() % FAILURE_LOG_INTERVAL == 1) {
+            Log.w(TAG, "Failed to rotate gimbal: " + djiError.getDescription() + " (" + stats + ")");
+        }
+    };
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            if (lastTickNanos != 0) {
+                stats.onTick(now - lastTickNanos, periodNanos);
+            }
+            lastTickNanos = now;
+            send(now);
+            scheduleNext(now);
+        }
+    };
+
+    public GimbalTracker(Gimbal gimbal) {
+        this.gimbal = gimbal;
+        controller.setMaxSpeed(MAX_SPEED);
+    }
+
+    /** 姿勢の購読と制御ループを始める。 */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        readLimits();
+        controller.clearTarget();
+        gimbal.setStateCallback(stateCallback);
+        thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_DISPLAY);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        handler.post(() -> {
+            lastTickNanos = 0;
+            nextTickNanos = System.nanoTime();
+            tick.run();
+        });
+    }
+
+    /** 制御ループを止め、動いていれば止める指令を1回送る。 */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        gimbal.setStateCallback(null);
+        controller.clearTarget();
+        Handler stopping = handler;
+        HandlerThread stoppingThread = thread;
+        handler = null;
+        thread = null;
+        stopping.removeCallbacks(tick);
+        stopping.post(() -> send(System.nanoTime()));
+        stoppingThread.quitSafely();
+        Log.d(TAG, "Gimbal tracking stopped: " + stats);
+    }
+
+    /**
+     * 検出結果を渡す。ずれは画像中心から対象への角度で、対象が上なら pitchError が正、右なら yawError が正。
+     *
+     * @param frameTimestampNanos 検出の元フレームの時刻
+     */
+    public void setTargetError(float pitchError, float yawError, long frameTimestampNanos) {
+        controller.setTargetError(pitchError, yawError, frameTimestampNanos);
+    }
+
+    /** 対象を見失った。次の周期で止める。 */
+    public void clearTarget() {
+        controller.clearTarget();
+    }
+
+    public ControlLoopStats getStats() {
+        return stats;
+    }
+
+    private void readLimits() {
+        Map<CapabilityKey, DJIParamCapability> capabilities = gimbal.getCapabilities();
+        DJIParamCapability pitch = capabilities != null ? capabilities.get(CapabilityKey.ADJUST_PITCH) : null;
+        DJIParamCapability yaw = capabilities != null ? capabilities.get(CapabilityKey.ADJUST_YAW) : null;
+        pitchSupported = pitch != null && pitch.isSupported();
+        yawSupported = yaw != null && yaw.isSupported();
+        if (pitchSupported && pitch instanceof DJIParamMinMaxCapability) {
+            controller.setPitchRange(((DJIParamMinMaxCapability) pitch).getMin().floatValue(),
+                    ((DJIParamMinMaxCapability) pitch).getMax().floatValue());
+        }
+        if (yawSupported && yaw instanceof DJIParamMinMaxCapability) {
+            controller.setYawRange(((DJIParamMinMaxCapability) yaw).getMin().floatValue(),
+                    ((DJIParamMinMaxCapability) yaw).getMax().floatValue());
+        } else if (!yawSupported) {
+            // ヨーを動かせない機体では、どちら向きにも回さない
+            controller.setYawRange(0, 0);
+        }
+        Log.d(TAG, "Gimbal limits: pitch=" + pitchSupported + " yaw=" + yawSupported);
+    }
+
+    private void send(long now) {
+        boolean tracking = controller.update(now, speeds);
+        if (!tracking && !moving) {
+            // 追従していない間は送らない（手動操作を妨げないように）
+            return;
+        }
+        moving = tracking;
+        float pitch = pitchSupported ? speeds[GimbalTrackingController.PITCH] : Rotation.NO_ROTATION;
+        float yaw = yawSupported ? speeds[GimbalTrackingController.YAW] : Rotation.NO_ROTATION;
+        // 追従中で指令が変わっていなければ、送り直しの間隔まで送らない（止める指令は必ず送る）
+        if (tracking && pitch == sentPitch && yaw == sentYaw && now - sentNanos < REPEAT_NANOS) {
+            return;
+        }
+        sentPitch = pitch;
+        sentYaw = yaw;
+        sentNanos = now;
+        stats.onSent(now);
+        gimbal.rotate(rotationBuilder.pitch(pitch).yaw(yaw).build(), rotateCallback);
+    }
+
+    private void scheduleNext(long now) {
+        Handler current = handler;
+        if (current == null || current.getLooper() != Looper.myLooper()) {
+            return;
+        }
+        nextTickNanos += periodNanos;
+        if (nextTickNanos <= now) {
+            long missed = (now - nextTickNanos) / periodNanos + 1;
+            stats.onMissedTicks(missed);
+            nextTickNanos += missed * periodNanos;
+        }
+        long delayMillis = (nextTickNanos - now) / 1_000_000L;
+        current.postAtTime(tick, SystemClock.uptimeMillis() + delayMillis);
+    }
+}
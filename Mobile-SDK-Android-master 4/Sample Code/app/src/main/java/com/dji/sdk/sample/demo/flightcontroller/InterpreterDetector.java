@@ -0,0 +1,267 @@
+package com.dji.sdk.sample.demo.flightcontroller;
+
+import android.os.Debug;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectionResults;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.FrameTimeline;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.SsdPostProcessor;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvFrame;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvToTensor;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Task Library を使わず、TFLite の Interpreter を直接使う SSD 検出器。
+ * 入出力テンソルのバッファと後処理の作業配列は作成時に確保し、
+ * 毎フレームの処理ではメモリを確保しない。
+ * 出力は SSD の後処理付きモデルの並び（位置、クラス、スコア、件数）を前提とする。
+ * <p>
+ * 入力のバッチを2以上に変えた Interpreter を渡すと、{@link #detectBatch} で複数のフレームを1回で推論できる。
+ */
+public class InterpreterDetector implements Closeable {
+    private static final int LOCATIONS = 0;
+    private static final int CLASSES = 1;
+    private static final int SCORES = 2;
+    private static final int COUNT = 3;
+
+    private final Interpreter interpreter;
+    private final Delegate delegate;
+    private final int inputWidth;
+    private final int inputHeight;
+    private final int batchSize;
+    private final YuvToTensor yuvToTensor;
+    // バッチの各枠の変換器と、入力バッファの各枠のビュー（バッチが1なら空）
+    private final YuvToTensor[] slotConverters;
+    private final ByteBuffer[] inputSlots;
+    private final SsdPostProcessor postProcessor;
+
+    private final ByteBuffer inputBuffer;
+    private final Object[] inputs;
+    private final Map<Integer, Object> outputs = new HashMap<>();
+    private final ByteBuffer[] outputBuffers = new ByteBuffer[4];
+    private final FloatBuffer locationsView;
+    private final FloatBuffer classesView;
+    private final FloatBuffer scoresView;
+    private final FloatBuffer countView;
+    private final float[] locations;
+    private final float[] classes;
+    private final float[] scores;
+    private final float[] count = new float[1];
+    private final int numBoxes;
+
+    private boolean allocationCounting = false;
+    private int lastFrameAllocations = -1;
+
+    /**
+     * @param interpreter 入力のバッチを変える場合は、resizeInput と allocateTensors を済ませたもの
+     * @param delegate    Interpreter に追加したデリゲート。close() で一緒に閉じる（なければ null）
+     * @throws IllegalStateException SSD の出力の形でない、または出力がバッチに対応していない場合
+     */
+    public InterpreterDetector(Interpreter interpreter, Delegate delegate, SsdPostProcessor postProcessor) {
+        this.interpreter = interpreter;
+        this.delegate = delegate;
+        this.postProcessor = postProcessor;
+
+        Tensor inputTensor = interpreter.getInputTensor(0);
+        int[] inputShape = inputTensor.shape();
+        batchSize = inputShape[0];
+        inputHeight = inputShape[1];
+        inputWidth = inputShape[2];
+        boolean floatInput = inputTensor.dataType() == DataType.FLOAT32;
+        // 変換は推論と重ならないので、推論と同じコアを使って並列に行う
+        ForkJoinPool convertPool = Runtime.getRuntime().availableProcessors() > 1 ? ForkJoinPool.commonPool() : null;
+        yuvToTensor = new YuvToTensor(inputWidth, inputHeight, floatInput, 127.5f, 127.5f).parallel(convertPool);
+        int slotSize = yuvToTensor.getOutputSize();
+        inputBuffer = ByteBuffer.allocateDirect(slotSize * batchSize).order(ByteOrder.nativeOrder());
+        inputs = new Object[]{inputBuffer};
+        // 枠ごとに変換器を分け、映像ごとにサイズが違っても対応表を作り直さないようにする
+        int slots = batchSize > 1 ? batchSize : 0;
+        slotConverters = new YuvToTensor[slots];
+        inputSlots = new ByteBuffer[slots];
+        for (int i = 0; i < slots; i++) {
+            slotConverters[i] = new YuvToTensor(inputWidth, inputHeight, floatInput, 127.5f, 127.5f)
+                    .parallel(convertPool);
+            inputBuffer.position(i * slotSize);
+            inputSlots[i] = inputBuffer.slice().order(ByteOrder.nativeOrder());
+        }
+        inputBuffer.rewind();
+
+        if (interpreter.getOutputTensorCount() != 4) {
+            throw new IllegalStateException("Unexpected SSD output count: " + interpreter.getOutputTensorCount());
+        }
+        for (int i = 0; i < 4; i++) {
+            // 後処理付きの SSD はバッチ1だけのことが多く、そのときは出力の先頭の次元が入力と合わない
+            int outputBatch = interpreter.getOutputTensor(i).shape()[0];
+            if (outputBatch != batchSize) {
+                throw new IllegalStateException("Output " + i + " has batch " + outputBatch + ", input has "
+                        + batchSize);
+            }
+        }
+        numBoxes = interpreter.getOutputTensor(LOCATIONS).shape()[1];
+        locations = new float[numBoxes * 4];
+        classes = new float[numBoxes];
+        scores = new float[numBoxes];
+        locationsView = allocateOutput(LOCATIONS);
+        classesView = allocateOutput(CLASSES);
+        scoresView = allocateOutput(SCORES);
+        countView = allocateOutput(COUNT);
+    }
+
+    private FloatBuffer allocateOutput(int index) {
+        Tensor tensor = interpreter.getOutputTensor(index);
+        if (tensor.dataType() != DataType.FLOAT32) {
+            throw new IllegalStateException("Unexpected SSD output type: " + tensor.dataType());
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(tensor.numBytes()).order(ByteOrder.nativeOrder());
+        outputs.put(index, buffer);
+        outputBuffers[index] = buffer;
+        return buffer.asFloatBuffer();
+    }
+
+    /** フレーム全体を検出し、結果を out に書き込む。座標は元フレームのピクセル座標。 */
+    public void detect(YuvFrame frame, DetectionResults out) {
+        detect(frame, out, null);
+    }
+
+    /**
+     * region（[left, top, right, bottom]、フレームのピクセル座標）の範囲だけを検出する。
+     * null ならフレーム全体。結果の座標は元フレームのピクセル座標。
+     */
+    @SuppressWarnings("deprecation")
+    public void detect(YuvFrame frame, DetectionResults out, int[] region) {
+        if (allocationCounting) {
+            Debug.resetThreadAllocCount();
+        }
+
+        out.setFrame(frame);
+        if (region != null) {
+            // 色差の間引きに合わせて左上は偶数に切り下げられるので、結果の換算も同じ範囲を使う
+            int left = region[0] & ~1;
+            int top = region[1] & ~1;
+            yuvToTensor.setCrop(left, top, region[2], region[3]);
+            out.setRegion(left, top, Math.min(region[2], frame.getWidth()), Math.min(region[3], frame.getHeight()));
+        } else {
+            yuvToTensor.clearCrop();
+        }
+        FrameTimeline timeline = out.getTimeline();
+        yuvToTensor.convert(frame, inputBuffer);
+        timeline.mark(FrameTimeline.PREPROCESS);
+        run();
+        readSlot(0);
+        timeline.mark(FrameTimeline.INFERENCE);
+        postProcessor.process(locations, classes, scores, (int) count[0], out);
+        timeline.mark(FrameTimeline.POSTPROCESS);
+
+        if (allocationCounting) {
+            lastFrameAllocations = Debug.getThreadAllocCount();
+        }
+    }
+
+    /**
+     * frames の先頭 frameCount 枚をフレーム全体で1回にまとめて推論し、outs の同じ位置に書き込む。
+     * 使っていない枠は前回の入力のまま推論される（結果は捨てる）。
+     *
+     * @throws IllegalArgumentException frameCount がバッチの大きさを超える場合
+     */
+    public void detectBatch(YuvFrame[] frames, DetectionResults[] outs, int frameCount) {
+        if (frameCount > inputSlots.length) {
+            throw new IllegalArgumentException("Batch of " + frameCount + " frames, detector has "
+                    + inputSlots.length + " slots");
+        }
+        for (int i = 0; i < frameCount; i++) {
+            outs[i].setFrame(frames[i]);
+            slotConverters[i].convert(frames[i], inputSlots[i]);
+            outs[i].getTimeline().mark(FrameTimeline.PREPROCESS);
+        }
+        run();
+        for (int i = 0; i < frameCount; i++) {
+            outs[i].getTimeline().mark(FrameTimeline.INFERENCE);
+        }
+        for (int i = 0; i < frameCount; i++) {
+            readSlot(i);
+            postProcessor.process(locations, classes, scores, (int) count[0], outs[i]);
+            outs[i].getTimeline().mark(FrameTimeline.POSTPROCESS);
+        }
+    }
+
+    private void run() {
+        for (ByteBuffer output : outputBuffers) {
+            output.rewind();
+        }
+        interpreter.runForMultipleInputsOutputs(inputs, outputs);
+    }
+
+    // バッチの slot 番目の出力を後処理の作業配列に読み出す
+    private void readSlot(int slot) {
+        readOutput(locationsView, slot * numBoxes * 4, locations);
+        readOutput(classesView, slot * numBoxes, classes);
+        readOutput(scoresView, slot * numBoxes, scores);
+        readOutput(countView, slot, count);
+    }
+
+    private static void readOutput(FloatBuffer view, int offset, float[] target) {
+        view.position(offset);
+        view.get(target, 0, Math.min(target.length, view.remaining()));
+    }
+
+    /** 入力が空のフレームで1回推論する（初回の遅延を計測の外に出すため）。 */
+    public void warmUp() {
+        inputBuffer.rewind();
+        run();
+    }
+
+    /**
+     * 1フレームの処理中に確保されたオブジェクト数の計測を切り替える。
+     * このクラスの処理は定常状態で確保しないので、数えられるのは TFLite 内部の確保だけになる。
+     */
+    @SuppressWarnings("deprecation")
+    public void setAllocationCounting(boolean enabled) {
+        allocationCounting = enabled;
+        if (enabled) {
+            Debug.startAllocCounting();
+        } else {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    /** 直前のフレームで確保されたオブジェクト数。計測していなければ -1。 */
+    public int getLastFrameAllocations() {
+        return lastFrameAllocations;
+    }
+
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    /** 1回の推論で処理できるフレーム数。 */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public void close() {
+        interpreter.close();
+        if (delegate instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) delegate).close();
+            } catch (Exception ignored) {
+                // 閉じるときの失敗は無視する
+            }
+        }
+    }
+}
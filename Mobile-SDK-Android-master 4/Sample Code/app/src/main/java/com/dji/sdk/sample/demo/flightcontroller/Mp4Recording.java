@@ -0,0 +1,86 @@
+package com.dji.sdk.sample.demo.flightcontroller;
+
+import android.content.Context;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.dji.sdk.sample.internal.utils.Mp4SegmentRecorder;
+import com.dji.sdk.sample.internal.utils.VideoFeedHub;
+import com.dji.sdk.sample.internal.video.PacketRing;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 主のフィードを再エンコードせずに MP4 のセグメントに書く（外部ファイル領域の videos/ 以下、
+ * 合計が {@link #QUOTA_BYTES} を超えたら古いものから消す）。{@link Mp4SegmentRecorder} をフィードの読み手にする。
+ * {@link TrackingService} が持ち、サービスを止めるときに {@link #stop} で書き終える。メインスレッドで使う。
+ */
+final class Mp4Recording {
+    private static final String TAG = "Mp4Recording";
+    /** MP4 の1セグメントの長さの目安。 */
+    public static final long SEGMENT_NANOS = 60_000_000_000L;
+    /** MP4 のセグメントの合計の上限。 */
+    public static final long QUOTA_BYTES = 2L * 1024 * 1024 * 1024;
+
+    private final Context context;
+    private Mp4SegmentRecorder recorder;
+    private PacketRing.Reader reader;
+
+    Mp4Recording(Context context) {
+        this.context = context;
+    }
+
+    boolean isRecording() {
+        return recorder != null;
+    }
+
+    /** 書き始めるか、書いていれば止める。 */
+    void toggle() {
+        if (recorder != null) {
+            stop();
+            Toast.makeText(context, "録画を止めました", Toast.LENGTH_SHORT).show();
+        } else {
+            start();
+        }
+    }
+
+    private void start() {
+        File filesDir = context.getExternalFilesDir(null);
+        if (filesDir == null) {
+            Log.e(TAG, "外部ストレージが利用できません。録画できません。");
+            return;
+        }
+        try {
+            recorder = new Mp4SegmentRecorder(new File(filesDir, "videos"), SEGMENT_NANOS, QUOTA_BYTES);
+        } catch (IOException e) {
+            Log.e(TAG, "録画の開始エラー: " + e.getMessage());
+            return;
+        }
+        reader = VideoFeedHub.getPrimary().open("mp4", recorder);
+        // 持っている GOP の IDR から書き始める
+        VideoFeedHub.getPrimary().startFromKeyFrame(reader);
+        Log.d(TAG, "録画を開始しました: " + recorder.getIndex().getDirectory());
+    }
+
+    /** 書いていれば止める。 */
+    void stop() {
+        if (recorder == null) {
+            return;
+        }
+        VideoFeedHub.getPrimary().close(reader);
+        Mp4SegmentRecorder finishing = recorder;
+        recorder = null;
+        reader = null;
+        // MP4 の末尾を書くのに時間がかかるので、メインスレッドの外で閉じる
+        new Thread(() -> {
+            finishing.close();
+            Log.d(TAG, "録画を終了しました: " + finishing);
+        }, "Mp4Finish").start();
+    }
+
+    /** HUD に出す録画の状態。書いていなければ null。 */
+    String getStatusText() {
+        return recorder != null ? recorder.toString() : null;
+    }
+}
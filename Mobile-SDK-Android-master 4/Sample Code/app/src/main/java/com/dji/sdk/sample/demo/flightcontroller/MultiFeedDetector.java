@@ -0,0 +1,294 @@
+package com.dji.sdk.sample.demo.flightcontroller;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectionResults;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectorStats;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.FrameMailbox;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.LabelMap;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvFrame;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 複数の映像（VideoFeeder の主・副のフィード）を同じ検出器で検出し、結果を映像ごとに通知する。
+ * 検出器と推論スレッドは {@link DetectorPool} のものを共有し、映像ごとに最新の1フレームだけを待たせる。
+ * <p>
+ * モデルがバッチに対応していれば、待っているフレームをまとめて1回で推論する（{@link DetectorPool#getBatchDetector}）。
+ * 対応していなければ映像を順番に1フレームずつ推論する。どちらでも推論スレッドは1本なので、
+ * 映像が増えても推論の負荷は増えず、映像ごとの検出の頻度が下がる。
+ * ROI と重いモデルでの確認は使わず、常にフレーム全体を軽いモデルで検出する。
+ * 使い終わったら {@link #close()} を呼ぶこと。
+ */
+public class MultiFeedDetector {
+    private static final String TAG = "MultiFeedDetector";
+    private static final int MAX_RESULTS = DetectorPool.MAX_RESULTS;
+    private static final int RESULT_BUFFERS = 3;
+    private static final int STATS_LOG_INTERVAL = 60;
+
+    /**
+     * 映像ごとの検出結果（メインスレッド）。source はそのフレームを推論したときの物理カメラの名前（分からなければ null）。
+     * results はコールバックの後で再利用されるので、保持したい場合は {@link DetectionResults#copyFrom} で写し取ること。
+     */
+    public interface Listener {
+        void onFeedResults(int feed, String source, DetectionResults results);
+    }
+
+    private final DetectorPool pool = DetectorPool.getInstance();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Feed[] feeds;
+    private volatile Listener listener;
+    private volatile boolean closed;
+    // これより古いフレーム・結果は通知しない
+    private volatile long maxResultAgeMillis = 500;
+    // 推論スレッドに取り出し処理を積んでいれば true（映像が複数でも1つだけ積む）
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    // 推論スレッドでのみ使う
+    private final YuvFrame[] batchFrames;
+    private final ResultDelivery[] batchDeliveries;
+    private final DetectionResults[] batchResults;
+    private int nextFeed;
+    private long batchedInferences;
+    private long singleInferences;
+
+    /**
+     * @param feedCount    映像の数
+     * @param targetLabels 通知するラベル（空なら全クラス）。プロセス内の全画面で同じにすること
+     */
+    public MultiFeedDetector(Context context, int feedCount, Listener listener, String... targetLabels) {
+        this.listener = listener;
+        feeds = new Feed[feedCount];
+        for (int i = 0; i < feedCount; i++) {
+            feeds[i] = new Feed(i);
+        }
+        batchFrames = new YuvFrame[feedCount];
+        batchDeliveries = new ResultDelivery[feedCount];
+        batchResults = new DetectionResults[feedCount];
+        pool.acquire(context, targetLabels);
+    }
+
+    /** 検出をやめ、共有の検出器の参照を返す。推論待ちのフレームはプールへ返す。 */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        listener = null;
+        for (Feed feed : feeds) {
+            feed.mailbox.clear();
+        }
+        pool.release();
+    }
+
+    /** 映像に今つながっている物理カメラの名前（PhysicalSource）。以後の結果に付けて通知する。 */
+    public void setSource(int feed, String source) {
+        feeds[feed].source = source;
+    }
+
+    public void setMaxResultAgeMillis(long maxResultAgeMillis) {
+        this.maxResultAgeMillis = maxResultAgeMillis;
+    }
+
+    /** モデルのラベル表。作成前は null。 */
+    public LabelMap getLabelMap() {
+        return pool.getLabelMap();
+    }
+
+    /** この映像のフレームが推論を待っていなければ true（デコーダでフレームを写す前の判定に使う）。 */
+    public boolean isIdle(int feed) {
+        return feeds[feed].mailbox.isEmpty();
+    }
+
+    public DetectorStats getStats(int feed) {
+        return feeds[feed].stats;
+    }
+
+    /** 映像 feed のフレームを推論スレッドで検出する。フレームは処理後にプールへ返す。 */
+    public void detect(int feed, YuvFrame frame) {
+        if (closed) {
+            frame.release();
+            return;
+        }
+        feeds[feed].mailbox.offer(frame);
+        if (scheduled.compareAndSet(false, true)) {
+            pool.execute(this::detectPending);
+        }
+    }
+
+    private void detectPending() {
+        // 取り出す前に下ろすので、この後に届いたフレームは次の取り出し処理で拾われる
+        scheduled.set(false);
+        InterpreterDetector detector = pool.getInterpreterDetector();
+        if (closed || detector == null) {
+            // Task Library に戻したときは映像ごとの検出をしない
+            for (Feed feed : feeds) {
+                drop(feed, feed.mailbox.poll());
+            }
+            return;
+        }
+        InterpreterDetector batchDetector = pool.getBatchDetector();
+        if (batchDetector != null) {
+            detectBatch(batchDetector);
+        } else {
+            detectNext(detector);
+        }
+    }
+
+    // 待っているフレームをまとめて1回で推論する
+    private void detectBatch(InterpreterDetector batchDetector) {
+        int count = 0;
+        for (Feed feed : feeds) {
+            YuvFrame frame = feed.mailbox.poll();
+            ResultDelivery delivery = take(feed, frame);
+            if (delivery == null) {
+                continue;
+            }
+            batchFrames[count] = frame;
+            batchDeliveries[count] = delivery;
+            batchResults[count] = delivery.results;
+            count++;
+            if (count == batchDetector.getBatchSize()) {
+                break;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        try {
+            batchDetector.detectBatch(batchFrames, batchResults, count);
+            batchedInferences++;
+            for (int i = 0; i < count; i++) {
+                deliver(batchDeliveries[i]);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error during batch detection: ", e);
+            for (int i = 0; i < count; i++) {
+                batchDeliveries[i].feed.freeDeliveries.offer(batchDeliveries[i]);
+            }
+        } finally {
+            for (int i = 0; i < count; i++) {
+                batchFrames[i].release();
+                batchFrames[i] = null;
+                batchDeliveries[i] = null;
+                batchResults[i] = null;
+            }
+        }
+        // バッチに入りきらなかった映像があれば続けて処理する
+        rescheduleIfPending();
+    }
+
+    // 映像を順番に回り、フレームが待っている次の映像を1つだけ推論する。残りは次の取り出し処理に回す
+    private void detectNext(InterpreterDetector detector) {
+        for (int i = 0; i < feeds.length; i++) {
+            Feed feed = feeds[(nextFeed + i) % feeds.length];
+            YuvFrame frame = feed.mailbox.poll();
+            ResultDelivery delivery = take(feed, frame);
+            if (delivery == null) {
+                continue;
+            }
+            nextFeed = (feed.index + 1) % feeds.length;
+            try {
+                detector.detect(frame, delivery.results);
+                singleInferences++;
+                deliver(delivery);
+            } catch (Exception e) {
+                feed.freeDeliveries.offer(delivery);
+                Log.e(TAG, "Error during object detection: ", e);
+            } finally {
+                frame.release();
+            }
+            break;
+        }
+        rescheduleIfPending();
+    }
+
+    private void rescheduleIfPending() {
+        for (Feed feed : feeds) {
+            if (!feed.mailbox.isEmpty()) {
+                if (scheduled.compareAndSet(false, true)) {
+                    pool.execute(this::detectPending);
+                }
+                return;
+            }
+        }
+    }
+
+    // 推論する価値のあるフレームなら結果の書き込み先を返す。古い・書き込み先がないときはフレームを返して null
+    private ResultDelivery take(Feed feed, YuvFrame frame) {
+        if (frame == null) {
+            return null;
+        }
+        ResultDelivery delivery = null;
+        if ((System.nanoTime() - frame.getTimestampNanos()) / 1_000_000L > maxResultAgeMillis
+                || (delivery = feed.freeDeliveries.poll()) == null) {
+            drop(feed, frame);
+            return null;
+        }
+        delivery.source = feed.source;
+        return delivery;
+    }
+
+    private static void drop(Feed feed, YuvFrame frame) {
+        if (frame != null) {
+            frame.release();
+            feed.stats.onDropped();
+        }
+    }
+
+    private void deliver(ResultDelivery delivery) {
+        DetectorStats stats = delivery.feed.stats;
+        stats.onInferred();
+        if (stats.getInferred() % STATS_LOG_INTERVAL == 0) {
+            Log.d(TAG, "Feed " + delivery.feed.index + " (" + delivery.source + "): age "
+                    + delivery.results.getAgeMillis() + " ms, " + stats
+                    + ", batched: " + batchedInferences + ", single: " + singleInferences);
+        }
+        handler.post(delivery);
+    }
+
+    private final class Feed {
+        final int index;
+        final DetectorStats stats = new DetectorStats();
+        // 推論待ちは映像ごとに最新の1フレームだけ
+        final FrameMailbox mailbox = new FrameMailbox(stats);
+        // メインスレッドへ結果を渡すための使い回しバッファ
+        final ArrayBlockingQueue<ResultDelivery> freeDeliveries = new ArrayBlockingQueue<>(RESULT_BUFFERS);
+        volatile String source;
+
+        Feed(int index) {
+            this.index = index;
+            for (int i = 0; i < RESULT_BUFFERS; i++) {
+                freeDeliveries.offer(new ResultDelivery(this));
+            }
+        }
+    }
+
+    private final class ResultDelivery implements Runnable {
+        final Feed feed;
+        final DetectionResults results = new DetectionResults(MAX_RESULTS);
+        String source;
+
+        ResultDelivery(Feed feed) {
+            this.feed = feed;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Listener current = listener;
+                if (results.getAgeMillis() > maxResultAgeMillis) {
+                    feed.stats.onStaleResult();
+                } else if (current != null) {
+                    current.onFeedResults(feed.index, source, results);
+                }
+            } finally {
+                feed.freeDeliveries.offer(this);
+            }
+        }
+    }
+}
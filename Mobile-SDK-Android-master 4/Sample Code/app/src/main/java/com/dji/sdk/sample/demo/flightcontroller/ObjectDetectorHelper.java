@@ -2,91 +2,405 @@ package com.dji.sdk.sample.demo.flightcontroller;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.RectF;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 import android.widget.Toast;
 
+import com.dji.sdk.sample.demo.flightcontroller.tracking.CascadePolicy;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectionResults;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectorStats;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.FrameMailbox;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.FrameTimeline;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.LabelMap;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.RoiPlanner;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.Track;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvFrame;
+
 import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.support.image.TensorImage;
-import org.tensorflow.lite.task.core.BaseOptions;
 import org.tensorflow.lite.task.vision.detector.Detection;
 import org.tensorflow.lite.task.vision.detector.ObjectDetector;
-import org.tensorflow.lite.task.vision.detector.ObjectDetector.ObjectDetectorOptions;
 
+import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
 
+/**
+ * 利用者（{@link TrackingService}）ごとの検出の窓口。検出器と推論スレッドはプロセスで共有する {@link DetectorPool} のものを使い、
+ * ここではフレームの受け渡し（メールボックス）、結果の通知、ROI と2段検出の判断を利用者ごとに持つ。
+ * 使い終わったら {@link #close()} を呼ぶこと。
+ */
 public class ObjectDetectorHelper {
     private static final String TAG = "ObjectDetectorHelper";
-    private ObjectDetector objectDetector;
+    private static final int MAX_RESULTS = DetectorPool.MAX_RESULTS;
+    private static final int RESULT_BUFFERS = 3;
+    private static final int STATS_LOG_INTERVAL = 30;
+    // 検出器（通常は Interpreter、使えないモデルのときだけ Task Library）と推論スレッドはプロセスで共有する
+    private final DetectorPool pool = DetectorPool.getInstance();
     private Context context;
-    private DetectionResultsListener detectionResultsListener;
+    private volatile DetectionResultsListener detectionResultsListener;
+    private volatile boolean closed;
     private Handler handler = new Handler(Looper.getMainLooper());
-    private ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final DetectorStats stats = new DetectorStats();
+    // 推論待ちは常に最新の1フレームだけ
+    private final FrameMailbox mailbox = new FrameMailbox(stats);
+    // これより古いフレーム・結果は制御に渡さない
+    private volatile long maxResultAgeMillis = 500;
+    // 追跡中は対象の周りだけを切り出して推論する（Interpreter 経路のみ、最初の推論で作る）
+    private volatile RoiPlanner roiPlanner;
+    private volatile boolean roiEnabled = true;
+    private final int[] roiRegion = new int[4];
+    private int roiInferences;
+    // 軽いモデルで毎回検出し、必要なときだけ重いモデルで確認する（重いモデルがあるときのみ）
+    private volatile CascadePolicy cascadePolicy;
+    // 軽いモデルにないラベルの確認結果を捨てたことを一度だけ記録する（推論スレッドでのみ使う）
+    private boolean unknownLabelLogged;
+    // メインスレッドへ結果を渡すための使い回しバッファ
+    private final ArrayBlockingQueue<ResultDelivery> freeDeliveries = new ArrayBlockingQueue<>(RESULT_BUFFERS);
+
+    // 推論スレッドでのみ使う再利用バッファ（Task Library 用）
+    private final TensorImage tensorImage = new TensorImage(DataType.UINT8);
+    private int[] argbPixels;
+    private Bitmap frameBitmap;
 
+    /**
+     * 検出結果はメインスレッドで通知される。results はコールバックの後で再利用されるので、
+     * 保持したい場合は {@link DetectionResults#copyFrom} で写し取ること。
+     */
     public interface DetectionResultsListener {
-        void onDetectionResults(List<Detection> results);
+        void onDetectionResults(DetectionResults results);
     }
 
-    public ObjectDetectorHelper(Context context, DetectionResultsListener detectionResultsListener) {
+    /**
+     * @param targetLabels 通知するラベル（空なら全クラス）。プロセス内の全画面で同じにすること
+     */
+    public ObjectDetectorHelper(Context context, DetectionResultsListener detectionResultsListener,
+                                String... targetLabels) {
         this.context = context;
         this.detectionResultsListener = detectionResultsListener;
-        setupObjectDetector();
+        for (int i = 0; i < RESULT_BUFFERS; i++) {
+            freeDeliveries.offer(new ResultDelivery());
+        }
+        // 読み込みは推論スレッドで順に行われるので、その後で結果を確かめる
+        pool.acquire(context, targetLabels);
+        pool.execute(() -> {
+            if (!pool.isReady() && !closed) {
+                showToast(pool.getLastError() != null ? pool.getLastError() : "Object detector is not available.");
+            }
+        });
+    }
+
+    /** 検出をやめ、共有の検出器の参照を返す。推論待ちのフレームはプールへ返す。 */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        detectionResultsListener = null;
+        mailbox.clear();
+        pool.release();
+    }
+
+    /** 選ばれた検出器の構成と、計測した全構成の時間。作成前は null。 */
+    public DetectorFactory.Selection<?> getDetectorSelection() {
+        return pool.getDetectorSelection();
+    }
+
+    /** モデルのラベル表。作成前は null。 */
+    public LabelMap getLabelMap() {
+        return pool.getLabelMap();
+    }
+
+    /**
+     * YUVフレームを推論スレッドで検出する。フレームは処理後にプールへ返す。
+     * 推論中に届いたフレームは1枠のメールボックスで最新のものだけが残る。
+     * 結果の座標はフレームのピクセル座標。
+     */
+    public void detect(YuvFrame frame) {
+        if (frame == null) {
+            Log.e(TAG, "Frame is null, skipping detection.");
+            return;
+        }
+        if (closed) {
+            frame.release();
+            return;
+        }
+
+        if (mailbox.offer(frame)) {
+            pool.execute(this::detectLatestFrame);
+        }
     }
 
-    private void setupObjectDetector() {
+    private void detectLatestFrame() {
+        YuvFrame frame = mailbox.poll();
+        if (frame == null) {
+            return;
+        }
+        // 検出器は推論スレッドでだけ作り直されるので、この処理の間は変わらない
+        InterpreterDetector interpreterDetector = pool.getInterpreterDetector();
+        ObjectDetector objectDetector = pool.getObjectDetector();
+        ResultDelivery delivery = null;
+        if (closed || (interpreterDetector == null && objectDetector == null)
+                || (System.nanoTime() - frame.getTimestampNanos()) / 1_000_000L > maxResultAgeMillis
+                || (delivery = freeDeliveries.poll()) == null) {
+            frame.release();
+            stats.onDropped();
+            return;
+        }
+
+        DetectionResults results = delivery.results;
         try {
-            ObjectDetectorOptions options = ObjectDetectorOptions.builder()
-                    .setMaxResults(1)
-                    .setScoreThreshold(0.5f)
-                    .setBaseOptions(BaseOptions.builder().setNumThreads(2).build())
-                    .build();
-
-            objectDetector = ObjectDetector.createFromFileAndOptions(context, "efficientdet-lite0.tflite", options);
-            Log.d(TAG, "Object detector was successfully created.");
+            long startTime = System.nanoTime();
+            try {
+                if (interpreterDetector != null) {
+                    detectWithInterpreter(interpreterDetector, frame, results);
+                } else {
+                    results.setFrame(frame);
+                    tensorImage.load(toBitmap(frame));
+                    results.getTimeline().mark(FrameTimeline.PREPROCESS);
+                }
+            } finally {
+                frame.release();
+            }
+            if (interpreterDetector == null) {
+                List<Detection> detections = objectDetector.detect(tensorImage);
+                results.getTimeline().mark(FrameTimeline.INFERENCE);
+                toResults(pool.getLabelMap(), detections, results);
+                results.getTimeline().mark(FrameTimeline.POSTPROCESS);
+            }
+            long inferenceNanos = System.nanoTime() - startTime;
+            stats.onInferred();
+            if (stats.getInferred() % STATS_LOG_INTERVAL == 0) {
+                Log.d(TAG, "Inference time: " + inferenceNanos / 1_000_000L + " ms, age: "
+                        + results.getAgeMillis() + " ms, frame: " + results.getTimeline().getFrameId()
+                        + ", roi: " + roiInferences + ", " + stats
+                        + (cascadePolicy != null ? ", " + cascadePolicy : ""));
+            }
+
+            // 結果をリスナーに通知。メインスレッドに届いた時点でも古すぎれば捨てる
+            handler.post(delivery);
         } catch (Exception e) {
-            Log.e(TAG, "Failed to create object detector.", e);
+            freeDeliveries.offer(delivery);
+            Log.e(TAG, "Error during object detection: ", e);
+            showToast("Error during object detection: " + e.getMessage());
+        }
+    }
+
+    // 追跡中の対象があれば、その周りを元の解像度に近いまま切り出して推論する。
+    // 確認が必要なフレームは同じ範囲を重いモデルで推論する（2つのモデルで推論スレッドを分け合う）
+    private void detectWithInterpreter(InterpreterDetector interpreterDetector, YuvFrame frame,
+                                       DetectionResults results) {
+        RoiPlanner planner = roiPlanner;
+        if (planner == null) {
+            planner = new RoiPlanner(interpreterDetector.getInputWidth(), interpreterDetector.getInputHeight());
+            roiPlanner = planner;
+        }
+        boolean roi = roiEnabled
+                && planner.plan(frame.getTimestampNanos(), frame.getWidth(), frame.getHeight(), roiRegion);
+        // 重いモデルはメモリが逼迫すると解放されるので、そのときは軽いモデルだけで検出する
+        InterpreterDetector confirmationDetector = pool.getConfirmationDetector();
+        CascadePolicy cascade = cascadePolicy;
+        if (cascade == null && confirmationDetector != null) {
+            cascade = new CascadePolicy(pool.getConfirmationInferenceNanos());
+            cascadePolicy = cascade;
+        }
+        if (confirmationDetector != null && cascade.shouldConfirm(System.nanoTime())) {
+            long startTime = System.nanoTime();
+            confirmationDetector.detect(frame, results, roi ? roiRegion : null);
+            toModelClassIds(results);
+            results.setConfirmation(true);
+            long endTime = System.nanoTime();
+            cascade.onConfirmed(endTime - startTime, endTime);
+        } else {
+            interpreterDetector.detect(frame, results, roi ? roiRegion : null);
+        }
+        if (roi) {
+            roiInferences++;
+            planner.onRoiResult(results.getCount() > 0);
         }
     }
 
-    public void detect(Bitmap bitmap, DetectionResultsListener listener) {
-        if (bitmap == null) {
-            Log.e(TAG, "Bitmap is null, skipping detection.");
+    // 重いモデルのクラスIDを軽いモデルのラベル表のIDに揃える（結果は1つのラベル表で引けるようにする）。
+    // 軽いモデルにないラベル（全クラスを通すとき）の検出は引けないので捨てる
+    private void toModelClassIds(DetectionResults results) {
+        LabelMap labelMap = pool.getLabelMap();
+        LabelMap confirmationLabelMap = pool.getConfirmationLabelMap();
+        for (int i = results.getCount() - 1; i >= 0; i--) {
+            String label = confirmationLabelMap.getLabel(results.getClassId(i));
+            int classId = labelMap.getClassId(label);
+            if (classId != LabelMap.UNKNOWN_CLASS) {
+                results.setClassId(i, classId);
+                continue;
+            }
+            results.remove(i);
+            if (!unknownLabelLogged) {
+                unknownLabelLogged = true;
+                Log.w(TAG, "Dropping confirmation results labelled \"" + label + "\", which "
+                        + DetectorPool.MODEL_NAME + " does not have.");
+            }
+        }
+    }
+
+    /**
+     * 追跡中の対象を知らせる（トラッカーを更新した後に呼ぶ）。null なら見失った。
+     * 次のフレームからこの対象の周りだけを推論し、一定時間ごとと見失ったときは全体で推論する。
+     * 対象がまだ確認されていない・スコアが低い・見失ったときは、重いモデルで確認する。
+     */
+    public void setTarget(Track track) {
+        RoiPlanner planner = roiPlanner;
+        CascadePolicy cascade = cascadePolicy;
+        if (track == null) {
+            if (planner != null) {
+                planner.onTargetLost();
+            }
+            if (cascade != null) {
+                cascade.onTargetLost();
+            }
             return;
         }
+        if (planner != null) {
+            planner.onTarget(track.getCenterX(), track.getCenterY(), track.getWidth(), track.getHeight(),
+                    track.getVelocityX(), track.getVelocityY(), track.getTimestampNanos());
+        }
+        if (cascade != null) {
+            cascade.onTarget(track.getScore(), track.isConfirmed());
+        }
+    }
 
-        Log.d(TAG, "Starting inference");
-        TensorImage tensorImage = new TensorImage(DataType.UINT8);
-        tensorImage.load(bitmap);
+    /** 重いモデルでの確認の状況。重いモデルがなければ null。 */
+    public CascadePolicy getCascadePolicy() {
+        return cascadePolicy;
+    }
 
-        executorService.submit(() -> {
-            try {
-                long startTime = System.currentTimeMillis();
-                List<Detection> results = objectDetector.detect(tensorImage);
-                long endTime = System.currentTimeMillis();
-                Log.d(TAG, "Inference time: " + (endTime - startTime) + " ms");
-
-                // 結果をリスナーに通知
-                handler.post(() -> {
-                    if (listener != null) {
-                        listener.onDetectionResults(results); // List<Detection> をリスナーに渡す
-                    }
-                });
-            } catch (Exception e) {
-                Log.e(TAG, "Error during object detection: ", e);
-                showToast("Error during object detection: " + e.getMessage());
+    /** ROI での推論を切り替える（既定は有効）。 */
+    public void setRoiEnabled(boolean roiEnabled) {
+        this.roiEnabled = roiEnabled;
+    }
+
+    // Task Library の結果を対象クラスだけ DetectionResults に詰め替える
+    private void toResults(LabelMap labelMap, List<Detection> detections, DetectionResults out) {
+        out.clear();
+        for (int i = 0; i < detections.size(); i++) {
+            Detection detection = detections.get(i);
+            int classId = labelMap.getClassId(detection.getCategories().get(0).getLabel());
+            if (!isTargetClass(classId)) {
+                continue;
+            }
+            RectF box = detection.getBoundingBox();
+            out.add(box.left, box.top, box.right, box.bottom, classId, detection.getCategories().get(0).getScore());
+        }
+    }
+
+    private boolean isTargetClass(int classId) {
+        int[] targetClassIds = pool.getTargetClassIds();
+        if (targetClassIds.length == 0) {
+            return true;
+        }
+        for (int targetClassId : targetClassIds) {
+            if (targetClassId == classId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 結果を制御に渡す上限の経過時間（元フレーム受信から）。 */
+    public void setMaxResultAgeMillis(long maxResultAgeMillis) {
+        this.maxResultAgeMillis = maxResultAgeMillis;
+    }
+
+    public DetectorStats getStats() {
+        return stats;
+    }
+
+    /** Interpreter 経路の1フレームあたりの確保数の計測を切り替える。 */
+    public void setAllocationCounting(boolean enabled) {
+        pool.execute(() -> {
+            InterpreterDetector detector = pool.getInterpreterDetector();
+            if (detector != null) {
+                detector.setAllocationCounting(enabled);
             }
         });
     }
 
+    /** 直前のフレームの推論処理で確保されたオブジェクト数。計測していなければ -1。 */
+    public int getLastFrameAllocations() {
+        InterpreterDetector detector = pool.getInterpreterDetector();
+        return detector != null ? detector.getLastFrameAllocations() : -1;
+    }
+
+    private class ResultDelivery implements Runnable {
+        final DetectionResults results = new DetectionResults(MAX_RESULTS);
 
+        @Override
+        public void run() {
+            try {
+                DetectionResultsListener listener = detectionResultsListener;
+                if (results.getAgeMillis() > maxResultAgeMillis) {
+                    stats.onStaleResult();
+                } else if (listener != null) {
+                    listener.onDetectionResults(results);
+                }
+            } finally {
+                freeDeliveries.offer(this);
+            }
+        }
+    }
 
+    private Bitmap toBitmap(YuvFrame frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        if (frameBitmap == null || frameBitmap.getWidth() != width || frameBitmap.getHeight() != height) {
+            frameBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            argbPixels = new int[width * height];
+        }
+        yuvToArgb(frame, argbPixels);
+        frameBitmap.setPixels(argbPixels, 0, width, 0, 0, width, height);
+        return frameBitmap;
+    }
+
+    // BT.601 の整数近似でYUV420をARGBに変換する
+    private static void yuvToArgb(YuvFrame frame, int[] out) {
+        ByteBuffer data = frame.getData();
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int ySize = width * frame.getSliceHeight();
+        boolean planar = frame.getColorFormat() == YuvFrame.FORMAT_I420;
+        boolean vFirst = frame.getColorFormat() == YuvFrame.FORMAT_NV21;
+        int chromaWidth = width / 2;
+        int vPlaneOffset = ySize + chromaWidth * (frame.getSliceHeight() / 2);
+
+        for (int y = 0; y < height; y++) {
+            int uvRow = y >> 1;
+            for (int x = 0; x < width; x++) {
+                int luma = (data.get(y * width + x) & 0xff) - 16;
+                int u;
+                int v;
+                if (planar) {
+                    int chromaIndex = uvRow * chromaWidth + (x >> 1);
+                    u = data.get(ySize + chromaIndex) & 0xff;
+                    v = data.get(vPlaneOffset + chromaIndex) & 0xff;
+                } else {
+                    int chromaIndex = ySize + uvRow * width + (x & ~1);
+                    u = data.get(chromaIndex + (vFirst ? 1 : 0)) & 0xff;
+                    v = data.get(chromaIndex + (vFirst ? 0 : 1)) & 0xff;
+                }
+                u -= 128;
+                v -= 128;
+                int c = 298 * Math.max(luma, 0);
+                int r = clamp((c + 409 * v + 128) >> 8);
+                int g = clamp((c - 100 * u - 208 * v + 128) >> 8);
+                int b = clamp((c + 516 * u + 128) >> 8);
+                out[y * width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
 
     private void showToast(final String message) {
         handler.post(() -> Toast.makeText(context, message, Toast.LENGTH_SHORT).show());  // contextを直接使用
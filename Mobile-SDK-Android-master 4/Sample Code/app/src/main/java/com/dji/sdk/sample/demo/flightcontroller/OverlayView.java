@@ -4,19 +4,39 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.RectF;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.View;
 
-import org.tensorflow.lite.task.vision.detector.Detection;
-
-import java.util.List;
-
-public class OverlayView extends View {
-    private List<Detection> results;
-    private Paint boxPaint;
-    private Paint textPaint;
-    private Paint centerPointPaint;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectionResults;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.LabelMap;
+import com.dji.sdk.sample.internal.overlay.OverlayFrame;
+import com.dji.sdk.sample.internal.view.OverlayRenderer;
+
+/**
+ * 検出結果の枠を映像に重ねて描く。
+ * 結果は元フレームの時刻のものなので、描画のたびに表示する時刻（Choreographer のフレーム時刻）まで
+ * トラッカーの速度で枠を進めて描き、推論の遅れの分だけ枠が人から遅れて見えないようにする。
+ * 再描画は結果ごとではなく vsync ごとに行い、結果が古くなったら止める。
+ * 描く内容は {@link OverlayRenderer} に書き、数値は文字列を作らずに整形する。
+ */
+public class OverlayView extends View implements Choreographer.FrameCallback {
+    private static final int MAX_RESULTS = 10;
+    // これより先へは枠を進めない（検出が途切れたときに枠が流れていかないように）
+    private static final long MAX_EXTRAPOLATION_NANOS = 300_000_000L;
+    // 元フレームからこれだけ経った結果は描き直さない（最後の位置で止める）
+    private static final long MAX_REDRAW_NANOS = 1_000_000_000L;
+    // 呼び出し側のバッファは再利用されるので、描画用に写し取って持つ
+    private final DetectionResults results = new DetectionResults(MAX_RESULTS);
+    private boolean frameCallbackPosted;
+    private LabelMap labelMap;
+
+    private static final int STYLE_BOX = 0;
+    private static final int STYLE_TEXT = 1;
+    private static final int STYLE_REGION = 2;
+    private static final int STYLE_CENTER = 3;
+    // 結果1つにつき枠・ラベル・中心・座標の4項目と、推論範囲の枠
+    private final OverlayRenderer renderer = new OverlayRenderer(this, 4, MAX_RESULTS * 4 + 1, MAX_RESULTS * 64);
 
     public OverlayView(Context context) {
         super(context);
@@ -34,58 +54,126 @@ public class OverlayView extends View {
     }
 
     private void init() {
-        boxPaint = new Paint();
+        Paint boxPaint = new Paint();
         boxPaint.setColor(Color.RED);
         boxPaint.setStyle(Paint.Style.STROKE);
         boxPaint.setStrokeWidth(5.0f);
 
-        textPaint = new Paint();
+        Paint textPaint = new Paint();
         textPaint.setColor(Color.RED);
         textPaint.setTextSize(40);
         textPaint.setStyle(Paint.Style.FILL);
 
-        centerPointPaint = new Paint();
+        // ROI で推論したときの範囲
+        Paint regionPaint = new Paint();
+        regionPaint.setColor(Color.YELLOW);
+        regionPaint.setStyle(Paint.Style.STROKE);
+        regionPaint.setStrokeWidth(2.0f);
+
+        // 中心の点（直径 20 の円）
+        Paint centerPointPaint = new Paint();
         centerPointPaint.setColor(Color.GREEN);
-        centerPointPaint.setStyle(Paint.Style.FILL);
+        centerPointPaint.setStrokeWidth(20.0f);
+        centerPointPaint.setStrokeCap(Paint.Cap.ROUND);
+
+        renderer.setPaint(STYLE_BOX, boxPaint);
+        renderer.setPaint(STYLE_TEXT, textPaint);
+        renderer.setPaint(STYLE_REGION, regionPaint);
+        renderer.setPaint(STYLE_CENTER, centerPointPaint);
     }
 
-    public void setResults(List<Detection> results) {
-        this.results = results;
-        postInvalidate(); // 画面の再描画を指示
+    // 結果の座標は元フレームのピクセル座標。ビューのサイズに合わせて描画する（メインスレッドから呼ぶ）
+    public void setResults(DetectionResults results) {
+        this.results.copyFrom(results);
+        if (!frameCallbackPosted && isAttachedToWindow()) {
+            frameCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
     }
 
+    // vsync ごとに、表示する時刻まで枠を進めて描き直す
     @Override
-    protected void onDraw(Canvas canvas) {
-        super.onDraw(canvas);
-        if (results != null) {
-            for (Detection result : results) {
-                // バウンディングボックスを描画
-                RectF boundingBox = result.getBoundingBox();
-                canvas.drawRect(boundingBox, boxPaint);
-
-                // クラス名と信頼度を描画
-                String label = result.getCategories().get(0).getLabel();
-                float confidence = result.getCategories().get(0).getScore();
-                String text = label + " " + String.format("%.2f", confidence * 100) + "%";
-
-                // バウンディングボックスの左上にテキストを表示
-                canvas.drawText(text, boundingBox.left, boundingBox.top - 10, textPaint);
-
-                // バウンディングボックスの中心を計算して表示
-                float centerX = boundingBox.centerX();
-                float centerY = boundingBox.centerY();
-                canvas.drawCircle(centerX, centerY, 10.0f, centerPointPaint); // 中心に緑色の点を描画
-
-                // 座標テキストをバウンディングボックスの下に表示
-                String coordinatesText = String.format("Center: (%.1f, %.1f)",
-                         centerX, centerY);
-                canvas.drawText(coordinatesText, boundingBox.left, boundingBox.bottom + 40, textPaint);
+    public void doFrame(long frameTimeNanos) {
+        frameCallbackPosted = false;
+        writeFrame(frameTimeNanos);
+        if (frameTimeNanos - results.getFrameTimestampNanos() < MAX_REDRAW_NANOS && results.getCount() > 0) {
+            frameCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        if (frameCallbackPosted) {
+            frameCallbackPosted = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+        super.onDetachedFromWindow();
+    }
+
+    // クラス名の表示に使うラベル表を設定する
+    public void setLabelMap(LabelMap labelMap) {
+        this.labelMap = labelMap;
+    }
+
+    // 結果を表示する時刻まで進めて描く内容を作る（メインスレッド）
+    private void writeFrame(long displayNanos) {
+        int imageWidth = results.getImageWidth();
+        int imageHeight = results.getImageHeight();
+        OverlayFrame frame = renderer.beginFrame();
+        frame.setSource(imageWidth, imageHeight);
+        if (results.hasRegion()) {
+            frame.rect(STYLE_REGION, results.getRegionLeft(), results.getRegionTop(),
+                    results.getRegionRight(), results.getRegionBottom());
+        }
+        // 座標の表示はビューのピクセル
+        float scaleX = imageWidth > 0 ? (float) getWidth() / imageWidth : 1.0f;
+        float scaleY = imageHeight > 0 ? (float) getHeight() / imageHeight : 1.0f;
+        // 元フレームから表示する時刻までの経過時間
+        long elapsedNanos = Math.max(0, Math.min(MAX_EXTRAPOLATION_NANOS,
+                displayNanos - results.getFrameTimestampNanos()));
+        float elapsed = elapsedNanos / 1e9f;
+        for (int i = 0; i < results.getCount(); i++) {
+            // バウンディングボックスを表示する時刻まで進めて描画
+            float dx = results.getVelocityX(i) * elapsed;
+            float dy = results.getVelocityY(i) * elapsed;
+            float left = results.getLeft(i) + dx;
+            float top = results.getTop(i) + dy;
+            float right = results.getRight(i) + dx;
+            float bottom = results.getBottom(i) + dy;
+            frame.rect(STYLE_BOX, left, top, right, bottom);
+
+            // バウンディングボックスの左上にクラス名と信頼度を表示
+            int classId = results.getClassId(i);
+            frame.text(STYLE_TEXT, left, top, -10, OverlayFrame.ALIGN_LEFT);
+            if (labelMap != null) {
+                frame.append(labelMap.getLabel(classId));
+            } else {
+                frame.append(classId);
             }
+            frame.append(' ').append(results.getScore(i) * 100, 2).append('%');
+
+            // バウンディングボックスの中心に緑色の点を描画
+            float centerX = (left + right) * 0.5f;
+            float centerY = (top + bottom) * 0.5f;
+            frame.point(STYLE_CENTER, centerX, centerY);
+
+            // 座標テキストをバウンディングボックスの下に表示
+            frame.text(STYLE_TEXT, left, bottom, 40, OverlayFrame.ALIGN_LEFT)
+                    .append("Center: (").append(centerX * scaleX, 1)
+                    .append(", ").append(centerY * scaleY, 1).append(')');
         }
+        renderer.endFrame();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        renderer.draw(canvas);
     }
 
     // 新しく追加するメソッド
-    public List<Detection> getResults() {
+    public DetectionResults getResults() {
         return results;
     }
 }
@@ -0,0 +1,788 @@
+package com.dji.sdk.sample.demo.flightcontroller;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.RectF;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import com.dji.sdk.sample.R;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.BoxTracker;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.CascadePolicy;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectionResults;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectionScheduler;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.FrameTimeline;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.LabelMap;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.MotionGate;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.PipelineLatency;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.TargetGeometry;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.Track;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvFrame;
+import com.dji.sdk.sample.internal.controller.MainActivity;
+import com.dji.sdk.sample.internal.utils.VideoFeedHub;
+import com.dji.sdk.sample.internal.video.PacketRing;
+import com.dji.sdk.sample.internal.video.VideoPacket;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import dji.common.airlink.PhysicalSource;
+import dji.sdk.base.BaseProduct;
+import dji.sdk.camera.VideoFeeder;
+import dji.sdk.flightcontroller.FlightController;
+import dji.sdk.gimbal.Gimbal;
+import dji.sdk.products.Aircraft;
+import dji.sdk.sdkmanager.DJISDKManager;
+
+/**
+ * 検出・追跡・操縦のパイプラインを画面から切り離して動かすフォアグラウンドサービス。
+ * 映像のタップ、検出器、トラッカー、ジンバルと機体の制御ループを持ち、画面を切り替えても追跡を続ける。
+ * 画面は {@link #addListener} で結果を受け取って表示するだけにする。
+ * <p>
+ * {@link #start} で起動し、画面は bindService で {@link LocalBinder} を受け取る。
+ * 購読する画面がなく、バーチャルスティックも無効のまましばらく経つと自分で止まる。
+ * 通知の「停止」でバーチャルスティックを無効にしてすぐに止める。
+ * パイプラインはメインスレッドで動かし、リスナーもメインスレッドで呼ぶ。
+ * <p>
+ * {@link #setMultiFeedEnabled} で副のフィードも検出し、結果を物理カメラごとに {@link FeedListener} へ通知する
+ * （M300 で搭載カメラと FPV カメラを同時に見張るとき）。追跡と操縦は主のフィードだけで行う。
+ * <p>
+ * 録画はそれぞれ小さな持ち主に任せ、サービスは起動と停止と通知からの切り替えだけを行う。
+ * 通知の「録画」で MP4 のセグメントに書き（{@link Mp4Recording}）、通知の「生データ」で受信をそのまま録る
+ * （{@link FeedCapture}）。人を見つけたときと {@link #saveEventClip} で前後の映像をクリップに残す（{@link EventClips}）。
+ * {@link #replay} で録ったものを機体の映像の代わりに流し直し、機体なしで同じ入力からパイプラインを動かせる。
+ */
+public class TrackingService extends Service {
+    private static final String TAG = "TrackingService";
+    private static final String CHANNEL_ID = "tracking";
+    private static final int NOTIFICATION_ID = 1;
+    private static final String ACTION_STOP = "com.dji.sdk.sample.action.STOP_TRACKING";
+    private static final String ACTION_RECORD = "com.dji.sdk.sample.action.TOGGLE_RECORDING";
+    private static final String ACTION_RECORD_VIDEO = "com.dji.sdk.sample.action.TOGGLE_VIDEO_RECORDING";
+    private static final String ACTION_REPLAY = "com.dji.sdk.sample.action.REPLAY";
+    private static final String EXTRA_PATH = "path";
+    private static final String EXTRA_REAL_TIME = "realTime";
+    // 画面を切り替える間に止めないよう、購読者がいなくなってから少し待つ
+    private static final long IDLE_STOP_DELAY_MS = 30_000;
+    // 解析用デコーダの出力先（ダミーのサーフェス）のサイズ
+    private static final int TAP_WIDTH = 1280;
+    private static final int TAP_HEIGHT = 720;
+
+    // 元フレームからこれ以上経った検出結果では操縦しない
+    private static final long MAX_RESULT_AGE_MS = 300;
+    // 検出の間はトラッカーの予測位置で毎フレーム操縦する
+    private static final float TRACKER_IOU_THRESHOLD = 0.3f;
+    private static final long TRACKER_MAX_MISS_NANOS = 1_000_000_000L;
+
+    /** {@link FeedListener} に渡す映像の番号。 */
+    public static final int FEED_PRIMARY = 0;
+    public static final int FEED_SECONDARY = 1;
+    private static final int FEED_COUNT = 2;
+
+    /** 画面への通知（メインスレッド）。 */
+    public interface Listener {
+        /**
+         * 検出結果（各枠に対応するトラックの速度付き）。
+         * results はこの呼び出しの後で再利用されるので、保持するならコピーすること。
+         */
+        void onDetectionResults(DetectionResults results, LabelMap labelMap);
+
+        /**
+         * 映像のフレームごとの追従の状態。対象がなければ distance は負、angles は NaN。
+         * 配列は使い回すので、呼び出しの中で読むこと。
+         */
+        void onTargetUpdated(float distance, float[] angles, String[] directions, float[] movements);
+    }
+
+    /** 複数の映像を検出するときの、映像ごとの検出結果（メインスレッド）。 */
+    public interface FeedListener {
+        /**
+         * @param feed   {@link #FEED_PRIMARY} か {@link #FEED_SECONDARY}
+         * @param source そのフレームを推論したときの物理カメラ（PhysicalSource の名前、分からなければ null）
+         * @param results この呼び出しの後で再利用されるので、保持するならコピーすること
+         */
+        void onFeedResults(int feed, String source, DetectionResults results, LabelMap labelMap);
+    }
+
+    /** バーチャルスティックの切り替えの結果（メインスレッド）。失敗したときは error に理由が入る。 */
+    public interface VirtualStickCallback {
+        void onResult(boolean enabled, String error);
+    }
+
+    public class LocalBinder extends Binder {
+        public TrackingService getService() {
+            return TrackingService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new ArrayList<>();
+    private final List<FeedListener> feedListeners = new ArrayList<>();
+
+    private PacketRing.Reader videoReader;
+    private YuvFrameTap frameTap;
+    // 録画の持ち主（メインスレッドでのみ使う）
+    private final Mp4Recording mp4Recording = new Mp4Recording(this);
+    private final FeedCapture feedCapture = new FeedCapture(this);
+    private final EventClips eventClips = new EventClips(this);
+    // 検出器はプロセスで共有し、サービスが動いている間だけ参照する
+    private volatile ObjectDetectorHelper objectDetectorHelper;
+    // 複数の映像を検出している間だけ持つ。主のフィードのフレームもこちらに回す
+    private volatile MultiFeedDetector multiFeedDetector;
+    private YuvFrameTap secondaryTap;
+    private PacketRing.Reader secondaryReader;
+    private VideoFeeder.PhysicalSourceListener sourceListener;
+    // 副のフィードは追跡しないので、見えているかどうかだけで検出の間隔を決める
+    private DetectionScheduler secondaryScheduler;
+    private final String[] feedSources = new String[FEED_COUNT];
+    private final int[] feedCounts = new int[FEED_COUNT];
+    private FlightController flightController;
+    // ジンバルは姿勢のフィードバックを使って対象を中央に捉え続ける
+    private GimbalTracker gimbalTracker;
+    private final float[] gimbalAngles = new float[2];
+    // 検出に回すフレームは、推論時間・追跡の確かさ・対象の速さから決める
+    private final DetectionScheduler detectionScheduler = new DetectionScheduler(System.nanoTime());
+    private int detectionMode = -1;
+    // 映像が前回の推論から変わっていなければ推論を省き、最後の結果を使い回す
+    private final MotionGate motionGate = new MotionGate();
+    private DetectionResults heldResults;
+    private LabelMap labelMap;
+    // 検出結果の座標系（フレームのピクセルサイズ）
+    private int imageWidth;
+    private int imageHeight;
+
+    private final BoxTracker tracker = new BoxTracker(TRACKER_IOU_THRESHOLD, TRACKER_MAX_MISS_NANOS);
+    private final RectF targetBox = new RectF();
+    private boolean hasTarget = false;
+    // 操縦計算の結果（毎フレーム使い回す）
+    private final float[] angles = new float[2];
+    private final float[] movements = new float[2];
+    private final String[] movementDirections = new String[2];
+    private final float[] stickCommand = new float[4];
+    // 手動の操縦量を保持している軸とその期限。この間は追跡の操縦でその軸を上書きしない（メインスレッド）
+    private int manualAxes;
+    private long manualUntilNanos;
+
+    // 映像の受信から操縦コマンドの完了までの遅延
+    private final PipelineLatency pipelineLatency = new PipelineLatency();
+    // 操縦量はこのループ経由で一定周期で送る
+    private final VirtualStickLoop stickLoop = VirtualStickLoop.getInstance();
+    private boolean virtualStickEnabled = false;
+
+    // デコードしたフレームごとに、メインスレッドで追跡対象の位置を予測して操縦する（溜まった分は1回にまとめる）
+    private volatile boolean predictPending;
+    private final Runnable predictTick = new Runnable() {
+        @Override
+        public void run() {
+            predictPending = false;
+            predictAndSteer(System.nanoTime());
+        }
+    };
+
+    private final Runnable stopIfIdle = () -> {
+        if (listeners.isEmpty() && !virtualStickEnabled) {
+            Log.d(TAG, "購読する画面がないため追跡サービスを停止します。");
+            stopSelf();
+        }
+    };
+
+    /** サービスを起動する（起動済みなら何もしない）。画面から bindService する前に呼ぶ。 */
+    public static void start(Context context) {
+        ContextCompat.startForegroundService(context, new Intent(context, TrackingService.class));
+    }
+
+    /**
+     * 録ったファイルを主のフィードとして流し直す（サービスが動いていなければ起動する）。
+     *
+     * @param file     録ったファイル。null なら最後に録ったもの
+     * @param realTime 録ったときの間隔どおりに流すなら true、待たずに流すなら false
+     */
+    public static void replay(Context context, File file, boolean realTime) {
+        Intent intent = new Intent(context, TrackingService.class).setAction(ACTION_REPLAY)
+                .putExtra(EXTRA_REAL_TIME, realTime);
+        if (file != null) {
+            intent.putExtra(EXTRA_PATH, file.getAbsolutePath());
+        }
+        ContextCompat.startForegroundService(context, intent);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        initProduct();
+
+        // getBitmap() の代わりにデコーダのYUV出力から解析用フレームを取り出す
+        frameTap = new YuvFrameTap(this, this::onFrame);
+        frameTap.setFrameFilter(detectionScheduler::shouldDetect);
+        frameTap.setMotionGate(motionGate, decodedNanos -> handler.post(() -> onStaticFrame(decodedNanos)));
+        frameTap.setDecodedFrameListener(decodedNanos -> {
+            if (!predictPending) {
+                predictPending = true;
+                handler.post(predictTick);
+            }
+        });
+        frameTap.start(TAP_WIDTH, TAP_HEIGHT);
+        videoReader = VideoFeedHub.getPrimary().open("analysis", (packet, gap) -> sendToTap(frameTap, packet, gap));
+        // 次のキーフレームを待たずに、保持している最新のキーフレームから解析を始める
+        VideoFeedHub.getPrimary().startFromKeyFrame(videoReader);
+        eventClips.start();
+
+        try {
+            ObjectDetectorHelper helper =
+                    new ObjectDetectorHelper(this, this::onDetectionResults, VirtualStickView.TARGET_LABEL);
+            helper.setMaxResultAgeMillis(MAX_RESULT_AGE_MS);
+            objectDetectorHelper = helper;
+        } catch (Exception e) {
+            Log.e(TAG, "検出器の準備に失敗しました: " + e.getMessage(), e);
+        }
+        if (gimbalTracker != null) {
+            gimbalTracker.start();
+        }
+        stickLoop.setPipelineLatency(pipelineLatency);
+        Log.d(TAG, "追跡サービスを開始しました。");
+    }
+
+    private void initProduct() {
+        BaseProduct product = DJISDKManager.getInstance().getProduct();
+        if (product instanceof Aircraft) {
+            Aircraft aircraft = (Aircraft) product;
+            flightController = aircraft.getFlightController();
+            Gimbal gimbal = aircraft.getGimbal();
+            if (gimbal != null) {
+                gimbalTracker = new GimbalTracker(gimbal);
+                Log.d(TAG, "ジンバルが正常に初期化されました。");
+            } else {
+                Log.e(TAG, "ジンバルが利用できません。");
+            }
+        } else {
+            Log.e(TAG, "製品が航空機ではないか、nullです。");
+        }
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        startForeground(NOTIFICATION_ID, buildNotification());
+        if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            if (virtualStickEnabled) {
+                setVirtualStickEnabled(false, null);
+            }
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        if (intent != null && ACTION_RECORD_VIDEO.equals(intent.getAction())) {
+            mp4Recording.toggle();
+            updateNotification();
+        } else if (intent != null && ACTION_RECORD.equals(intent.getAction())) {
+            feedCapture.toggleRecording();
+            updateNotification();
+        } else if (intent != null && ACTION_REPLAY.equals(intent.getAction())) {
+            String path = intent.getStringExtra(EXTRA_PATH);
+            feedCapture.startReplay(path != null ? new File(path) : null,
+                    intent.getBooleanExtra(EXTRA_REAL_TIME, true));
+        }
+        scheduleIdleStop();
+        // 機体との接続は画面から作り直すので、プロセスが落ちても自動では再起動しない
+        return START_NOT_STICKY;
+    }
+
+    private Notification buildNotification() {
+        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && manager.getNotificationChannel(CHANNEL_ID) == null) {
+            manager.createNotificationChannel(
+                    new NotificationChannel(CHANNEL_ID, "追跡", NotificationManager.IMPORTANCE_LOW));
+        }
+        int immutable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0;
+        PendingIntent open = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class).addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP), immutable);
+        PendingIntent stop = PendingIntent.getService(this, 0,
+                new Intent(this, TrackingService.class).setAction(ACTION_STOP), immutable);
+        PendingIntent record = PendingIntent.getService(this, 1,
+                new Intent(this, TrackingService.class).setAction(ACTION_RECORD), immutable);
+        PendingIntent recordVideo = PendingIntent.getService(this, 2,
+                new Intent(this, TrackingService.class).setAction(ACTION_RECORD_VIDEO), immutable);
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle("追跡中")
+                .setContentText("物体の検出と追従を続けています")
+                .setContentIntent(open)
+                .addAction(0, "停止", stop)
+                .addAction(0, mp4Recording.isRecording() ? "録画を止める" : "録画", recordVideo)
+                .addAction(0, feedCapture.isRecording() ? "生データを止める" : "生データ", record)
+                .setOngoing(true)
+                .build();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        handler.removeCallbacksAndMessages(null);
+        setMultiFeedEnabled(false);
+        feedCapture.stop();
+        mp4Recording.stop();
+        eventClips.stop();
+        if (videoReader != null) {
+            VideoFeedHub.getPrimary().close(videoReader);
+            videoReader = null;
+        }
+        frameTap.stop();
+        ObjectDetectorHelper helper = objectDetectorHelper;
+        objectDetectorHelper = null;
+        if (helper != null) {
+            helper.close();
+        }
+        stickLoop.setPipelineLatency(null);
+        if (gimbalTracker != null) {
+            gimbalTracker.stop();
+        }
+        if (virtualStickEnabled) {
+            virtualStickEnabled = false;
+            stickLoop.stop();
+        }
+        listeners.clear();
+        feedListeners.clear();
+        Log.d(TAG, "追跡サービスを停止しました。");
+        super.onDestroy();
+    }
+
+    /** 結果の購読を始める（メインスレッドから呼ぶ）。 */
+    public void addListener(Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+        handler.removeCallbacks(stopIfIdle);
+    }
+
+    /** 購読をやめる。最後の購読者で、バーチャルスティックも無効ならしばらくしてサービスを止める。 */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+        scheduleIdleStop();
+    }
+
+    /** 映像ごとの検出結果の購読を始める。複数の映像の検出は {@link #setMultiFeedEnabled} で別に切り替える。 */
+    public void addFeedListener(FeedListener listener) {
+        if (!feedListeners.contains(listener)) {
+            feedListeners.add(listener);
+        }
+    }
+
+    public void removeFeedListener(FeedListener listener) {
+        feedListeners.remove(listener);
+    }
+
+    public boolean isMultiFeedEnabled() {
+        return multiFeedDetector != null;
+    }
+
+    /**
+     * 主・副のフィードをどちらも検出するかを切り替える（メインスレッドから呼ぶ）。
+     * 有効な間は副のフィードにも解析用のデコーダを付け、2つの映像を共有の検出器で検出する。
+     * 主のフィードは ROI と重いモデルでの確認を使わずフレーム全体で検出する。
+     */
+    public void setMultiFeedEnabled(boolean enabled) {
+        if (enabled == isMultiFeedEnabled()) {
+            return;
+        }
+        VideoFeeder feeder = VideoFeeder.getInstance();
+        if (!enabled) {
+            MultiFeedDetector detector = multiFeedDetector;
+            multiFeedDetector = null;
+            feeder.removePhysicalSourceListener(sourceListener);
+            sourceListener = null;
+            VideoFeedHub.getSecondary().close(secondaryReader);
+            secondaryReader = null;
+            secondaryTap.stop();
+            secondaryTap = null;
+            detector.close();
+            Log.d(TAG, "副のフィードの検出を停止しました。");
+            return;
+        }
+
+        MultiFeedDetector detector;
+        try {
+            detector = new MultiFeedDetector(this, FEED_COUNT, this::onFeedResults, VirtualStickView.TARGET_LABEL);
+        } catch (Exception e) {
+            Log.e(TAG, "複数の映像の検出の準備に失敗しました: " + e.getMessage(), e);
+            return;
+        }
+        detector.setMaxResultAgeMillis(MAX_RESULT_AGE_MS);
+        setFeedSource(detector, FEED_PRIMARY, feeder.getPrimaryVideoFeed().getVideoSource());
+        setFeedSource(detector, FEED_SECONDARY, feeder.getSecondaryVideoFeed().getVideoSource());
+        // LookAt などの画面で映像の割り当てが変わったら、以後の結果をそのカメラの名前で通知する
+        sourceListener = (videoFeed, source) -> handler.post(() -> {
+            MultiFeedDetector current = multiFeedDetector;
+            if (current == null) {
+                return;
+            }
+            if (videoFeed == VideoFeeder.getInstance().getPrimaryVideoFeed()) {
+                setFeedSource(current, FEED_PRIMARY, source);
+            } else if (videoFeed == VideoFeeder.getInstance().getSecondaryVideoFeed()) {
+                setFeedSource(current, FEED_SECONDARY, source);
+            }
+        });
+        feeder.addPhysicalSourceListener(sourceListener);
+
+        secondaryScheduler = new DetectionScheduler(System.nanoTime());
+        DetectionScheduler scheduler = secondaryScheduler;
+        secondaryTap = new YuvFrameTap(this, frame -> detector.detect(FEED_SECONDARY, frame));
+        // 推論を待っている間は次のフレームを写さない
+        secondaryTap.setFrameFilter(decodedNanos ->
+                detector.isIdle(FEED_SECONDARY) && scheduler.shouldDetect(decodedNanos));
+        secondaryTap.start(TAP_WIDTH, TAP_HEIGHT);
+        YuvFrameTap tap = secondaryTap;
+        secondaryReader = VideoFeedHub.getSecondary().open("analysis-secondary",
+                (packet, gap) -> sendToTap(tap, packet, gap));
+        VideoFeedHub.getSecondary().startFromKeyFrame(secondaryReader);
+        multiFeedDetector = detector;
+        Log.d(TAG, "副のフィードの検出を開始しました: " + feedSources[FEED_PRIMARY] + ", " + feedSources[FEED_SECONDARY]);
+    }
+
+    // 受信スレッドではなくリングの読み手のスレッドでデコーダに渡す。読み飛ばしたら次のキーフレームから
+    private static void sendToTap(YuvFrameTap tap, VideoPacket packet, boolean gap) {
+        if (gap) {
+            Log.w(TAG, "解析用の映像の受信が遅れ、読み飛ばしました。");
+            tap.resetKeyFrame();
+        }
+        tap.sendDataToDecoder(packet.getData(), packet.getSize(), packet.getReceivedNanos());
+    }
+
+    private void setFeedSource(MultiFeedDetector detector, int feed, PhysicalSource source) {
+        feedSources[feed] = source != null ? source.name() : null;
+        detector.setSource(feed, feedSources[feed]);
+    }
+
+    private void scheduleIdleStop() {
+        handler.removeCallbacks(stopIfIdle);
+        if (listeners.isEmpty() && !virtualStickEnabled) {
+            handler.postDelayed(stopIfIdle, IDLE_STOP_DELAY_MS);
+        }
+    }
+
+    // デコーダのスレッドから呼ばれる。停止後のフレームはそのまま返す
+    private void onFrame(YuvFrame frame) {
+        MultiFeedDetector detector = multiFeedDetector;
+        if (detector != null) {
+            detector.detect(FEED_PRIMARY, frame);
+            return;
+        }
+        ObjectDetectorHelper helper = objectDetectorHelper;
+        if (helper != null) {
+            helper.detect(frame);
+        } else {
+            frame.release();
+        }
+    }
+
+    private void predictAndSteer(long nowNanos) {
+        tracker.predict(nowNanos);
+        Track track = tracker.getPrimaryTrack();
+        if (track != null) {
+            hasTarget = true;
+            targetBox.set(track.getLeft(), track.getTop(), track.getRight(), track.getBottom());
+            steerToTarget(targetBox);
+        } else if (hasTarget) {
+            hasTarget = false;
+            if (gimbalTracker != null) {
+                gimbalTracker.clearTarget();
+            }
+            clearTarget();
+        }
+    }
+
+    private void onDetectionResults(DetectionResults results) {
+        ObjectDetectorHelper helper = objectDetectorHelper;
+        if (helper == null) {
+            return;
+        }
+        imageWidth = results.getImageWidth();
+        imageHeight = results.getImageHeight();
+
+        // 結果は person に絞り込み済み。機体の操縦はトラッカー経由で predictAndSteer から行う
+        // 重いモデルの結果は同じトラッカーで対応付け、追跡IDを保ったまま位置を強く補正する
+        if (results.isConfirmation()) {
+            tracker.confirm(results.getBoxes(), results.getScores(), results.getCount(),
+                    results.getFrameTimestampNanos(), results.getRegionLeft(), results.getRegionTop(),
+                    results.getRegionRight(), results.getRegionBottom());
+        } else {
+            tracker.update(results.getBoxes(), results.getScores(), results.getCount(),
+                    results.getFrameTimestampNanos());
+        }
+        updateGimbalTarget(results.getFrameTimestampNanos());
+        // この結果を反映した最初の操縦コマンドまでを計測する
+        pipelineLatency.onResultsApplied(results.getTimeline());
+        scheduleDetection(results);
+        helper.setTarget(tracker.getPrimaryTrack());
+        if (results.getCount() > 0) {
+            eventClips.onPersonDetected(results.getFrameTimestampNanos());
+        }
+
+        if (heldResults == null) {
+            heldResults = new DetectionResults(results.getCapacity());
+        }
+        heldResults.copyFrom(results);
+
+        // 画面では各枠を対応するトラックの速度で表示する時刻まで進めて描く
+        for (int i = 0; i < results.getCount(); i++) {
+            Track track = tracker.getTrackForDetection(i);
+            if (track != null) {
+                results.setVelocity(i, track.getVelocityX(), track.getVelocityY());
+            }
+        }
+        labelMap = helper.getLabelMap();
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onDetectionResults(results, labelMap);
+        }
+    }
+
+    // 主のフィードの結果は通常の検出と同じく追跡と操縦に使い、どちらの映像の結果も映像ごとに通知する
+    private void onFeedResults(int feed, String source, DetectionResults results) {
+        MultiFeedDetector detector = multiFeedDetector;
+        if (detector == null) {
+            return;
+        }
+        if (feed == FEED_PRIMARY) {
+            onDetectionResults(results);
+        } else {
+            FrameTimeline timeline = results.getTimeline();
+            if (timeline.has(FrameTimeline.CAPTURE) && timeline.has(FrameTimeline.POSTPROCESS)) {
+                secondaryScheduler.onInferenceTime(
+                        timeline.get(FrameTimeline.POSTPROCESS) - timeline.get(FrameTimeline.CAPTURE));
+            }
+            secondaryScheduler.onDetection(results.getCount(), null, false, System.nanoTime());
+        }
+        feedCounts[feed] = results.getCount();
+        LabelMap feedLabelMap = detector.getLabelMap();
+        for (int i = 0; i < feedListeners.size(); i++) {
+            feedListeners.get(i).onFeedResults(feed, source, results, feedLabelMap);
+        }
+    }
+
+    // 映像が変わっていないフレームでは、最後の検出結果をそのフレームの観測として使い回す
+    // （トラッカーと追従が途切れないようにし、静止した対象の速度は 0 に寄せる）
+    private void onStaticFrame(long frameTimestampNanos) {
+        ObjectDetectorHelper helper = objectDetectorHelper;
+        if (heldResults == null || helper == null) {
+            return;
+        }
+        tracker.update(heldResults.getBoxes(), heldResults.getScores(), heldResults.getCount(), frameTimestampNanos);
+        updateGimbalTarget(frameTimestampNanos);
+        Track primary = tracker.getPrimaryTrack();
+        detectionScheduler.onDetection(heldResults.getCount(), primary, tracker.isMatched(primary), System.nanoTime());
+        helper.setTarget(primary);
+    }
+
+    private void scheduleDetection(DetectionResults results) {
+        FrameTimeline timeline = results.getTimeline();
+        // 間隔は軽いモデルの推論時間で決める（重いモデルの確認は CascadePolicy が頻度を抑える）
+        if (!results.isConfirmation()
+                && timeline.has(FrameTimeline.CAPTURE) && timeline.has(FrameTimeline.POSTPROCESS)) {
+            detectionScheduler.onInferenceTime(
+                    timeline.get(FrameTimeline.POSTPROCESS) - timeline.get(FrameTimeline.CAPTURE));
+        }
+        Track primary = tracker.getPrimaryTrack();
+        detectionScheduler.onDetection(results.getCount(), primary, tracker.isMatched(primary), System.nanoTime());
+        int mode = detectionScheduler.getMode();
+        if (mode != detectionMode) {
+            detectionMode = mode;
+            Log.d(TAG, "検出の間隔を切り替えました: " + detectionScheduler);
+        }
+    }
+
+    // ジンバルにはこの検出で補正された位置だけを、元フレームの時刻と一緒に渡す（その時刻の姿勢と合わせて使う）。
+    // トラックは毎フレーム先へ進めているので、推定速度で元フレームの時刻の位置に戻してから角度にする
+    private void updateGimbalTarget(long frameTimestampNanos) {
+        if (gimbalTracker == null) {
+            return;
+        }
+        Track track = tracker.getPrimaryTrack();
+        if (!tracker.isMatched(track)) {
+            return;
+        }
+        float lag = Math.max(0, (track.getTimestampNanos() - frameTimestampNanos) / 1e9f);
+        TargetGeometry.angleToBox(track.getCenterX() - track.getVelocityX() * lag,
+                track.getCenterY() - track.getVelocityY() * lag, imageWidth, imageHeight, gimbalAngles);
+        // 画像の y は下向きが正、ジンバルの pitch は上向きが正
+        gimbalTracker.setTargetError(-gimbalAngles[1], gimbalAngles[0], frameTimestampNanos);
+    }
+
+    private void steerToTarget(RectF boundingBox) {
+        // 距離と角度の計算
+        float distance = TargetGeometry.distanceToBox(boundingBox.width(), imageWidth);
+        TargetGeometry.angleToBox(boundingBox.centerX(), boundingBox.centerY(), imageWidth, imageHeight, angles);
+
+        // 移動量と方向の計算
+        movementDirections[0] = TargetGeometry.horizontalDirection(angles, distance);
+        movementDirections[1] = TargetGeometry.verticalDirection(angles, distance);
+        TargetGeometry.movement(angles, distance, movements);
+
+        // ドローンの動きを調整
+        TargetGeometry.stickCommand(angles, distance, stickCommand);
+        // 検出が途切れると制御ループのタイムアウトで 0 に戻る。手動の操縦量を保持している軸は書かない
+        int axes = VirtualStickLoop.AXES_ALL;
+        if (manualAxes != 0 && System.nanoTime() - manualUntilNanos < 0) {
+            axes &= ~manualAxes;
+        } else {
+            manualAxes = 0;
+        }
+        if (axes != 0) {
+            stickLoop.set(axes, stickCommand[TargetGeometry.PITCH], stickCommand[TargetGeometry.ROLL],
+                    stickCommand[TargetGeometry.YAW], stickCommand[TargetGeometry.THROTTLE]);
+        }
+
+        notifyTarget(distance);
+    }
+
+    private void clearTarget() {
+        angles[0] = Float.NaN;
+        angles[1] = Float.NaN;
+        movementDirections[0] = "";
+        movementDirections[1] = "";
+        movements[0] = 0.0f;
+        movements[1] = 0.0f;
+        notifyTarget(-1);
+    }
+
+    private void notifyTarget(float distance) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onTargetUpdated(distance, angles, movementDirections, movements);
+        }
+    }
+
+    public boolean isVirtualStickEnabled() {
+        return virtualStickEnabled;
+    }
+
+    /**
+     * 画面のボタンなどからの手動の操縦量を送る（メインスレッド）。holdMillis の間は値を保持し、
+     * 追跡の操縦で axes の軸を上書きしない（追跡は残りの軸だけを書く）。その後は制御ループが 0 へ戻す。
+     */
+    public void sendManualCommand(int axes, float pitch, float roll, float yaw, float throttle, long holdMillis) {
+        manualAxes = axes;
+        manualUntilNanos = System.nanoTime() + holdMillis * 1_000_000L;
+        stickLoop.set(axes, pitch, roll, yaw, throttle, holdMillis);
+    }
+
+    /**
+     * バーチャルスティックモードを切り替え、有効な間は制御ループで操縦量を送る。
+     * 有効な間は購読する画面がなくてもサービスを止めない。
+     */
+    public void setVirtualStickEnabled(boolean enabled, VirtualStickCallback callback) {
+        if (flightController == null) {
+            if (callback != null) {
+                callback.onResult(virtualStickEnabled, "フライトコントローラーがnullです。");
+            }
+            return;
+        }
+        flightController.setVirtualStickModeEnabled(enabled, djiError -> handler.post(() -> {
+            if (djiError != null) {
+                Log.e(TAG, "バーチャルスティックモードの切り替えエラー: " + djiError.getDescription());
+            } else if (enabled != virtualStickEnabled) {
+                virtualStickEnabled = enabled;
+                if (enabled) {
+                    stickLoop.start(flightController);
+                } else {
+                    stickLoop.stop();
+                    // 飛行の終わりに遅延の計測結果を残す
+                    exportLatency();
+                }
+                scheduleIdleStop();
+                Log.d(TAG, "バーチャルスティックモードが " + (enabled ? "有効" : "無効") + " になりました。");
+            }
+            if (callback != null) {
+                callback.onResult(virtualStickEnabled, djiError != null ? djiError.getDescription() : null);
+            }
+        }));
+    }
+
+    /** 画面の HUD に出す検出・動き判定・遅延と、映像の受信の統計、読み手ごとの遅れ・読み飛ばしの状態。 */
+    public String getStatusText() {
+        ObjectDetectorHelper helper = objectDetectorHelper;
+        CascadePolicy cascade = helper != null ? helper.getCascadePolicy() : null;
+        String text = "detect " + detectionScheduler + (cascade != null ? " " + cascade : "")
+                + "\n" + motionGate + "\n" + pipelineLatency.formatSummary()
+                + "\n" + VideoFeedHub.getPrimary().getHealth()
+                + "\n" + VideoFeedHub.getPrimary().getKeyFrameIndex()
+                + "\n" + VideoFeedHub.getPrimary().getRing();
+        for (String status : new String[]{feedCapture.getStatusText(), mp4Recording.getStatusText(),
+                eventClips.getStatusText()}) {
+            if (status != null) {
+                text += "\n" + status;
+            }
+        }
+        if (isMultiFeedEnabled()) {
+            text += "\nfeeds " + feedSources[FEED_PRIMARY] + ":" + feedCounts[FEED_PRIMARY]
+                    + " " + feedSources[FEED_SECONDARY] + ":" + feedCounts[FEED_SECONDARY]
+                    + " (" + secondaryScheduler + ")";
+        }
+        return text;
+    }
+
+    /**
+     * 直近からの映像をクリップに残す（操縦者が残したいとき）。
+     *
+     * @return 外部ストレージがなく残せないときは false
+     */
+    public boolean saveEventClip() {
+        return eventClips.save();
+    }
+
+    private void updateNotification() {
+        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        manager.notify(NOTIFICATION_ID, buildNotification());
+    }
+
+    // 遅延の集計と直近のフレームの時刻を CSV で書き出す（アプリの外部ファイル領域の latency/ 以下）
+    public void exportLatency() {
+        if (pipelineLatency.getFrames() == 0) {
+            return;
+        }
+        File filesDir = getExternalFilesDir(null);
+        if (filesDir == null) {
+            Log.e(TAG, "外部ストレージが利用できません。遅延の計測結果を書き出せません。");
+            return;
+        }
+        File directory = new File(filesDir, "latency");
+        String name = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(directory, "latency-" + name + ".csv");
+        new Thread(() -> {
+            try {
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    throw new IOException("Cannot create " + directory);
+                }
+                try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+                    pipelineLatency.writeCsv(writer);
+                }
+                Log.d(TAG, "遅延の計測結果を書き出しました: " + file);
+                handler.post(() -> Toast.makeText(this, "遅延の計測結果を書き出しました: " + file.getName(),
+                        Toast.LENGTH_SHORT).show());
+            } catch (IOException e) {
+                Log.e(TAG, "遅延の計測結果の書き出しエラー: " + e.getMessage());
+            }
+        }, "LatencyExport").start();
+    }
+}
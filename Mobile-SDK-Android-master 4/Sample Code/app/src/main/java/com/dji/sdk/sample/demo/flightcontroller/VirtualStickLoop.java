@@ -0,0 +1,211 @@
+package com.dji.sdk.sample.demo.flightcontroller;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.dji.sdk.sample.demo.flightcontroller.control.ControlLoopStats;
+import com.dji.sdk.sample.demo.flightcontroller.control.StickSetpoints;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.PipelineLatency;
+
+import dji.common.flightcontroller.virtualstick.FlightControlData;
+import dji.common.util.CommonCallbacks;
+import dji.sdk.flightcontroller.FlightController;
+
+/**
+ * 仮想スティックの操縦量を一定周期で送る制御ループ。
+ * 各画面（入力元）は {@link #set} で目標値を書き込むだけで、送信はこのループが専用の高優先度スレッドで行う。
+ * 周期ごとに全入力元の最新値を1つのコマンドにまとめて送り、更新が止まった軸は 0 へ戻す。
+ * <p>
+ * プロセスで1つだけ持ち、使う画面が {@link #start} / {@link #stop} を対で呼ぶ（参照カウント）。
+ */
+public final class VirtualStickLoop {
+    private static final String TAG = "VirtualStickLoop";
+    public static final int DEFAULT_RATE_HZ = 25;
+    // 入力元の更新がこれだけ途切れたら 0 へ戻し始める
+    public static final long DEFAULT_TIMEOUT_MS = 500;
+    private static final long RAMP_MS = 500;
+    // 送信失敗のログはこの回数ごとにまとめて出す
+    private static final int FAILURE_LOG_INTERVAL = 25;
+
+    public static final int AXIS_PITCH = StickSetpoints.AXIS_PITCH;
+    public static final int AXES_PITCH_ROLL = StickSetpoints.AXES_PITCH_ROLL;
+    public static final int AXES_YAW_THROTTLE = StickSetpoints.AXES_YAW_THROTTLE;
+    public static final int AXIS_YAW = StickSetpoints.AXIS_YAW;
+    public static final int AXES_ALL = StickSetpoints.AXES_ALL;
+    public static final long HOLD_UNTIL_CHANGED = StickSetpoints.HOLD_UNTIL_CHANGED;
+
+    private static VirtualStickLoop instance;
+
+    private final StickSetpoints setpoints = new StickSetpoints(RAMP_MS * 1_000_000L);
+    private final ControlLoopStats stats = new ControlLoopStats();
+    private volatile long timeoutMillis = DEFAULT_TIMEOUT_MS;
+    private volatile FlightController flightController;
+    private volatile PipelineLatency pipelineLatency;
+
+    private int users;
+    private HandlerThread thread;
+    private volatile Handler handler;
+    private volatile long periodNanos = 1_000_000_000L / DEFAULT_RATE_HZ;
+
+    // 以下はループのスレッドでのみ使う
+    private final float[] command = new float[4];
+    // SDK は送信時に値を読み取るだけなので、同じインスタンスを使い回す
+    private final FlightControlData controlData = new FlightControlData(0, 0, 0, 0);
+    private long nextTickNanos;
+    private long lastTickNanos;
+
+    private final CommonCallbacks.CompletionCallback sendCallback = djiError -> {
+        long now = System.nanoTime();
+        stats.onCompleted(now, djiError == null);
+        PipelineLatency latency = pipelineLatency;
+        if (latency != null) {
+            latency.onCommandCompleted(now);
+        }
+        if (djiError != null && stats.getFailed() % FAILURE_LOG_INTERVAL == 1) {
+            Log.w(TAG, "Failed to send virtual stick data: " + djiError.getDescription() + " (" + stats + ")");
+        }
+    };
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            if (lastTickNanos != 0) {
+                stats.onTick(now - lastTickNanos, periodNanos);
+            }
+            lastTickNanos = now;
+            send(now);
+            scheduleNext(now);
+        }
+    };
+
+    private VirtualStickLoop() {
+    }
+
+    public static synchronized VirtualStickLoop getInstance() {
+        if (instance == null) {
+            instance = new VirtualStickLoop();
+        }
+        return instance;
+    }
+
+    /**
+     * ループを使い始める。最初の呼び出しでスレッドを起動する。
+     *
+     * @param flightController 送信先。null のままでも目標値の受け付けは続ける
+     */
+    public synchronized void start(FlightController flightController) {
+        if (flightController != null) {
+            this.flightController = flightController;
+        }
+        if (users++ > 0) {
+            return;
+        }
+        setpoints.clear();
+        thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        handler.post(() -> {
+            lastTickNanos = 0;
+            nextTickNanos = System.nanoTime();
+            tick.run();
+        });
+        Log.d(TAG, "Virtual stick loop started at " + 1_000_000_000L / periodNanos + " Hz");
+    }
+
+    /** ループの使用をやめる。最後の呼び出しで 0 を1回送ってスレッドを止める。 */
+    public synchronized void stop() {
+        if (users == 0 || --users > 0) {
+            return;
+        }
+        setpoints.clear();
+        Handler stopping = handler;
+        HandlerThread stoppingThread = thread;
+        handler = null;
+        thread = null;
+        stopping.removeCallbacks(tick);
+        stopping.post(() -> send(System.nanoTime()));
+        stoppingThread.quitSafely();
+        Log.d(TAG, "Virtual stick loop stopped: " + stats);
+    }
+
+    /** 送信周期を変える。実行中でも次の周期から反映する。 */
+    public void setRateHz(int rateHz) {
+        periodNanos = 1_000_000_000L / Math.max(1, rateHz);
+    }
+
+    /** 入力元の更新が途切れてから 0 へ戻し始めるまでの時間（{@link #set} の既定の保持時間）。 */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * axes で指定した軸の目標値を書き込む。値は FlightControlData と同じ並び・単位。
+     * 既定のタイムアウトを過ぎても更新がなければ 0 へ戻る。
+     */
+    public void set(int axes, float pitch, float roll, float yaw, float throttle) {
+        set(axes, pitch, roll, yaw, throttle, timeoutMillis);
+    }
+
+    /**
+     * @param holdMillis この時間だけ値を保持する。{@link #HOLD_UNTIL_CHANGED} なら次の書き込みまで保持する
+     */
+    public void set(int axes, float pitch, float roll, float yaw, float throttle, long holdMillis) {
+        long holdNanos = holdMillis == HOLD_UNTIL_CHANGED ? HOLD_UNTIL_CHANGED : holdMillis * 1_000_000L;
+        setpoints.set(axes, pitch, roll, yaw, throttle, System.nanoTime(), holdNanos);
+    }
+
+    /** 全軸を即座に 0 にする。 */
+    public void clear() {
+        setpoints.clear();
+    }
+
+    public ControlLoopStats getStats() {
+        return stats;
+    }
+
+    /** 送信と完了を映像から操縦までの遅延の計測に知らせる。null で止める。 */
+    public void setPipelineLatency(PipelineLatency pipelineLatency) {
+        this.pipelineLatency = pipelineLatency;
+    }
+
+    private void send(long now) {
+        setpoints.sample(now, command);
+        FlightController controller = flightController;
+        if (controller == null) {
+            return;
+        }
+        controlData.setPitch(command[StickSetpoints.PITCH]);
+        controlData.setRoll(command[StickSetpoints.ROLL]);
+        controlData.setYaw(command[StickSetpoints.YAW]);
+        controlData.setVerticalThrottle(command[StickSetpoints.THROTTLE]);
+        stats.onSent(now);
+        PipelineLatency latency = pipelineLatency;
+        if (latency != null) {
+            latency.onCommandSent(now);
+        }
+        controller.sendVirtualStickFlightControlData(controlData, sendCallback);
+    }
+
+    private void scheduleNext(long now) {
+        Handler current = handler;
+        if (current == null || current.getLooper() != Looper.myLooper()) {
+            // 停止済み（または停止後に別のスレッドで再開済み）
+            return;
+        }
+        // 開始時刻からの周期の倍数で予定し、処理時間でずれが積み重ならないようにする
+        long period = periodNanos;
+        nextTickNanos += period;
+        if (nextTickNanos <= now) {
+            long missed = (now - nextTickNanos) / period + 1;
+            stats.onMissedTicks(missed);
+            nextTickNanos += missed * period;
+        }
+        long delayMillis = (nextTickNanos - now) / 1_000_000L;
+        current.postAtTime(tick, SystemClock.uptimeMillis() + delayMillis);
+    }
+}
@@ -1,11 +1,12 @@
 package com.dji.sdk.sample.demo.flightcontroller;
 
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.RectF;
+import android.content.ServiceConnection;
 import android.graphics.SurfaceTexture;
 import android.os.Handler;
+import android.os.IBinder;
 import android.os.Looper;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -20,66 +21,74 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 
 import com.dji.sdk.sample.R;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectionResults;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.LabelMap;
 import com.dji.sdk.sample.internal.controller.MainActivity;
+import com.dji.sdk.sample.internal.utils.VideoFeedHub;
+import com.dji.sdk.sample.internal.video.PacketRing;
 import com.dji.sdk.sample.internal.view.PresentableView;
 
-import org.tensorflow.lite.task.vision.detector.Detection;
-
-import java.util.ArrayList;
-import java.util.List;
-
-import dji.common.flightcontroller.virtualstick.FlightControlData;
-import dji.common.gimbal.Rotation;
-import dji.common.gimbal.RotationMode;
-import dji.sdk.base.BaseProduct;
 import dji.sdk.codec.DJICodecManager;
-import dji.sdk.camera.VideoFeeder;
 import dji.sdk.flightcontroller.FlightController;
-import dji.sdk.gimbal.Gimbal;
 import dji.sdk.products.Aircraft;
 import dji.sdk.sdkmanager.DJISDKManager;
 
-public class VirtualStickView extends LinearLayout implements PresentableView, TextureView.SurfaceTextureListener {
+/**
+ * 追跡の表示と操作の画面。検出・追跡・操縦は {@link TrackingService} が画面と関係なく続け、
+ * この画面は映像の表示と、サービスから受け取った結果の表示だけを行う。
+ */
+public class VirtualStickView extends LinearLayout implements PresentableView, TextureView.SurfaceTextureListener,
+        TrackingService.Listener {
     private TextureView videoSurface;
     private ImageView bitmapImage;
     private OverlayView overlayView;
     private TextView distanceTextView;
     private TextView angleTextView;
     private TextView movementTextView; // 移動量を表示するTextView
-    private DJICodecManager codecManager;
-    private VideoFeeder.VideoDataListener videoDataListener;
+    private TextView latencyHudTextView;
+    private volatile DJICodecManager codecManager;
+    private PacketRing.Reader videoReader;
     private Button buttonForward;
     private Button buttonEnableVirtualStick;
     private Button buttonTakeoffLand;
     private FlightController flightController;
-    private Gimbal gimbal;
-    private static final int DETECTION_INTERVAL = 5;
-    private int frameCount = 0;
 
     private static final String TAG = "VirtualStickView";
 
-    private ObjectDetectorHelper objectDetectorHelper;
-    private boolean isVirtualStickEnabled = false;
+    private static final long LATENCY_HUD_INTERVAL_MS = 500;
+    private final Runnable latencyHudUpdater = new Runnable() {
+        @Override
+        public void run() {
+            if (trackingService != null) {
+                latencyHudTextView.setText(trackingService.getStatusText());
+            }
+            postDelayed(this, LATENCY_HUD_INTERVAL_MS);
+        }
+    };
+
+    // 追従する対象のラベル（アプリ起動時の検出器の先読みでも使う）
+    public static final String TARGET_LABEL = "person";
+    // 検出・追跡・操縦はサービスが持ち、この画面は表示されている間だけ結果を購読する
+    private TrackingService trackingService;
+    private boolean bound;
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            trackingService = ((TrackingService.LocalBinder) service).getService();
+            trackingService.addListener(VirtualStickView.this);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            trackingService = null;
+        }
+    };
+    private static final float FORWARD_PITCH = 15.0f;
+    private static final long FORWARD_DURATION_MS = 2000;
 
     public VirtualStickView(Context context) {
         super(context);
         init(context);
-        initGimbal();
-    }
-
-    private void initGimbal() {
-        BaseProduct product = DJISDKManager.getInstance().getProduct();
-        if (product != null && product instanceof Aircraft) {
-            Aircraft aircraft = (Aircraft) product;
-            if (aircraft.getGimbal() != null) {
-                gimbal = aircraft.getGimbal();
-                Log.d(TAG, "ジンバルが正常に初期化されました。");
-            } else {
-                Log.e(TAG, "ジンバルが利用できません。");
-            }
-        } else {
-            Log.e(TAG, "製品が航空機ではないか、nullです。");
-        }
     }
 
     private void init(Context context) {
@@ -92,39 +101,62 @@ public class VirtualStickView extends LinearLayout implements PresentableView, T
         distanceTextView = findViewById(R.id.distance_text_view);
         angleTextView = findViewById(R.id.angle_text_view);
         movementTextView = findViewById(R.id.movement_text_view); // 移動量表示用のTextViewを初期化
+        latencyHudTextView = findViewById(R.id.latency_hud_text_view);
+        // HUD のタップで副のフィードの検出を切り替える（結果は HUD の feeds の行に出る）
+        latencyHudTextView.setOnClickListener(v -> {
+            if (trackingService != null) {
+                trackingService.setMultiFeedEnabled(!trackingService.isMultiFeedEnabled());
+                Toast.makeText(getContext(), trackingService.isMultiFeedEnabled()
+                        ? "主・副の映像を検出します" : "主の映像だけを検出します", Toast.LENGTH_SHORT).show();
+            }
+        });
+        latencyHudTextView.setOnLongClickListener(v -> {
+            if (trackingService != null) {
+                trackingService.exportLatency();
+            }
+            return true;
+        });
 
         buttonForward = findViewById(R.id.button_forward);
         buttonEnableVirtualStick = findViewById(R.id.button_enable_virtual_stick);
         buttonTakeoffLand = findViewById(R.id.button_takeoff_land);
 
         videoSurface.setSurfaceTextureListener(this);
+        // 映像の長押しで直前からの映像をクリップに残す
+        videoSurface.setOnLongClickListener(v -> {
+            if (trackingService != null) {
+                Toast.makeText(getContext(), trackingService.saveEventClip()
+                        ? "前後の映像を保存します" : "外部ストレージがないため保存できません", Toast.LENGTH_SHORT).show();
+            }
+            return true;
+        });
 
-        try {
-            objectDetectorHelper = new ObjectDetectorHelper(context, this::onDetectionResults);
-        } catch (Exception e) {
-            handleError(e);
-        }
-
-        initCamera();
         buttonForward.setOnClickListener(v -> moveDroneForward());
         buttonEnableVirtualStick.setOnClickListener(v -> toggleVirtualStickMode());
         buttonTakeoffLand.setOnClickListener(v -> takeoffOrLand());
         initFlightController();
     }
 
+    // 表示用のデコーダにだけ渡す。解析用のデコードはサービスが行う
     private void initCamera() {
-        videoDataListener = (videoBuffer, size) -> {
+        videoReader = VideoFeedHub.getPrimary().open("display", (packet, gap) -> {
             try {
-                if (codecManager != null) {
-                    codecManager.sendDataToDecoder(videoBuffer, size);
+                DJICodecManager manager = codecManager;
+                if (manager != null) {
+                    if (gap) {
+                        manager.resetKeyFrame();
+                    }
+                    manager.sendDataToDecoder(packet.getData(), packet.getSize());
                 } else {
                     Log.e(TAG, "codecManagerがnullです。ビデオデータをデコードできません。");
                 }
             } catch (Exception e) {
                 handleError(e);
             }
-        };
-        VideoFeeder.getInstance().getPrimaryVideoFeed().addVideoDataListener(videoDataListener);
+        });
+        if (codecManager != null) {
+            VideoFeedHub.getPrimary().startFromKeyFrame(videoReader);
+        }
     }
 
     @Override
@@ -135,6 +167,10 @@ public class VirtualStickView extends LinearLayout implements PresentableView, T
             Log.e(TAG, "DJICodecManagerの初期化に失敗しました。");
         } else {
             Log.d(TAG, "DJICodecManagerが正常に初期化されました。");
+            // 次のキーフレームを待たずに、保持している最新のキーフレームから表示する
+            if (videoReader != null) {
+                VideoFeedHub.getPrimary().startFromKeyFrame(videoReader);
+            }
         }
     }
 
@@ -154,250 +190,25 @@ public class VirtualStickView extends LinearLayout implements PresentableView, T
 
     @Override
     public void onSurfaceTextureUpdated(SurfaceTexture surface) {
-        frameCount++;
-        if (frameCount % DETECTION_INTERVAL == 0) {
-            Bitmap bitmap = videoSurface.getBitmap();
-            if (bitmap != null) {
-                objectDetectorHelper.detect(bitmap, this::onDetectionResults);
-            } else {
-                Log.e(TAG, "onSurfaceTextureUpdatedでgetBitmapがnullを返しました。");
-            }
-        }
-    }
-
-    private void adjustGimbalToCenterObject(Detection detection) {
-        int cameraCenterX = videoSurface.getWidth() / 2;
-        int cameraCenterY = videoSurface.getHeight() / 2;
-
-        RectF boundingBox = detection.getBoundingBox();
-        float objectCenterX = boundingBox.centerX();
-        float objectCenterY = boundingBox.centerY();
-
-        float deltaX = objectCenterX - cameraCenterX;
-        float deltaY = objectCenterY - cameraCenterY;
-
-        Log.d(TAG, "DeltaX: " + deltaX + ", DeltaY: " + deltaY);
-
-        // 差に基づいてジンバルを調整
-        adjustGimbalPitchAndYaw(deltaX, deltaY);
-    }
-    private void adjustDroneYaw(float yawAdjustment) {
-        if (flightController != null) {
-            // 現在の仮想スティックのデータを取得
-            FlightControlData currentControlData = new FlightControlData(0, 0, yawAdjustment, 0);
-
-            // ドローンのヨーを調整
-            flightController.sendVirtualStickFlightControlData(currentControlData, djiError -> {
-                if (djiError != null) {
-                    Log.e(TAG, "ドローンのヨー調整エラー: " + djiError.getDescription());
-                } else {
-                    Log.d(TAG, "ドローンのヨーが正常に調整されました。");
-                }
-            });
-        } else {
-            Log.e(TAG, "フライトコントローラーがnullです。");
-        }
-    }
-
-    private void adjustGimbalPitchAndYaw(float deltaX, float deltaY) {
-        if (gimbal == null) {
-            Log.e(TAG, "ジンバルが初期化されていません。");
-            return;
-        }
-
-        float threshold = 20.0f;
-
-        if (Math.abs(deltaX) > threshold || Math.abs(deltaY) > threshold) {
-            float yawAdjustment = 0.0f;
-            float pitchAdjustment = 0.0f;
-
-            if (Math.abs(deltaX) > threshold) {
-                yawAdjustment = deltaX > 0 ? 10.0f : -10.0f;
-                adjustDroneYaw(yawAdjustment); // ドローンのヨーも調整
-            }
-
-            if (Math.abs(deltaY) > threshold) {
-                pitchAdjustment = deltaY > 0 ? -10.0f : 10.0f;
-            }
-
-            Rotation.Builder rotationBuilder = new Rotation.Builder()
-                    .mode(RotationMode.SPEED)
-                    .pitch(pitchAdjustment)
-                    .yaw(yawAdjustment)
-                    .roll(0);
-
-            gimbal.rotate(rotationBuilder.build(), djiError -> {
-                if (djiError != null) {
-                    Log.e(TAG, "ジンバル調整エラー: " + djiError.getDescription());
-                } else {
-                    Log.d(TAG, "物体を中心にするためにジンバルが正常に調整されました。");
-                }
-            });
-        }
-    }
-
-
-    private void onDetectionResults(List<Detection> results) {
-        if (results != null) {
-            List<Detection> personDetections = new ArrayList<>();
-            for (Detection detection : results) {
-                String label = detection.getCategories().get(0).getLabel();
-                if ("person".equals(label)) {
-                    personDetections.add(detection);
-                }
-            }
-
-            if (!personDetections.isEmpty()) {
-                Log.d(TAG, "人が検出されました。オーバーレイを更新します。");
-                overlayView.setResults(personDetections);
-
-                Detection firstPerson = personDetections.get(0);
-                adjustGimbalToCenterObject(firstPerson);
-
-                // 距離と角度の計算
-                float distance = calculateDistanceToBoundingBox(firstPerson.getBoundingBox());
-                float[] angles = calculateAngleToBoundingBox(firstPerson.getBoundingBox());
-
-                // 移動量と方向の計算
-                String[] movementDirections = calculateMovementDirections(angles, distance);
-                float[] movements = calculateMovement(angles, distance);
-
-                // 距離、角度、移動方向と量を表示
-                displayDistance(distance);
-                displayAngle(angles);
-                displayMovement(movementDirections, movements);
-
-                // ドローンの動きを調整
-                adjustDroneMovement(angles, distance);
-            } else {
-                Log.d(TAG, "人が検出されませんでした。");
-                displayDistance(-1);
-                displayAngle(new float[]{Float.NaN, Float.NaN});
-                displayMovement(new String[]{"", ""}, new float[]{0.0f, 0.0f});
-            }
-        } else {
-            Log.e(TAG, "onDetectionResults: 検出結果がnullでした。");
-            displayDistance(-1);
-            displayAngle(new float[]{Float.NaN, Float.NaN});
-            displayMovement(new String[]{"", ""}, new float[]{0.0f, 0.0f});
-        }
+        // 追跡対象の予測と操縦はサービスがデコードしたフレームごとに行う
     }
 
-    private float calculateDistanceToBoundingBox(RectF boundingBox) {
-        float focalLength = 0.004f;
-        float sensorWidth = 0.00617f;
-        float realObjectWidth = 0.5f;
-
-        float boundingBoxWidthPx = boundingBox.width();
-        int imageWidthPx = videoSurface.getWidth();
-
-        float sensorWidthInMeters = boundingBoxWidthPx / imageWidthPx * sensorWidth;
-
-        return (focalLength * realObjectWidth) / sensorWidthInMeters;
-    }
-
-    private float[] calculateAngleToBoundingBox(RectF boundingBox) {
-        int imageCenterX = videoSurface.getWidth() / 2;
-        int imageCenterY = videoSurface.getHeight() / 2;
-
-        float boxCenterX = boundingBox.centerX();
-        float boxCenterY = boundingBox.centerY();
-
-        float horizontalFOV = 78.8f;
-        float verticalFOV = 63.4f;
-
-        float anglePerPixelX = horizontalFOV / videoSurface.getWidth();
-        float anglePerPixelY = verticalFOV / videoSurface.getHeight();
-
-        float deltaX = boxCenterX - imageCenterX;
-        float deltaY = boxCenterY - imageCenterY;
-
-        float angleX = deltaX * anglePerPixelX;
-        float angleY = deltaY * anglePerPixelY;
-
-        return new float[]{angleX, angleY};
-    }
-
-    private String[] calculateMovementDirections(float[] angles, float distance) {
-        if (Float.isNaN(angles[0]) || Float.isNaN(angles[1]) || distance < 0) {
-            return new String[]{"", ""};
-        }
-
-        String horizontalDirection = angles[0] > 0 ? "右" : "左";
-        String verticalDirection = angles[1] > 0 ? "下" : "上";
-
-        return new String[]{horizontalDirection, verticalDirection};
-    }
-
-    private float[] calculateMovement(float[] angles, float distance) {
-        if (Float.isNaN(angles[0]) || Float.isNaN(angles[1]) || distance < 0) {
-            return new float[]{0.0f, 0.0f};
-        }
-
-        float horizontalMovement = (float) (distance * Math.tan(Math.toRadians(angles[0])));
-        float verticalMovement = (float) (distance * Math.tan(Math.toRadians(angles[1])));
-
-        return new float[]{horizontalMovement, verticalMovement};
-    }
-
-    private void adjustDroneMovement(float[] angles, float distance) {
-        float yawAdjustment = calculateYawAdjustment(angles[0]);
-        float rollAdjustment = calculateRollAdjustment(angles[0], distance);
-        float pitchAdjustment = calculatePitchAdjustment(angles[1], distance);
-        float throttleAdjustment = calculateThrottleAdjustment(angles[1]);
-
-        if (yawAdjustment != 0.0f) {
-            Rotation.Builder rotationBuilder = new Rotation.Builder()
-                    .mode(RotationMode.SPEED)
-                    .yaw(yawAdjustment)
-                    .pitch(0)
-                    .roll(0);
-            gimbal.rotate(rotationBuilder.build(), djiError -> {
-                if (djiError != null) {
-                    Log.e(TAG, "Yaw調整エラー: " + djiError.getDescription());
-                } else {
-                    Log.d(TAG, "Yawが正常に調整されました。");
-                }
-            });
-        }
-
-        if (flightController != null) {
-            flightController.sendVirtualStickFlightControlData(
-                    new FlightControlData(pitchAdjustment, rollAdjustment, yawAdjustment, throttleAdjustment), djiError -> {
-                        if (djiError != null) {
-                            Log.e(TAG, "フライトコントロールデータエラー: " + djiError.getDescription());
-                        } else {
-                            Log.d(TAG, "ドローンの動きが正常に調整されました。");
-                        }
-                    });
-        }
-    }
-    private float calculateYawAdjustment(float angleX) {
-        float yawThreshold = 1.0f;
-
-        if (Math.abs(angleX) > yawThreshold) {
-            return angleX;
-        } else {
-            return 0.0f;
+    @Override
+    public void onDetectionResults(DetectionResults results, LabelMap labelMap) {
+        // results はこの後再利用されるので、オーバーレイ側でコピーする
+        overlayView.setLabelMap(labelMap);
+        overlayView.setResults(results);
+        if (results.getCount() == 0) {
+            Log.d(TAG, "人が検出されませんでした。");
         }
     }
 
-    private float calculateRollAdjustment(float angleX, float distance) {
-        return (float) (distance * Math.tan(Math.toRadians(angleX)));
-    }
-
-    private float calculatePitchAdjustment(float angleY, float distance) {
-        return (float) (distance * Math.tan(Math.toRadians(angleY)));
-    }
-
-    private float calculateThrottleAdjustment(float angleY) {
-        float throttleThreshold = 1.0f;
-
-        if (Math.abs(angleY) > throttleThreshold) {
-            return -angleY;
-        } else {
-            return 0.0f;
-        }
+    @Override
+    public void onTargetUpdated(float distance, float[] angles, String[] directions, float[] movements) {
+        // 距離、角度、移動方向と量を表示
+        displayDistance(distance);
+        displayAngle(angles);
+        displayMovement(directions, movements);
     }
 
     private void displayDistance(float distance) {
@@ -455,17 +266,15 @@ public class VirtualStickView extends LinearLayout implements PresentableView, T
     }
 
     private void toggleVirtualStickMode() {
-        if (flightController != null) {
-            flightController.setVirtualStickModeEnabled(!isVirtualStickEnabled, djiError -> {
-                if (djiError != null) {
-                    Log.e(TAG, "バーチャルスティックモードの切り替えエラー: " + djiError.getDescription());
-                } else {
-                    isVirtualStickEnabled = !isVirtualStickEnabled;
-                    Log.d(TAG, "バーチャルスティックモードが " + (isVirtualStickEnabled ? "有効" : "無効") + " になりました。");
-                    Toast.makeText(getContext(), "バーチャルスティックモードが " + (isVirtualStickEnabled ? "有効" : "無効") + " になりました", Toast.LENGTH_SHORT).show();
-                }
-            });
+        TrackingService service = trackingService;
+        if (service == null) {
+            return;
         }
+        service.setVirtualStickEnabled(!service.isVirtualStickEnabled(), (enabled, error) -> {
+            if (error == null) {
+                Toast.makeText(getContext(), "バーチャルスティックモードが " + (enabled ? "有効" : "無効") + " になりました", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void takeoffOrLand() {
@@ -484,48 +293,47 @@ public class VirtualStickView extends LinearLayout implements PresentableView, T
     }
 
     private void moveDroneForward() {
-        if (!isVirtualStickEnabled) {
+        if (trackingService == null || !trackingService.isVirtualStickEnabled()) {
             Log.e(TAG, "バーチャルスティックモードが有効ではありません。ドローンを前進させることができません。");
             Toast.makeText(getContext(), "まずバーチャルスティックモードを有効にしてください", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        float pitch = 15.0f;
-        float roll = 0.0f;
-        float yaw = 0.0f;
-        float throttle = 0.0f;
-
-        Runnable sendCommand = () -> {
-            if (flightController != null) {
-                flightController.sendVirtualStickFlightControlData(
-                        new FlightControlData(pitch, roll, yaw, throttle), djiError -> {
-                            if (djiError != null) {
-                                Log.e(TAG, "仮想スティックデータ送信エラー: " + djiError.getDescription());
-                            } else {
-                                Log.d(TAG, "ドローンが前進しています。");
-                                new Handler(Looper.getMainLooper()).post(() ->
-                                        Toast.makeText(getContext(), "ドローンが前進しています", Toast.LENGTH_SHORT).show());
-                            }
-                        });
-            }
-        };
-
-        new Handler().postDelayed(() -> {
-            if (flightController != null) {
-                flightController.sendVirtualStickFlightControlData(
-                        new FlightControlData(0, roll, yaw, throttle), djiError -> {
-                            if (djiError != null) {
-                                Log.e(TAG, "ドローン停止エラー: " + djiError.getDescription());
-                            } else {
-                                Log.d(TAG, "ドローンが正常に停止しました。");
-                                new Handler(Looper.getMainLooper()).post(() ->
-                                        Toast.makeText(getContext(), "ドローンが停止しました", Toast.LENGTH_SHORT).show());
-                            }
-                        });
-            }
-        }, 2000);
+        // 一定時間だけ前進の目標値を保持し、その後は制御ループが 0 へ戻す。その間、追跡はピッチを書き換えない
+        trackingService.sendManualCommand(VirtualStickLoop.AXIS_PITCH, FORWARD_PITCH, 0, 0, 0, FORWARD_DURATION_MS);
+        Log.d(TAG, "ドローンが前進しています。");
+        Toast.makeText(getContext(), "ドローンが前進しています", Toast.LENGTH_SHORT).show();
+    }
 
-        sendCommand.run();
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // 検出器と追跡はサービスで続けているので、開き直しても読み込み直さない
+        Context context = getContext();
+        TrackingService.start(context);
+        bound = context.bindService(new Intent(context, TrackingService.class), serviceConnection,
+                Context.BIND_AUTO_CREATE);
+        initCamera();
+        post(latencyHudUpdater);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(latencyHudUpdater);
+        if (videoReader != null) {
+            VideoFeedHub.getPrimary().close(videoReader);
+            videoReader = null;
+        }
+        // 画面を離れても追跡と操縦はサービスで続く（止めるのはバーチャルスティックの無効化か通知の「停止」）
+        if (trackingService != null) {
+            trackingService.removeListener(this);
+            trackingService = null;
+        }
+        if (bound) {
+            getContext().unbindService(serviceConnection);
+            bound = false;
+        }
+        super.onDetachedFromWindow();
     }
 
     @Override
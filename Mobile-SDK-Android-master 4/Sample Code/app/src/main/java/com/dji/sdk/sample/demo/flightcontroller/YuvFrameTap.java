@@ -0,0 +1,227 @@
+package com.dji.sdk.sample.demo.flightcontroller;
+
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.FrameTimeline;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.MotionGate;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvFrame;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvFramePool;
+
+import java.nio.ByteBuffer;
+
+import dji.sdk.codec.DJICodecManager;
+
+/**
+ * 映像フィードをYUVで受け取り、解析用にフレームを取り出すタップ。
+ * 表示用のDJICodecManagerとは別に、YUV出力専用のデコーダを持つ
+ * （YUV出力を有効にしたデコーダはサーフェスへ描画しないため）。
+ * フレームはプールのダイレクトバッファへコピーし、デコーダのスレッドでリスナーに渡す。
+ * <p>
+ * 遅延の計測用に、各フレームへ番号と受信・デコード・コピーの時刻（{@link FrameTimeline}）を付ける。
+ * デコーダは入力順に出力し、VideoDataListener の1回の受信が1フレームに当たる前提で、
+ * 受信時刻を FIFO に積んでデコード出力と対応付ける（受信の方が多い場合は FIFO があふれた分を古い方から捨てる）。
+ * <p>
+ * {@link MotionGate} を設定すると、解析に回すはずのフレームでも前回から映像が変わっていなければ
+ * コピーせずに捨て、{@link StaticFrameListener} に知らせる。
+ */
+public class YuvFrameTap implements DJICodecManager.YuvDataCallback {
+    private static final String TAG = "YuvFrameTap";
+    private static final int POOL_SIZE = 3;
+    private static final int INITIAL_CAPACITY = 1920 * 1088 * 3 / 2;
+    // デコーダの中にいるフレーム数より十分大きく取る
+    private static final int MAX_IN_DECODER = 16;
+
+    public interface FrameListener {
+        /** 受け取ったフレームは処理後に {@link YuvFrame#release()} すること。 */
+        void onFrame(YuvFrame frame);
+    }
+
+    /** どのフレームを解析に回すかを決める（デコーダのスレッドで呼ばれる）。 */
+    public interface FrameFilter {
+        boolean accept(long decodedNanos);
+    }
+
+    /** 映像が変わっていないので解析を省いたフレームを知らせる（デコーダのスレッドで呼ばれる）。 */
+    public interface StaticFrameListener {
+        void onStaticFrame(long decodedNanos);
+    }
+
+    /** デコードしたフレームを、解析に回すかどうかに関わらず知らせる（デコーダのスレッドで呼ばれる）。 */
+    public interface DecodedFrameListener {
+        void onFrameDecoded(long decodedNanos);
+    }
+
+    private final Context context;
+    private final FrameListener frameListener;
+    private final YuvFramePool framePool = new YuvFramePool(POOL_SIZE, INITIAL_CAPACITY);
+    private DJICodecManager codecManager;
+    private SurfaceTexture dummySurface;
+    private int frameInterval = 1;
+    private volatile FrameFilter frameFilter;
+    private volatile MotionGate motionGate;
+    private volatile StaticFrameListener staticFrameListener;
+    private volatile DecodedFrameListener decodedFrameListener;
+    private int frameCount = 0;
+    private long frameId = 0;
+    // デコーダに渡したデータの受信時刻（受信スレッドが積み、デコーダのスレッドが取り出す）
+    private final long[] receivedNanos = new long[MAX_IN_DECODER];
+    private int receivedHead;
+    private int receivedCount;
+
+    public YuvFrameTap(Context context, FrameListener frameListener) {
+        this.context = context.getApplicationContext();
+        this.frameListener = frameListener;
+    }
+
+    /** N フレームに1回だけ解析に回す。 */
+    public void setFrameInterval(int frameInterval) {
+        this.frameInterval = Math.max(1, frameInterval);
+    }
+
+    /** 解析に回すフレームを選ぶ。null なら N フレームに1回（{@link #setFrameInterval}）だけで決める。 */
+    public void setFrameFilter(FrameFilter frameFilter) {
+        this.frameFilter = frameFilter;
+    }
+
+    /**
+     * 解析に回す前に映像の変化を判定する。null なら判定しない。
+     *
+     * @param listener 変化がなく解析を省いたフレームの通知先（なければ null）
+     */
+    public void setMotionGate(MotionGate motionGate, StaticFrameListener listener) {
+        this.staticFrameListener = listener;
+        this.motionGate = motionGate;
+    }
+
+    /** フレームごとの処理（追跡対象の予測など）に使う。null で通知しない。 */
+    public void setDecodedFrameListener(DecodedFrameListener listener) {
+        this.decodedFrameListener = listener;
+    }
+
+    public synchronized void start(int width, int height) {
+        if (codecManager != null) {
+            return;
+        }
+        receivedCount = 0;
+        dummySurface = new SurfaceTexture(0);
+        codecManager = new DJICodecManager(context, dummySurface, width, height);
+        codecManager.enabledYuvData(true);
+        codecManager.setYuvDataCallback(this);
+        Log.d(TAG, "YUV frame tap started.");
+    }
+
+    public synchronized void stop() {
+        if (codecManager != null) {
+            codecManager.enabledYuvData(false);
+            codecManager.setYuvDataCallback(null);
+            codecManager.cleanSurface();
+            codecManager.destroyCodec();
+            codecManager = null;
+        }
+        if (dummySurface != null) {
+            dummySurface.release();
+            dummySurface = null;
+        }
+    }
+
+    /** VideoDataListener から受け取ったH.264データをそのまま渡す。 */
+    public void sendDataToDecoder(byte[] videoBuffer, int size) {
+        sendDataToDecoder(videoBuffer, size, System.nanoTime());
+    }
+
+    /**
+     * @param receivedNanos VideoDataListener で受け取った時刻（System.nanoTime()）
+     */
+    public void sendDataToDecoder(byte[] videoBuffer, int size, long receivedNanos) {
+        DJICodecManager manager = codecManager;
+        if (manager != null) {
+            pushReceived(receivedNanos);
+            manager.sendDataToDecoder(videoBuffer, size);
+        }
+    }
+
+    /** 受信を読み飛ばした後に呼ぶ。次のキーフレームからデコードし直す。 */
+    public void resetKeyFrame() {
+        DJICodecManager manager = codecManager;
+        if (manager != null) {
+            manager.resetKeyFrame();
+        }
+    }
+
+    private synchronized void pushReceived(long nanos) {
+        if (receivedCount == MAX_IN_DECODER) {
+            receivedHead = (receivedHead + 1) % MAX_IN_DECODER;
+            receivedCount--;
+        }
+        receivedNanos[(receivedHead + receivedCount) % MAX_IN_DECODER] = nanos;
+        receivedCount++;
+    }
+
+    // 受信記録がなければ 0
+    private synchronized long popReceived() {
+        if (receivedCount == 0) {
+            return 0;
+        }
+        long nanos = receivedNanos[receivedHead];
+        receivedHead = (receivedHead + 1) % MAX_IN_DECODER;
+        receivedCount--;
+        return nanos;
+    }
+
+    public YuvFramePool getFramePool() {
+        return framePool;
+    }
+
+    @Override
+    public void onYuvDataReceived(MediaFormat format, ByteBuffer yuvFrame, int dataSize, int width, int height) {
+        long decodedNanos = System.nanoTime();
+        long receivedNanos = popReceived();
+        long id = frameId++;
+        frameCount++;
+        DecodedFrameListener decodedListener = decodedFrameListener;
+        if (decodedListener != null && yuvFrame != null) {
+            decodedListener.onFrameDecoded(decodedNanos);
+        }
+        if (frameCount % frameInterval != 0 || yuvFrame == null || width <= 0 || height <= 0) {
+            return;
+        }
+        FrameFilter filter = frameFilter;
+        if (filter != null && !filter.accept(decodedNanos)) {
+            return;
+        }
+        // Yプレーンは先頭から width バイトずつ並ぶ
+        MotionGate gate = motionGate;
+        if (gate != null && !gate.hasMotion(yuvFrame, width, height, width, decodedNanos)) {
+            StaticFrameListener listener = staticFrameListener;
+            if (listener != null) {
+                listener.onStaticFrame(decodedNanos);
+            }
+            return;
+        }
+        // 解析側がまだ前のフレームを処理中でプールが空なら、このフレームは捨てる
+        YuvFrame frame = framePool.acquire(dataSize);
+        if (frame == null) {
+            return;
+        }
+        frame.copyFrom(yuvFrame, dataSize, width, height, toFrameFormat(format), System.nanoTime());
+        FrameTimeline timeline = frame.getTimeline();
+        timeline.reset(id);
+        timeline.mark(FrameTimeline.RECEIVE, receivedNanos);
+        timeline.mark(FrameTimeline.DECODE, decodedNanos);
+        timeline.mark(FrameTimeline.CAPTURE);
+        frameListener.onFrame(frame);
+    }
+
+    private static int toFrameFormat(MediaFormat format) {
+        if (format != null && format.containsKey(MediaFormat.KEY_COLOR_FORMAT)
+                && format.getInteger(MediaFormat.KEY_COLOR_FORMAT)
+                == MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Planar) {
+            return YuvFrame.FORMAT_I420;
+        }
+        return YuvFrame.FORMAT_NV12;
+    }
+}
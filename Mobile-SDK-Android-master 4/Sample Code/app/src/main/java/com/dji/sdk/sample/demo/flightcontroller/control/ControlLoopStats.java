@@ -0,0 +1,103 @@
+package com.dji.sdk.sample.demo.flightcontroller.control;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.LatencyHistogram;
+
+import java.util.Locale;
+
+/**
+ * 固定周期の制御ループの計測。
+ * 周期のずれ（実際の間隔と目標周期の差の絶対値）と、送信から完了コールバックまでの時間を記録する。
+ * 完了コールバックは送信順に返る前提で、送信時刻を小さなリングに積んで対応付ける。
+ */
+public final class ControlLoopStats {
+    private static final long BIN_NANOS = 250_000L;
+    private static final long RANGE_NANOS = 200_000_000L;
+    private static final int MAX_IN_FLIGHT = 16;
+
+    private final LatencyHistogram jitter = new LatencyHistogram(BIN_NANOS, RANGE_NANOS);
+    private final LatencyHistogram sendLatency = new LatencyHistogram(BIN_NANOS, RANGE_NANOS);
+    private final long[] inFlight = new long[MAX_IN_FLIGHT];
+    private int inFlightHead;
+    private int inFlightCount;
+    private long ticks;
+    private long sent;
+    private long failed;
+    private long missedTicks;
+    private long lostCallbacks;
+
+    /** 周期の実行。intervalNanos は前回の実行からの実際の間隔。 */
+    public synchronized void onTick(long intervalNanos, long periodNanos) {
+        ticks++;
+        jitter.record(Math.abs(intervalNanos - periodNanos));
+    }
+
+    /** 処理が遅れて飛ばした周期。 */
+    public synchronized void onMissedTicks(long count) {
+        missedTicks += count;
+    }
+
+    public synchronized void onSent(long nowNanos) {
+        sent++;
+        if (inFlightCount == MAX_IN_FLIGHT) {
+            // 返ってこないコールバックがあれば古いものから捨てる
+            inFlightHead = (inFlightHead + 1) % MAX_IN_FLIGHT;
+            inFlightCount--;
+            lostCallbacks++;
+        }
+        inFlight[(inFlightHead + inFlightCount) % MAX_IN_FLIGHT] = nowNanos;
+        inFlightCount++;
+    }
+
+    public synchronized void onCompleted(long nowNanos, boolean success) {
+        if (!success) {
+            failed++;
+        }
+        if (inFlightCount == 0) {
+            return;
+        }
+        sendLatency.record(nowNanos - inFlight[inFlightHead]);
+        inFlightHead = (inFlightHead + 1) % MAX_IN_FLIGHT;
+        inFlightCount--;
+    }
+
+    public synchronized void reset() {
+        jitter.reset();
+        sendLatency.reset();
+        inFlightCount = 0;
+        ticks = 0;
+        sent = 0;
+        failed = 0;
+        missedTicks = 0;
+        lostCallbacks = 0;
+    }
+
+    public LatencyHistogram getJitter() {
+        return jitter;
+    }
+
+    public LatencyHistogram getSendLatency() {
+        return sendLatency;
+    }
+
+    public synchronized long getTicks() {
+        return ticks;
+    }
+
+    public synchronized long getSent() {
+        return sent;
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    public synchronized long getMissedTicks() {
+        return missedTicks;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "ticks=%d sent=%d failed=%d missed=%d lost=%d jitter[%s] latency[%s]",
+                ticks, sent, failed, missedTicks, lostCallbacks, jitter, sendLatency);
+    }
+}
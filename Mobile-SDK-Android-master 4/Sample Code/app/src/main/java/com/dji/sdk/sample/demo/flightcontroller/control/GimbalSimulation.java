@@ -0,0 +1,152 @@
+package com.dji.sdk.sample.demo.flightcontroller.control;
+
+import java.util.Locale;
+
+/**
+ * {@link GimbalTrackingController} と {@link SimulatedGimbal} をつないだ閉ループの模擬。
+ * 実機と同じく、姿勢の通知・検出結果・制御周期はそれぞれ別の周期で届き、検出結果は遅れて届く。
+ * 対象は最初に stepDegrees だけずれた位置にいて、yaw 方向に一定の角速度で動く（0 ならステップ応答）。
+ */
+public final class GimbalSimulation {
+    private static final long SIM_STEP_NANOS = 1_000_000L;
+
+    private int controlRateHz = 20;
+    private int attitudeRateHz = 10;
+    private int detectionRateHz = 6;
+    private long detectionLatencyNanos = 150_000_000L;
+    private float settleBand = 1.0f;
+    private long steadyStateWindowNanos = 1_000_000_000L;
+
+    /** 制御周期・姿勢の通知・検出の周期 [Hz]。 */
+    public GimbalSimulation rates(int controlRateHz, int attitudeRateHz, int detectionRateHz) {
+        this.controlRateHz = controlRateHz;
+        this.attitudeRateHz = attitudeRateHz;
+        this.detectionRateHz = detectionRateHz;
+        return this;
+    }
+
+    /** 撮影から検出結果が届くまでの時間。 */
+    public GimbalSimulation detectionLatencyNanos(long detectionLatencyNanos) {
+        this.detectionLatencyNanos = detectionLatencyNanos;
+        return this;
+    }
+
+    /** 収束とみなす誤差の幅 [度]。 */
+    public GimbalSimulation settleBand(float settleBand) {
+        this.settleBand = settleBand;
+        return this;
+    }
+
+    /** 定常誤差を測る区間（終わりからの長さ）。 */
+    public GimbalSimulation steadyStateWindowNanos(long steadyStateWindowNanos) {
+        this.steadyStateWindowNanos = steadyStateWindowNanos;
+        return this;
+    }
+
+    /** 結果。角度は度、時間は秒。 */
+    public static final class Result {
+        float settlingTime;
+        float overshoot;
+        float steadyStateError;
+        float maxSpeed;
+
+        /** 誤差が収束幅に入ったまま出なくなった時刻。収束しなければ NaN。 */
+        public float getSettlingTime() {
+            return settlingTime;
+        }
+
+        public float getOvershoot() {
+            return overshoot;
+        }
+
+        /** 終わりの区間の誤差の絶対値の平均。 */
+        public float getSteadyStateError() {
+            return steadyStateError;
+        }
+
+        public float getMaxSpeed() {
+            return maxSpeed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "settling=%.2fs overshoot=%.2f° steadyState=%.2f° maxSpeed=%.1f°/s",
+                    settlingTime, overshoot, steadyStateError, maxSpeed);
+        }
+    }
+
+    /**
+     * yaw 方向の追従を durationNanos だけ模擬する。
+     *
+     * @param stepDegrees        開始時の対象のずれ
+     * @param targetRateDegrees  対象の角速度 [度/秒]
+     */
+    public Result run(GimbalTrackingController controller, SimulatedGimbal gimbal,
+                      float stepDegrees, float targetRateDegrees, long durationNanos) {
+        long controlPeriod = 1_000_000_000L / controlRateHz;
+        long attitudePeriod = 1_000_000_000L / attitudeRateHz;
+        long detectionPeriod = 1_000_000_000L / detectionRateHz;
+        long start = 1_000_000_000L;
+        long end = start + durationNanos;
+        gimbal.reset(0, 0, start);
+        controller.clearTarget();
+
+        long nextControl = start;
+        long nextAttitude = start;
+        long nextDetection = start;
+        // 検出は撮影時刻のずれをその時刻に記録し、遅延後に届ける
+        long pendingFrame = -1;
+        float pendingError = 0;
+
+        float[] speeds = new float[2];
+        Result result = new Result();
+        float settledSince = -1;
+        float steadySum = 0;
+        int steadyCount = 0;
+
+        for (long now = start; now <= end; now += SIM_STEP_NANOS) {
+            gimbal.advance(now, SIM_STEP_NANOS);
+            float elapsed = (now - start) / 1e9f;
+            float target = stepDegrees + targetRateDegrees * elapsed;
+            float error = GimbalTrackingController.wrapDegrees(target - gimbal.getYaw());
+
+            if (now >= nextAttitude) {
+                controller.onAttitude(gimbal.getPitch(), gimbal.getYaw(), now);
+                nextAttitude += attitudePeriod;
+            }
+            if (now >= nextDetection && pendingFrame < 0) {
+                pendingFrame = now;
+                pendingError = error;
+                nextDetection += detectionPeriod;
+            }
+            if (pendingFrame >= 0 && now >= pendingFrame + detectionLatencyNanos) {
+                controller.setTargetError(0, pendingError, pendingFrame);
+                pendingFrame = -1;
+            }
+            if (now >= nextControl) {
+                controller.update(now, speeds);
+                gimbal.command(speeds[GimbalTrackingController.PITCH], speeds[GimbalTrackingController.YAW], now);
+                result.maxSpeed = Math.max(result.maxSpeed, Math.abs(speeds[GimbalTrackingController.YAW]));
+                nextControl += controlPeriod;
+            }
+
+            // 行き過ぎは最初のずれと逆側に出た量
+            float beyond = stepDegrees >= 0 ? -error : error;
+            result.overshoot = Math.max(result.overshoot, beyond);
+            if (Math.abs(error) <= settleBand) {
+                if (settledSince < 0) {
+                    settledSince = elapsed;
+                }
+            } else {
+                settledSince = -1;
+            }
+            if (end - now <= steadyStateWindowNanos) {
+                steadySum += Math.abs(error);
+                steadyCount++;
+            }
+        }
+        result.settlingTime = settledSince < 0 ? Float.NaN : settledSince;
+        result.steadyStateError = steadyCount == 0 ? Float.NaN : steadySum / steadyCount;
+        return result;
+    }
+}
@@ -0,0 +1,227 @@
+package com.dji.sdk.sample.demo.flightcontroller.control;
+
+/**
+ * 検出した対象を画面中央に捉え続けるためのジンバルの速度指令を計算する。
+ * <p>
+ * 画像上のずれ（角度に換算したもの）は元フレームの時刻のジンバル姿勢に足して「対象の絶対角度」にし、
+ * 制御周期ごとに最新の姿勢（GimbalState）との差で PID を回す。
+ * 検出が届くのは数 Hz で遅れもあるが、姿勢のフィードバックは新しいので、行き過ぎや振動を抑えられる。
+ * 対象の角速度は検出の間で推定し、位置の外挿とフィードフォワードに使う。
+ * <p>
+ * 角度はすべて度、速度は度/秒。pitch は上向きが正、yaw は右向きが正。時刻は System.nanoTime()。
+ */
+public final class GimbalTrackingController {
+    public static final int PITCH = 0;
+    public static final int YAW = 1;
+
+    private static final int HISTORY = 32;
+    // 目標の角速度の推定に使う一次ローパスの係数
+    private static final float RATE_SMOOTHING = 0.5f;
+    // 既定のゲイン（GimbalSimulation と SimulatedGimbal の既定値で調整したもの）
+    private static final float KP = 3.0f;
+    private static final float KI = 0.5f;
+    private static final float KD = 0.2f;
+    private static final float KFF = 1.0f;
+    private static final float I_LIMIT = 15.0f;
+    private static final float I_ZONE = 3.0f;
+
+    private final PidController pitchPid;
+    private final PidController yawPid;
+
+    private float minPitch = -90.0f;
+    private float maxPitch = 30.0f;
+    private float minYaw = Float.NaN;
+    private float maxYaw = Float.NaN;
+    private float maxSpeed = 60.0f;
+    private float deadband = 0.3f;
+    private long targetTimeoutNanos = 700_000_000L;
+
+    // ジンバル姿勢の履歴（リングバッファ）
+    private final long[] attitudeNanos = new long[HISTORY];
+    private final float[] attitudePitch = new float[HISTORY];
+    private final float[] attitudeYaw = new float[HISTORY];
+    private int attitudeCount;
+    private int attitudeHead;
+    private float relativeYaw;
+
+    private boolean hasTarget;
+    private long targetNanos;
+    private final float[] target = new float[2];
+    private final float[] targetRate = new float[2];
+    private long lastUpdateNanos;
+
+    public GimbalTrackingController(PidController pitchPid, PidController yawPid) {
+        this.pitchPid = pitchPid;
+        this.yawPid = yawPid;
+    }
+
+    /** 既定のゲインで作る。 */
+    public static GimbalTrackingController withDefaultGains() {
+        return new GimbalTrackingController(
+                new PidController(KP, KI, KD).feedForward(KFF).integralLimit(I_LIMIT).integralZone(I_ZONE),
+                new PidController(KP, KI, KD).feedForward(KFF).integralLimit(I_LIMIT).integralZone(I_ZONE));
+    }
+
+    /** ピッチの可動範囲（GimbalCapabilityView で読んでいる ADJUST_PITCH の最小・最大）。 */
+    public void setPitchRange(float minPitch, float maxPitch) {
+        this.minPitch = minPitch;
+        this.maxPitch = maxPitch;
+    }
+
+    /** ヨーの可動範囲（機首基準、ADJUST_YAW の最小・最大）。NaN なら制限なし。 */
+    public void setYawRange(float minYaw, float maxYaw) {
+        this.minYaw = minYaw;
+        this.maxYaw = maxYaw;
+    }
+
+    public void setMaxSpeed(float maxSpeed) {
+        this.maxSpeed = maxSpeed;
+    }
+
+    /** これ以下のずれでは動かさない [度]。 */
+    public void setDeadband(float deadband) {
+        this.deadband = deadband;
+    }
+
+    /** 検出がこれだけ途切れたら追従をやめる。 */
+    public void setTargetTimeoutNanos(long targetTimeoutNanos) {
+        this.targetTimeoutNanos = targetTimeoutNanos;
+    }
+
+    /** ジンバル姿勢の更新。可動範囲の判定にも yaw を使う。 */
+    public void onAttitude(float pitch, float yaw, long nowNanos) {
+        onAttitude(pitch, yaw, yaw, nowNanos);
+    }
+
+    /**
+     * ジンバル姿勢の更新（GimbalState のコールバックから）。
+     * yaw の可動範囲は機首基準なので、判定には yawRelativeToAircraft を使う。
+     */
+    public synchronized void onAttitude(float pitch, float yaw, float yawRelativeToAircraft, long nowNanos) {
+        int index = (attitudeHead + attitudeCount) % HISTORY;
+        if (attitudeCount == HISTORY) {
+            attitudeHead = (attitudeHead + 1) % HISTORY;
+        } else {
+            attitudeCount++;
+        }
+        attitudeNanos[index] = nowNanos;
+        attitudePitch[index] = pitch;
+        attitudeYaw[index] = yaw;
+        relativeYaw = yawRelativeToAircraft;
+    }
+
+    /**
+     * 検出結果の更新。ずれは画像中心から対象への角度で、対象が上なら pitchError が正、右なら yawError が正。
+     *
+     * @param frameTimestampNanos 検出の元フレームの時刻
+     */
+    public synchronized void setTargetError(float pitchError, float yawError, long frameTimestampNanos) {
+        if (attitudeCount == 0) {
+            return;
+        }
+        float pitch = attitudeAt(frameTimestampNanos, attitudePitch, false) + pitchError;
+        float yaw = wrapDegrees(attitudeAt(frameTimestampNanos, attitudeYaw, true) + yawError);
+
+        long gap = frameTimestampNanos - targetNanos;
+        if (hasTarget && gap > 0 && gap < targetTimeoutNanos) {
+            float dt = gap / 1e9f;
+            float pitchRate = (pitch - target[PITCH]) / dt;
+            float yawRate = wrapDegrees(yaw - target[YAW]) / dt;
+            targetRate[PITCH] += RATE_SMOOTHING * (pitchRate - targetRate[PITCH]);
+            targetRate[YAW] += RATE_SMOOTHING * (yawRate - targetRate[YAW]);
+        } else if (!hasTarget || gap >= targetTimeoutNanos) {
+            targetRate[PITCH] = 0;
+            targetRate[YAW] = 0;
+        }
+        target[PITCH] = pitch;
+        target[YAW] = yaw;
+        targetNanos = frameTimestampNanos;
+        hasTarget = true;
+    }
+
+    public synchronized void clearTarget() {
+        hasTarget = false;
+        pitchPid.reset();
+        yawPid.reset();
+    }
+
+    /**
+     * 制御周期ごとに呼ぶ。速度指令を speeds[PITCH], speeds[YAW] に書き込む。
+     *
+     * @return 追従中なら true。false のときは speeds は 0
+     */
+    public synchronized boolean update(long nowNanos, float[] speeds) {
+        float dt = lastUpdateNanos == 0 ? 0 : (nowNanos - lastUpdateNanos) / 1e9f;
+        lastUpdateNanos = nowNanos;
+        if (!hasTarget || attitudeCount == 0 || nowNanos - targetNanos > targetTimeoutNanos) {
+            if (hasTarget) {
+                clearTarget();
+            }
+            speeds[PITCH] = 0;
+            speeds[YAW] = 0;
+            return false;
+        }
+
+        int latest = (attitudeHead + attitudeCount - 1) % HISTORY;
+        float pitch = attitudePitch[latest];
+        float yaw = attitudeYaw[latest];
+        // 検出の間は推定した角速度で対象の位置を外挿する
+        float sinceTarget = (nowNanos - targetNanos) / 1e9f;
+        float targetPitch = target[PITCH] + targetRate[PITCH] * sinceTarget;
+        float targetYaw = target[YAW] + targetRate[YAW] * sinceTarget;
+
+        speeds[PITCH] = axis(pitchPid, targetPitch - pitch, pitch, pitch, targetRate[PITCH], dt,
+                minPitch, maxPitch);
+        speeds[YAW] = axis(yawPid, wrapDegrees(targetYaw - yaw), yaw, relativeYaw, targetRate[YAW], dt,
+                minYaw, maxYaw);
+        return true;
+    }
+
+    // limitAngle は可動範囲の判定に使う角度
+    private float axis(PidController pid, float error, float angle, float limitAngle, float rate, float dt,
+                       float minAngle, float maxAngle) {
+        if (Math.abs(error) < deadband && Math.abs(rate) < deadband) {
+            // 止まっている対象をほぼ中央に捉えたら止める（速度指令 0 で姿勢は保持される）
+            pid.reset();
+            return 0;
+        }
+        // 可動範囲の端では外向きに回さない
+        float low = !Float.isNaN(minAngle) && limitAngle <= minAngle ? 0 : -maxSpeed;
+        float high = !Float.isNaN(maxAngle) && limitAngle >= maxAngle ? 0 : maxSpeed;
+        return pid.update(error, angle, rate, dt, low, high);
+    }
+
+    // 指定時刻の姿勢を履歴から線形補間で求める
+    private float attitudeAt(long nanos, float[] values, boolean wrap) {
+        int newest = (attitudeHead + attitudeCount - 1) % HISTORY;
+        if (nanos >= attitudeNanos[newest]) {
+            return values[newest];
+        }
+        int later = newest;
+        for (int i = attitudeCount - 2; i >= 0; i--) {
+            int index = (attitudeHead + i) % HISTORY;
+            if (attitudeNanos[index] <= nanos) {
+                float span = attitudeNanos[later] - attitudeNanos[index];
+                float t = span <= 0 ? 1 : (nanos - attitudeNanos[index]) / span;
+                float delta = values[later] - values[index];
+                if (wrap) {
+                    delta = wrapDegrees(delta);
+                }
+                return values[index] + delta * t;
+            }
+            later = index;
+        }
+        return values[attitudeHead];
+    }
+
+    /** 角度を -180〜180 度に収める。 */
+    public static float wrapDegrees(float degrees) {
+        degrees %= 360.0f;
+        if (degrees > 180.0f) {
+            degrees -= 360.0f;
+        } else if (degrees < -180.0f) {
+            degrees += 360.0f;
+        }
+        return degrees;
+    }
+}
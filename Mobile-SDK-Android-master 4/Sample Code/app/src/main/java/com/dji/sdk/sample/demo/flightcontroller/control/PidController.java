@@ -0,0 +1,99 @@
+package com.dji.sdk.sample.demo.flightcontroller.control;
+
+/**
+ * 1軸の PID 制御（フィードフォワード付き）。
+ * 微分は測定値にかけ、目標が段階的に更新されたときに出力が跳ねないようにする。
+ * 出力が上下限に張り付いている間は、その方向への積分を止める（ワインドアップ対策）。
+ */
+public final class PidController {
+    private float kp;
+    private float ki;
+    private float kd;
+    private float kff;
+    private float integralLimit = Float.MAX_VALUE;
+    private float integralZone = Float.MAX_VALUE;
+    // 微分の一次ローパスの係数（1 で無効）
+    private float derivativeSmoothing = 0.5f;
+
+    private float integral;
+    private float derivative;
+    private float lastMeasurement;
+    private boolean hasLastMeasurement;
+
+    public PidController(float kp, float ki, float kd) {
+        this.kp = kp;
+        this.ki = ki;
+        this.kd = kd;
+    }
+
+    public PidController gains(float kp, float ki, float kd) {
+        this.kp = kp;
+        this.ki = ki;
+        this.kd = kd;
+        return this;
+    }
+
+    /** フィードフォワードのゲイン。update() に渡した目標の変化率に掛ける。 */
+    public PidController feedForward(float kff) {
+        this.kff = kff;
+        return this;
+    }
+
+    /** 積分項の絶対値の上限（出力の単位）。 */
+    public PidController integralLimit(float integralLimit) {
+        this.integralLimit = integralLimit;
+        return this;
+    }
+
+    /** 誤差の絶対値がこれ以下のときだけ積分する（大きなステップで積分が溜まって行き過ぎないように）。 */
+    public PidController integralZone(float integralZone) {
+        this.integralZone = integralZone;
+        return this;
+    }
+
+    public PidController derivativeSmoothing(float derivativeSmoothing) {
+        this.derivativeSmoothing = derivativeSmoothing;
+        return this;
+    }
+
+    /**
+     * @param error           目標 - 測定値
+     * @param measurement     測定値（微分に使う）
+     * @param setpointRate    目標の変化率（フィードフォワードに使う）
+     * @param dt              前回からの経過時間 [s]
+     * @param minOutput       出力の下限
+     * @param maxOutput       出力の上限
+     */
+    public float update(float error, float measurement, float setpointRate, float dt,
+                        float minOutput, float maxOutput) {
+        if (dt <= 0) {
+            return clamp(kp * error + integral + kff * setpointRate, minOutput, maxOutput);
+        }
+        if (hasLastMeasurement) {
+            float rawDerivative = -(measurement - lastMeasurement) / dt;
+            derivative += derivativeSmoothing * (rawDerivative - derivative);
+        }
+        lastMeasurement = measurement;
+        hasLastMeasurement = true;
+
+        float unclamped = kp * error + integral + kd * derivative + kff * setpointRate;
+        float output = clamp(unclamped, minOutput, maxOutput);
+        // 張り付いた方向へさらに押す積分は止める
+        boolean pushingHigh = unclamped >= maxOutput && error > 0;
+        boolean pushingLow = unclamped <= minOutput && error < 0;
+        if (!pushingHigh && !pushingLow && Math.abs(error) <= integralZone) {
+            integral = clamp(integral + ki * error * dt, -integralLimit, integralLimit);
+        }
+        return output;
+    }
+
+    public void reset() {
+        integral = 0;
+        derivative = 0;
+        hasLastMeasurement = false;
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
@@ -0,0 +1,101 @@
+package com.dji.sdk.sample.demo.flightcontroller.control;
+
+/**
+ * オフラインでゲインを調整するためのジンバルのモデル。
+ * 速度指令は遅延（送信〜反映）の後、一次遅れで実際の角速度になり、それを積分して姿勢にする。
+ * 姿勢は可動範囲で止まる。時間の単位は呼び出し側が渡す nanos。
+ */
+public final class SimulatedGimbal {
+    private static final int MAX_PENDING = 64;
+
+    private final float timeConstant;
+    private final long latencyNanos;
+    private float minPitch = -90.0f;
+    private float maxPitch = 30.0f;
+
+    private float pitch;
+    private float yaw;
+    private float pitchRate;
+    private float yawRate;
+    private float commandedPitch;
+    private float commandedYaw;
+    private long nowNanos;
+
+    // 遅延中の指令（リングバッファ）
+    private final long[] pendingNanos = new long[MAX_PENDING];
+    private final float[] pendingPitch = new float[MAX_PENDING];
+    private final float[] pendingYaw = new float[MAX_PENDING];
+    private int pendingHead;
+    private int pendingCount;
+
+    /**
+     * @param timeConstant 指令速度に対する一次遅れの時定数 [s]
+     * @param latencyNanos 指令が反映されるまでの遅延
+     */
+    public SimulatedGimbal(float timeConstant, long latencyNanos) {
+        this.timeConstant = timeConstant;
+        this.latencyNanos = latencyNanos;
+    }
+
+    /** 実機の計測値に近い既定値（時定数 80 ms、遅延 60 ms）。 */
+    public static SimulatedGimbal withDefaults() {
+        return new SimulatedGimbal(0.08f, 60_000_000L);
+    }
+
+    public void setPitchRange(float minPitch, float maxPitch) {
+        this.minPitch = minPitch;
+        this.maxPitch = maxPitch;
+    }
+
+    public void reset(float pitch, float yaw, long nowNanos) {
+        this.pitch = pitch;
+        this.yaw = yaw;
+        pitchRate = 0;
+        yawRate = 0;
+        commandedPitch = 0;
+        commandedYaw = 0;
+        pendingCount = 0;
+        this.nowNanos = nowNanos;
+    }
+
+    /** 速度指令 [度/秒] を送る。 */
+    public void command(float pitchSpeed, float yawSpeed, long nowNanos) {
+        if (pendingCount == MAX_PENDING) {
+            pendingHead = (pendingHead + 1) % MAX_PENDING;
+            pendingCount--;
+        }
+        int index = (pendingHead + pendingCount) % MAX_PENDING;
+        pendingNanos[index] = nowNanos + latencyNanos;
+        pendingPitch[index] = pitchSpeed;
+        pendingYaw[index] = yawSpeed;
+        pendingCount++;
+    }
+
+    /** toNanos まで時間を進める。 */
+    public void advance(long toNanos, long stepNanos) {
+        while (nowNanos < toNanos) {
+            long next = Math.min(toNanos, nowNanos + stepNanos);
+            while (pendingCount > 0 && pendingNanos[pendingHead] <= next) {
+                commandedPitch = pendingPitch[pendingHead];
+                commandedYaw = pendingYaw[pendingHead];
+                pendingHead = (pendingHead + 1) % MAX_PENDING;
+                pendingCount--;
+            }
+            float dt = (next - nowNanos) / 1e9f;
+            float alpha = Math.min(1.0f, dt / timeConstant);
+            pitchRate += alpha * (commandedPitch - pitchRate);
+            yawRate += alpha * (commandedYaw - yawRate);
+            pitch = Math.max(minPitch, Math.min(maxPitch, pitch + pitchRate * dt));
+            yaw = GimbalTrackingController.wrapDegrees(yaw + yawRate * dt);
+            nowNanos = next;
+        }
+    }
+
+    public float getPitch() {
+        return pitch;
+    }
+
+    public float getYaw() {
+        return yaw;
+    }
+}
@@ -0,0 +1,92 @@
+package com.dji.sdk.sample.demo.flightcontroller.control;
+
+/**
+ * 仮想スティックの目標値（pitch, roll, yaw, throttle）を複数の入力元からまとめる。
+ * 入力元は自分が操作する軸だけを書き込み、制御ループは周期ごとに各軸の最新値を読む。
+ * 各軸は保持時間を過ぎると、ランプ時間をかけて直線的に 0 へ戻る（入力元が止まっても機体が流れ続けないように）。
+ * 時刻は呼び出し側が渡す（System.nanoTime() を想定）。
+ */
+public final class StickSetpoints {
+    public static final int PITCH = 0;
+    public static final int ROLL = 1;
+    public static final int YAW = 2;
+    public static final int THROTTLE = 3;
+
+    // set() に渡す軸のビットマスク
+    public static final int AXIS_PITCH = 1 << PITCH;
+    public static final int AXIS_ROLL = 1 << ROLL;
+    public static final int AXIS_YAW = 1 << YAW;
+    public static final int AXIS_THROTTLE = 1 << THROTTLE;
+    public static final int AXES_PITCH_ROLL = AXIS_PITCH | AXIS_ROLL;
+    public static final int AXES_YAW_THROTTLE = AXIS_YAW | AXIS_THROTTLE;
+    public static final int AXES_ALL = AXES_PITCH_ROLL | AXES_YAW_THROTTLE;
+
+    /** 次に書き込まれるまで値を保持する（ジョイスティックのように、動かさない間はイベントが来ない入力用）。 */
+    public static final long HOLD_UNTIL_CHANGED = Long.MAX_VALUE;
+
+    private final float[] values = new float[4];
+    private final long[] updatedNanos = new long[4];
+    private final long[] holdNanos = new long[4];
+    private long rampNanos;
+
+    public StickSetpoints(long rampNanos) {
+        this.rampNanos = rampNanos;
+    }
+
+    public synchronized void setRampNanos(long rampNanos) {
+        this.rampNanos = rampNanos;
+    }
+
+    /**
+     * axes で指定した軸の目標値を書き込む。指定していない軸の引数は無視する。
+     *
+     * @param holdNanos この時間だけ値を保持し、その後 0 へ戻す。{@link #HOLD_UNTIL_CHANGED} なら保持し続ける
+     */
+    public synchronized void set(int axes, float pitch, float roll, float yaw, float throttle,
+                                 long nowNanos, long holdNanos) {
+        put(axes, PITCH, pitch, nowNanos, holdNanos);
+        put(axes, ROLL, roll, nowNanos, holdNanos);
+        put(axes, YAW, yaw, nowNanos, holdNanos);
+        put(axes, THROTTLE, throttle, nowNanos, holdNanos);
+    }
+
+    private void put(int axes, int axis, float value, long nowNanos, long hold) {
+        if ((axes & (1 << axis)) == 0) {
+            return;
+        }
+        values[axis] = value;
+        updatedNanos[axis] = nowNanos;
+        holdNanos[axis] = hold;
+    }
+
+    /** 全軸を即座に 0 にする。 */
+    public synchronized void clear() {
+        for (int axis = 0; axis < values.length; axis++) {
+            values[axis] = 0.0f;
+            holdNanos[axis] = HOLD_UNTIL_CHANGED;
+        }
+    }
+
+    /** nowNanos 時点で送る値を、{@link #PITCH} などの順で command に書き込む。 */
+    public synchronized void sample(long nowNanos, float[] command) {
+        for (int axis = 0; axis < values.length; axis++) {
+            command[axis] = values[axis] * scale(axis, nowNanos);
+        }
+    }
+
+    // 保持時間内なら 1、ランプ中は 1→0、ランプ後は 0
+    private float scale(int axis, long nowNanos) {
+        long hold = holdNanos[axis];
+        if (hold == HOLD_UNTIL_CHANGED) {
+            return 1.0f;
+        }
+        long overdue = nowNanos - updatedNanos[axis] - hold;
+        if (overdue <= 0) {
+            return 1.0f;
+        }
+        if (overdue >= rampNanos) {
+            return 0.0f;
+        }
+        return 1.0f - overdue / (float) rampNanos;
+    }
+}
@@ -0,0 +1,285 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 検出と検出の間をつなぐ軽量なマルチオブジェクトトラッカー。
+ * 毎フレーム {@link #predict(long)} で等速モデルにより位置を進め、
+ * 検出が届いたら {@link #update} でIoUによる貪欲な対応付けを行って補正する。
+ * 速く動く対象でIoUが閾値に届かない場合は、予測中心からの距離（対象の大きさで正規化）で対応付ける。
+ * 追跡IDは対象を見失うまで変わらない。Android の型には依存しない。
+ * <p>
+ * 軽いモデルと重いモデルの2段で検出するときは、重いモデルの結果を {@link #confirm} で渡す。
+ * 同じトラックに対応付けて観測誤差を小さく扱い（位置とサイズを強く補正する）、
+ * 推論範囲内にいるはずなのに見つからなかったトラックは追従対象から外す。
+ */
+public class BoxTracker {
+    private final List<Track> tracks = new ArrayList<>();
+    private final float iouThreshold;
+    private final long maxMissNanos;
+    private float distanceGate = 1.0f;
+
+    private float positionNoise = 2000.0f;
+    private float sizeNoise = 200.0f;
+    private float measurementNoise = 25.0f;
+    // 確認用の検出の観測誤差（measurementNoise に対する倍率）
+    private float confirmationNoiseScale = 0.25f;
+    private float initialPositionVariance = 100.0f;
+    private float initialVelocityVariance = 10000.0f;
+
+    private int nextId = 1;
+    private int primaryTrackId = -1;
+    private boolean[] detectionMatched = new boolean[8];
+    // 直前の update / confirm で各検出を対応付けた（または新しく作った）トラックのID
+    private int[] detectionTrackIds = new int[8];
+    private int detectionCount;
+    private boolean[] trackMatched = new boolean[8];
+
+    /**
+     * @param iouThreshold 同じ対象とみなす予測位置と検出のIoUの下限
+     * @param maxMissNanos 検出と対応付けられないままこの時間が過ぎたトラックは消す
+     */
+    public BoxTracker(float iouThreshold, long maxMissNanos) {
+        this.iouThreshold = iouThreshold;
+        this.maxMissNanos = maxMissNanos;
+    }
+
+    /**
+     * カルマンフィルタの雑音パラメータを設定する。
+     *
+     * @param positionNoise    中心位置の加速度の分散（(px/s^2)^2）
+     * @param sizeNoise        幅・高さの変化の加速度の分散
+     * @param measurementNoise 検出位置の観測誤差の分散（px^2）
+     */
+    public void setNoise(float positionNoise, float sizeNoise, float measurementNoise) {
+        this.positionNoise = positionNoise;
+        this.sizeNoise = sizeNoise;
+        this.measurementNoise = measurementNoise;
+    }
+
+    /** 確認用の検出（重いモデル）の観測誤差を、通常の検出に対する倍率で設定する。 */
+    public void setConfirmationNoiseScale(float confirmationNoiseScale) {
+        this.confirmationNoiseScale = confirmationNoiseScale;
+    }
+
+    /** IoUで対応付けできなかった検出を、予測中心から (対角長 × gate) 以内のトラックに対応付ける。 */
+    public void setDistanceGate(float distanceGate) {
+        this.distanceGate = distanceGate;
+    }
+
+    /** 全トラックを指定時刻まで進め、見失ったトラックを消す。 */
+    public void predict(long nowNanos) {
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            Track track = tracks.get(i);
+            if (nowNanos - track.getLastUpdateNanos() > maxMissNanos) {
+                removeTrack(i);
+                continue;
+            }
+            track.predict(nowNanos, positionNoise, sizeNoise);
+        }
+    }
+
+    /**
+     * 検出結果でトラックを更新する。boxes は [left, top, right, bottom] を count 個並べたもの。
+     *
+     * @param frameTimestampNanos 検出の元フレームの時刻。トラックの推定時刻より古くてもよい
+     */
+    public void update(float[] boxes, float[] scores, int count, long frameTimestampNanos) {
+        associate(boxes, scores, count, frameTimestampNanos, measurementNoise);
+    }
+
+    /**
+     * 確認用の検出（重いモデル）の結果でトラックを更新する。対応付けは {@link #update} と同じで、
+     * 対応したトラックは確認済みになる。推論範囲（フレームのピクセル座標）に中心がありながら
+     * 対応しなかったトラックは、再び確認されるまで追従対象に選ばない。
+     */
+    public void confirm(float[] boxes, float[] scores, int count, long frameTimestampNanos,
+                        float regionLeft, float regionTop, float regionRight, float regionBottom) {
+        associate(boxes, scores, count, frameTimestampNanos, measurementNoise * confirmationNoiseScale);
+        for (int t = 0; t < tracks.size(); t++) {
+            Track track = tracks.get(t);
+            if (trackMatched[t]) {
+                track.confirm(frameTimestampNanos);
+            } else if (track.getCenterX() >= regionLeft && track.getCenterX() < regionRight
+                    && track.getCenterY() >= regionTop && track.getCenterY() < regionBottom) {
+                track.refute();
+                if (track.getId() == primaryTrackId) {
+                    primaryTrackId = -1;
+                }
+            }
+        }
+    }
+
+    private void associate(float[] boxes, float[] scores, int count, long frameTimestampNanos, float noise) {
+        ensureCapacity(count, tracks.size());
+        // 推定時刻が観測より遅れているトラックは観測時刻まで進める
+        for (int i = 0; i < tracks.size(); i++) {
+            tracks.get(i).predict(frameTimestampNanos, positionNoise, sizeNoise);
+            trackMatched[i] = false;
+        }
+        for (int d = 0; d < count; d++) {
+            detectionMatched[d] = false;
+        }
+        detectionCount = count;
+
+        // スコアの高い検出から順に、最もIoUの高い未対応トラックに割り当てる
+        for (int n = 0; n < count; n++) {
+            int d = nextBestDetection(scores, count);
+            detectionMatched[d] = true;
+            int offset = d * 4;
+            int bestTrack = -1;
+            float bestIou = iouThreshold;
+            for (int t = 0; t < tracks.size(); t++) {
+                if (trackMatched[t]) {
+                    continue;
+                }
+                float iou = tracks.get(t).iou(boxes[offset], boxes[offset + 1], boxes[offset + 2], boxes[offset + 3]);
+                if (iou >= bestIou) {
+                    bestIou = iou;
+                    bestTrack = t;
+                }
+            }
+            if (bestTrack < 0) {
+                bestTrack = nearestTrack(boxes, offset);
+            }
+            if (bestTrack >= 0) {
+                trackMatched[bestTrack] = true;
+                detectionTrackIds[d] = tracks.get(bestTrack).getId();
+                tracks.get(bestTrack).correct(boxes[offset], boxes[offset + 1], boxes[offset + 2],
+                        boxes[offset + 3], scores[d], frameTimestampNanos, noise);
+            } else {
+                tracks.add(new Track(nextId++, boxes[offset], boxes[offset + 1], boxes[offset + 2],
+                        boxes[offset + 3], scores[d], Math.max(frameTimestampNanos, latestTimestamp()),
+                        frameTimestampNanos, initialPositionVariance, initialVelocityVariance));
+                ensureCapacity(count, tracks.size());
+                trackMatched[tracks.size() - 1] = true;
+                detectionTrackIds[d] = nextId - 1;
+            }
+        }
+    }
+
+    private int nearestTrack(float[] boxes, int offset) {
+        float centerX = (boxes[offset] + boxes[offset + 2]) * 0.5f;
+        float centerY = (boxes[offset + 1] + boxes[offset + 3]) * 0.5f;
+        int nearest = -1;
+        float nearestDistance = Float.MAX_VALUE;
+        for (int t = 0; t < tracks.size(); t++) {
+            if (trackMatched[t]) {
+                continue;
+            }
+            Track track = tracks.get(t);
+            float dx = centerX - track.getCenterX();
+            float dy = centerY - track.getCenterY();
+            float diagonal = track.getWidth() * track.getWidth() + track.getHeight() * track.getHeight();
+            // 対角長で正規化した距離の2乗で比較する
+            float distance = (dx * dx + dy * dy) / diagonal;
+            if (distance <= distanceGate * distanceGate && distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = t;
+            }
+        }
+        return nearest;
+    }
+
+    private int nextBestDetection(float[] scores, int count) {
+        int best = -1;
+        for (int d = 0; d < count; d++) {
+            if (!detectionMatched[d] && (best < 0 || scores[d] > scores[best])) {
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    private long latestTimestamp() {
+        long latest = Long.MIN_VALUE;
+        for (int i = 0; i < tracks.size(); i++) {
+            latest = Math.max(latest, tracks.get(i).getTimestampNanos());
+        }
+        return latest;
+    }
+
+    private void ensureCapacity(int detections, int trackCount) {
+        if (detectionMatched.length < detections) {
+            detectionMatched = new boolean[detections * 2];
+            detectionTrackIds = new int[detections * 2];
+        }
+        if (trackMatched.length < trackCount) {
+            boolean[] grown = new boolean[trackCount * 2];
+            System.arraycopy(trackMatched, 0, grown, 0, trackMatched.length);
+            trackMatched = grown;
+        }
+    }
+
+    private void removeTrack(int index) {
+        if (tracks.get(index).getId() == primaryTrackId) {
+            primaryTrackId = -1;
+        }
+        tracks.remove(index);
+    }
+
+    /**
+     * 追従する対象のトラック。一度選んだ対象は見失うまで同じIDを返し、
+     * 見失ったら確認済みのものを優先して、補正回数×スコアが最も大きいトラックに切り替える。
+     * 確認用の検出で見つからなかったトラックは選ばない。
+     */
+    public Track getPrimaryTrack() {
+        Track best = null;
+        for (int i = 0; i < tracks.size(); i++) {
+            Track track = tracks.get(i);
+            if (track.getId() == primaryTrackId) {
+                return track;
+            }
+            if (!track.isRefuted() && (best == null || isPreferred(track, best))) {
+                best = track;
+            }
+        }
+        primaryTrackId = best != null ? best.getId() : -1;
+        return best;
+    }
+
+    private static boolean isPreferred(Track track, Track other) {
+        if (track.isConfirmed() != other.isConfirmed()) {
+            return track.isConfirmed();
+        }
+        return track.getHits() * track.getScore() > other.getHits() * other.getScore();
+    }
+
+    /** 直前の {@link #update} / {@link #confirm} で index 番目の検出を対応付けたトラック。消えていれば null。 */
+    public Track getTrackForDetection(int index) {
+        int id = detectionTrackIds[index];
+        for (int i = 0; i < tracks.size(); i++) {
+            if (tracks.get(i).getId() == id) {
+                return tracks.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 直前の {@link #update} / {@link #confirm} でいずれかの検出と対応付けた（または新しく作った）トラックなら true。
+     * 推定時刻はフレームごとに進むので、その検出で補正されたかどうかは時刻の比較ではなくこれで見る。
+     */
+    public boolean isMatched(Track track) {
+        if (track == null) {
+            return false;
+        }
+        for (int d = 0; d < detectionCount; d++) {
+            if (detectionTrackIds[d] == track.getId()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<Track> getTracks() {
+        return tracks;
+    }
+
+    public void clear() {
+        tracks.clear();
+        detectionCount = 0;
+        primaryTrackId = -1;
+    }
+}
@@ -0,0 +1,105 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+import java.util.Locale;
+
+/**
+ * 軽いモデルと重いモデルの2段の検出で、どのフレームを重いモデル（確認用）に回すかを決める。
+ * <p>
+ * 普段は軽いモデルで毎回検出し、次のときだけ重いモデルで確認・補正する。
+ * <ul>
+ *   <li>追従中の対象がまだ重いモデルで確認されていない（新しく現れた・入れ替わった）</li>
+ *   <li>追従中の対象のスコアが下がった</li>
+ *   <li>確認の後に対象を見失った</li>
+ *   <li>一定時間ごと（見落としと誤検出の見直し）</li>
+ * </ul>
+ * 重いモデルが推論スレッドを占める割合は上限を超えないようにし、軽いモデルの検出頻度を保つ。
+ * 時刻は System.nanoTime()。
+ */
+public final class CascadePolicy {
+    // 重いモデルの推論時間の指数移動平均の係数
+    private static final float INFERENCE_SMOOTHING = 0.2f;
+
+    private long confirmIntervalNanos = 1_000_000_000L;
+    private float lowScore = 0.6f;
+    // 推論スレッドのうち重いモデルに使ってよい割合
+    private float maxDutyCycle = 0.25f;
+
+    private long heavyInferenceNanos;
+    private long lastConfirmNanos;
+    private boolean hasTarget;
+    private boolean targetConfirmed;
+    private float targetScore;
+    private boolean lostSinceConfirm;
+    private int confirmations;
+
+    /**
+     * @param heavyInferenceNanos 重いモデルの推論1回の時間の見込み（作成時の計測値）
+     */
+    public CascadePolicy(long heavyInferenceNanos) {
+        this.heavyInferenceNanos = heavyInferenceNanos;
+    }
+
+    /** この間隔で必ず重いモデルでも検出する。 */
+    public synchronized void setConfirmIntervalNanos(long confirmIntervalNanos) {
+        this.confirmIntervalNanos = confirmIntervalNanos;
+    }
+
+    /** 追従中の対象のスコアがこれを下回ったら確認する。 */
+    public synchronized void setLowScore(float lowScore) {
+        this.lowScore = lowScore;
+    }
+
+    /** 推論スレッドのうち重いモデルに使ってよい割合（0〜1）。 */
+    public synchronized void setMaxDutyCycle(float maxDutyCycle) {
+        this.maxDutyCycle = maxDutyCycle;
+    }
+
+    /** 追従中の対象を知らせる（トラッカーを更新した後に呼ぶ）。 */
+    public synchronized void onTarget(float score, boolean confirmed) {
+        hasTarget = true;
+        targetScore = score;
+        targetConfirmed = confirmed;
+    }
+
+    public synchronized void onTargetLost() {
+        if (hasTarget) {
+            lostSinceConfirm = true;
+        }
+        hasTarget = false;
+    }
+
+    /** 推論スレッドでフレームごとに呼ぶ。true ならこのフレームは重いモデルで検出する。 */
+    public synchronized boolean shouldConfirm(long nowNanos) {
+        long elapsed = nowNanos - lastConfirmNanos;
+        if (lastConfirmNanos != 0 && elapsed < heavyInferenceNanos / maxDutyCycle) {
+            return false;
+        }
+        return lastConfirmNanos == 0
+                || elapsed >= confirmIntervalNanos
+                || (hasTarget && (!targetConfirmed || targetScore < lowScore))
+                || lostSinceConfirm;
+    }
+
+    /** 重いモデルで検出し終えたときに呼ぶ。 */
+    public synchronized void onConfirmed(long inferenceNanos, long nowNanos) {
+        if (inferenceNanos > 0) {
+            heavyInferenceNanos += (long) (INFERENCE_SMOOTHING * (inferenceNanos - heavyInferenceNanos));
+        }
+        lastConfirmNanos = nowNanos;
+        lostSinceConfirm = false;
+        confirmations++;
+    }
+
+    public synchronized int getConfirmations() {
+        return confirmations;
+    }
+
+    public synchronized long getHeavyInferenceNanos() {
+        return heavyInferenceNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "confirm=%d heavy=%dms", confirmations, heavyInferenceNanos / 1_000_000L);
+    }
+}
@@ -0,0 +1,221 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+/**
+ * 1フレーム分の検出結果をプリミティブ配列で持つ再利用可能なバッファ。
+ * 座標は元フレームのピクセル座標 [left, top, right, bottom]、クラスはモデルのクラスID。
+ * ラベル文字列が必要なときは {@link LabelMap} で引く。
+ */
+public final class DetectionResults {
+    private final float[] boxes;
+    private final int[] classIds;
+    private final float[] scores;
+    // 対応付けたトラックの中心の速度 [vx, vy]（px/秒）。表示の補間に使う。なければ 0
+    private final float[] velocities;
+    private int count;
+
+    private long frameTimestampNanos;
+    private int imageWidth;
+    private int imageHeight;
+    // 推論した範囲（ROI）。なければフレーム全体
+    private boolean hasRegion;
+    private int regionLeft;
+    private int regionTop;
+    private int regionRight;
+    private int regionBottom;
+    // 確認用の重いモデルの結果なら true
+    private boolean confirmation;
+    private final FrameTimeline timeline = new FrameTimeline();
+
+    public DetectionResults(int capacity) {
+        boxes = new float[capacity * 4];
+        classIds = new int[capacity];
+        scores = new float[capacity];
+        velocities = new float[capacity * 2];
+    }
+
+    /** フレームの時刻とサイズを設定する。推論範囲はフレーム全体に、種別は通常の検出に戻る。 */
+    public void setFrame(long frameTimestampNanos, int imageWidth, int imageHeight) {
+        this.frameTimestampNanos = frameTimestampNanos;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        hasRegion = false;
+        confirmation = false;
+    }
+
+    /** 確認用の重いモデルで検出した結果として印を付ける。 */
+    public void setConfirmation(boolean confirmation) {
+        this.confirmation = confirmation;
+    }
+
+    /** フレームの一部（ピクセル座標）だけを推論したときに設定する。後処理はこの範囲に座標を換算する。 */
+    public void setRegion(int left, int top, int right, int bottom) {
+        regionLeft = left;
+        regionTop = top;
+        regionRight = right;
+        regionBottom = bottom;
+        hasRegion = true;
+    }
+
+    /** フレームの時刻・サイズと、ここまでの各段の時刻を引き継ぐ。 */
+    public void setFrame(YuvFrame frame) {
+        setFrame(frame.getTimestampNanos(), frame.getWidth(), frame.getHeight());
+        timeline.copyFrom(frame.getTimeline());
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /** @return 容量を超えた場合は追加せずに false */
+    public boolean add(float left, float top, float right, float bottom, int classId, float score) {
+        if (count == classIds.length) {
+            return false;
+        }
+        int offset = count * 4;
+        boxes[offset] = left;
+        boxes[offset + 1] = top;
+        boxes[offset + 2] = right;
+        boxes[offset + 3] = bottom;
+        classIds[count] = classId;
+        scores[count] = score;
+        velocities[count * 2] = 0;
+        velocities[count * 2 + 1] = 0;
+        count++;
+        return true;
+    }
+
+    /** index 番目の検出を除き、後ろの検出を詰める。 */
+    public void remove(int index) {
+        int tail = count - index - 1;
+        System.arraycopy(boxes, (index + 1) * 4, boxes, index * 4, tail * 4);
+        System.arraycopy(classIds, index + 1, classIds, index, tail);
+        System.arraycopy(scores, index + 1, scores, index, tail);
+        System.arraycopy(velocities, (index + 1) * 2, velocities, index * 2, tail * 2);
+        count--;
+    }
+
+    public void copyFrom(DetectionResults other) {
+        setFrame(other.frameTimestampNanos, other.imageWidth, other.imageHeight);
+        timeline.copyFrom(other.timeline);
+        hasRegion = other.hasRegion;
+        regionLeft = other.regionLeft;
+        regionTop = other.regionTop;
+        regionRight = other.regionRight;
+        regionBottom = other.regionBottom;
+        confirmation = other.confirmation;
+        count = Math.min(other.count, classIds.length);
+        System.arraycopy(other.boxes, 0, boxes, 0, count * 4);
+        System.arraycopy(other.classIds, 0, classIds, 0, count);
+        System.arraycopy(other.scores, 0, scores, 0, count);
+        System.arraycopy(other.velocities, 0, velocities, 0, count * 2);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return classIds.length;
+    }
+
+    public float getLeft(int index) {
+        return boxes[index * 4];
+    }
+
+    public float getTop(int index) {
+        return boxes[index * 4 + 1];
+    }
+
+    public float getRight(int index) {
+        return boxes[index * 4 + 2];
+    }
+
+    public float getBottom(int index) {
+        return boxes[index * 4 + 3];
+    }
+
+    public int getClassId(int index) {
+        return classIds[index];
+    }
+
+    /** 別のラベル表のクラスIDに置き換えるときに使う。 */
+    public void setClassId(int index, int classId) {
+        classIds[index] = classId;
+    }
+
+    /** トラッカーで推定した中心の速度（px/秒）を付ける。 */
+    public void setVelocity(int index, float velocityX, float velocityY) {
+        velocities[index * 2] = velocityX;
+        velocities[index * 2 + 1] = velocityY;
+    }
+
+    public float getVelocityX(int index) {
+        return velocities[index * 2];
+    }
+
+    public float getVelocityY(int index) {
+        return velocities[index * 2 + 1];
+    }
+
+    public float getScore(int index) {
+        return scores[index];
+    }
+
+    /** [left, top, right, bottom] を getCount() 個並べた配列（容量分の長さがある）。 */
+    public float[] getBoxes() {
+        return boxes;
+    }
+
+    public float[] getScores() {
+        return scores;
+    }
+
+    /** 元フレームを受け取った時刻（System.nanoTime() 基準）。 */
+    public long getFrameTimestampNanos() {
+        return frameTimestampNanos;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    /** フレームの一部だけを推論した結果なら true。 */
+    public boolean hasRegion() {
+        return hasRegion;
+    }
+
+    public int getRegionLeft() {
+        return hasRegion ? regionLeft : 0;
+    }
+
+    public int getRegionTop() {
+        return hasRegion ? regionTop : 0;
+    }
+
+    public int getRegionRight() {
+        return hasRegion ? regionRight : imageWidth;
+    }
+
+    public int getRegionBottom() {
+        return hasRegion ? regionBottom : imageHeight;
+    }
+
+    /** 確認用の重いモデルの結果なら true。 */
+    public boolean isConfirmation() {
+        return confirmation;
+    }
+
+    /** 元フレームの受信から後処理までの各段の時刻。 */
+    public FrameTimeline getTimeline() {
+        return timeline;
+    }
+
+    /** 元フレームを受け取ってからの経過時間。 */
+    public long getAgeMillis() {
+        return (System.nanoTime() - frameTimestampNanos) / 1_000_000L;
+    }
+}
@@ -0,0 +1,154 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+import java.util.Locale;
+
+/**
+ * デコードしたフレームのうち、どれを検出に回すかを決める。
+ * <ul>
+ *   <li>SCAN: しばらく人が見えていないときは、間隔を空けて探すだけにする</li>
+ *   <li>ACQUIRE: 人が見えたが追跡が安定していないときは、推論が許す限り毎回検出する</li>
+ *   <li>TRACK: 追跡が安定しているときは、対象の速さと推定の確かさに応じて間隔を空ける</li>
+ * </ul>
+ * 最短の間隔は実測した推論時間（フレームのコピーから後処理の終わりまで）で、それより速く投げても
+ * メールボックスで置き換えられるだけなので投げない。時刻は System.nanoTime()。
+ */
+public final class DetectionScheduler {
+    public static final int MODE_SCAN = 0;
+    public static final int MODE_ACQUIRE = 1;
+    public static final int MODE_TRACK = 2;
+
+    private static final String[] MODE_NAMES = {"SCAN", "ACQUIRE", "TRACK"};
+    // 推論時間の指数移動平均の係数
+    private static final float INFERENCE_SMOOTHING = 0.2f;
+
+    private long scanIntervalNanos = 1_000_000_000L;
+    private long scanAfterNanos = 3_000_000_000L;
+    private long maxTrackIntervalNanos = 400_000_000L;
+    private int minTrackHits = 3;
+    // 1秒にボックスの大きさのこれだけ動いたら最短間隔にする
+    private float fastSpeed = 1.0f;
+    // 位置の標準偏差がボックスの大きさのこれだけあれば最短間隔にする
+    private float maxUncertainty = 0.25f;
+
+    private int mode = MODE_ACQUIRE;
+    private long intervalNanos;
+    private long inferenceNanos = 100_000_000L;
+    private long lastScheduledNanos;
+    private long lastSeenNanos;
+
+    public DetectionScheduler(long nowNanos) {
+        lastSeenNanos = nowNanos;
+        intervalNanos = inferenceNanos;
+    }
+
+    /** 人が見えなくなってから SCAN に移るまでの時間と、SCAN 中の間隔。 */
+    public synchronized void setScan(long scanAfterNanos, long scanIntervalNanos) {
+        this.scanAfterNanos = scanAfterNanos;
+        this.scanIntervalNanos = scanIntervalNanos;
+    }
+
+    /** TRACK で最も空けるときの間隔。 */
+    public synchronized void setMaxTrackIntervalNanos(long maxTrackIntervalNanos) {
+        this.maxTrackIntervalNanos = maxTrackIntervalNanos;
+    }
+
+    /**
+     * @param fastSpeed      この速さ（ボックスの大きさ/秒）以上なら最短間隔
+     * @param maxUncertainty 位置の標準偏差がボックスの大きさのこの割合以上なら最短間隔
+     */
+    public synchronized void setSensitivity(float fastSpeed, float maxUncertainty) {
+        this.fastSpeed = fastSpeed;
+        this.maxUncertainty = maxUncertainty;
+    }
+
+    /** デコードしたフレームごとに呼ぶ。true なら検出に回す。 */
+    public synchronized boolean shouldDetect(long nowNanos) {
+        if (mode != MODE_SCAN && nowNanos - lastSeenNanos > scanAfterNanos) {
+            setMode(MODE_SCAN);
+        }
+        if (lastScheduledNanos != 0 && nowNanos - lastScheduledNanos < intervalNanos) {
+            return false;
+        }
+        lastScheduledNanos = nowNanos;
+        return true;
+    }
+
+    /** 推論にかかった時間（フレームのコピーから後処理まで）を知らせる。 */
+    public synchronized void onInferenceTime(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        inferenceNanos += (long) (INFERENCE_SMOOTHING * (nanos - inferenceNanos));
+        if (mode == MODE_ACQUIRE) {
+            intervalNanos = inferenceNanos;
+        }
+    }
+
+    /**
+     * 検出結果をトラッカーに反映した後に呼ぶ。
+     *
+     * @param count          対象クラスの検出数
+     * @param primary        追従中のトラック（なければ null）
+     * @param primaryMatched この検出で primary が対応付けられたか（{@link BoxTracker#isMatched}）。
+     *                       トラックは毎フレーム予測で進むので、時刻の比較では判定できない
+     */
+    public synchronized void onDetection(int count, Track primary, boolean primaryMatched, long nowNanos) {
+        if (count > 0) {
+            lastSeenNanos = nowNanos;
+        }
+        if (primary != null && primaryMatched && primary.getHits() >= minTrackHits) {
+            setMode(MODE_TRACK);
+            intervalNanos = trackInterval(primary);
+        } else if (count > 0 || nowNanos - lastSeenNanos <= scanAfterNanos) {
+            if (mode == MODE_SCAN) {
+                // 見つけたらすぐに次のフレームから検出する
+                lastScheduledNanos = 0;
+            }
+            setMode(MODE_ACQUIRE);
+        } else {
+            setMode(MODE_SCAN);
+        }
+    }
+
+    private long trackInterval(Track track) {
+        float size = Math.max(1.0f, Math.max(track.getWidth(), track.getHeight()));
+        float speed = (float) Math.hypot(track.getVelocityX(), track.getVelocityY()) / size;
+        float uncertainty = (float) Math.sqrt(track.getPositionVariance()) / size;
+        float motion = Math.min(1.0f, speed / fastSpeed);
+        float doubt = Math.min(1.0f, uncertainty / maxUncertainty);
+        float relax = (1.0f - motion) * (1.0f - doubt);
+        long fastest = inferenceNanos;
+        return fastest + (long) (Math.max(0, maxTrackIntervalNanos - fastest) * relax);
+    }
+
+    private void setMode(int mode) {
+        this.mode = mode;
+        if (mode == MODE_SCAN) {
+            intervalNanos = scanIntervalNanos;
+        } else if (mode == MODE_ACQUIRE) {
+            intervalNanos = inferenceNanos;
+        }
+    }
+
+    public synchronized int getMode() {
+        return mode;
+    }
+
+    public synchronized long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    public synchronized long getInferenceNanos() {
+        return inferenceNanos;
+    }
+
+    public static String modeName(int mode) {
+        return MODE_NAMES[mode];
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%s interval=%dms inference=%dms", MODE_NAMES[mode],
+                intervalNanos / 1_000_000L, inferenceNanos / 1_000_000L);
+    }
+}
@@ -0,0 +1,74 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 検出パイプラインのフレーム数カウンタ。
+ * 投函されたフレームは置き換え(replaced)・推論前の破棄(dropped)・推論(inferred)のどれか1つになる。
+ * 推論後に古すぎて捨てた結果は inferred のうちの staleResults として別に数える。
+ */
+public final class DetectorStats {
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong replaced = new AtomicLong();
+    private final AtomicLong inferred = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong staleResults = new AtomicLong();
+
+    void onSubmitted() {
+        submitted.incrementAndGet();
+    }
+
+    void onReplaced() {
+        replaced.incrementAndGet();
+    }
+
+    public void onInferred() {
+        inferred.incrementAndGet();
+    }
+
+    /** 推論の前に捨てたフレーム（許容時間を超えた・検出器がない・結果の箱がない）。 */
+    public void onDropped() {
+        dropped.incrementAndGet();
+    }
+
+    /** 推論した後、届けるまでに許容時間を超えて捨てた結果（inferred にも数えてある）。 */
+    public void onStaleResult() {
+        staleResults.incrementAndGet();
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getReplaced() {
+        return replaced.get();
+    }
+
+    public long getInferred() {
+        return inferred.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getStaleResults() {
+        return staleResults.get();
+    }
+
+    /** 投函されたフレームのうち、制御まで届かなかった割合。 */
+    public float getDropRate() {
+        long total = submitted.get();
+        if (total == 0) {
+            return 0.0f;
+        }
+        return (float) (replaced.get() + dropped.get() + staleResults.get()) / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "submitted=%d replaced=%d inferred=%d dropped=%d stale=%d dropRate=%.2f",
+                getSubmitted(), getReplaced(), getInferred(), getDropped(), getStaleResults(), getDropRate());
+    }
+}
@@ -0,0 +1,50 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 1枠だけのメールボックス。まだ処理が始まっていないフレームは新しいフレームで置き換え、
+ * 古い方はすぐにプールへ返す（最新フレーム優先）。
+ */
+public final class FrameMailbox {
+    private final AtomicReference<YuvFrame> slot = new AtomicReference<>();
+    private final DetectorStats stats;
+
+    public FrameMailbox(DetectorStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * フレームを投函する。
+     *
+     * @return 枠が空だった場合 true。呼び出し側はこのときだけ取り出し処理を起動すればよい。
+     */
+    public boolean offer(YuvFrame frame) {
+        stats.onSubmitted();
+        YuvFrame replaced = slot.getAndSet(frame);
+        if (replaced != null) {
+            stats.onReplaced();
+            replaced.release();
+            return false;
+        }
+        return true;
+    }
+
+    /** 最新のフレームを取り出す。空なら null。 */
+    public YuvFrame poll() {
+        return slot.getAndSet(null);
+    }
+
+    /** 処理を待っているフレームがなければ true。 */
+    public boolean isEmpty() {
+        return slot.get() == null;
+    }
+
+    /** 残っているフレームを捨ててプールへ返す。 */
+    public void clear() {
+        YuvFrame frame = slot.getAndSet(null);
+        if (frame != null) {
+            frame.release();
+        }
+    }
+}
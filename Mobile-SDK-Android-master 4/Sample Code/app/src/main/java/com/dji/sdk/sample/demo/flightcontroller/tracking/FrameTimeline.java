@@ -0,0 +1,69 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+import java.util.Arrays;
+
+/**
+ * 1フレームが映像の受信から操縦コマンドの完了までの各段を通過した時刻（System.nanoTime()）。
+ * {@link YuvFrame} と {@link DetectionResults} が1つずつ持ち、フレームと一緒に使い回す。
+ * 通過していない段は 0。
+ */
+public final class FrameTimeline {
+    /** H.264 データを VideoDataListener で受け取った。 */
+    public static final int RECEIVE = 0;
+    /** デコーダから YUV が出てきた。 */
+    public static final int DECODE = 1;
+    /** 解析用のバッファにコピーした。 */
+    public static final int CAPTURE = 2;
+    /** モデルの入力に変換した。 */
+    public static final int PREPROCESS = 3;
+    public static final int INFERENCE = 4;
+    public static final int POSTPROCESS = 5;
+    /** この結果を反映した最初の操縦コマンドを送った。 */
+    public static final int COMMAND_SENT = 6;
+    /** そのコマンドの完了コールバックが返った。 */
+    public static final int COMMAND_ACK = 7;
+    public static final int STAGE_COUNT = 8;
+
+    private static final String[] STAGE_NAMES = {
+            "receive", "decode", "capture", "preprocess", "inference", "postprocess", "command_sent", "command_ack",
+    };
+
+    private long frameId = -1;
+    private final long[] nanos = new long[STAGE_COUNT];
+
+    public static String stageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    /** 新しいフレームとして全段の時刻を消す。 */
+    public void reset(long frameId) {
+        this.frameId = frameId;
+        Arrays.fill(nanos, 0);
+    }
+
+    public void mark(int stage, long nowNanos) {
+        nanos[stage] = nowNanos;
+    }
+
+    public void mark(int stage) {
+        nanos[stage] = System.nanoTime();
+    }
+
+    public boolean has(int stage) {
+        return nanos[stage] != 0;
+    }
+
+    public long get(int stage) {
+        return nanos[stage];
+    }
+
+    /** 映像フィードの受信順に振った単調増加の番号。未設定なら -1。 */
+    public long getFrameId() {
+        return frameId;
+    }
+
+    public void copyFrom(FrameTimeline other) {
+        frameId = other.frameId;
+        System.arraycopy(other.nanos, 0, nanos, 0, STAGE_COUNT);
+    }
+}
@@ -0,0 +1,46 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * クラスIDとラベル文字列の対応表。
+ * COCO の SSD モデルのラベルファイルは先頭が "???" で、モデルの出力クラスIDは1行ずれるため、
+ * その場合はオフセット1として扱う。
+ */
+public final class LabelMap {
+    public static final int UNKNOWN_CLASS = -1;
+    private static final String PLACEHOLDER = "???";
+
+    private final List<String> labels;
+    private final int offset;
+    private final Map<String, Integer> classIds = new HashMap<>();
+
+    public LabelMap(List<String> labelLines) {
+        this.labels = new ArrayList<>(labelLines);
+        this.offset = !labels.isEmpty() && PLACEHOLDER.equals(labels.get(0)) ? 1 : 0;
+        for (int i = labels.size() - 1; i >= offset; i--) {
+            classIds.put(labels.get(i), i - offset);
+        }
+    }
+
+    public String getLabel(int classId) {
+        int index = classId + offset;
+        if (index < 0 || index >= labels.size()) {
+            return PLACEHOLDER;
+        }
+        return labels.get(index);
+    }
+
+    /** ラベルに対応するクラスID。見つからなければ {@link #UNKNOWN_CLASS}。 */
+    public int getClassId(String label) {
+        Integer classId = classIds.get(label);
+        return classId != null ? classId : UNKNOWN_CLASS;
+    }
+
+    public int size() {
+        return labels.size() - offset;
+    }
+}
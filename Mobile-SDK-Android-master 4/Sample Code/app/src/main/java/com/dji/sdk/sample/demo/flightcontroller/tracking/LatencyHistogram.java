@@ -0,0 +1,88 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 所要時間の固定幅ヒストグラム。記録時にメモリを確保しないので、毎フレーム・毎周期の計測に使える。
+ * 範囲を超えた値は最後のビンにまとめ、最大値は別に保持する。
+ */
+public final class LatencyHistogram {
+    private final long binNanos;
+    private final long[] bins;
+    private long count;
+    private long sumNanos;
+    private long minNanos = Long.MAX_VALUE;
+    private long maxNanos;
+
+    /**
+     * @param binNanos  1ビンの幅
+     * @param rangeNanos 記録する範囲。これ以上の値は最後のビンに入る
+     */
+    public LatencyHistogram(long binNanos, long rangeNanos) {
+        this.binNanos = binNanos;
+        this.bins = new long[(int) (rangeNanos / binNanos) + 1];
+    }
+
+    public synchronized void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int bin = (int) Math.min(bins.length - 1, nanos / binNanos);
+        bins[bin]++;
+        count++;
+        sumNanos += nanos;
+        minNanos = Math.min(minNanos, nanos);
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(bins, 0);
+        count = 0;
+        sumNanos = 0;
+        minNanos = Long.MAX_VALUE;
+        maxNanos = 0;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized float getMeanMillis() {
+        return count == 0 ? 0.0f : sumNanos / (float) count / 1_000_000f;
+    }
+
+    public synchronized float getMinMillis() {
+        return count == 0 ? 0.0f : minNanos / 1_000_000f;
+    }
+
+    public synchronized float getMaxMillis() {
+        return maxNanos / 1_000_000f;
+    }
+
+    /** 指定したパーセンタイル（0〜100）の値。ビンの上端で返すので、ビン幅だけ大きめに出る。 */
+    public synchronized float getPercentileMillis(float percentile) {
+        if (count == 0) {
+            return 0.0f;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < bins.length; i++) {
+            seen += bins[i];
+            if (seen >= Math.max(1, rank)) {
+                if (i == bins.length - 1) {
+                    return maxNanos / 1_000_000f;
+                }
+                return Math.min(maxNanos, (i + 1) * binNanos) / 1_000_000f;
+            }
+        }
+        return maxNanos / 1_000_000f;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "n=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+                count, getMeanMillis(), getPercentileMillis(50), getPercentileMillis(90),
+                getPercentileMillis(99), getMaxMillis());
+    }
+}
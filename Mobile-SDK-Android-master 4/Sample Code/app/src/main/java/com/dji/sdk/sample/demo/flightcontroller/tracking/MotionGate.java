@@ -0,0 +1,253 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * 推論の前に、前回推論したフレームから映像が変わったかを輝度の粗い差分で判定する。
+ * <p>
+ * Yプレーンを格子（既定 64x36）に区切り、セルごとに間引いた64画素の平均を取った縮小画像を作る。
+ * 前回推論に回したフレームの縮小画像と比べ、全体の明るさの変化（露出の追従）を差し引いた差が
+ * 閾値を超えるセルが一定数未満なら「変化なし」として推論を省く。
+ * 比較の基準は直前のフレームではなく最後に推論したフレームなので、ゆっくりした変化も積もれば検出する。
+ * 変化があったときは、縮小画像を数セルずらして全体の動き（カメラのパン・機体の流れ）も推定する。
+ * <p>
+ * 1080p で1フレームあたり約15万画素（約7%）しか読まないので、判定は数百マイクロ秒で終わる。
+ * デコーダのスレッドから呼ぶ。時刻は System.nanoTime()。
+ */
+public final class MotionGate {
+    private static final int SAMPLES_PER_SIDE = 8;
+
+    private final int columns;
+    private final int rows;
+    private int[] current;
+    private int[] reference;
+    private boolean hasReference;
+    private int referenceWidth;
+    private int referenceHeight;
+    private long referenceNanos;
+
+    // 明るさの差（0〜255）がこれを超えたセルを「変化した」とみなす
+    private int cellThreshold = 6;
+    // 変化したセルがこの数以上なら推論する
+    private int minChangedCells = 2;
+    // 変化がなくてもこの間隔で推論する
+    private long maxSkipNanos = 2_000_000_000L;
+    // 全体の動きを探す範囲（セル数）。0 なら探さない
+    private int searchRadius = 2;
+
+    private int changedCells;
+    private int globalShiftX;
+    private int globalShiftY;
+    private long evaluated;
+    private long skipped;
+    private long lastEvaluationNanos;
+
+    public MotionGate() {
+        this(64, 36);
+    }
+
+    public MotionGate(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+        current = new int[columns * rows];
+        reference = new int[columns * rows];
+    }
+
+    /**
+     * @param cellThreshold   セルが変化したとみなす明るさの差（0〜255）
+     * @param minChangedCells 推論に回す変化セル数の下限
+     */
+    public synchronized void setThresholds(int cellThreshold, int minChangedCells) {
+        this.cellThreshold = cellThreshold;
+        this.minChangedCells = minChangedCells;
+    }
+
+    /** 変化がなくても推論する間隔（結果が古くなりすぎないように）。 */
+    public synchronized void setMaxSkipNanos(long maxSkipNanos) {
+        this.maxSkipNanos = maxSkipNanos;
+    }
+
+    /** 全体の動きを探す範囲（セル数）。0 で探さない。 */
+    public synchronized void setSearchRadius(int searchRadius) {
+        this.searchRadius = searchRadius;
+    }
+
+    /**
+     * フレームを判定する。true なら推論に回し、このフレームを次の比較の基準にする。
+     *
+     * @param luma      Yプレーンの先頭が position にあるバッファ（position と limit は変えない）
+     * @param rowStride Yプレーンの1行のバイト数
+     */
+    public synchronized boolean hasMotion(ByteBuffer luma, int width, int height, int rowStride,
+                                          long timestampNanos) {
+        long start = System.nanoTime();
+        sample(luma, width, height, rowStride);
+        boolean motion;
+        if (!hasReference || width != referenceWidth || height != referenceHeight
+                || timestampNanos - referenceNanos >= maxSkipNanos) {
+            changedCells = columns * rows;
+            globalShiftX = 0;
+            globalShiftY = 0;
+            motion = true;
+        } else {
+            changedCells = countChangedCells();
+            motion = changedCells >= minChangedCells;
+            if (motion && searchRadius > 0) {
+                estimateGlobalShift(width, height);
+            } else {
+                globalShiftX = 0;
+                globalShiftY = 0;
+            }
+        }
+
+        evaluated++;
+        if (motion) {
+            int[] swap = reference;
+            reference = current;
+            current = swap;
+            hasReference = true;
+            referenceWidth = width;
+            referenceHeight = height;
+            referenceNanos = timestampNanos;
+        } else {
+            skipped++;
+        }
+        lastEvaluationNanos = System.nanoTime() - start;
+        return motion;
+    }
+
+    // セルごとに SAMPLES_PER_SIDE x SAMPLES_PER_SIDE 画素を間引いて平均する
+    private void sample(ByteBuffer luma, int width, int height, int rowStride) {
+        int base = luma.position();
+        for (int row = 0; row < rows; row++) {
+            int top = row * height / rows;
+            int cellHeight = (row + 1) * height / rows - top;
+            for (int column = 0; column < columns; column++) {
+                int left = column * width / columns;
+                int cellWidth = (column + 1) * width / columns - left;
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_SIDE; sy++) {
+                    int offset = base + (top + (2 * sy + 1) * cellHeight / (2 * SAMPLES_PER_SIDE)) * rowStride + left;
+                    for (int sx = 0; sx < SAMPLES_PER_SIDE; sx++) {
+                        sum += luma.get(offset + (2 * sx + 1) * cellWidth / (2 * SAMPLES_PER_SIDE)) & 0xff;
+                    }
+                }
+                current[row * columns + column] = sum / (SAMPLES_PER_SIDE * SAMPLES_PER_SIDE);
+            }
+        }
+    }
+
+    private int countChangedCells() {
+        int cells = columns * rows;
+        // 露出の変化で全体が明るく・暗くなった分は差し引く
+        long sum = 0;
+        for (int i = 0; i < cells; i++) {
+            sum += current[i] - reference[i];
+        }
+        int offset = (int) (sum / cells);
+        int changed = 0;
+        for (int i = 0; i < cells; i++) {
+            if (Math.abs(current[i] - reference[i] - offset) > cellThreshold) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    // 基準をずらしたときの差が最も小さいずれを全体の動きとし、セル未満は前後の差に放物線を当てはめて求める
+    private void estimateGlobalShift(int width, int height) {
+        int bestX = 0;
+        int bestY = 0;
+        float bestCost = shiftCost(0, 0);
+        for (int dy = -searchRadius; dy <= searchRadius; dy++) {
+            for (int dx = -searchRadius; dx <= searchRadius; dx++) {
+                if (dx == 0 && dy == 0) {
+                    continue;
+                }
+                float cost = shiftCost(dx, dy);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestX = dx;
+                    bestY = dy;
+                }
+            }
+        }
+        float fractionX = vertex(shiftCost(bestX - 1, bestY), bestCost, shiftCost(bestX + 1, bestY));
+        float fractionY = vertex(shiftCost(bestX, bestY - 1), bestCost, shiftCost(bestX, bestY + 1));
+        globalShiftX = Math.round((bestX + fractionX) * width / columns);
+        globalShiftY = Math.round((bestY + fractionY) * height / rows);
+    }
+
+    private static float vertex(float before, float center, float after) {
+        float curvature = before - 2 * center + after;
+        if (curvature <= 0) {
+            return 0;
+        }
+        return Math.max(-0.5f, Math.min(0.5f, 0.5f * (before - after) / curvature));
+    }
+
+    // 現在の (x, y) と基準の (x - dx, y - dy) の差の2乗平均（明るさの変化は差し引く）
+    private float shiftCost(int dx, int dy) {
+        int x0 = Math.max(0, dx);
+        int x1 = Math.min(columns, columns + dx);
+        int y0 = Math.max(0, dy);
+        int y1 = Math.min(rows, rows + dy);
+        long sum = 0;
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                sum += current[y * columns + x] - reference[(y - dy) * columns + (x - dx)];
+            }
+        }
+        int n = (x1 - x0) * (y1 - y0);
+        int offset = (int) (sum / n);
+        long cost = 0;
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int diff = current[y * columns + x] - reference[(y - dy) * columns + (x - dx)] - offset;
+                cost += diff * diff;
+            }
+        }
+        return (float) cost / n;
+    }
+
+    /** 次のフレームを必ず推論に回す（解像度の変更や追跡のやり直しのとき）。 */
+    public synchronized void reset() {
+        hasReference = false;
+    }
+
+    /** 直前の判定で変化したセル数。 */
+    public synchronized int getChangedCells() {
+        return changedCells;
+    }
+
+    /** 直前の判定で推定した全体の動き（フレームのピクセル、基準のフレームから）。変化がなければ 0。 */
+    public synchronized int getGlobalShiftX() {
+        return globalShiftX;
+    }
+
+    public synchronized int getGlobalShiftY() {
+        return globalShiftY;
+    }
+
+    /** 判定したフレーム数。 */
+    public synchronized long getEvaluated() {
+        return evaluated;
+    }
+
+    /** 変化なしとして推論を省いたフレーム数。 */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    /** 直前の判定にかかった時間。 */
+    public synchronized long getLastEvaluationNanos() {
+        return lastEvaluationNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "motion skipped=%d/%d changed=%d shift=%d,%d %dus", skipped, evaluated,
+                changedCells, globalShiftX, globalShiftY, lastEvaluationNanos / 1000L);
+    }
+}
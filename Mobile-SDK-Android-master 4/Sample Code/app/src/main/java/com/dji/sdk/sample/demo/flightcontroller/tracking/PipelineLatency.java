@@ -0,0 +1,201 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * 映像の受信から操縦コマンドの完了までの遅延を段ごとに集計する。
+ * 各段について、受信からの経過（累積）と直前の段からの経過をそれぞれ {@link LatencyHistogram} に記録し、
+ * 直近のフレームの生の時刻もリングに残してファイルに書き出せるようにする。
+ * <p>
+ * 操縦コマンドとの対応付け: 制御に反映された結果を {@link #onResultsApplied} で預かり、
+ * その後に最初に送ったコマンドを送信時刻、そのコマンドの完了をACK時刻とする。
+ * 完了コールバックは送信順に返る前提で、送信と完了を数えて対応付ける。
+ * コマンドに届く前に次の結果で置き換えられたフレームは、そこまでの段だけを記録する。
+ */
+public final class PipelineLatency {
+    private static final long BIN_NANOS = 500_000L;
+    private static final long RANGE_NANOS = 2_000_000_000L;
+    private static final int RECENT_FRAMES = 2048;
+    // リングの1行: フレーム番号 + 各段の時刻
+    private static final int ROW = 1 + FrameTimeline.STAGE_COUNT;
+
+    private final LatencyHistogram[] sinceReceive = new LatencyHistogram[FrameTimeline.STAGE_COUNT];
+    private final LatencyHistogram[] sincePrevious = new LatencyHistogram[FrameTimeline.STAGE_COUNT];
+    private final long[] recent = new long[RECENT_FRAMES * ROW];
+    private int recentHead;
+    private int recentCount;
+    private long frames;
+    private long partialFrames;
+
+    // コマンド待ちの結果と、送信済みで完了待ちの結果
+    private final FrameTimeline pending = new FrameTimeline();
+    private boolean hasPending;
+    private final FrameTimeline awaiting = new FrameTimeline();
+    private boolean hasAwaiting;
+    private long awaitingSequence;
+    private long sentSequence;
+    private long completedSequence;
+
+    public PipelineLatency() {
+        for (int stage = 0; stage < FrameTimeline.STAGE_COUNT; stage++) {
+            sinceReceive[stage] = new LatencyHistogram(BIN_NANOS, RANGE_NANOS);
+            sincePrevious[stage] = new LatencyHistogram(BIN_NANOS, RANGE_NANOS);
+        }
+    }
+
+    /** 制御に反映した検出結果の時刻を預かる（メインスレッドから）。 */
+    public synchronized void onResultsApplied(FrameTimeline timeline) {
+        if (hasPending) {
+            record(pending);
+        }
+        pending.copyFrom(timeline);
+        hasPending = true;
+    }
+
+    /** 操縦コマンドを送る直前に呼ぶ（制御ループから）。 */
+    public synchronized void onCommandSent(long nowNanos) {
+        sentSequence++;
+        if (!hasPending) {
+            return;
+        }
+        if (hasAwaiting) {
+            record(awaiting);
+        }
+        pending.mark(FrameTimeline.COMMAND_SENT, nowNanos);
+        awaiting.copyFrom(pending);
+        hasAwaiting = true;
+        awaitingSequence = sentSequence;
+        hasPending = false;
+    }
+
+    /** 操縦コマンドの完了コールバックで呼ぶ。 */
+    public synchronized void onCommandCompleted(long nowNanos) {
+        completedSequence++;
+        if (hasAwaiting && completedSequence >= awaitingSequence) {
+            if (completedSequence == awaitingSequence) {
+                awaiting.mark(FrameTimeline.COMMAND_ACK, nowNanos);
+            }
+            record(awaiting);
+            hasAwaiting = false;
+        }
+    }
+
+    /** 通過した段の時刻を集計に加える。 */
+    public synchronized void record(FrameTimeline timeline) {
+        if (!timeline.has(FrameTimeline.RECEIVE)) {
+            return;
+        }
+        long receive = timeline.get(FrameTimeline.RECEIVE);
+        long previous = receive;
+        for (int stage = FrameTimeline.RECEIVE + 1; stage < FrameTimeline.STAGE_COUNT; stage++) {
+            if (!timeline.has(stage)) {
+                continue;
+            }
+            long nanos = timeline.get(stage);
+            sinceReceive[stage].record(nanos - receive);
+            sincePrevious[stage].record(nanos - previous);
+            previous = nanos;
+        }
+        frames++;
+        if (!timeline.has(FrameTimeline.COMMAND_ACK)) {
+            partialFrames++;
+        }
+
+        int row = ((recentHead + recentCount) % RECENT_FRAMES) * ROW;
+        if (recentCount == RECENT_FRAMES) {
+            recentHead = (recentHead + 1) % RECENT_FRAMES;
+        } else {
+            recentCount++;
+        }
+        recent[row] = timeline.getFrameId();
+        for (int stage = 0; stage < FrameTimeline.STAGE_COUNT; stage++) {
+            recent[row + 1 + stage] = timeline.get(stage);
+        }
+    }
+
+    /** 受信から stage までの遅延。 */
+    public LatencyHistogram getSinceReceive(int stage) {
+        return sinceReceive[stage];
+    }
+
+    /** 直前の段から stage までの遅延。 */
+    public LatencyHistogram getSincePrevious(int stage) {
+        return sincePrevious[stage];
+    }
+
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    public synchronized void reset() {
+        for (int stage = 0; stage < FrameTimeline.STAGE_COUNT; stage++) {
+            sinceReceive[stage].reset();
+            sincePrevious[stage].reset();
+        }
+        recentHead = 0;
+        recentCount = 0;
+        frames = 0;
+        partialFrames = 0;
+        hasPending = false;
+        hasAwaiting = false;
+    }
+
+    /** 画面表示用の要約（段ごとの直前からの中央値と、受信からの中央値・99パーセンタイル）。 */
+    public synchronized String formatSummary() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "%-13s %7s %7s %7s%n", "stage", "+p50", "p50", "p99"));
+        for (int stage = FrameTimeline.RECEIVE + 1; stage < FrameTimeline.STAGE_COUNT; stage++) {
+            LatencyHistogram total = sinceReceive[stage];
+            if (total.getCount() == 0) {
+                continue;
+            }
+            builder.append(String.format(Locale.US, "%-13s %7.1f %7.1f %7.1f%n", FrameTimeline.stageName(stage),
+                    sincePrevious[stage].getPercentileMillis(50), total.getPercentileMillis(50),
+                    total.getPercentileMillis(99)));
+        }
+        builder.append(String.format(Locale.US, "frames=%d partial=%d", frames, partialFrames));
+        return builder.toString();
+    }
+
+    /**
+     * CSV で書き出す。前半は段ごとの集計、後半は直近のフレームの各段の時刻（最初の受信からの ms）。
+     */
+    public synchronized void writeCsv(Writer writer) throws IOException {
+        writer.write("stage,from,count,mean_ms,p50_ms,p90_ms,p99_ms,max_ms\n");
+        for (int stage = FrameTimeline.RECEIVE + 1; stage < FrameTimeline.STAGE_COUNT; stage++) {
+            writeSummaryRow(writer, stage, "receive", sinceReceive[stage]);
+            writeSummaryRow(writer, stage, "previous", sincePrevious[stage]);
+        }
+
+        writer.write("\nframe_id");
+        for (int stage = 0; stage < FrameTimeline.STAGE_COUNT; stage++) {
+            writer.write(',');
+            writer.write(FrameTimeline.stageName(stage));
+            writer.write("_ms");
+        }
+        writer.write('\n');
+        long origin = recentCount == 0 ? 0 : recent[recentHead * ROW + 1 + FrameTimeline.RECEIVE];
+        for (int i = 0; i < recentCount; i++) {
+            int row = ((recentHead + i) % RECENT_FRAMES) * ROW;
+            writer.write(Long.toString(recent[row]));
+            for (int stage = 0; stage < FrameTimeline.STAGE_COUNT; stage++) {
+                long nanos = recent[row + 1 + stage];
+                writer.write(',');
+                if (nanos != 0) {
+                    writer.write(String.format(Locale.US, "%.3f", (nanos - origin) / 1_000_000.0));
+                }
+            }
+            writer.write('\n');
+        }
+    }
+
+    private static void writeSummaryRow(Writer writer, int stage, String from, LatencyHistogram histogram)
+            throws IOException {
+        writer.write(String.format(Locale.US, "%s,%s,%d,%.2f,%.2f,%.2f,%.2f,%.2f\n",
+                FrameTimeline.stageName(stage), from, histogram.getCount(), histogram.getMeanMillis(),
+                histogram.getPercentileMillis(50), histogram.getPercentileMillis(90),
+                histogram.getPercentileMillis(99), histogram.getMaxMillis()));
+    }
+}
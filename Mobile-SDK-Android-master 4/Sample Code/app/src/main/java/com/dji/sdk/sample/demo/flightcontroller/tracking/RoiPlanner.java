@@ -0,0 +1,132 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+/**
+ * 追跡中の対象の周りだけを切り出して推論する範囲（ROI）を決める。
+ * <p>
+ * 範囲は対象の予測位置（最後の位置 + 速度 × 経過時間）を中心に、ボックスの大きさに余白を足した
+ * モデル入力と同じ縦横比の四角で、モデル入力より小さくはしない（元の解像度より拡大しない）。
+ * 対象が遠く小さいほど、全体を縮小して入れるより高い解像度でモデルに渡せる。
+ * <p>
+ * 次のときは全体で推論する: 対象の情報がない・古い、ROI で続けて見つからなかった、
+ * 一定時間ごと（新しく現れた人を見落とさないため）、範囲がフレームの大部分を占める。
+ * 時刻は System.nanoTime()。
+ */
+public final class RoiPlanner {
+    public static final int LEFT = 0;
+    public static final int TOP = 1;
+    public static final int RIGHT = 2;
+    public static final int BOTTOM = 3;
+
+    private final int inputWidth;
+    private final int inputHeight;
+    // ボックスの大きさに対する片側の余白
+    private float margin = 0.75f;
+    private long fullFrameIntervalNanos = 1_000_000_000L;
+    private long maxTargetAgeNanos = 500_000_000L;
+    private int maxMisses = 2;
+    // 範囲がフレームの短辺のこの割合を超えたら全体で推論する
+    private float maxRegionFraction = 0.8f;
+
+    private boolean hasTarget;
+    private float centerX;
+    private float centerY;
+    private float boxWidth;
+    private float boxHeight;
+    private float velocityX;
+    private float velocityY;
+    private long targetNanos;
+    private long lastFullFrameNanos;
+    private int misses;
+
+    /**
+     * @param inputWidth  モデル入力の幅
+     * @param inputHeight モデル入力の高さ
+     */
+    public RoiPlanner(int inputWidth, int inputHeight) {
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+    }
+
+    /** 片側の余白（ボックスの大きさに対する割合）。 */
+    public synchronized void setMargin(float margin) {
+        this.margin = margin;
+    }
+
+    /** この間隔で必ず全体でも推論する。 */
+    public synchronized void setFullFrameIntervalNanos(long fullFrameIntervalNanos) {
+        this.fullFrameIntervalNanos = fullFrameIntervalNanos;
+    }
+
+    /** ROI で続けてこの回数見つからなければ全体に戻す。 */
+    public synchronized void setMaxMisses(int maxMisses) {
+        this.maxMisses = maxMisses;
+    }
+
+    /** 追跡中の対象の位置と速度（px, px/秒）を知らせる。 */
+    public synchronized void onTarget(float centerX, float centerY, float width, float height,
+                                      float velocityX, float velocityY, long timestampNanos) {
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.boxWidth = width;
+        this.boxHeight = height;
+        this.velocityX = velocityX;
+        this.velocityY = velocityY;
+        this.targetNanos = timestampNanos;
+        hasTarget = true;
+    }
+
+    public synchronized void onTargetLost() {
+        hasTarget = false;
+        misses = 0;
+    }
+
+    /**
+     * フレームをどこで推論するかを決める。
+     *
+     * @param region ROI のときに [LEFT, TOP, RIGHT, BOTTOM] を書き込む
+     * @return ROI なら true、全体なら false
+     */
+    public synchronized boolean plan(long frameTimestampNanos, int frameWidth, int frameHeight, int[] region) {
+        if (!hasTarget || misses >= maxMisses
+                || frameTimestampNanos - targetNanos > maxTargetAgeNanos
+                || frameTimestampNanos - lastFullFrameNanos >= fullFrameIntervalNanos) {
+            return fullFrame(frameTimestampNanos);
+        }
+
+        float dt = Math.max(0, frameTimestampNanos - targetNanos) / 1e9f;
+        float x = centerX + velocityX * dt;
+        float y = centerY + velocityY * dt;
+        // 動いている方向にも余白を広げる
+        float spreadX = boxWidth * (0.5f + margin) + Math.abs(velocityX) * dt;
+        float spreadY = boxHeight * (0.5f + margin) + Math.abs(velocityY) * dt;
+
+        // モデル入力と同じ縦横比にそろえ、入力より小さくしない
+        float aspect = (float) inputWidth / inputHeight;
+        float halfHeight = Math.max(spreadY, spreadX / aspect);
+        halfHeight = Math.max(halfHeight, inputHeight * 0.5f);
+        float halfWidth = halfHeight * aspect;
+        if (halfWidth * 2 > frameWidth * maxRegionFraction || halfHeight * 2 > frameHeight * maxRegionFraction) {
+            return fullFrame(frameTimestampNanos);
+        }
+
+        // フレームからはみ出す分は内側へずらす（大きさは保つ）
+        float left = Math.max(0, Math.min(frameWidth - halfWidth * 2, x - halfWidth));
+        float top = Math.max(0, Math.min(frameHeight - halfHeight * 2, y - halfHeight));
+        region[LEFT] = (int) left;
+        region[TOP] = (int) top;
+        region[RIGHT] = (int) (left + halfWidth * 2);
+        region[BOTTOM] = (int) (top + halfHeight * 2);
+        return true;
+    }
+
+    private boolean fullFrame(long frameTimestampNanos) {
+        lastFullFrameNanos = frameTimestampNanos;
+        misses = 0;
+        return false;
+    }
+
+    /** ROI で推論した結果を知らせる。 */
+    public synchronized void onRoiResult(boolean found) {
+        misses = found ? 0 : misses + 1;
+    }
+}
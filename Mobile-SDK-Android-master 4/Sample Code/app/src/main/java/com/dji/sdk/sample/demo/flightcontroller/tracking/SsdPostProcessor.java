@@ -0,0 +1,136 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+/**
+ * SSD 系モデルの出力（正規化座標の [ymin, xmin, ymax, xmax]、クラスID、スコア）を
+ * {@link DetectionResults} に変換する後処理。
+ * スコア閾値とクラスIDでの絞り込み、クラスごとのNMS、上位 k 件の選択を行う。
+ * 作業用配列は作成時に確保するので、処理中はメモリを確保しない。
+ */
+public final class SsdPostProcessor {
+    private final int maxCandidates;
+    private final int[] candidates;
+    private final boolean[] suppressed;
+    private float scoreThreshold = 0.5f;
+    private float nmsIouThreshold = 0.5f;
+    private int maxResults = 10;
+    // null なら全クラスを通す
+    private boolean[] allowedClasses;
+
+    public SsdPostProcessor(int maxCandidates) {
+        this.maxCandidates = maxCandidates;
+        this.candidates = new int[maxCandidates];
+        this.suppressed = new boolean[maxCandidates];
+    }
+
+    public SsdPostProcessor scoreThreshold(float scoreThreshold) {
+        this.scoreThreshold = scoreThreshold;
+        return this;
+    }
+
+    public SsdPostProcessor nmsIouThreshold(float nmsIouThreshold) {
+        this.nmsIouThreshold = nmsIouThreshold;
+        return this;
+    }
+
+    public SsdPostProcessor maxResults(int maxResults) {
+        this.maxResults = maxResults;
+        return this;
+    }
+
+    /** 通すクラスIDを限定する。引数なしで全クラス。 */
+    public SsdPostProcessor allowClasses(int... classIds) {
+        if (classIds.length == 0) {
+            allowedClasses = null;
+            return this;
+        }
+        int max = 0;
+        for (int classId : classIds) {
+            max = Math.max(max, classId);
+        }
+        allowedClasses = new boolean[max + 1];
+        for (int classId : classIds) {
+            if (classId >= 0) {
+                allowedClasses[classId] = true;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 出力を変換する。out の推論範囲（{@link DetectionResults#setRegion}、なければフレーム全体）で
+     * 座標をフレームのピクセルに換算する。
+     */
+    public void process(float[] locations, float[] classes, float[] scores, int numDetections,
+                        DetectionResults out) {
+        out.clear();
+        float originX = out.getRegionLeft();
+        float originY = out.getRegionTop();
+        float width = out.getRegionRight() - originX;
+        float height = out.getRegionBottom() - originY;
+
+        // 閾値とクラスで候補を絞る
+        int candidateCount = 0;
+        int limit = Math.min(numDetections, Math.min(scores.length, maxCandidates));
+        for (int i = 0; i < limit; i++) {
+            int classId = (int) classes[i];
+            if (scores[i] < scoreThreshold || !isAllowed(classId)) {
+                continue;
+            }
+            candidates[candidateCount] = i;
+            suppressed[candidateCount] = false;
+            candidateCount++;
+        }
+
+        // スコア順に選び、同じクラスで重なる候補を抑制する
+        int resultLimit = Math.min(maxResults, out.getCapacity());
+        while (out.getCount() < resultLimit) {
+            int best = -1;
+            for (int c = 0; c < candidateCount; c++) {
+                if (!suppressed[c] && (best < 0 || scores[candidates[c]] > scores[candidates[best]])) {
+                    best = c;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            suppressed[best] = true;
+            int index = candidates[best];
+            for (int c = 0; c < candidateCount; c++) {
+                if (!suppressed[c] && (int) classes[candidates[c]] == (int) classes[index]
+                        && iou(locations, index, candidates[c]) > nmsIouThreshold) {
+                    suppressed[c] = true;
+                }
+            }
+            int offset = index * 4;
+            out.add(originX + clamp(locations[offset + 1]) * width,
+                    originY + clamp(locations[offset]) * height,
+                    originX + clamp(locations[offset + 3]) * width,
+                    originY + clamp(locations[offset + 2]) * height,
+                    (int) classes[index],
+                    scores[index]);
+        }
+    }
+
+    private boolean isAllowed(int classId) {
+        return allowedClasses == null
+                || (classId >= 0 && classId < allowedClasses.length && allowedClasses[classId]);
+    }
+
+    private static float iou(float[] locations, int a, int b) {
+        int oa = a * 4;
+        int ob = b * 4;
+        float top = Math.max(locations[oa], locations[ob]);
+        float left = Math.max(locations[oa + 1], locations[ob + 1]);
+        float bottom = Math.min(locations[oa + 2], locations[ob + 2]);
+        float right = Math.min(locations[oa + 3], locations[ob + 3]);
+        float intersection = Math.max(0, bottom - top) * Math.max(0, right - left);
+        float areaA = (locations[oa + 2] - locations[oa]) * (locations[oa + 3] - locations[oa + 1]);
+        float areaB = (locations[ob + 2] - locations[ob]) * (locations[ob + 3] - locations[ob + 1]);
+        float union = areaA + areaB - intersection;
+        return union <= 0 ? 0 : intersection / union;
+    }
+
+    private static float clamp(float value) {
+        return value < 0 ? 0 : (value > 1 ? 1 : value);
+    }
+}
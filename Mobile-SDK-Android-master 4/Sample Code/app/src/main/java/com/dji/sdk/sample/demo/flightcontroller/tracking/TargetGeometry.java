@@ -0,0 +1,87 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+/**
+ * 追跡対象のバウンディングボックスから、距離・角度・移動量・操縦量を求める計算。
+ * VirtualStickView から Android に依存しない部分を切り出したもの。
+ * 結果は呼び出し側の配列に書き込むので、毎フレーム呼んでもメモリを確保しない。
+ */
+public final class TargetGeometry {
+    // カメラと対象の仮定値
+    public static final float FOCAL_LENGTH = 0.004f;
+    public static final float SENSOR_WIDTH = 0.00617f;
+    public static final float REAL_OBJECT_WIDTH = 0.5f;
+    public static final float HORIZONTAL_FOV = 78.8f;
+    public static final float VERTICAL_FOV = 63.4f;
+
+    // これ以下の角度ではヨー・スロットルを動かさない
+    private static final float YAW_THRESHOLD = 1.0f;
+    private static final float THROTTLE_THRESHOLD = 1.0f;
+
+    public static final String RIGHT = "右";
+    public static final String LEFT = "左";
+    public static final String DOWN = "下";
+    public static final String UP = "上";
+
+    // 操縦量の配列の並び
+    public static final int PITCH = 0;
+    public static final int ROLL = 1;
+    public static final int YAW = 2;
+    public static final int THROTTLE = 3;
+
+    private TargetGeometry() {
+    }
+
+    /** ボックスの幅から対象までの距離 [m] を推定する。 */
+    public static float distanceToBox(float boxWidth, int imageWidth) {
+        float sensorWidthInMeters = boxWidth / imageWidth * SENSOR_WIDTH;
+        return (FOCAL_LENGTH * REAL_OBJECT_WIDTH) / sensorWidthInMeters;
+    }
+
+    /** 画像中心からボックス中心への角度 [度] を angles[0]（水平）と angles[1]（垂直）に書き込む。 */
+    public static void angleToBox(float boxCenterX, float boxCenterY, int imageWidth, int imageHeight,
+                                  float[] angles) {
+        int imageCenterX = imageWidth / 2;
+        int imageCenterY = imageHeight / 2;
+
+        float anglePerPixelX = HORIZONTAL_FOV / imageWidth;
+        float anglePerPixelY = VERTICAL_FOV / imageHeight;
+
+        angles[0] = (boxCenterX - imageCenterX) * anglePerPixelX;
+        angles[1] = (boxCenterY - imageCenterY) * anglePerPixelY;
+    }
+
+    /** 対象を中心に捉えるための水平・垂直の移動量 [m] を movements に書き込む。 */
+    public static void movement(float[] angles, float distance, float[] movements) {
+        if (Float.isNaN(angles[0]) || Float.isNaN(angles[1]) || distance < 0) {
+            movements[0] = 0.0f;
+            movements[1] = 0.0f;
+            return;
+        }
+        movements[0] = (float) (distance * Math.tan(Math.toRadians(angles[0])));
+        movements[1] = (float) (distance * Math.tan(Math.toRadians(angles[1])));
+    }
+
+    /** 水平方向の移動の向き。角度が不明なら空文字。 */
+    public static String horizontalDirection(float[] angles, float distance) {
+        if (Float.isNaN(angles[0]) || Float.isNaN(angles[1]) || distance < 0) {
+            return "";
+        }
+        return angles[0] > 0 ? RIGHT : LEFT;
+    }
+
+    /** 垂直方向の移動の向き。角度が不明なら空文字。 */
+    public static String verticalDirection(float[] angles, float distance) {
+        if (Float.isNaN(angles[0]) || Float.isNaN(angles[1]) || distance < 0) {
+            return "";
+        }
+        return angles[1] > 0 ? DOWN : UP;
+    }
+
+    /** 仮想スティックの操縦量を {@link #PITCH}, {@link #ROLL}, {@link #YAW}, {@link #THROTTLE} の順で command に書き込む。 */
+    public static void stickCommand(float[] angles, float distance, float[] command) {
+        command[PITCH] = (float) (distance * Math.tan(Math.toRadians(angles[1])));
+        command[ROLL] = (float) (distance * Math.tan(Math.toRadians(angles[0])));
+        command[YAW] = Math.abs(angles[0]) > YAW_THRESHOLD ? angles[0] : 0.0f;
+        command[THROTTLE] = Math.abs(angles[1]) > THROTTLE_THRESHOLD ? -angles[1] : 0.0f;
+    }
+}
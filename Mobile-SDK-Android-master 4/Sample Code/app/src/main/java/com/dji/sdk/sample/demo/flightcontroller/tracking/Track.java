@@ -0,0 +1,218 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+/**
+ * {@link BoxTracker} が管理する1つの追跡対象。
+ * 状態は中心(x, y)と幅・高さの4成分で、成分ごとに等速モデルのカルマンフィルタを持つ。
+ * 座標はフレームのピクセル座標、速度は px/秒。
+ */
+public final class Track {
+    static final int CX = 0;
+    static final int CY = 1;
+    static final int W = 2;
+    static final int H = 3;
+
+    private final int id;
+    // 成分ごとの位置・速度と共分散 [[p00, p01], [p01, p11]]
+    private final float[] position = new float[4];
+    private final float[] velocity = new float[4];
+    private final float[] p00 = new float[4];
+    private final float[] p01 = new float[4];
+    private final float[] p11 = new float[4];
+
+    private long timestampNanos;
+    private long lastUpdateNanos;
+    // 最後に対応付けられた検出の元フレームの時刻（推定時刻より古いことがある）
+    private long lastMeasurementNanos;
+    private int hits;
+    private float score;
+    // 確認用の検出（重いモデル）で最後に見つかった時刻。見つからなければ 0
+    private long confirmedNanos;
+    // 確認用の検出で、範囲内にいるはずなのに見つからなかった
+    private boolean refuted;
+
+    Track(int id, float left, float top, float right, float bottom, float score, long timestampNanos,
+          long frameTimestampNanos, float initialPositionVariance, float initialVelocityVariance) {
+        this.id = id;
+        position[CX] = (left + right) * 0.5f;
+        position[CY] = (top + bottom) * 0.5f;
+        position[W] = right - left;
+        position[H] = bottom - top;
+        for (int i = 0; i < 4; i++) {
+            p00[i] = initialPositionVariance;
+            p11[i] = initialVelocityVariance;
+        }
+        this.score = score;
+        this.timestampNanos = timestampNanos;
+        this.lastUpdateNanos = timestampNanos;
+        this.lastMeasurementNanos = frameTimestampNanos;
+        this.hits = 1;
+    }
+
+    void predict(long nowNanos, float positionNoise, float sizeNoise) {
+        float dt = (nowNanos - timestampNanos) / 1e9f;
+        if (dt <= 0) {
+            return;
+        }
+        float dt2 = dt * dt;
+        for (int i = 0; i < 4; i++) {
+            float q = i < W ? positionNoise : sizeNoise;
+            position[i] += velocity[i] * dt;
+            // P = F P F^T + Q（白色加速度モデル）
+            float newP00 = p00[i] + 2 * dt * p01[i] + dt2 * p11[i] + q * dt2 * dt2 * 0.25f;
+            float newP01 = p01[i] + dt * p11[i] + q * dt2 * dt * 0.5f;
+            float newP11 = p11[i] + q * dt2;
+            p00[i] = newP00;
+            p01[i] = newP01;
+            p11[i] = newP11;
+        }
+        if (position[W] < 1) {
+            position[W] = 1;
+        }
+        if (position[H] < 1) {
+            position[H] = 1;
+        }
+        timestampNanos = nowNanos;
+    }
+
+    /**
+     * 観測で補正する。観測が現在の推定時刻より古い場合は、推定速度でその分だけ進めてから使う。
+     */
+    void correct(float left, float top, float right, float bottom, float score, long frameTimestampNanos,
+                 float measurementNoise) {
+        float lag = Math.max(0, (timestampNanos - frameTimestampNanos) / 1e9f);
+        correctComponent(CX, (left + right) * 0.5f + velocity[CX] * lag, measurementNoise);
+        correctComponent(CY, (top + bottom) * 0.5f + velocity[CY] * lag, measurementNoise);
+        correctComponent(W, (right - left) + velocity[W] * lag, measurementNoise);
+        correctComponent(H, (bottom - top) + velocity[H] * lag, measurementNoise);
+        this.score = score;
+        this.lastUpdateNanos = timestampNanos;
+        lastMeasurementNanos = Math.max(lastMeasurementNanos, frameTimestampNanos);
+        hits++;
+    }
+
+    private void correctComponent(int i, float measurement, float r) {
+        float s = p00[i] + r;
+        float k0 = p00[i] / s;
+        float k1 = p01[i] / s;
+        float innovation = measurement - position[i];
+        position[i] += k0 * innovation;
+        velocity[i] += k1 * innovation;
+        float newP00 = (1 - k0) * p00[i];
+        float newP01 = (1 - k0) * p01[i];
+        float newP11 = p11[i] - k1 * p01[i];
+        p00[i] = newP00;
+        p01[i] = newP01;
+        p11[i] = newP11;
+    }
+
+    void confirm(long frameTimestampNanos) {
+        confirmedNanos = frameTimestampNanos;
+        refuted = false;
+    }
+
+    void refute() {
+        confirmedNanos = 0;
+        refuted = true;
+    }
+
+    /** 予測位置と指定した矩形のIoU。 */
+    float iou(float left, float top, float right, float bottom) {
+        float interLeft = Math.max(getLeft(), left);
+        float interTop = Math.max(getTop(), top);
+        float interRight = Math.min(getRight(), right);
+        float interBottom = Math.min(getBottom(), bottom);
+        float interArea = Math.max(0, interRight - interLeft) * Math.max(0, interBottom - interTop);
+        float union = position[W] * position[H] + (right - left) * (bottom - top) - interArea;
+        return union <= 0 ? 0 : interArea / union;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public float getCenterX() {
+        return position[CX];
+    }
+
+    public float getCenterY() {
+        return position[CY];
+    }
+
+    public float getWidth() {
+        return position[W];
+    }
+
+    public float getHeight() {
+        return position[H];
+    }
+
+    public float getLeft() {
+        return position[CX] - position[W] * 0.5f;
+    }
+
+    public float getTop() {
+        return position[CY] - position[H] * 0.5f;
+    }
+
+    public float getRight() {
+        return position[CX] + position[W] * 0.5f;
+    }
+
+    public float getBottom() {
+        return position[CY] + position[H] * 0.5f;
+    }
+
+    public float getVelocityX() {
+        return velocity[CX];
+    }
+
+    public float getVelocityY() {
+        return velocity[CY];
+    }
+
+    /** 中心位置の推定分散（px^2）。大きいほど予測が当てにならない。 */
+    public float getPositionVariance() {
+        return Math.max(p00[CX], p00[CY]);
+    }
+
+    /**
+     * 最後に検出で補正したときの推定時刻（見失うまでの時間の基準）。検出の元フレームの時刻ではない
+     * （フレームごとに予測を進めているので、遅れて届いた検出で補正しても推定時刻のまま）。
+     */
+    public long getLastUpdateNanos() {
+        return lastUpdateNanos;
+    }
+
+    /** 最後に対応付けられた検出の元フレームの時刻。 */
+    public long getLastMeasurementNanos() {
+        return lastMeasurementNanos;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    /** 確認用の検出で見つかっていれば true。 */
+    public boolean isConfirmed() {
+        return confirmedNanos != 0;
+    }
+
+    /** 確認用の検出で見つからなかったトラック。再び確認されるまで追従対象に選ばない。 */
+    public boolean isRefuted() {
+        return refuted;
+    }
+
+    /** 最後に確認用の検出で見つかった元フレームの時刻。 */
+    public long getConfirmedNanos() {
+        return confirmedNanos;
+    }
+
+    /** 最後に対応付けられた検出のスコア。 */
+    public float getScore() {
+        return score;
+    }
+}
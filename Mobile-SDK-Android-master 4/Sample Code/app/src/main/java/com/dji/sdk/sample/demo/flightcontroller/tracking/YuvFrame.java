@@ -0,0 +1,93 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * デコード済みのYUVフレーム。
+ * バッファは {@link YuvFramePool} が所有するダイレクトバッファを使い回すため、
+ * 使い終わったら必ず {@link #release()} を呼ぶこと。
+ */
+public final class YuvFrame {
+    public static final int FORMAT_NV12 = 0;
+    public static final int FORMAT_NV21 = 1;
+    public static final int FORMAT_I420 = 2;
+
+    private final YuvFramePool pool;
+    private ByteBuffer data;
+    private int width;
+    private int height;
+    private int sliceHeight;
+    private int colorFormat;
+    private long timestampNanos;
+    private final FrameTimeline timeline = new FrameTimeline();
+
+    YuvFrame(YuvFramePool pool, int capacity) {
+        this.pool = pool;
+        this.data = ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * デコーダの出力をこのフレームにコピーする。
+     * デコーダによっては高さが16の倍数にパディングされるため、
+     * Yプレーンの行数はデータサイズから求める。
+     */
+    public void copyFrom(ByteBuffer src, int size, int width, int height, int colorFormat, long timestampNanos) {
+        ensureCapacity(size);
+        data.clear();
+        int oldLimit = src.limit();
+        int oldPosition = src.position();
+        src.limit(oldPosition + size);
+        data.put(src);
+        src.limit(oldLimit);
+        src.position(oldPosition);
+        data.flip();
+
+        this.width = width;
+        this.height = height;
+        this.sliceHeight = Math.max(height, size * 2 / (3 * width));
+        this.colorFormat = colorFormat;
+        this.timestampNanos = timestampNanos;
+    }
+
+    void ensureCapacity(int size) {
+        if (data.capacity() < size) {
+            // 解像度が変わったときだけ再確保する
+            data = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** Yプレーンの行数（パディング込み）。UVプレーンは width * sliceHeight から始まる。 */
+    public int getSliceHeight() {
+        return sliceHeight;
+    }
+
+    public int getColorFormat() {
+        return colorFormat;
+    }
+
+    /** フレームを受け取った時刻（System.nanoTime() 基準の単調時計）。 */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /** 受信からの各段の時刻。フレームを取り出した側が reset() して使う。 */
+    public FrameTimeline getTimeline() {
+        return timeline;
+    }
+
+    public void release() {
+        pool.release(this);
+    }
+}
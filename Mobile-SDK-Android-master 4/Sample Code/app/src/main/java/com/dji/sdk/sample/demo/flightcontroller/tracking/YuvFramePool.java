@@ -0,0 +1,49 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link YuvFrame} の固定サイズプール。
+ * 空きがないときは {@link #acquire(int)} が null を返すので、呼び出し側はそのフレームを捨てる。
+ */
+public final class YuvFramePool {
+    private final ArrayBlockingQueue<YuvFrame> freeFrames;
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong exhaustedCount = new AtomicLong();
+
+    public YuvFramePool(int poolSize, int initialCapacity) {
+        freeFrames = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            freeFrames.offer(new YuvFrame(this, initialCapacity));
+        }
+    }
+
+    public YuvFrame acquire(int size) {
+        YuvFrame frame = freeFrames.poll();
+        if (frame == null) {
+            exhaustedCount.incrementAndGet();
+            return null;
+        }
+        frame.ensureCapacity(size);
+        acquiredCount.incrementAndGet();
+        return frame;
+    }
+
+    void release(YuvFrame frame) {
+        freeFrames.offer(frame);
+    }
+
+    public int getFreeCount() {
+        return freeFrames.size();
+    }
+
+    public long getAcquiredCount() {
+        return acquiredCount.get();
+    }
+
+    /** プールが空でフレームを捨てた回数。 */
+    public long getExhaustedCount() {
+        return exhaustedCount.get();
+    }
+}
@@ -0,0 +1,290 @@
+package com.dji.sdk.sample.demo.flightcontroller.tracking;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * YUVフレームを、モデル入力サイズのRGBテンソル（NHWC）へ直接書き込む。
+ * 切り出し・縮小（最近傍）・色変換（BT.601）・正規化を1パスで行う。
+ * {@link #parallel} でプールを渡すと、出力を行の帯（タイル）に分けて複数コアで変換する。
+ * 出力バッファ・作業配列・タスクは使い回すので、定常状態ではメモリを確保しない。
+ */
+public final class YuvToTensor {
+    // 1タイルあたりの最小行数（これより細かく分けても速くならない）
+    private static final int MIN_TILE_ROWS = 8;
+
+    private final int outWidth;
+    private final int outHeight;
+    private final boolean floatOutput;
+    // 0..255 の値を正規化後の値に変換する表
+    private final float[] normalized = new float[256];
+
+    // 出力の列ごとの、入力の輝度・色差のオフセット
+    private final int[] lumaX;
+    private final int[] uX;
+    private final int[] vX;
+    // 出力の行ごとの、入力の輝度・色差の行頭オフセット
+    private final int[] lumaRow;
+    private final int[] uRow;
+    private final int[] vRow;
+
+    private int mappedWidth;
+    private int mappedHeight;
+    private int mappedSliceHeight;
+    private int mappedFormat = -1;
+    private int cropLeft;
+    private int cropTop;
+    private int cropRight;
+    private int cropBottom;
+    private boolean hasCrop = false;
+    private boolean mappingDirty = true;
+
+    private ForkJoinPool pool;
+    private Tile[] tiles;
+    private final ConvertAll convertAll = new ConvertAll();
+    private ByteBuffer boundOutput;
+    private YuvFrame currentFrame;
+
+    /**
+     * @param floatOutput true なら (value - mean) / std の float32、false なら uint8 で書き込む
+     */
+    public YuvToTensor(int outWidth, int outHeight, boolean floatOutput, float mean, float std) {
+        this.outWidth = outWidth;
+        this.outHeight = outHeight;
+        this.floatOutput = floatOutput;
+        for (int i = 0; i < normalized.length; i++) {
+            normalized[i] = (i - mean) / std;
+        }
+        lumaX = new int[outWidth];
+        uX = new int[outWidth];
+        vX = new int[outWidth];
+        lumaRow = new int[outHeight];
+        uRow = new int[outHeight];
+        vRow = new int[outHeight];
+        parallel(null);
+    }
+
+    /**
+     * 変換を pool で並列に行う。null なら呼び出しスレッドだけで変換する。
+     * タイル数はプールの並列度の2倍（遅いコアがあっても偏らないように）。
+     */
+    public YuvToTensor parallel(ForkJoinPool pool) {
+        this.pool = pool;
+        int tileCount = 1;
+        if (pool != null) {
+            tileCount = Math.max(1, Math.min(pool.getParallelism() * 2, outHeight / MIN_TILE_ROWS));
+        }
+        tiles = new Tile[tileCount];
+        for (int i = 0; i < tileCount; i++) {
+            tiles[i] = new Tile();
+        }
+        boundOutput = null;
+        return this;
+    }
+
+    /**
+     * 入力フレームのうち変換する範囲をピクセル座標で指定する。範囲はフレーム内に収める。
+     * 色差が2x2で間引かれているので、左上は偶数に切り下げる。
+     */
+    public void setCrop(int left, int top, int right, int bottom) {
+        left &= ~1;
+        top &= ~1;
+        if (hasCrop && left == cropLeft && top == cropTop && right == cropRight && bottom == cropBottom) {
+            return;
+        }
+        cropLeft = left;
+        cropTop = top;
+        cropRight = right;
+        cropBottom = bottom;
+        hasCrop = true;
+        mappingDirty = true;
+    }
+
+    /** フレーム全体を変換する（既定）。 */
+    public void clearCrop() {
+        if (hasCrop) {
+            hasCrop = false;
+            mappingDirty = true;
+        }
+    }
+
+    /** 出力テンソルのバイト数。 */
+    public int getOutputSize() {
+        return outWidth * outHeight * 3 * (floatOutput ? 4 : 1);
+    }
+
+    public int getOutputWidth() {
+        return outWidth;
+    }
+
+    public int getOutputHeight() {
+        return outHeight;
+    }
+
+    /**
+     * フレームを変換して out に書き込む。out は {@link #getOutputSize()} 以上のネイティブバイト順のバッファ。
+     * 戻ったときの out の位置は 0。
+     */
+    public void convert(YuvFrame frame, ByteBuffer out) {
+        updateMapping(frame);
+        if (out != boundOutput) {
+            // 出力先が変わったときだけ、タイルごとの書き込み用ビューを作り直す
+            for (Tile tile : tiles) {
+                tile.bind(out);
+            }
+            boundOutput = out;
+        }
+
+        currentFrame = frame;
+        try {
+            if (pool == null || tiles.length == 1) {
+                tiles[0].setRows(0, outHeight);
+                tiles[0].compute();
+            } else {
+                int rowsPerTile = (outHeight + tiles.length - 1) / tiles.length;
+                for (int i = 0; i < tiles.length; i++) {
+                    tiles[i].reinitialize();
+                    tiles[i].setRows(Math.min(outHeight, i * rowsPerTile),
+                            Math.min(outHeight, (i + 1) * rowsPerTile));
+                }
+                convertAll.reinitialize();
+                pool.invoke(convertAll);
+            }
+        } finally {
+            currentFrame = null;
+        }
+        out.rewind();
+    }
+
+    private void updateMapping(YuvFrame frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int sliceHeight = frame.getSliceHeight();
+        int format = frame.getColorFormat();
+        if (!mappingDirty && width == mappedWidth && height == mappedHeight
+                && sliceHeight == mappedSliceHeight && format == mappedFormat) {
+            return;
+        }
+
+        int left = hasCrop ? Math.max(0, Math.min(cropLeft, width - 1)) : 0;
+        int top = hasCrop ? Math.max(0, Math.min(cropTop, height - 1)) : 0;
+        int right = hasCrop ? Math.max(left + 1, Math.min(cropRight, width)) : width;
+        int bottom = hasCrop ? Math.max(top + 1, Math.min(cropBottom, height)) : height;
+        int cropWidth = right - left;
+        int cropHeight = bottom - top;
+
+        // 入力サイズ・形式・範囲が変わったときだけ対応表を作り直す
+        int ySize = width * sliceHeight;
+        int chromaWidth = width / 2;
+        boolean planar = format == YuvFrame.FORMAT_I420;
+        boolean vFirst = format == YuvFrame.FORMAT_NV21;
+        for (int ox = 0; ox < outWidth; ox++) {
+            int x = left + Math.min(cropWidth - 1, (int) ((ox + 0.5f) * cropWidth / outWidth));
+            lumaX[ox] = x;
+            if (planar) {
+                uX[ox] = x >> 1;
+                vX[ox] = x >> 1;
+            } else {
+                uX[ox] = (x & ~1) + (vFirst ? 1 : 0);
+                vX[ox] = (x & ~1) + (vFirst ? 0 : 1);
+            }
+        }
+        int vPlaneOffset = ySize + chromaWidth * (sliceHeight / 2);
+        for (int oy = 0; oy < outHeight; oy++) {
+            int y = top + Math.min(cropHeight - 1, (int) ((oy + 0.5f) * cropHeight / outHeight));
+            lumaRow[oy] = y * width;
+            if (planar) {
+                uRow[oy] = ySize + (y >> 1) * chromaWidth;
+                vRow[oy] = vPlaneOffset + (y >> 1) * chromaWidth;
+            } else {
+                uRow[oy] = ySize + (y >> 1) * width;
+                vRow[oy] = uRow[oy];
+            }
+        }
+        mappedWidth = width;
+        mappedHeight = height;
+        mappedSliceHeight = sliceHeight;
+        mappedFormat = format;
+        mappingDirty = false;
+    }
+
+    // 全タイルをまとめて投入するルートのタスク
+    @SuppressWarnings("serial")
+    private final class ConvertAll extends RecursiveAction {
+        @Override
+        protected void compute() {
+            invokeAll(tiles);
+        }
+    }
+
+    // 出力の [startRow, endRow) を変換するタスク。1行分の作業配列を持つ
+    @SuppressWarnings("serial")
+    private final class Tile extends RecursiveAction {
+        private final byte[] byteRow = floatOutput ? null : new byte[outWidth * 3];
+        private final float[] floatRow = floatOutput ? new float[outWidth * 3] : null;
+        private ByteBuffer byteTarget;
+        private FloatBuffer floatTarget;
+        private int startRow;
+        private int endRow;
+
+        void bind(ByteBuffer out) {
+            // duplicate() はバイト順を引き継がないので合わせ直す
+            ByteBuffer view = out.duplicate().order(out.order());
+            view.clear();
+            if (floatOutput) {
+                floatTarget = view.asFloatBuffer();
+            } else {
+                byteTarget = view;
+            }
+        }
+
+        void setRows(int startRow, int endRow) {
+            this.startRow = startRow;
+            this.endRow = endRow;
+        }
+
+        @Override
+        protected void compute() {
+            ByteBuffer data = currentFrame.getData();
+            int rowLength = outWidth * 3;
+            for (int oy = startRow; oy < endRow; oy++) {
+                int lumaOffset = lumaRow[oy];
+                int uOffset = uRow[oy];
+                int vOffset = vRow[oy];
+                int i = 0;
+                for (int ox = 0; ox < outWidth; ox++) {
+                    int luma = (data.get(lumaOffset + lumaX[ox]) & 0xff) - 16;
+                    int u = (data.get(uOffset + uX[ox]) & 0xff) - 128;
+                    int v = (data.get(vOffset + vX[ox]) & 0xff) - 128;
+                    int c = 298 * (luma < 0 ? 0 : luma);
+                    int r = clamp((c + 409 * v + 128) >> 8);
+                    int g = clamp((c - 100 * u - 208 * v + 128) >> 8);
+                    int b = clamp((c + 516 * u + 128) >> 8);
+                    if (floatOutput) {
+                        floatRow[i] = normalized[r];
+                        floatRow[i + 1] = normalized[g];
+                        floatRow[i + 2] = normalized[b];
+                    } else {
+                        byteRow[i] = (byte) r;
+                        byteRow[i + 1] = (byte) g;
+                        byteRow[i + 2] = (byte) b;
+                    }
+                    i += 3;
+                }
+                if (floatOutput) {
+                    floatTarget.position(oy * rowLength);
+                    floatTarget.put(floatRow, 0, rowLength);
+                } else {
+                    byteTarget.position(oy * rowLength);
+                    byteTarget.put(byteRow, 0, rowLength);
+                }
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -448,11 +448,9 @@ public class GimbalCapabilityView extends LinearLayout implements View.OnClickLi
         final BaseProduct product = DJISDKManager.getInstance().getProduct();
         updateM210Buttons();
         if (product != null) {
-            VideoFeeder.VideoDataListener primaryVideoDataListener =
+            if (isOpen) {
                 primaryVideoFeed.registerLiveVideo(VideoFeeder.getInstance().getPrimaryVideoFeed(), true);
-            VideoFeeder.VideoDataListener secondaryVideoDataListener =
                 fpvVideoFeed.registerLiveVideo(VideoFeeder.getInstance().getSecondaryVideoFeed(), false);
-            if (isOpen) {
                 String newText = "Primary Source: " + VideoFeeder.getInstance().getPrimaryVideoFeed().getVideoSource().name();
                 ToastUtils.setResultToText(primaryVideoFeedTitle,newText);
                 if (Helper.isMultiStreamPlatform()) {
@@ -462,10 +460,8 @@ public class GimbalCapabilityView extends LinearLayout implements View.OnClickLi
                 VideoFeeder.getInstance().addPhysicalSourceListener(sourceListener);
             } else {
                 VideoFeeder.getInstance().removePhysicalSourceListener(sourceListener);
-                VideoFeeder.getInstance().getPrimaryVideoFeed().removeVideoDataListener(primaryVideoDataListener);
-                if (Helper.isMultiStreamPlatform()) {
-                    VideoFeeder.getInstance().getSecondaryVideoFeed().removeVideoDataListener(secondaryVideoDataListener);
-                }
+                primaryVideoFeed.unregisterLiveVideo();
+                fpvVideoFeed.unregisterLiveVideo();
             }
         }
     }
@@ -4,15 +4,14 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.RectF;
-import android.text.Layout;
-import android.text.StaticLayout;
 import android.text.TextPaint;
 import android.util.AttributeSet;
 
 import androidx.appcompat.widget.AppCompatImageView;
 
-import java.text.DecimalFormat;
+import com.dji.sdk.sample.internal.overlay.OverlayFrame;
+import com.dji.sdk.sample.internal.view.OverlayRenderer;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -21,17 +20,17 @@ import dji.common.flightcontroller.flightassistant.SmartTrackPositionInfo;
 import dji.common.flightcontroller.flightassistant.SmartTrackTrackInfo;
 import dji.common.flightcontroller.flightassistant.SmartTrackVelocityInfo;
 import dji.sdk.camera.view.PinPoint;
+import dji.sdk.camera.view.PinPointInfo;
 
 public class OverLayerTopView extends AppCompatImageView {
-    private Paint rectBorderPaint;
-    private Paint pointPaint;
-    private TextPaint wordPaint;
-    private int screenWidth, screenHeight;
-    private RectF rect = new RectF();
+    private static final int STYLE_BOUND = 0;
+    private static final int STYLE_POINT = 1;
+    private static final int STYLE_WORD = 2;
+    private static final int MAX_ITEMS = 128;
+    private static final int MAX_CHARS = 8192;
+    // Pin points and the smart-track bound are written as primitive snapshots and drawn without allocation.
+    private final OverlayRenderer renderer = new OverlayRenderer(this, 3, MAX_ITEMS, MAX_CHARS);
     private SmartTrackBoundInfo selectBound;
-    private StringBuffer buffer = new StringBuffer();
-    private DecimalFormat velocityDf = new DecimalFormat("#0.00");
-    private DecimalFormat gpsDf = new DecimalFormat("#0.00000");
     private List<LookAtMissionView.Point> points = new ArrayList<>();
 
     public OverLayerTopView(Context context) {
@@ -49,105 +48,96 @@ public class OverLayerTopView extends AppCompatImageView {
 
     private void init() {
         initPaint();
-        post(new Runnable() {
-            @Override
-            public void run() {
-                screenWidth = getWidth();
-                screenHeight = getHeight();
-            }
-        });
     }
 
     private void initPaint() {
-        rectBorderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        Paint rectBorderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         rectBorderPaint.setColor(Color.GREEN);
         rectBorderPaint.setStyle(Paint.Style.STROKE);
         rectBorderPaint.setStrokeWidth(5f);
         rectBorderPaint.setAlpha(255);//透明度
 
-        wordPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);//抗锯齿
+        TextPaint wordPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);//抗锯齿
         wordPaint.setColor(Color.YELLOW);//字体颜色
         wordPaint.setStrokeWidth(1f);//画笔的宽度
         wordPaint.setTextSize(25);//字体大小
 
-        pointPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        Paint pointPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         pointPaint.setColor(Color.BLUE);
         pointPaint.setStrokeWidth(40F);
+
+        renderer.setPaint(STYLE_BOUND, rectBorderPaint);
+        renderer.setPaint(STYLE_POINT, pointPaint);
+        renderer.setPaint(STYLE_WORD, wordPaint);
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
+        renderer.draw(canvas);
+    }
+
+    // Coordinates of pin points and bounds are normalized to the view, so the source is 1x1.
+    private void writeFrame() {
+        OverlayFrame frame = renderer.beginFrame();
+        frame.setSource(1, 1);
         if (points != null) {
-            for (LookAtMissionView.Point point : points) {
-                for (PinPoint pinPoint : point.pinPointInfo.getPinPoints()){
-                    drawPoint(canvas, pinPoint.getX(), pinPoint.getY());
-                    drawTipText(canvas, initPointInfo(point), pinPoint.getX() * screenWidth, pinPoint.getY() * screenHeight);
+            for (int i = 0; i < points.size(); i++) {
+                LookAtMissionView.Point point = points.get(i);
+                PinPointInfo pinPointInfo = point.pinPointInfo;
+                if (pinPointInfo == null) {
+                    continue;
+                }
+                List<PinPoint> pinPoints = pinPointInfo.getPinPoints();
+                for (int j = 0; j < pinPoints.size(); j++) {
+                    PinPoint pinPoint = pinPoints.get(j);
+                    frame.point(STYLE_POINT, pinPoint.getX(), pinPoint.getY());
+                    writePointInfo(frame.text(STYLE_WORD, pinPoint.getX(), pinPoint.getY(), 0,
+                            OverlayFrame.ALIGN_CENTER), point);
                 }
             }
         }
         if (selectBound != null) {
-            drawBound(canvas, selectBound);
+            float halfWidth = selectBound.getWidth() / 2;
+            float halfHeight = selectBound.getHeight() / 2;
+            frame.rect(STYLE_BOUND, selectBound.getCenterX() - halfWidth, selectBound.getCenterY() - halfHeight,
+                    selectBound.getCenterX() + halfWidth, selectBound.getCenterY() + halfHeight);
         }
+        renderer.endFrame();
     }
 
-    private String initTargetInfo(SmartTrackTrackInfo info) {
-        buffer.setLength(0);
-        buffer.append("Id:").append(info.getId()).append(" ");
-        buffer.append("Mode:").append(info.getMode()).append(" ");
-        buffer.append("Type:").append(info.getType()).append("\n");
+    private static void writeTargetInfo(OverlayFrame frame, SmartTrackTrackInfo info) {
+        frame.append("Id:").append(info.getId()).append(' ');
+        frame.append("Mode:").append(String.valueOf(info.getMode())).append(' ');
+        frame.append("Type:").append(String.valueOf(info.getType())).append('\n');
         SmartTrackPositionInfo positionInfo = info.getPositionInfo();
         if (positionInfo != null) {
-            buffer.append("Lng:").append(gpsDf.format(positionInfo.getLng())).append(" ");
-            buffer.append("Lat:").append(gpsDf.format(positionInfo.getLat())).append(" ");
-            buffer.append("Alt:").append(gpsDf.format(positionInfo.getAlt())).append("\n");
+            frame.append("Lng:").append(positionInfo.getLng(), 5).append(' ');
+            frame.append("Lat:").append(positionInfo.getLat(), 5).append(' ');
+            frame.append("Alt:").append(positionInfo.getAlt(), 5).append('\n');
         }
         SmartTrackVelocityInfo velocityInfo = info.getVelocityInfo();
         if (velocityInfo != null) {
-            buffer.append("North:").append(velocityDf.format(velocityInfo.getNorth())).append(" ");
-            buffer.append("East:").append(velocityDf.format(velocityInfo.getEast())).append(" ");
-            buffer.append("Up:").append(velocityDf.format(velocityInfo.getUp())).append("\n");
+            frame.append("North:").append(velocityInfo.getNorth(), 2).append(' ');
+            frame.append("East:").append(velocityInfo.getEast(), 2).append(' ');
+            frame.append("Up:").append(velocityInfo.getUp(), 2).append('\n');
         }
-        return buffer.toString();
-    }
-
-    private String initPointInfo(LookAtMissionView.Point point) {
-        buffer.setLength(0);
-        buffer.append("Lng:").append(point.pos.longitude).append(" ");
-        buffer.append("Lat:").append(point.pos.latitude).append(" ");
-        buffer.append("Alt:").append(point.pos.altitude).append("\n");
-        buffer.append("Direction:").append(point.pinPointInfo.getPointDirection()).append("\n");
-        buffer.append("PhysicalSource:").append(point.physicalSource);
-        return buffer.toString();
-    }
-
-    private void drawBound(Canvas canvas, SmartTrackBoundInfo boundInfo) {
-        rect.left = (boundInfo.getCenterX() - boundInfo.getWidth() / 2) * screenWidth;
-        rect.right = (boundInfo.getCenterX() + boundInfo.getWidth() / 2) * screenWidth;
-        rect.top = (boundInfo.getCenterY() - boundInfo.getHeight() / 2) * screenHeight;
-        rect.bottom = (boundInfo.getCenterY() + boundInfo.getHeight() / 2) * screenHeight;
-        canvas.drawRect(rect, rectBorderPaint);
-    }
-
-    private void drawPoint(Canvas canvas, float x, float y) {
-        canvas.drawPoint(x * screenWidth, y * screenHeight, pointPaint);
     }
 
-    private void drawTipText(Canvas canvas, String str, float x, float y) {
-        StaticLayout sy = new StaticLayout(str, wordPaint, 800,
-                Layout.Alignment.ALIGN_CENTER, 1, 0, true);
-        canvas.save();
-        canvas.translate(-sy.getWidth() / 2F + x, -sy.getHeight() / 2F + y);
-        sy.draw(canvas);
-        canvas.restore();
+    private static void writePointInfo(OverlayFrame frame, LookAtMissionView.Point point) {
+        frame.append("Lng:").append(point.pos.longitude, 6).append(' ');
+        frame.append("Lat:").append(point.pos.latitude, 6).append(' ');
+        frame.append("Alt:").append(point.pos.altitude, 2).append('\n');
+        frame.append("Direction:").append(String.valueOf(point.pinPointInfo.getPointDirection())).append('\n');
+        frame.append("PhysicalSource:").append(String.valueOf(point.physicalSource));
     }
 
     public void onSelectBoundInfo(SmartTrackBoundInfo info) {
         selectBound = info;
-        invalidate();
+        writeFrame();
     }
 
     public void onPointsChanged(List<LookAtMissionView.Point> pinPoints) {
         this.points = pinPoints;
-        invalidate();
+        writeFrame();
     }
 }
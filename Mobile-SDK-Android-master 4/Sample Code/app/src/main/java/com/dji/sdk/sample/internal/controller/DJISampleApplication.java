@@ -3,6 +3,8 @@ package com.dji.sdk.sample.internal.controller;
 import android.app.Application;
 import android.content.Context;
 
+import com.dji.sdk.sample.demo.flightcontroller.DetectorPool;
+import com.dji.sdk.sample.demo.flightcontroller.VirtualStickView;
 import com.squareup.otto.Bus;
 import com.squareup.otto.ThreadEnforcer;
 
@@ -77,4 +79,17 @@ public class DJISampleApplication extends Application {
         com.secneo.sdk.Helper.install(this);
         app = this;
     }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Load the detection model in the background so the tracking view opens without waiting for it
+        DetectorPool.getInstance().preload(this, VirtualStickView.TARGET_LABEL);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        DetectorPool.getInstance().onTrimMemory(level);
+    }
 }
\ No newline at end of file
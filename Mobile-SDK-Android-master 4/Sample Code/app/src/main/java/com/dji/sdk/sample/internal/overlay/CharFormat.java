@@ -0,0 +1,95 @@
+package com.dji.sdk.sample.internal.overlay;
+
+/**
+ * 数値を char 配列へ直接書き込む整形。描画のたびに String.format や StringBuilder で
+ * 文字列を作らないために使う。書き込めた位置を返し、配列に収まらない分は書かない。
+ */
+public final class CharFormat {
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+    };
+    /** 小数点以下の最大の桁数。 */
+    public static final int MAX_DECIMALS = POWERS_OF_TEN.length - 1;
+
+    private CharFormat() {
+    }
+
+    /**
+     * 整数を10進で書き込む。
+     *
+     * @return 書き込んだ次の位置
+     */
+    public static int appendLong(char[] dst, int pos, long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                return appendChars(dst, pos, "-9223372036854775808");
+            }
+            pos = appendChar(dst, pos, '-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        if (pos + digits > dst.length) {
+            return pos;
+        }
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            dst[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+
+    /**
+     * 小数を固定の桁数で書き込む（四捨五入）。NaN と無限大はそのまま "NaN" / "Infinity" にする。
+     *
+     * @param decimals 小数点以下の桁数（0〜{@link #MAX_DECIMALS}）
+     * @return 書き込んだ次の位置
+     */
+    public static int appendFixed(char[] dst, int pos, double value, int decimals) {
+        if (Double.isNaN(value)) {
+            return appendChars(dst, pos, "NaN");
+        }
+        if (Double.isInfinite(value)) {
+            return appendChars(dst, pos, value > 0 ? "Infinity" : "-Infinity");
+        }
+        decimals = Math.max(0, Math.min(MAX_DECIMALS, decimals));
+        long scale = POWERS_OF_TEN[decimals];
+        double scaled = Math.abs(value) * scale + 0.5;
+        if (scaled >= Long.MAX_VALUE) {
+            // long に収まらない大きさは桁を揃えない
+            return appendChars(dst, pos, value > 0 ? "Infinity" : "-Infinity");
+        }
+        long units = (long) scaled;
+        if (value < 0 && units != 0) {
+            pos = appendChar(dst, pos, '-');
+        }
+        pos = appendLong(dst, pos, units / scale);
+        if (decimals == 0) {
+            return pos;
+        }
+        pos = appendChar(dst, pos, '.');
+        long fraction = units % scale;
+        for (long place = scale / 10; place > 0; place /= 10) {
+            pos = appendChar(dst, pos, (char) ('0' + fraction / place % 10));
+        }
+        return pos;
+    }
+
+    public static int appendChars(char[] dst, int pos, CharSequence chars) {
+        int length = Math.min(chars.length(), dst.length - pos);
+        for (int i = 0; i < length; i++) {
+            dst[pos + i] = chars.charAt(i);
+        }
+        return pos + Math.max(0, length);
+    }
+
+    public static int appendChar(char[] dst, int pos, char c) {
+        if (pos >= dst.length) {
+            return pos;
+        }
+        dst[pos] = c;
+        return pos + 1;
+    }
+}
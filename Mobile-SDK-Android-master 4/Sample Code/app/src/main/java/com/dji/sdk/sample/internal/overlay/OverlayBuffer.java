@@ -0,0 +1,59 @@
+package com.dji.sdk.sample.internal.overlay;
+
+/**
+ * 作る側（1スレッド）と描く側（UIスレッド）の間で {@link OverlayFrame} を受け渡すダブルバッファ。
+ * 作る側は裏の面に書き、描く側は描画の前に {@link #swap} で表と入れ替える。
+ * 書いている途中の面は入れ替えないので、描画が書き込みを待つことはなく、描画中に内容が変わることもない。
+ */
+public final class OverlayBuffer {
+    private final Object lock = new Object();
+    private OverlayFrame front;
+    private OverlayFrame back;
+    private boolean writing;
+    private boolean pending;
+
+    public OverlayBuffer(int itemCapacity, int textCapacity) {
+        front = new OverlayFrame(itemCapacity, textCapacity);
+        back = new OverlayFrame(itemCapacity, textCapacity);
+    }
+
+    /** 裏の面を空にして返す。書き終えたら {@link #endWrite} を呼ぶ。 */
+    public OverlayFrame beginWrite() {
+        synchronized (lock) {
+            writing = true;
+        }
+        back.clear();
+        return back;
+    }
+
+    public void endWrite() {
+        synchronized (lock) {
+            writing = false;
+            pending = true;
+        }
+    }
+
+    /**
+     * UIスレッドで、新しい面が書き終わっていれば表に出す。
+     *
+     * @return 表が変わり、内容も前の表と違うなら true
+     */
+    public boolean swap() {
+        synchronized (lock) {
+            if (!pending || writing) {
+                return false;
+            }
+            OverlayFrame swap = front;
+            front = back;
+            back = swap;
+            pending = false;
+            // 比べ終わるまで作る側に前の表（次の裏の面）を渡さない
+            return !front.contentEquals(back);
+        }
+    }
+
+    /** 描く面（UIスレッドからのみ）。 */
+    public OverlayFrame getFront() {
+        return front;
+    }
+}
@@ -0,0 +1,224 @@
+package com.dji.sdk.sample.internal.overlay;
+
+/**
+ * 1回分のオーバーレイの描画内容をプリミティブ配列で持つ再利用可能なバッファ。
+ * 図形（矩形・点）と文字列を描く順に並べ、文字列は共有の char 配列に詰める。
+ * 座標は元の座標系（{@link #setSource} の幅・高さ）で持ち、描画側がビューの大きさに換算する。
+ * スタイルは描画側が持つ Paint の番号。
+ * <p>
+ * 文字列は {@link #text} で項目を始め、続けて append で書き足す。容量を超えた項目・文字は捨てる。
+ */
+public final class OverlayFrame {
+    public static final int KIND_RECT = 0;
+    public static final int KIND_POINT = 1;
+    public static final int KIND_TEXT = 2;
+
+    /** 文字列の左端を x、1行目のベースラインを y に合わせる。 */
+    public static final int ALIGN_LEFT = 0;
+    /** 文字列の塊（複数行）の中心を (x, y) に合わせる。 */
+    public static final int ALIGN_CENTER = 1;
+
+    private final int[] kinds;
+    private final int[] styles;
+    private final int[] aligns;
+    // 矩形は [left, top, right, bottom]、点と文字列は [x, y, -, -]
+    private final float[] coords;
+    // 文字列の位置をビューのピクセルでずらす量（縦）
+    private final float[] offsetsY;
+    private final int[] textStarts;
+    private final int[] textLengths;
+    private final char[] text;
+    private int count;
+    private int textUsed;
+    // append の書き込み先の項目。なければ -1
+    private int openText = -1;
+    private float sourceWidth = 1;
+    private float sourceHeight = 1;
+
+    public OverlayFrame(int itemCapacity, int textCapacity) {
+        kinds = new int[itemCapacity];
+        styles = new int[itemCapacity];
+        aligns = new int[itemCapacity];
+        coords = new float[itemCapacity * 4];
+        offsetsY = new float[itemCapacity];
+        textStarts = new int[itemCapacity];
+        textLengths = new int[itemCapacity];
+        text = new char[textCapacity];
+    }
+
+    public void clear() {
+        count = 0;
+        textUsed = 0;
+        openText = -1;
+    }
+
+    /** 座標系の幅と高さ（ピクセル座標なら画像のサイズ、正規化座標なら 1）。 */
+    public void setSource(float sourceWidth, float sourceHeight) {
+        this.sourceWidth = sourceWidth > 0 ? sourceWidth : 1;
+        this.sourceHeight = sourceHeight > 0 ? sourceHeight : 1;
+    }
+
+    /** @return 容量を超えた場合は追加せずに false */
+    public boolean rect(int style, float left, float top, float right, float bottom) {
+        return add(KIND_RECT, style, ALIGN_LEFT, left, top, right, bottom, 0) >= 0;
+    }
+
+    /** @return 容量を超えた場合は追加せずに false */
+    public boolean point(int style, float x, float y) {
+        return add(KIND_POINT, style, ALIGN_LEFT, x, y, x, y, 0) >= 0;
+    }
+
+    /**
+     * 文字列の項目を始める。続く append はこの項目に書き足す（'\n' で改行）。
+     *
+     * @param offsetY 位置を縦にずらす量（ビューのピクセル、下が正）
+     */
+    public OverlayFrame text(int style, float x, float y, float offsetY, int align) {
+        openText = add(KIND_TEXT, style, align, x, y, x, y, offsetY);
+        if (openText >= 0) {
+            textStarts[openText] = textUsed;
+            textLengths[openText] = 0;
+        }
+        return this;
+    }
+
+    public OverlayFrame append(CharSequence chars) {
+        if (openText >= 0) {
+            commit(CharFormat.appendChars(text, textUsed, chars));
+        }
+        return this;
+    }
+
+    public OverlayFrame append(char c) {
+        if (openText >= 0) {
+            commit(CharFormat.appendChar(text, textUsed, c));
+        }
+        return this;
+    }
+
+    public OverlayFrame append(long value) {
+        if (openText >= 0) {
+            commit(CharFormat.appendLong(text, textUsed, value));
+        }
+        return this;
+    }
+
+    /** 小数を固定の桁数で書き足す。 */
+    public OverlayFrame append(double value, int decimals) {
+        if (openText >= 0) {
+            commit(CharFormat.appendFixed(text, textUsed, value, decimals));
+        }
+        return this;
+    }
+
+    private void commit(int end) {
+        textLengths[openText] += end - textUsed;
+        textUsed = end;
+    }
+
+    private int add(int kind, int style, int align, float x0, float y0, float x1, float y1, float offsetY) {
+        openText = -1;
+        if (count == kinds.length) {
+            return -1;
+        }
+        int index = count++;
+        kinds[index] = kind;
+        styles[index] = style;
+        aligns[index] = align;
+        int offset = index * 4;
+        coords[offset] = x0;
+        coords[offset + 1] = y0;
+        coords[offset + 2] = x1;
+        coords[offset + 3] = y1;
+        offsetsY[index] = offsetY;
+        textStarts[index] = textUsed;
+        textLengths[index] = 0;
+        return index;
+    }
+
+    /** 内容が同じなら true（描き直しが要らない）。 */
+    public boolean contentEquals(OverlayFrame other) {
+        if (count != other.count || sourceWidth != other.sourceWidth || sourceHeight != other.sourceHeight) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (kinds[i] != other.kinds[i] || styles[i] != other.styles[i] || aligns[i] != other.aligns[i]
+                    || offsetsY[i] != other.offsetsY[i] || textLengths[i] != other.textLengths[i]) {
+                return false;
+            }
+            int offset = i * 4;
+            for (int k = 0; k < 4; k++) {
+                if (coords[offset + k] != other.coords[offset + k]) {
+                    return false;
+                }
+            }
+            int start = textStarts[i];
+            int otherStart = other.textStarts[i];
+            for (int k = 0; k < textLengths[i]; k++) {
+                if (text[start + k] != other.text[otherStart + k]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getKind(int index) {
+        return kinds[index];
+    }
+
+    public int getStyle(int index) {
+        return styles[index];
+    }
+
+    public int getAlign(int index) {
+        return aligns[index];
+    }
+
+    /** 矩形の左端、点と文字列の x。 */
+    public float getX0(int index) {
+        return coords[index * 4];
+    }
+
+    /** 矩形の上端、点と文字列の y。 */
+    public float getY0(int index) {
+        return coords[index * 4 + 1];
+    }
+
+    public float getX1(int index) {
+        return coords[index * 4 + 2];
+    }
+
+    public float getY1(int index) {
+        return coords[index * 4 + 3];
+    }
+
+    public float getOffsetY(int index) {
+        return offsetsY[index];
+    }
+
+    /** 全項目の文字列を詰めた配列。各項目は {@link #getTextStart} から {@link #getTextLength} 文字。 */
+    public char[] getText() {
+        return text;
+    }
+
+    public int getTextStart(int index) {
+        return textStarts[index];
+    }
+
+    public int getTextLength(int index) {
+        return textLengths[index];
+    }
+
+    public float getSourceWidth() {
+        return sourceWidth;
+    }
+
+    public float getSourceHeight() {
+        return sourceHeight;
+    }
+}
@@ -0,0 +1,203 @@
+package com.dji.sdk.sample.internal.utils;
+
+import android.media.MediaFormat;
+import android.util.Log;
+
+import com.dji.sdk.sample.internal.video.AccessUnitSplitter;
+import com.dji.sdk.sample.internal.video.PacketRing;
+import com.dji.sdk.sample.internal.video.PreRollBuffer;
+import com.dji.sdk.sample.internal.video.SegmentIndex;
+import com.dji.sdk.sample.internal.video.VideoPacket;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 映像フィードの直近を {@link PreRollBuffer} に持っておき、{@link #trigger} の前後を1つの MP4 のクリップに書く
+ * （人を見つけたときや操縦者が残したいときに、その直前からの映像を残す）。
+ * {@link com.dji.sdk.sample.internal.utils.VideoFeedHub#open} の読み手として使い、再エンコードはしない（{@link Mp4Writer}）。
+ * <p>
+ * 読み手のスレッドではアクセスユニットを使い回しのバッファに写すだけで、MP4 はクリップが閉じた後に
+ * 書き込み用のスレッドで書く。書き終えたクリップは {@link SegmentIndex} に加え、合計が上限を超えたら古いものから消す。
+ * 書き込みが追いつかず {@link #MAX_PENDING_CLIPS} 個を超えて溜まったクリップは捨てる（メモリを上限内に保つため）。
+ */
+public final class EventClipRecorder implements PacketRing.Consumer {
+    private static final String TAG = "EventClipRecorder";
+    // 4K の IDR でもこれを超えることはまずない
+    private static final int MAX_UNIT_BYTES = 8 * 1024 * 1024;
+    /** 書き込みを待てるクリップの数。 */
+    public static final int MAX_PENDING_CLIPS = 2;
+
+    /** クリップを作るきっかけ。小文字にした名前をファイル名に使う。 */
+    public enum Reason {
+        /** しばらくぶりに人を見つけた。 */
+        PERSON,
+        /** 操縦者が残した。 */
+        MANUAL;
+
+        private final String fileName = name().toLowerCase(Locale.US);
+    }
+
+    private final File directory;
+    private final SegmentIndex index;
+    private final AccessUnitSplitter splitter = new AccessUnitSplitter(256 * 1024, MAX_UNIT_BYTES, this::onAccessUnit);
+    private final PreRollBuffer preRoll;
+    private final ExecutorService writerExecutor =
+            Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, TAG));
+    // 書き込み用のスレッドでのみ使う
+    private final SimpleDateFormat nameFormat = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.US);
+    private boolean closed;
+    // 読み手のスレッドと書き込み用のスレッドの両方で数える
+    private final AtomicInteger pendingClips = new AtomicInteger();
+    private final AtomicInteger droppedClips = new AtomicInteger();
+    private volatile int writtenClips;
+
+    /**
+     * @param directory     クリップと一覧を書くディレクトリ（なければ作る）
+     * @param preRollNanos  きっかけより前に残す時間
+     * @param postRollNanos きっかけより後に残す時間
+     * @param maxBytes      直近の映像と作っているクリップに使うメモリの上限
+     * @param quotaBytes    クリップの合計の上限
+     */
+    public EventClipRecorder(File directory, long preRollNanos, long postRollNanos, long maxBytes, long quotaBytes)
+            throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        index = new SegmentIndex(directory, quotaBytes);
+        preRoll = new PreRollBuffer(preRollNanos, postRollNanos, maxBytes, this::onClip);
+    }
+
+    /**
+     * 直近の映像からクリップを作り始める（どのスレッドからでもよい）。作っている途中なら後ろを延ばす。
+     *
+     * @param reason きっかけ（ファイル名とログに使う）
+     */
+    public void trigger(Reason reason) {
+        preRoll.trigger(reason.fileName);
+    }
+
+    /** 読み手のスレッド。 */
+    @Override
+    public synchronized void onPacket(VideoPacket packet, boolean gap) {
+        if (closed) {
+            return;
+        }
+        if (gap) {
+            splitter.reset();
+        }
+        splitter.push(packet.getData(), 0, packet.getSize(), packet.getReceivedNanos());
+    }
+
+    private void onAccessUnit(byte[] data, int size, long receivedNanos, boolean keyFrame) {
+        preRoll.add(data, size, receivedNanos, keyFrame);
+    }
+
+    // 読み手のスレッド。形式はここで parser から写し取っておく
+    private void onClip(PreRollBuffer.Clip clip) {
+        MediaFormat format = Mp4Writer.createFormat(splitter.getParser());
+        if (format == null || clip.getUnits().isEmpty() || pendingClips.get() >= MAX_PENDING_CLIPS) {
+            Log.e(TAG, "Dropped a " + clip.getReason() + " clip ("
+                    + (format == null ? "no parameter sets" : pendingClips.get() + " clips pending") + ")");
+            clip.recycle();
+            droppedClips.incrementAndGet();
+            return;
+        }
+        pendingClips.incrementAndGet();
+        writerExecutor.execute(() -> {
+            try {
+                writeClip(clip, format);
+            } finally {
+                clip.recycle();
+                pendingClips.decrementAndGet();
+            }
+        });
+    }
+
+    // 書き込み用のスレッド
+    private void writeClip(PreRollBuffer.Clip clip, MediaFormat format) {
+        List<PreRollBuffer.Unit> units = clip.getUnits();
+        long startNanos = units.get(0).getReceivedNanos();
+        // 受信した時刻を壁時計に直す
+        long startMillis = System.currentTimeMillis() - (System.nanoTime() - startNanos) / 1_000_000L;
+        File file = new File(directory,
+                "clip-" + nameFormat.format(new Date(startMillis)) + "-" + clip.getReason() + ".mp4");
+        Mp4Writer writer;
+        try {
+            writer = new Mp4Writer(file, format, startNanos);
+        } catch (IOException e) {
+            Log.e(TAG, e.getMessage());
+            droppedClips.incrementAndGet();
+            return;
+        }
+        try {
+            for (int i = 0; i < units.size(); i++) {
+                PreRollBuffer.Unit unit = units.get(i);
+                writer.write(unit.getData(), unit.getSize(), unit.getReceivedNanos(), unit.isKeyFrame());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, e.getMessage());
+            writer.abort();
+            droppedClips.incrementAndGet();
+            return;
+        }
+        if (!writer.finish()) {
+            Log.e(TAG, "Failed to finish " + file);
+            droppedClips.incrementAndGet();
+            return;
+        }
+        try {
+            index.add(new SegmentIndex.Segment(file.getName(), startMillis, writer.getDurationMillis(),
+                    writer.getFrames(), file.length()));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to update the clip index: " + e.getMessage());
+        }
+        writtenClips++;
+        Log.d(TAG, String.format(Locale.US, "Wrote %s: %d frames, %.1f s before the trigger, %d KiB (%s)",
+                file.getName(), writer.getFrames(), clip.getPreRollNanos() / 1e9, file.length() / 1024, index));
+    }
+
+    /**
+     * 作っている途中のクリップを受信したところまでで書き、書き終えるのを待つ。読み手を閉じた後に呼ぶ
+     * （MP4 を書くので少し時間がかかる）。
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // 次のフレームを待っている最後のアクセスユニットも入れてから閉じる（ポストロールがそれで終わればそこで閉じる）
+            splitter.flush();
+            preRoll.flush();
+            preRoll.clear();
+        }
+        writerExecutor.shutdown();
+        try {
+            if (!writerExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                Log.e(TAG, "Timed out writing clips");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public SegmentIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return "events " + preRoll + ", " + writtenClips + " written"
+                + (droppedClips.get() > 0 ? " " + droppedClips.get() + " dropped" : "") + ", " + index;
+    }
+}
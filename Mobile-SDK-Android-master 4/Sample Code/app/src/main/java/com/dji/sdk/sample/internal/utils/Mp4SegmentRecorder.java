@@ -0,0 +1,156 @@
+package com.dji.sdk.sample.internal.utils;
+
+import android.media.MediaFormat;
+import android.util.Log;
+
+import com.dji.sdk.sample.internal.video.AccessUnitSplitter;
+import com.dji.sdk.sample.internal.video.AnnexBParser;
+import com.dji.sdk.sample.internal.video.PacketRing;
+import com.dji.sdk.sample.internal.video.SegmentIndex;
+import com.dji.sdk.sample.internal.video.VideoPacket;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * 映像フィードの H.264 を再エンコードせずに MP4 のセグメントへ書く（操縦者が見ていた映像を端末に残す）。
+ * {@link VideoFeedHub#open} の読み手として使い、受信したデータをアクセスユニットに切り出して
+ * そのまま MediaMuxer に渡す（{@link Mp4Writer}）。デコードしないので、受信1回あたりの処理は NAL の区切りの検索とコピーだけ。
+ * <p>
+ * セグメントは必ず IDR から始め、segmentNanos を過ぎた後の最初の IDR で次のセグメントに切り替える
+ * （SPS・PPS が変わったときもその IDR で切り替える）。書き終えたセグメントは {@link SegmentIndex} に加え、
+ * 合計が上限を超えたら古いものから消す。フレームの時刻は受信した時刻で、セグメントの先頭を 0 とする。
+ * 書き込みのエラーはログに残してそのセグメントを捨て、次の IDR から書き直す。
+ */
+public final class Mp4SegmentRecorder implements PacketRing.Consumer {
+    private static final String TAG = "Mp4SegmentRecorder";
+    // 4K の IDR でもこれを超えることはまずない
+    private static final int MAX_UNIT_BYTES = 8 * 1024 * 1024;
+
+    private final File directory;
+    private final long segmentNanos;
+    private final SegmentIndex index;
+    private final AccessUnitSplitter splitter = new AccessUnitSplitter(256 * 1024, MAX_UNIT_BYTES, this::onAccessUnit);
+    private final SimpleDateFormat nameFormat = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.US);
+
+    // 書いているセグメント
+    private Mp4Writer writer;
+    private long segmentStartNanos;
+    private long segmentStartMillis;
+    private int parameterSetVersion;
+    private boolean closed;
+    private volatile int segments;
+    private volatile long frames;
+
+    /**
+     * @param directory    セグメントと一覧を書くディレクトリ（なければ作る）
+     * @param segmentNanos セグメントの長さの目安
+     * @param quotaBytes   セグメントの合計の上限
+     */
+    public Mp4SegmentRecorder(File directory, long segmentNanos, long quotaBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        this.segmentNanos = segmentNanos;
+        index = new SegmentIndex(directory, quotaBytes);
+    }
+
+    /** 読み手のスレッド。 */
+    @Override
+    public synchronized void onPacket(VideoPacket packet, boolean gap) {
+        if (closed) {
+            return;
+        }
+        if (gap) {
+            splitter.reset();
+        }
+        splitter.push(packet.getData(), 0, packet.getSize(), packet.getReceivedNanos());
+    }
+
+    private void onAccessUnit(byte[] data, int size, long receivedNanos, boolean keyFrame) {
+        AnnexBParser parser = splitter.getParser();
+        if (keyFrame && (writer == null || receivedNanos - segmentStartNanos >= segmentNanos
+                || parser.getParameterSetVersion() != parameterSetVersion)) {
+            finishSegment();
+            startSegment(receivedNanos);
+        }
+        if (writer == null) {
+            // 最初の IDR を待つ
+            return;
+        }
+        try {
+            writer.write(data, size, receivedNanos, keyFrame);
+        } catch (IOException e) {
+            Log.e(TAG, e.getMessage());
+            writer.abort();
+            writer = null;
+            return;
+        }
+        frames++;
+    }
+
+    private void startSegment(long receivedNanos) {
+        AnnexBParser parser = splitter.getParser();
+        MediaFormat format = Mp4Writer.createFormat(parser);
+        if (format == null) {
+            return;
+        }
+        // 受信した時刻を壁時計に直す
+        segmentStartMillis = System.currentTimeMillis() - (System.nanoTime() - receivedNanos) / 1_000_000L;
+        File file = new File(directory, "feed-" + nameFormat.format(new Date(segmentStartMillis)) + ".mp4");
+        try {
+            writer = new Mp4Writer(file, format, receivedNanos);
+        } catch (IOException e) {
+            Log.e(TAG, e.getMessage());
+            return;
+        }
+        parameterSetVersion = parser.getParameterSetVersion();
+        segmentStartNanos = receivedNanos;
+    }
+
+    private void finishSegment() {
+        if (writer == null) {
+            return;
+        }
+        Mp4Writer finished = writer;
+        writer = null;
+        File file = finished.getFile();
+        if (!finished.finish()) {
+            Log.e(TAG, "Failed to finish " + file);
+            return;
+        }
+        try {
+            index.add(new SegmentIndex.Segment(file.getName(), segmentStartMillis, finished.getDurationMillis(),
+                    finished.getFrames(), file.length()));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to update the segment index: " + e.getMessage());
+        }
+        segments++;
+        Log.d(TAG, "Wrote " + file.getName() + ": " + finished.getFrames() + " frames, "
+                + file.length() / 1024 + " KiB (" + index + ")");
+    }
+
+    /** 書いているセグメントを閉じて一覧に加える。読み手を閉じた後に呼ぶ（MP4 の末尾を書くので少し時間がかかる）。 */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // 次のフレームを待っている最後のアクセスユニットも書く
+        splitter.flush();
+        finishSegment();
+    }
+
+    public SegmentIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return "mp4 " + frames + " frames, " + segments + " segs written, " + index;
+    }
+}
@@ -0,0 +1,124 @@
+package com.dji.sdk.sample.internal.utils;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+
+import com.dji.sdk.sample.internal.video.AnnexBParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * H.264 のアクセスユニットを再エンコードせずに1つの MP4 に書く（{@link Mp4SegmentRecorder} と {@link EventClipRecorder} で共有）。
+ * フレームの時刻は受信した時刻で、startNanos を 0 とする。同じ受信で届いたフレームは 1us ずつずらす。
+ * MediaMuxer の実行時の例外は IOException にして返す。1つのスレッドから使うこと。
+ */
+final class Mp4Writer {
+    private final File file;
+    private final MediaMuxer muxer;
+    private final int track;
+    private final long startNanos;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    // 渡された配列を包んだもの（配列が変わったら包み直す）
+    private ByteBuffer wrapped = ByteBuffer.allocate(0);
+    private long lastPresentationUs = -1;
+    private int frames;
+
+    /**
+     * parser の今の SPS・PPS・解像度・フレームレートから MP4 のトラックの形式を作る。
+     * 作った形式は parser から切り離されているので、別のスレッドで使ってよい。
+     *
+     * @return まだ SPS・PPS を受信していなければ null
+     */
+    static MediaFormat createFormat(AnnexBParser parser) {
+        if (!parser.hasParameterSets() || parser.getWidth() <= 0) {
+            return null;
+        }
+        MediaFormat format = MediaFormat.createVideoFormat(MediaFormat.MIMETYPE_VIDEO_AVC,
+                parser.getWidth(), parser.getHeight());
+        byte[] parameterSet = new byte[parser.getParameterSetsLength()];
+        int length = parser.copySps(parameterSet, 0);
+        format.setByteBuffer("csd-0", ByteBuffer.wrap(parameterSet, 0, length).slice());
+        int offset = length;
+        length = parser.copyPps(parameterSet, offset);
+        format.setByteBuffer("csd-1", ByteBuffer.wrap(parameterSet, offset, length).slice());
+        if (parser.getFrameRate() > 0) {
+            format.setInteger(MediaFormat.KEY_FRAME_RATE, Math.round(parser.getFrameRate()));
+        }
+        return format;
+    }
+
+    Mp4Writer(File file, MediaFormat format, long startNanos) throws IOException {
+        this.file = file;
+        this.startNanos = startNanos;
+        muxer = new MediaMuxer(file.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        try {
+            track = muxer.addTrack(format);
+            muxer.start();
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            abort();
+            throw new IOException("Cannot start " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    void write(byte[] data, int size, long receivedNanos, boolean keyFrame) throws IOException {
+        if (wrapped.array() != data) {
+            wrapped = ByteBuffer.wrap(data);
+        }
+        long presentationUs = Math.max((receivedNanos - startNanos) / 1000L, lastPresentationUs + 1);
+        wrapped.limit(size).position(0);
+        bufferInfo.set(0, size, presentationUs, keyFrame ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+        try {
+            muxer.writeSampleData(track, wrapped, bufferInfo);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new IOException("Cannot write " + file + ": " + e.getMessage(), e);
+        }
+        lastPresentationUs = presentationUs;
+        frames++;
+    }
+
+    /**
+     * MP4 の末尾を書いて閉じる。フレームがないか閉じられなかったときはファイルを消す。
+     *
+     * @return ファイルを残したなら true
+     */
+    boolean finish() {
+        if (frames == 0) {
+            // フレームのない MP4 は stop() で失敗するので捨てる
+            abort();
+            return false;
+        }
+        try {
+            muxer.stop();
+        } catch (IllegalStateException e) {
+            abort();
+            return false;
+        }
+        muxer.release();
+        return true;
+    }
+
+    /** 書きかけのファイルを捨てる。 */
+    void abort() {
+        muxer.release();
+        if (file.exists()) {
+            // 消せなくても次の書き込みには影響しない
+            file.delete();
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getFrames() {
+        return frames;
+    }
+
+    /** 最初のフレームから最後のフレームまでの時間。 */
+    long getDurationMillis() {
+        return Math.max(0, lastPresentationUs) / 1000L;
+    }
+}
@@ -0,0 +1,373 @@
+package com.dji.sdk.sample.internal.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.dji.sdk.sample.internal.video.KeyFrameIndex;
+import com.dji.sdk.sample.internal.video.PacketRecorder;
+import com.dji.sdk.sample.internal.video.PacketRecording;
+import com.dji.sdk.sample.internal.video.PacketReplay;
+import com.dji.sdk.sample.internal.video.PacketRing;
+import com.dji.sdk.sample.internal.video.StreamHealth;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import dji.sdk.camera.VideoFeeder;
+
+/**
+ * 映像（主・副のフィード）ごとの受信の入口。VideoFeeder には映像ごとに VideoDataListener を1つだけ付け、
+ * 受け取ったデータを {@link PacketRing} に1回だけコピーして、表示のデコーダ・解析・録画・配信に配る。
+ * 読み手はそれぞれ専用のスレッドで読むので、遅い読み手が SDK の受信スレッドを止めることはない。
+ * <p>
+ * 最初の読み手を {@link #open} したときに VideoFeeder に付け、最後の読み手を {@link #close} したときに外す。
+ * <p>
+ * 付けている間は受信ごとに {@link StreamHealth} の統計を更新し、途切れと復帰を {@link StreamListener} に知らせる。
+ * 途切れの判定は、最後の受信から一定時間後の1回の起床だけで行う（受信のたびにタイマーを張り直さない）。
+ * <p>
+ * 付けている間は専用の読み手で H.264 を読み（{@link KeyFrameIndex}）、最新の IDR からの GOP を持っておく。
+ * 新しく始めるデコーダは {@link #startFromKeyFrame} で、次の IDR を待たずにこの GOP から始められる。
+ * <p>
+ * {@link #startRecording} で受信したパケットを受信時刻ごとファイルに録り（{@link PacketRecorder}）、
+ * {@link #startReplay} で録ったファイルを VideoFeeder の代わりに流し直す（{@link PacketReplay}）。
+ * 流し直している間は VideoFeeder からの受信を使わないので、機体なしで読み手（デコード → 検出 → 制御）を動かせる。
+ */
+public final class VideoFeedHub {
+    private static final String TAG = "VideoFeedHub";
+    // 1回の受信は1フレーム前後なので、30fps で数秒分の遅れまでは読み飛ばさない
+    private static final int RING_SLOTS = 256;
+    private static final int INITIAL_PACKET_CAPACITY = 16 * 1024;
+    // これだけ受信がなければ映像が途切れたとみなす
+    private static final long STALL_NANOS = 500_000_000L;
+    // 持っておく GOP のパケット数の上限（30fps で4秒分）
+    private static final int MAX_GOP_PACKETS = 120;
+
+    /** 映像の途切れと復帰（メインスレッド）。 */
+    public interface StreamListener {
+        void onStall();
+
+        /** @param stalledNanos 途切れていた時間（最初の受信では 0） */
+        void onRecovered(long stalledNanos);
+    }
+
+    private static VideoFeedHub primary;
+    private static VideoFeedHub secondary;
+
+    private final boolean primaryFeed;
+    private final PacketRing ring = new PacketRing(RING_SLOTS, INITIAL_PACKET_CAPACITY);
+    private final Map<PacketRing.Reader, ExecutorService> executors = new HashMap<>();
+    private final StreamHealth health = new StreamHealth(STALL_NANOS);
+    private final KeyFrameIndex keyFrameIndex = new KeyFrameIndex(ring, MAX_GOP_PACKETS);
+    private ExecutorService indexExecutor;
+    private PacketRing.Reader indexReader;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // メインスレッドでのみ使う
+    private final List<StreamListener> streamListeners = new ArrayList<>();
+    private final VideoFeeder.VideoDataListener videoDataListener = (videoBuffer, size) -> {
+        if (replay == null) {
+            onVideoData(videoBuffer, size, System.nanoTime());
+        }
+    };
+    private PacketRecorder recorder;
+    private PacketRing.Reader recordReader;
+    // 流し直している間はリングの書き手を流し直しのスレッドにする。
+    // 切り替わる瞬間に SDK の受信が1つ重なり得るが、番号はリングのロックの中で振るので読み手は壊れない
+    private volatile PacketReplay replay;
+    // 入力元が切り替わったら、前の入力元の GOP から読み直させない
+    private final VideoFeeder.PhysicalSourceListener sourceListener = (videoFeed, source) -> {
+        if (videoFeed == attachedFeed) {
+            keyFrameIndex.invalidate();
+        }
+    };
+    private volatile VideoFeeder.VideoFeed attachedFeed;
+    private long recoveredStalls;
+
+    // 期限に起きて、受信が続いていれば次の期限まで寝直す。途切れたら次の受信まで起きない
+    private final Runnable stallCheck = new Runnable() {
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            if (health.checkStall(now)) {
+                Log.w(TAG, (primaryFeed ? "Primary" : "Secondary") + " feed stalled: " + health);
+                for (int i = 0; i < streamListeners.size(); i++) {
+                    streamListeners.get(i).onStall();
+                }
+            } else {
+                scheduleStallCheck(now);
+            }
+        }
+    };
+
+    private VideoFeedHub(boolean primaryFeed) {
+        this.primaryFeed = primaryFeed;
+    }
+
+    /** 主のフィード（搭載カメラ）。 */
+    public static synchronized VideoFeedHub getPrimary() {
+        if (primary == null) {
+            primary = new VideoFeedHub(true);
+        }
+        return primary;
+    }
+
+    /** 副のフィード（FPV カメラなど）。 */
+    public static synchronized VideoFeedHub getSecondary() {
+        if (secondary == null) {
+            secondary = new VideoFeedHub(false);
+        }
+        return secondary;
+    }
+
+    /** VideoFeeder のフィードに対応する入口。 */
+    public static VideoFeedHub of(VideoFeeder.VideoFeed videoFeed) {
+        VideoFeeder feeder = VideoFeeder.getInstance();
+        return feeder != null && videoFeed == feeder.getSecondaryVideoFeed() ? getSecondary() : getPrimary();
+    }
+
+    /**
+     * 読み手を加える。consumer は読み手専用のスレッドで、加えた後に受信したデータから順に呼ばれる。
+     *
+     * @param name スレッド名と統計の表示に使う
+     */
+    public synchronized PacketRing.Reader open(String name, PacketRing.Consumer consumer) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, TAG + "-" + name));
+        PacketRing.Reader reader = ring.openReader(name, executor, consumer);
+        executors.put(reader, executor);
+        if (indexReader == null) {
+            attach();
+        }
+        return reader;
+    }
+
+    /** {@link #open} と対で呼ぶ。最後の読み手なら VideoFeeder から外す。 */
+    public synchronized void close(PacketRing.Reader reader) {
+        ExecutorService executor = executors.remove(reader);
+        if (executor == null) {
+            return;
+        }
+        reader.close();
+        executor.shutdown();
+        if (executors.isEmpty()) {
+            detach();
+        }
+    }
+
+    /**
+     * {@link #open} した読み手を、持っている最新の GOP（IDR から今まで）から読み直させる。
+     * デコーダを作った直後に呼ぶと、次の IDR を待たずに表示を始められる。GOP がなければ何もしない。
+     */
+    public void startFromKeyFrame(PacketRing.Reader reader) {
+        if (keyFrameIndex.replay(reader)) {
+            Log.d(TAG, reader.getName() + " starts from the cached key frame: " + keyFrameIndex);
+        }
+    }
+
+    /**
+     * 受信したパケットを file に録り始める。持っている GOP があればその IDR から録るので、録ったものは頭から再生できる。
+     *
+     * @return 録り始めたなら true、もう録っていれば false
+     */
+    public synchronized boolean startRecording(File file) throws IOException {
+        if (recorder != null) {
+            return false;
+        }
+        recorder = new PacketRecorder(file);
+        recordReader = open("record", recorder);
+        startFromKeyFrame(recordReader);
+        Log.d(TAG, "Recording " + (primaryFeed ? "primary" : "secondary") + " feed to " + file);
+        return true;
+    }
+
+    /**
+     * 録るのをやめて索引を書く。
+     *
+     * @return 録っていたもの。録っていなければ null
+     */
+    public synchronized PacketRecorder stopRecording() {
+        PacketRecorder stopped = recorder;
+        if (stopped == null) {
+            return null;
+        }
+        close(recordReader);
+        recordReader = null;
+        recorder = null;
+        try {
+            stopped.close();
+            Log.d(TAG, "Recorded " + stopped + " to " + stopped.getFile());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to finish recording " + stopped.getFile() + ": " + e.getMessage());
+        }
+        return stopped;
+    }
+
+    /** 録っているもの。録っていなければ null。 */
+    public synchronized PacketRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * 録ったファイルを VideoFeeder の代わりに流し直す。流している間は VideoFeeder からの受信を使わない。
+     * 読み手がすべて閉じられたら止まる。
+     *
+     * @param realTime 録ったときの間隔どおりに流すなら true、待たずに流すなら false
+     * @param loops    繰り返す回数
+     */
+    public synchronized PacketReplay startReplay(File file, boolean realTime, int loops) throws IOException {
+        stopReplay();
+        PacketRecording recording = PacketRecording.open(file);
+        PacketReplay started = new PacketReplay(recording, this::onVideoData, realTime, loops);
+        // 今の GOP は流し直すものと続いていない
+        keyFrameIndex.invalidate();
+        replay = started;
+        new Thread(() -> {
+            try {
+                started.run();
+                Log.d(TAG, "Replay finished in " + started.getElapsedNanos() / 1_000_000L + " ms: " + started);
+            } finally {
+                finishReplay(started);
+            }
+        }, TAG + "-replay").start();
+        Log.d(TAG, "Replaying " + recording + (realTime ? " in real time" : " at full speed"));
+        return started;
+    }
+
+    /** 流し直すのをやめ、VideoFeeder からの受信に戻す。 */
+    public synchronized void stopReplay() {
+        PacketReplay current = replay;
+        if (current != null) {
+            current.stop();
+            finishReplay(current);
+        }
+    }
+
+    /** 流し直しているもの。流していなければ null。 */
+    public PacketReplay getReplay() {
+        return replay;
+    }
+
+    private synchronized void finishReplay(PacketReplay finished) {
+        if (replay != finished) {
+            return;
+        }
+        replay = null;
+        keyFrameIndex.invalidate();
+        try {
+            finished.getRecording().close();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close " + finished.getRecording().getFile() + ": " + e.getMessage());
+        }
+    }
+
+    /** 入力元（カメラやレンズ）を切り替えたときに呼ぶ。前の入力元の GOP から読み直させないようにする。 */
+    public void onSourceChanged() {
+        keyFrameIndex.invalidate();
+    }
+
+    /** H.264 の解像度・フレームレート・GOP の長さと、持っている GOP。 */
+    public KeyFrameIndex getKeyFrameIndex() {
+        return keyFrameIndex;
+    }
+
+    /** 途切れと復帰の通知を受け取る（メインスレッドから呼ぶ）。今の状態は {@link #getHealth()} で見る。 */
+    public void addStreamListener(StreamListener listener) {
+        if (!streamListeners.contains(listener)) {
+            streamListeners.add(listener);
+        }
+    }
+
+    public void removeStreamListener(StreamListener listener) {
+        streamListeners.remove(listener);
+    }
+
+    /** 受信の統計と途切れの状態。 */
+    public StreamHealth getHealth() {
+        return health;
+    }
+
+    // SDK の受信スレッドか、流し直しのスレッドから
+    private void onVideoData(byte[] data, int size, long nowNanos) {
+        ring.publish(data, size, nowNanos);
+        if (health.onPacket(nowNanos, size, StreamHealth.isKeyFrame(data, size))) {
+            handler.post(this::onRecovered);
+        }
+    }
+
+    private void onRecovered() {
+        long stalledNanos = 0;
+        if (health.getStalls() > recoveredStalls) {
+            // 最初の受信でなければ、途切れていた時間を知らせる
+            recoveredStalls = health.getStalls();
+            stalledNanos = health.getLastStallNanos();
+            Log.d(TAG, (primaryFeed ? "Primary" : "Secondary") + " feed recovered after "
+                    + stalledNanos / 1_000_000L + " ms: " + health);
+        }
+        for (int i = 0; i < streamListeners.size(); i++) {
+            streamListeners.get(i).onRecovered(stalledNanos);
+        }
+        scheduleStallCheck(System.nanoTime());
+    }
+
+    private void scheduleStallCheck(long nowNanos) {
+        long deadline = health.getDeadlineNanos();
+        if (deadline == Long.MAX_VALUE) {
+            return;
+        }
+        handler.removeCallbacks(stallCheck);
+        handler.postDelayed(stallCheck, Math.max(0, (deadline - nowNanos + 999_999L) / 1_000_000L));
+    }
+
+    // 流し直すときは VideoFeeder がなくても読み手は動くので、索引と途切れの判定は先に始める
+    private void attach() {
+        indexExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, TAG + "-index"));
+        indexReader = ring.openReader("index", indexExecutor, keyFrameIndex);
+        // 外していた間の受信はないので、付け直したら期限から判定し直す
+        handler.removeCallbacks(stallCheck);
+        handler.postDelayed(stallCheck, STALL_NANOS / 1_000_000L);
+
+        VideoFeeder feeder = VideoFeeder.getInstance();
+        if (feeder == null) {
+            Log.e(TAG, "VideoFeeder is not available.");
+            return;
+        }
+        attachedFeed = primaryFeed ? feeder.getPrimaryVideoFeed() : feeder.getSecondaryVideoFeed();
+        if (attachedFeed != null) {
+            attachedFeed.addVideoDataListener(videoDataListener);
+            feeder.addPhysicalSourceListener(sourceListener);
+        }
+    }
+
+    private void detach() {
+        if (attachedFeed != null) {
+            attachedFeed.removeVideoDataListener(videoDataListener);
+            attachedFeed = null;
+            VideoFeeder feeder = VideoFeeder.getInstance();
+            if (feeder != null) {
+                feeder.removePhysicalSourceListener(sourceListener);
+            }
+        }
+        stopReplay();
+        if (indexReader != null) {
+            indexReader.close();
+            indexReader = null;
+            // 読んでいる途中のパケットを読み終えてから離す
+            indexExecutor.execute(keyFrameIndex::clear);
+            indexExecutor.shutdown();
+            indexExecutor = null;
+        }
+        ring.clear();
+        handler.removeCallbacks(stallCheck);
+        Log.d(TAG, (primaryFeed ? "Primary" : "Secondary") + " feed detached: " + ring);
+    }
+
+    /** 受信量と、読み手ごとの遅れ・読み飛ばしの数。 */
+    public PacketRing getRing() {
+        return ring;
+    }
+}
@@ -7,17 +7,13 @@ import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.view.View;
 
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-
 import androidx.annotation.NonNull;
+
+import com.dji.sdk.sample.internal.video.PacketRing;
+import com.dji.sdk.sample.internal.video.VideoPacket;
 import dji.midware.usb.P3.UsbAccessoryService;
 import dji.sdk.camera.VideoFeeder;
 import dji.sdk.codec.DJICodecManager;
-import dji.thirdparty.rx.Observable;
-import dji.thirdparty.rx.Subscription;
-import dji.thirdparty.rx.android.schedulers.AndroidSchedulers;
-import dji.thirdparty.rx.functions.Action1;
 
 /**
  * VideoView will show the live video for the given video feed.
@@ -25,17 +21,26 @@ import dji.thirdparty.rx.functions.Action1;
 public class VideoFeedView extends SurfaceView {
     //region Properties
     private final static String TAG = "DULFpvWidget";
-    private DJICodecManager codecManager = null;
-    private VideoFeeder.VideoDataListener videoDataListener = null;
+    private volatile DJICodecManager codecManager = null;
+    private PacketRing.Consumer videoConsumer = null;
+    private VideoFeedHub videoFeedHub;
+    private PacketRing.Reader videoReader;
     private int videoWidth;
     private int videoHeight;
     private boolean isPrimaryVideoFeed;
     private View coverView;
-    private final long WAIT_TIME = 500; // Half of a second
-    private AtomicLong lastReceivedFrameTime = new AtomicLong(0);
-    private Observable timer =
-        Observable.timer(100, TimeUnit.MICROSECONDS).observeOn(AndroidSchedulers.mainThread()).repeat();
-    private Subscription subscription;
+    // Shows the cover while the feed is stalled; the hub decides when that is.
+    private final VideoFeedHub.StreamListener streamListener = new VideoFeedHub.StreamListener() {
+        @Override
+        public void onStall() {
+            updateCoverView(true);
+        }
+
+        @Override
+        public void onRecovered(long stalledNanos) {
+            updateCoverView(false);
+        }
+    };
     private SurfaceHolder surfaceHolder;
 
     //endregion
@@ -56,6 +61,9 @@ public class VideoFeedView extends SurfaceView {
 
     public void setCoverView(View view) {
         coverView = view;
+        if (videoFeedHub != null) {
+            updateCoverView(videoFeedHub.getHealth().isStalled());
+        }
     }
 
     private void init(Context context) {
@@ -76,6 +84,7 @@ public class VideoFeedView extends SurfaceView {
                             isPrimaryVideoFeed
                                     ? UsbAccessoryService.VideoStreamSource.Camera
                                     : UsbAccessoryService.VideoStreamSource.Fpv);
+                    startFromKeyFrame();
                 }
             }
 
@@ -94,54 +103,80 @@ public class VideoFeedView extends SurfaceView {
             }
         });
 
-        videoDataListener = new VideoFeeder.VideoDataListener() {
+        // Runs on this view's reader thread of the shared feed ring, not on the SDK callback thread.
+        videoConsumer = new PacketRing.Consumer() {
 
             @Override
-            public void onReceive(byte[] videoBuffer, int size) {
-
-                lastReceivedFrameTime.set(System.currentTimeMillis());
-
-                if (codecManager != null) {
-                    codecManager.sendDataToDecoder(videoBuffer,
-                                                   size,
-                                                   isPrimaryVideoFeed
-                                                   ? UsbAccessoryService.VideoStreamSource.Camera.getIndex()
-                                                   : UsbAccessoryService.VideoStreamSource.Fpv.getIndex());
+            public void onPacket(VideoPacket packet, boolean gap) {
+                DJICodecManager manager = codecManager;
+                if (manager != null) {
+                    if (gap) {
+                        // Packets were skipped because this decoder fell behind; wait for the next key frame.
+                        manager.resetKeyFrame();
+                    }
+                    manager.sendDataToDecoder(packet.getData(),
+                                              packet.getSize(),
+                                              isPrimaryVideoFeed
+                                              ? UsbAccessoryService.VideoStreamSource.Camera.getIndex()
+                                              : UsbAccessoryService.VideoStreamSource.Fpv.getIndex());
                 }
             }
         };
+    }
 
-        subscription = timer.subscribe(new Action1() {
-            @Override
-            public void call(Object o) {
-                final long now = System.currentTimeMillis();
-                final long ellapsedTime = now - lastReceivedFrameTime.get();
-                if (coverView != null) {
-                    if (ellapsedTime > WAIT_TIME && !ModuleVerificationUtil.isMavic2Product()) {
-                        if (coverView.getVisibility() == INVISIBLE) {
-                            coverView.setVisibility(VISIBLE);
-                        }
-                    } else {
-                        if (coverView.getVisibility() == VISIBLE) {
-                            coverView.setVisibility(INVISIBLE);
-                        }
-                    }
-                }
+    private void updateCoverView(boolean stalled) {
+        if (coverView == null) {
+            return;
+        }
+        if (stalled && !ModuleVerificationUtil.isMavic2Product()) {
+            if (coverView.getVisibility() == INVISIBLE) {
+                coverView.setVisibility(VISIBLE);
             }
-        });
+        } else {
+            if (coverView.getVisibility() == VISIBLE) {
+                coverView.setVisibility(INVISIBLE);
+            }
+        }
     }
 
-    public VideoFeeder.VideoDataListener registerLiveVideo(VideoFeeder.VideoFeed videoFeed, boolean isPrimary) {
+    /**
+     * Starts reading the given feed through its shared {@link VideoFeedHub}. Does nothing if already registered.
+     */
+    public void registerLiveVideo(VideoFeeder.VideoFeed videoFeed, boolean isPrimary) {
         isPrimaryVideoFeed = isPrimary;
 
-        if (videoDataListener != null && videoFeed != null && !videoFeed.getListeners().contains(videoDataListener)) {
-            videoFeed.addVideoDataListener(videoDataListener);
-            return videoDataListener;
+        if (videoConsumer != null && videoFeed != null && videoReader == null) {
+            videoFeedHub = VideoFeedHub.of(videoFeed);
+            videoReader = videoFeedHub.open(isPrimary ? "primary-view" : "fpv-view", videoConsumer);
+            videoFeedHub.addStreamListener(streamListener);
+            updateCoverView(videoFeedHub.getHealth().isStalled());
+            startFromKeyFrame();
+        }
+    }
+
+    // Lets a new decoder start from the last key frame the hub keeps instead of waiting for the next one.
+    private void startFromKeyFrame() {
+        VideoFeedHub hub = videoFeedHub;
+        PacketRing.Reader reader = videoReader;
+        if (hub != null && reader != null && codecManager != null) {
+            hub.startFromKeyFrame(reader);
+        }
+    }
+
+    public void unregisterLiveVideo() {
+        if (videoReader != null) {
+            videoFeedHub.removeStreamListener(streamListener);
+            videoFeedHub.close(videoReader);
+            videoReader = null;
+            videoFeedHub = null;
         }
-        return null;
     }
 
     public void changeSourceResetKeyFrame() {
+        if (videoFeedHub != null) {
+            // The cached key frame belongs to the previous source.
+            videoFeedHub.onSourceChanged();
+        }
         if (codecManager != null) {
             codecManager.resetKeyFrame();
         }
@@ -150,9 +185,7 @@ public class VideoFeedView extends SurfaceView {
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
-        if (subscription != null && !subscription.isUnsubscribed()) {
-            subscription.unsubscribe();
-        }
+        unregisterLiveVideo();
         VideoFeeder.getInstance().destroy();
     }
 }
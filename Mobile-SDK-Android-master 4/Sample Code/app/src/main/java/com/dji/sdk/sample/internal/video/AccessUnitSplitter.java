@@ -0,0 +1,136 @@
+package com.dji.sdk.sample.internal.video;
+
+/**
+ * 受信の単位で届く H.264 を、アクセスユニット（1フレーム分の NAL の並び）ごとに切り出す。デコードはしない。
+ * アクセスユニットの終わりは次のフレームの始まりで分かるので、1フレーム遅れて渡す。最後のアクセスユニットは
+ * {@link #flush} で渡す。
+ * 最初のフレームの始まりより前のデータと、途中から読んだ不完全なアクセスユニットは捨てる。
+ * <p>
+ * 切り出しのバッファは使い回し、大きいフレームが来たときだけ広げる。1つのスレッドから使うこと。
+ */
+public final class AccessUnitSplitter {
+    /** 切り出したアクセスユニットの受け取り先。data は呼び出しの後で書き換わるので、保持するならコピーすること。 */
+    public interface Listener {
+        /**
+         * @param receivedNanos フレームの始まりを受信した時刻
+         * @param keyFrame      IDR なら true
+         */
+        void onAccessUnit(byte[] data, int size, long receivedNanos, boolean keyFrame);
+    }
+
+    private final AnnexBParser parser = new AnnexBParser();
+    private final Listener listener;
+    private final int maxUnitBytes;
+    private byte[] unit;
+    private int unitLength;
+    // unit[0] のストリーム上の位置
+    private long unitStart;
+    // unit の先頭が読み始めたアクセスユニットの始まりなら true
+    private boolean unitOpen;
+    private long unitNanos;
+    private boolean unitKeyFrame;
+    private long units;
+    private long dropped;
+
+    /**
+     * @param initialCapacity 最初に確保するバッファの大きさ
+     * @param maxUnitBytes    これを超えてもフレームが終わらなければ、そのアクセスユニットを捨てる
+     */
+    public AccessUnitSplitter(int initialCapacity, int maxUnitBytes, Listener listener) {
+        this.listener = listener;
+        this.maxUnitBytes = maxUnitBytes;
+        unit = new byte[initialCapacity];
+    }
+
+    /** 受信したデータを続けて読み、終わったアクセスユニットを渡す。 */
+    public void push(byte[] data, int offset, int length, long receivedNanos) {
+        int end = offset + length;
+        while (offset < end) {
+            int consumed = parser.parseToPicture(data, offset, end - offset, receivedNanos);
+            append(data, offset, consumed);
+            offset += consumed;
+            int flags = parser.getLastFlags();
+            if ((flags & AnnexBParser.FOUND_PICTURE) != 0) {
+                onPicture(receivedNanos, (flags & AnnexBParser.FOUND_KEY_FRAME) != 0);
+            }
+        }
+    }
+
+    private void onPicture(long receivedNanos, boolean keyFrame) {
+        long start = parser.getPictureStart();
+        int size = (int) Math.max(0, start - unitStart);
+        if (unitOpen && size > 0) {
+            listener.onAccessUnit(unit, size, unitNanos, unitKeyFrame);
+            units++;
+        }
+        // 次のアクセスユニットの始まりを前に詰める
+        System.arraycopy(unit, size, unit, 0, unitLength - size);
+        unitLength -= size;
+        unitStart += size;
+        // 始まりがもう手元になければ、このアクセスユニットは渡さない
+        unitOpen = start >= unitStart;
+        unitNanos = receivedNanos;
+        unitKeyFrame = keyFrame;
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        if (unitLength + length > maxUnitBytes) {
+            // フレームの終わりが見つからない（壊れたデータ）。ここまでを捨てて次のフレームから
+            unitStart += unitLength + length;
+            unitLength = 0;
+            if (unitOpen) {
+                unitOpen = false;
+                dropped++;
+            }
+            return;
+        }
+        if (unitLength + length > unit.length) {
+            byte[] grown = new byte[Math.min(maxUnitBytes, Math.max(unit.length * 2, unitLength + length))];
+            System.arraycopy(unit, 0, grown, 0, unitLength);
+            unit = grown;
+        }
+        System.arraycopy(data, offset, unit, unitLength, length);
+        unitLength += length;
+    }
+
+    /**
+     * ストリームが終わったときに、読んでいる途中のアクセスユニットを渡す（次のフレームの始まりが来ないので、
+     * {@link #push} だけでは最後のアクセスユニットが渡らない）。この後の {@link #push} は次のフレームの始まりから読む。
+     */
+    public void flush() {
+        if (unitOpen && unitLength > 0) {
+            listener.onAccessUnit(unit, unitLength, unitNanos, unitKeyFrame);
+            units++;
+        }
+        parser.reset();
+        unitLength = 0;
+        unitStart = parser.getStreamOffset();
+        unitOpen = false;
+    }
+
+    /** 読み飛ばしなどで続きでなくなったときに、途中のアクセスユニットを捨てる。 */
+    public void reset() {
+        parser.reset();
+        if (unitOpen) {
+            dropped++;
+        }
+        unitLength = 0;
+        unitStart = parser.getStreamOffset();
+        unitOpen = false;
+    }
+
+    /** SPS・PPS と解像度。 */
+    public AnnexBParser getParser() {
+        return parser;
+    }
+
+    /** 渡したアクセスユニットの数。 */
+    public long getUnits() {
+        return units;
+    }
+
+    /** 読み飛ばしや大きすぎるために捨てたアクセスユニットの数。 */
+    public long getDropped() {
+        return dropped;
+    }
+}
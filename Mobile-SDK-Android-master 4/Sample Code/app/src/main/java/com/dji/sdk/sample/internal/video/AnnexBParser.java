@@ -0,0 +1,572 @@
+package com.dji.sdk.sample.internal.video;
+
+import java.util.Locale;
+
+/**
+ * H.264 の Annex-B（スタートコード区切り）のデータを受信の単位のまま読み、NAL の境界を見つける。デコードはしない。
+ * 最新の SPS・PPS を保持して解像度とフレームレート（SPS の VUI にあれば）を読み、
+ * IDR から次の IDR までのフレーム数（GOP の長さ）を数える。
+ * <p>
+ * NAL やスタートコードが受信の境目をまたいでもよい。位置はストリームの先頭からのバイト数で表す。
+ * アクセスユニットごとに切り出すときは {@link #parseToPicture} でフレームの始まりごとに止める。
+ * 作成後はメモリを確保しない。1つのスレッドから使うこと。
+ */
+public final class AnnexBParser {
+    public static final int NAL_SLICE = 1;
+    public static final int NAL_IDR_SLICE = 5;
+    public static final int NAL_SEI = 6;
+    public static final int NAL_SPS = 7;
+    public static final int NAL_PPS = 8;
+    public static final int NAL_AUD = 9;
+
+    /** {@link #parse} の戻り値: 新しいフレームが始まった。 */
+    public static final int FOUND_PICTURE = 1;
+    /** {@link #parse} の戻り値: IDR フレームが始まった。アクセスユニットの始まりは {@link #getKeyFrameStart()}。 */
+    public static final int FOUND_KEY_FRAME = 2;
+    /** {@link #parse} の戻り値: SPS か PPS の中身が変わった。 */
+    public static final int FOUND_PARAMETER_SETS = 4;
+
+    // SPS・PPS の最大の大きさ（スケーリングリストがあってもこれを超えることはまずない）
+    private static final int MAX_PARAMETER_SET_BYTES = 256;
+    // フレームレートを数える窓
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+    private static final byte[] START_CODE = {0, 0, 0, 1};
+
+    // これまでに読んだバイト数（次の parse の先頭の位置）
+    private long streamOffset;
+    // 直前までに続いた 0x00 の数
+    private int zeros;
+    // スタートコードの直後で、NAL のヘッダを待っている
+    private boolean awaitingHeader;
+    // スライスのヘッダの先頭（first_mb_in_slice）を待っている
+    private boolean awaitingFirstMb;
+    private int nalType = -1;
+    // 今の NAL のスタートコードの位置
+    private long nalStart;
+
+    // アクセスユニットの始まり（AUD・SPS・PPS・SEI）を見て、まだフレームが始まっていない
+    private boolean unitOpen;
+    private long unitStart;
+    private boolean spsInUnit;
+
+    // SPS・PPS の中身を集めている
+    private boolean collecting;
+    private boolean nalOverflow;
+    private final byte[] nal = new byte[MAX_PARAMETER_SET_BYTES];
+    private int nalLength;
+
+    private final byte[] sps = new byte[MAX_PARAMETER_SET_BYTES];
+    private int spsLength;
+    private final byte[] pps = new byte[MAX_PARAMETER_SET_BYTES];
+    private int ppsLength;
+    private int parameterSetVersion;
+
+    // SPS の読み取り（エミュレーション防止バイトを除いたもの）
+    private final byte[] rbsp = new byte[MAX_PARAMETER_SET_BYTES];
+    private int rbspBits;
+    private int bitPosition;
+
+    private int width;
+    private int height;
+    private float frameRate;
+
+    private long pictures;
+    private long keyFrames;
+    private int picturesSinceKeyFrame;
+    private int gopLength;
+    private long keyFrameStart = -1;
+    private boolean keyFrameHasSps;
+    private long pictureStart = -1;
+    private int lastFlags;
+
+    private long windowStartNanos;
+    private int windowPictures;
+    private float measuredFrameRate;
+
+    /**
+     * 受信したデータを続けて読む。
+     *
+     * @param nowNanos 受信した時刻（System.nanoTime()）。フレームレートの計測に使う
+     * @return 見つけたものの FOUND_* の組み合わせ
+     */
+    public int parse(byte[] data, int offset, int length, long nowNanos) {
+        scan(data, offset, length, nowNanos, false);
+        return lastFlags;
+    }
+
+    /**
+     * {@link #parse} と同じように読むが、新しいフレームが始まったところで止める。
+     * 見つけたものは {@link #getLastFlags()}、始まったフレームのアクセスユニットの位置は {@link #getPictureStart()}。
+     *
+     * @return 読んだバイト数。length より少なければ、残りを続けて渡す
+     */
+    public int parseToPicture(byte[] data, int offset, int length, long nowNanos) {
+        return scan(data, offset, length, nowNanos, true);
+    }
+
+    private int scan(byte[] data, int offset, int length, long nowNanos, boolean stopAtPicture) {
+        int flags = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int b = data[i] & 0xFF;
+            if (awaitingHeader) {
+                awaitingHeader = false;
+                startNal(b);
+                zeros = 0;
+                continue;
+            }
+            if (awaitingFirstMb) {
+                awaitingFirstMb = false;
+                // first_mb_in_slice は ue(v) なので、先頭のビットが 1 なら 0（フレームの最初のスライス）
+                if ((b & 0x80) != 0) {
+                    flags |= onPicture(nowNanos);
+                }
+                if (stopAtPicture && (flags & FOUND_PICTURE) != 0) {
+                    // このバイトまで読んで止める（スライスの中身で 0x00 でも 0x01 でもないので、以下は zeros を戻すだけ）
+                    end = i + 1;
+                }
+            }
+            if (collecting) {
+                if (nalLength < nal.length) {
+                    nal[nalLength++] = (byte) b;
+                } else {
+                    nalOverflow = true;
+                }
+            }
+            if (b == 0) {
+                zeros++;
+            } else {
+                if (b == 1 && zeros >= 2) {
+                    flags |= finishNal();
+                    // 0x00 が3つ以上なら、最後の3つと 0x01 がスタートコード（4バイトのもの）
+                    nalStart = streamOffset + (i - offset) - Math.min(zeros, 3);
+                    awaitingHeader = true;
+                }
+                zeros = 0;
+            }
+        }
+        int consumed = end - offset;
+        streamOffset += consumed;
+        lastFlags = flags;
+        return consumed;
+    }
+
+    /** 読み飛ばしなどで続きでなくなったときに、途中の NAL を捨てる。SPS・PPS と統計は残す。 */
+    public void reset() {
+        zeros = 0;
+        awaitingHeader = false;
+        awaitingFirstMb = false;
+        nalType = -1;
+        unitOpen = false;
+        collecting = false;
+        picturesSinceKeyFrame = 0;
+        keyFrameStart = -1;
+        pictureStart = -1;
+        windowStartNanos = 0;
+    }
+
+    private void startNal(int header) {
+        nalType = header & 0x1F;
+        boolean vcl = nalType >= NAL_SLICE && nalType <= NAL_IDR_SLICE;
+        if (vcl) {
+            awaitingFirstMb = true;
+        } else if (!unitOpen && (nalType == NAL_AUD || nalType == NAL_SPS || nalType == NAL_PPS || nalType == NAL_SEI
+                || (nalType >= 14 && nalType <= 18))) {
+            unitOpen = true;
+            unitStart = nalStart;
+            spsInUnit = false;
+        }
+        if (nalType == NAL_SPS) {
+            spsInUnit = true;
+        }
+        if (nalType == NAL_SPS || nalType == NAL_PPS) {
+            // ヘッダも含めて集める（デコーダに渡すときはヘッダから要る）
+            collecting = true;
+            nalOverflow = false;
+            nal[0] = (byte) header;
+            nalLength = 1;
+        }
+    }
+
+    // スタートコードの 0x01 まで読んだところで、前の NAL を閉じる
+    private int finishNal() {
+        awaitingFirstMb = false;
+        if (!collecting) {
+            return 0;
+        }
+        collecting = false;
+        if (nalOverflow) {
+            return 0;
+        }
+        // 集めた中にはスタートコードも入っているので、0x01 と末尾の 0x00 を除く
+        int length = nalLength - 1;
+        while (length > 0 && nal[length - 1] == 0) {
+            length--;
+        }
+        if (nalType == NAL_SPS) {
+            return onSps(length);
+        }
+        return onPps(length);
+    }
+
+    private int onSps(int length) {
+        if (length == spsLength && equals(nal, sps, length)) {
+            return 0;
+        }
+        if (!readSps(length)) {
+            // 読めない SPS は使わず、今のものを残す
+            return 0;
+        }
+        System.arraycopy(nal, 0, sps, 0, length);
+        spsLength = length;
+        parameterSetVersion++;
+        return FOUND_PARAMETER_SETS;
+    }
+
+    private int onPps(int length) {
+        if (length == ppsLength && equals(nal, pps, length)) {
+            return 0;
+        }
+        System.arraycopy(nal, 0, pps, 0, length);
+        ppsLength = length;
+        parameterSetVersion++;
+        return FOUND_PARAMETER_SETS;
+    }
+
+    private int onPicture(long nowNanos) {
+        long start = unitOpen ? unitStart : nalStart;
+        pictureStart = start;
+        boolean withSps = unitOpen && spsInUnit;
+        unitOpen = false;
+
+        pictures++;
+        if (windowStartNanos == 0) {
+            windowStartNanos = nowNanos;
+            windowPictures = 0;
+        } else {
+            windowPictures++;
+            long windowNanos = nowNanos - windowStartNanos;
+            if (windowNanos >= RATE_WINDOW_NANOS) {
+                measuredFrameRate = windowPictures * 1e9f / windowNanos;
+                windowStartNanos = nowNanos;
+                windowPictures = 0;
+            }
+        }
+
+        int flags = FOUND_PICTURE;
+        if (nalType == NAL_IDR_SLICE) {
+            if (keyFrames > 0 && picturesSinceKeyFrame > 0) {
+                gopLength = picturesSinceKeyFrame;
+            }
+            keyFrames++;
+            picturesSinceKeyFrame = 0;
+            keyFrameStart = start;
+            keyFrameHasSps = withSps;
+            flags |= FOUND_KEY_FRAME;
+        }
+        picturesSinceKeyFrame++;
+        return flags;
+    }
+
+    // SPS（ヘッダの後ろ）から解像度とフレームレートを読む。H.264 7.3.2.1.1
+    private boolean readSps(int length) {
+        int rbspLength = 0;
+        int zeroRun = 0;
+        for (int i = 1; i < length; i++) {
+            int b = nal[i] & 0xFF;
+            if (zeroRun >= 2 && b == 3) {
+                // エミュレーション防止バイト
+                zeroRun = 0;
+                continue;
+            }
+            zeroRun = b == 0 ? zeroRun + 1 : 0;
+            rbsp[rbspLength++] = (byte) b;
+        }
+        rbspBits = rbspLength * 8;
+        bitPosition = 0;
+
+        int profile = readBits(8);
+        readBits(16); // constraint_set フラグと level_idc
+        readUe(); // seq_parameter_set_id
+        int chromaFormat = 1;
+        boolean frameMbsOnly;
+        if (profile == 100 || profile == 110 || profile == 122 || profile == 244 || profile == 44
+                || profile == 83 || profile == 86 || profile == 118 || profile == 128 || profile == 138
+                || profile == 139 || profile == 134 || profile == 135) {
+            chromaFormat = readUe();
+            if (chromaFormat == 3) {
+                readBits(1); // separate_colour_plane_flag
+            }
+            readUe(); // bit_depth_luma_minus8
+            readUe(); // bit_depth_chroma_minus8
+            readBits(1); // qpprime_y_zero_transform_bypass_flag
+            if (readBits(1) != 0) {
+                int lists = chromaFormat != 3 ? 8 : 12;
+                for (int i = 0; i < lists; i++) {
+                    if (readBits(1) != 0) {
+                        skipScalingList(i < 6 ? 16 : 64);
+                    }
+                }
+            }
+        }
+        readUe(); // log2_max_frame_num_minus4
+        int pocType = readUe();
+        if (pocType == 0) {
+            readUe(); // log2_max_pic_order_cnt_lsb_minus4
+        } else if (pocType == 1) {
+            readBits(1); // delta_pic_order_always_zero_flag
+            readSe(); // offset_for_non_ref_pic
+            readSe(); // offset_for_top_to_bottom_field
+            int cycle = readUe();
+            for (int i = 0; i < cycle && bitPosition <= rbspBits; i++) {
+                readSe();
+            }
+        }
+        readUe(); // max_num_ref_frames
+        readBits(1); // gaps_in_frame_num_value_allowed_flag
+        int widthInMbs = readUe() + 1;
+        int heightInMapUnits = readUe() + 1;
+        frameMbsOnly = readBits(1) != 0;
+        if (!frameMbsOnly) {
+            readBits(1); // mb_adaptive_frame_field_flag
+        }
+        readBits(1); // direct_8x8_inference_flag
+        int cropLeft = 0;
+        int cropRight = 0;
+        int cropTop = 0;
+        int cropBottom = 0;
+        if (readBits(1) != 0) {
+            cropLeft = readUe();
+            cropRight = readUe();
+            cropTop = readUe();
+            cropBottom = readUe();
+        }
+        float vuiFrameRate = 0;
+        if (readBits(1) != 0) {
+            vuiFrameRate = readVuiFrameRate();
+        }
+        if (bitPosition > rbspBits) {
+            return false;
+        }
+
+        int cropUnitX = chromaFormat == 0 || chromaFormat == 3 ? 1 : 2;
+        int cropUnitY = (chromaFormat == 1 ? 2 : 1) * (frameMbsOnly ? 1 : 2);
+        width = widthInMbs * 16 - cropUnitX * (cropLeft + cropRight);
+        height = (frameMbsOnly ? 1 : 2) * heightInMapUnits * 16 - cropUnitY * (cropTop + cropBottom);
+        frameRate = vuiFrameRate;
+        return true;
+    }
+
+    // VUI のうち timing_info まで読む。E.1.1
+    private float readVuiFrameRate() {
+        if (readBits(1) != 0) {
+            if (readBits(8) == 255) {
+                readBits(16); // sar_width
+                readBits(16); // sar_height
+            }
+        }
+        if (readBits(1) != 0) {
+            readBits(1); // overscan_appropriate_flag
+        }
+        if (readBits(1) != 0) {
+            readBits(4); // video_format, video_full_range_flag
+            if (readBits(1) != 0) {
+                readBits(24); // colour_primaries, transfer_characteristics, matrix_coefficients
+            }
+        }
+        if (readBits(1) != 0) {
+            readUe(); // chroma_sample_loc_type_top_field
+            readUe(); // chroma_sample_loc_type_bottom_field
+        }
+        if (readBits(1) == 0) {
+            return 0;
+        }
+        long unitsInTick = readBits(32) & 0xFFFFFFFFL;
+        long timeScale = readBits(32) & 0xFFFFFFFFL;
+        // 1フレームは2ティック（フィールド単位の時刻）
+        return unitsInTick > 0 ? timeScale / (2f * unitsInTick) : 0;
+    }
+
+    private void skipScalingList(int size) {
+        int last = 8;
+        int next = 8;
+        for (int j = 0; j < size && bitPosition <= rbspBits; j++) {
+            if (next != 0) {
+                next = (last + readSe() + 256) % 256;
+            }
+            last = next == 0 ? last : next;
+        }
+    }
+
+    // 終わりを越えて読むと 0 を返し、bitPosition が rbspBits を超える
+    private int readBits(int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int bit = 0;
+            if (bitPosition < rbspBits) {
+                bit = (rbsp[bitPosition >> 3] >> (7 - (bitPosition & 7))) & 1;
+            }
+            bitPosition++;
+            value = (value << 1) | bit;
+        }
+        return value;
+    }
+
+    private int readUe() {
+        int leadingZeros = 0;
+        while (readBits(1) == 0) {
+            if (++leadingZeros > 31 || bitPosition > rbspBits) {
+                bitPosition = rbspBits + 1;
+                return 0;
+            }
+        }
+        return (int) ((1L << leadingZeros) - 1 + (readBits(leadingZeros) & 0xFFFFFFFFL));
+    }
+
+    private int readSe() {
+        int value = readUe();
+        return (value & 1) != 0 ? (value + 1) / 2 : -(value / 2);
+    }
+
+    private static boolean equals(byte[] a, byte[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** SPS と PPS の両方を受信していれば true。 */
+    public boolean hasParameterSets() {
+        return spsLength > 0 && ppsLength > 0;
+    }
+
+    /** {@link #copyParameterSets} で書き込むバイト数。 */
+    public int getParameterSetsLength() {
+        return hasParameterSets() ? 2 * START_CODE.length + spsLength + ppsLength : 0;
+    }
+
+    /**
+     * 最新の SPS と PPS をスタートコード付きで out に書き込む（デコーダの先頭に渡せる形）。
+     *
+     * @return 書き込んだバイト数。まだ受信していなければ 0
+     */
+    public int copyParameterSets(byte[] out, int offset) {
+        if (!hasParameterSets()) {
+            return 0;
+        }
+        int position = offset;
+        System.arraycopy(START_CODE, 0, out, position, START_CODE.length);
+        position += START_CODE.length;
+        System.arraycopy(sps, 0, out, position, spsLength);
+        position += spsLength;
+        System.arraycopy(START_CODE, 0, out, position, START_CODE.length);
+        position += START_CODE.length;
+        System.arraycopy(pps, 0, out, position, ppsLength);
+        position += ppsLength;
+        return position - offset;
+    }
+
+    /**
+     * 最新の SPS だけをスタートコード付きで out に書き込む（MediaFormat の csd-0 の形）。
+     *
+     * @return 書き込んだバイト数。まだ受信していなければ 0
+     */
+    public int copySps(byte[] out, int offset) {
+        return copyNal(sps, spsLength, out, offset);
+    }
+
+    /** 最新の PPS だけをスタートコード付きで out に書き込む（MediaFormat の csd-1 の形）。 */
+    public int copyPps(byte[] out, int offset) {
+        return copyNal(pps, ppsLength, out, offset);
+    }
+
+    private static int copyNal(byte[] nal, int length, byte[] out, int offset) {
+        if (length == 0) {
+            return 0;
+        }
+        System.arraycopy(START_CODE, 0, out, offset, START_CODE.length);
+        System.arraycopy(nal, 0, out, offset + START_CODE.length, length);
+        return START_CODE.length + length;
+    }
+
+    /** SPS か PPS の中身が変わるたびに増える。 */
+    public int getParameterSetVersion() {
+        return parameterSetVersion;
+    }
+
+    /** SPS の解像度（クロップ後）。SPS を受信するまでは 0。 */
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** SPS の VUI にあるフレームレート。なければ 0（{@link #getMeasuredFrameRate()} を使う）。 */
+    public float getFrameRate() {
+        return frameRate;
+    }
+
+    /** 受信の時刻から数えた直近の窓のフレームレート。 */
+    public float getMeasuredFrameRate() {
+        return measuredFrameRate;
+    }
+
+    /** 直前の IDR から次の IDR までのフレーム数。IDR を2回読むまでは 0。 */
+    public int getGopLength() {
+        return gopLength;
+    }
+
+    /** 最後の IDR から（IDR を含めて）のフレーム数。 */
+    public int getPicturesSinceKeyFrame() {
+        return picturesSinceKeyFrame;
+    }
+
+    public long getPictures() {
+        return pictures;
+    }
+
+    public long getKeyFrames() {
+        return keyFrames;
+    }
+
+    /**
+     * 最後の IDR のアクセスユニットの始まり（前に AUD・SPS・PPS・SEI があればその先頭のスタートコード）の位置。
+     * まだなければ -1。
+     */
+    public long getKeyFrameStart() {
+        return keyFrameStart;
+    }
+
+    /** 最後の IDR のアクセスユニットに SPS が入っていれば true（なければデコーダには先に SPS・PPS を渡す）。 */
+    public boolean keyFrameHasParameterSets() {
+        return keyFrameHasSps;
+    }
+
+    /**
+     * 最後に始まったフレームのアクセスユニットの始まり（{@link #getKeyFrameStart()} と同じ数え方）の位置。
+     * まだなければ -1。
+     */
+    public long getPictureStart() {
+        return pictureStart;
+    }
+
+    /** 直前の {@link #parse}・{@link #parseToPicture} で見つけたものの FOUND_* の組み合わせ。 */
+    public int getLastFlags() {
+        return lastFlags;
+    }
+
+    /** これまでに読んだバイト数。次の {@link #parse} の先頭の位置になる。 */
+    public long getStreamOffset() {
+        return streamOffset;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%dx%d %.0f/%.0f fps gop %d (%d since key)",
+                width, height, frameRate, measuredFrameRate, gopLength, picturesSinceKeyFrame);
+    }
+}
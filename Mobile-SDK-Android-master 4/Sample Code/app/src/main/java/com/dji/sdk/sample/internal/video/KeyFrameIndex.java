@@ -0,0 +1,170 @@
+package com.dji.sdk.sample.internal.video;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * リングの読み手として受信データを {@link AnnexBParser} で読み、最新の IDR から今までのパケット（GOP）を持っておく。
+ * 新しくつないだデコーダを {@link #replay} でこの GOP から始めれば、次の IDR を待たずに今の映像まで追いつける。
+ * <p>
+ * GOP の先頭は IDR のアクセスユニットの始まりから切り出したコピーで、SPS・PPS が入っていなければ最新のものを前に付ける。
+ * 続くパケットはリングのものを参照を増やして持つだけで、コピーしない。
+ * GOP が長すぎる（{@code maxPackets} を超える）ときや読み飛ばしたときは、次の IDR まで持たない。
+ */
+public final class KeyFrameIndex implements PacketRing.Consumer {
+    private final PacketRing ring;
+    private final AnnexBParser parser = new AnnexBParser();
+    private final Object lock = new Object();
+    // lock で守る
+    private final VideoPacket[] gop;
+    private int gopCount;
+    private long gopEndSequence;
+    private volatile long replays;
+
+    // 読み手のスレッドでのみ使う。IDR の始まりが前のパケットにあったときのために、直前のパケットを持っておく
+    private VideoPacket previous;
+    private long previousStart;
+    private byte[] parameterSets = new byte[0];
+
+    /** @param maxPackets 持っておく GOP のパケット数の上限 */
+    public KeyFrameIndex(PacketRing ring, int maxPackets) {
+        this.ring = ring;
+        gop = new VideoPacket[maxPackets];
+    }
+
+    @Override
+    public void onPacket(VideoPacket packet, boolean gap) {
+        if (gap) {
+            // 続きでなくなったので、次の IDR から持ち直す
+            parser.reset();
+            invalidate();
+            releasePrevious();
+        }
+        long start = parser.getStreamOffset();
+        int flags = parser.parse(packet.getData(), 0, packet.getSize(), packet.getReceivedNanos());
+        if ((flags & AnnexBParser.FOUND_KEY_FRAME) != 0) {
+            startGop(packet, start);
+        } else {
+            appendGop(packet);
+        }
+        releasePrevious();
+        packet.retain();
+        previous = packet;
+        previousStart = start;
+    }
+
+    private void startGop(VideoPacket packet, long start) {
+        long keyFrameStart = parser.getKeyFrameStart();
+        VideoPacket head = ring.obtain(packet.getReceivedNanos());
+        head.setSequence(packet.getSequence());
+        if (!parser.keyFrameHasParameterSets()) {
+            int length = parser.getParameterSetsLength();
+            if (parameterSets.length < length) {
+                parameterSets = new byte[length];
+            }
+            head.append(parameterSets, 0, parser.copyParameterSets(parameterSets, 0));
+        }
+        if (keyFrameStart >= start) {
+            int offset = (int) (keyFrameStart - start);
+            head.append(packet.getData(), offset, packet.getSize() - offset);
+        } else if (previous != null && keyFrameStart >= previousStart) {
+            int offset = (int) (keyFrameStart - previousStart);
+            head.append(previous.getData(), offset, previous.getSize() - offset);
+            head.append(packet.getData(), 0, packet.getSize());
+        } else {
+            // 始まりがもう手元にない
+            head.release();
+            invalidate();
+            return;
+        }
+        synchronized (lock) {
+            releaseGop();
+            gop[0] = head;
+            gopCount = 1;
+            gopEndSequence = packet.getSequence();
+        }
+    }
+
+    private void appendGop(VideoPacket packet) {
+        synchronized (lock) {
+            if (gopCount == 0) {
+                return;
+            }
+            if (gopCount == gop.length) {
+                releaseGop();
+                return;
+            }
+            packet.retain();
+            gop[gopCount++] = packet;
+            gopEndSequence = packet.getSequence();
+        }
+    }
+
+    private void releasePrevious() {
+        if (previous != null) {
+            previous.release();
+            previous = null;
+        }
+    }
+
+    // lock の中で呼ぶ
+    private void releaseGop() {
+        for (int i = 0; i < gopCount; i++) {
+            gop[i].release();
+            gop[i] = null;
+        }
+        gopCount = 0;
+    }
+
+    /**
+     * reader を今の GOP から読み直させる。GOP を読ませた後は、GOP の次のパケットからリングを読み続ける。
+     * GOP を持っていなければ何もしない（デコーダは次の IDR を待つ）。
+     *
+     * @return GOP から読み直させたなら true
+     */
+    public boolean replay(PacketRing.Reader reader) {
+        VideoPacket[] packets;
+        long nextSequence;
+        synchronized (lock) {
+            if (gopCount == 0) {
+                return false;
+            }
+            packets = Arrays.copyOf(gop, gopCount);
+            for (VideoPacket packet : packets) {
+                packet.retain();
+            }
+            nextSequence = gopEndSequence + 1;
+        }
+        reader.replay(packets, packets.length, nextSequence);
+        replays++;
+        return true;
+    }
+
+    /** 持っている GOP を捨てる（映像の入力元が切り替わったときなど）。次の IDR から持ち直す。 */
+    public void invalidate() {
+        synchronized (lock) {
+            releaseGop();
+        }
+    }
+
+    /** GOP と直前のパケットを離し、読みかけの NAL を捨てる。読み手のスレッドで、読み手を閉じた後に呼ぶ。 */
+    public void clear() {
+        invalidate();
+        releasePrevious();
+        parser.reset();
+    }
+
+    /** 解像度・フレームレート・GOP の長さ。読み手のスレッドの外から見るときは目安として使う。 */
+    public AnnexBParser getParser() {
+        return parser;
+    }
+
+    @Override
+    public String toString() {
+        int count;
+        synchronized (lock) {
+            count = gopCount;
+        }
+        return String.format(Locale.US, "h264 %s, cached %d pkts, replays %d", parser, count, replays);
+    }
+}
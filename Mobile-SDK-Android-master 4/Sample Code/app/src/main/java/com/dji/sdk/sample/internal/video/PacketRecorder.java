@@ -0,0 +1,175 @@
+package com.dji.sdk.sample.internal.video;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 受信したパケットと受信時刻を、そのままの形でファイルに書き足していく（{@link PacketRecording} で読む）。
+ * ファイルは区切りごとにメモリにマップして書き込むので、受信ごとのシステムコールもコピー用のバッファもない。
+ * リングの読み手として使えば、受信スレッドを止めずに録る。
+ * <p>
+ * 形式（ビッグエンディアン）:
+ * <pre>
+ * ヘッダ   int MAGIC, int VERSION, long 作成時刻（ミリ秒）
+ * パケット int 大きさ, long 受信時刻（System.nanoTime()）, byte[大きさ]  … 受信の順に続く
+ * 索引     long パケットの位置, long 受信時刻  … パケットの数だけ（{@link #close()} で書く）
+ * 末尾     long 索引の位置, int パケットの数, int INDEX_MAGIC
+ * </pre>
+ * 閉じずに終わった（アプリが落ちた）ファイルは索引がないが、パケットは先頭から順にたどって読める。
+ * 書き込みのエラーは {@link #getError()} に残して以後は録らない（受信側には投げない）。
+ */
+public final class PacketRecorder implements PacketRing.Consumer, Closeable {
+    static final int MAGIC = 0x444A5652; // "DJVR"
+    static final int VERSION = 1;
+    static final int INDEX_MAGIC = 0x44584944; // "DXID"
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_HEADER_BYTES = 12;
+    static final int INDEX_ENTRY_BYTES = 16;
+    static final int FOOTER_BYTES = 16;
+    // PacketRecording はファイル全体を1つのマップで読むので、これを超えたら録るのをやめる
+    static final long MAX_FILE_BYTES = Integer.MAX_VALUE;
+    // 一度にマップする大きさ
+    private static final int MAP_BYTES = 8 * 1024 * 1024;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private MappedByteBuffer window;
+    // window の先頭のファイル上の位置
+    private long windowStart;
+    // 次に書く位置
+    private long position;
+
+    private long[] offsets = new long[1024];
+    private long[] receivedNanos = new long[1024];
+    private int count;
+    private long payloadBytes;
+    private boolean full;
+    private boolean closed;
+    private IOException error;
+
+    public PacketRecorder(File file) throws IOException {
+        this.file = file;
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        try {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).flip();
+            channel.write(header, 0);
+            position = HEADER_BYTES;
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /** リングの読み手として録る（読み手のスレッド）。 */
+    @Override
+    public void onPacket(VideoPacket packet, boolean gap) {
+        append(packet.getData(), packet.getSize(), packet.getReceivedNanos());
+    }
+
+    /**
+     * パケットを1つ書き足す。
+     *
+     * @return 書いたなら true。閉じた後・エラーの後・大きさの上限に達した後は false
+     */
+    public synchronized boolean append(byte[] data, int size, long nanos) {
+        if (closed || error != null || full) {
+            return false;
+        }
+        int recordBytes = RECORD_HEADER_BYTES + size;
+        long indexBytes = (long) (count + 1) * INDEX_ENTRY_BYTES + FOOTER_BYTES;
+        if (position + recordBytes + indexBytes > MAX_FILE_BYTES) {
+            full = true;
+            return false;
+        }
+        try {
+            if (window == null || window.remaining() < recordBytes) {
+                // パケットが区切りをまたがないように、ここから新しくマップする（ファイルはマップした分だけ伸びる）
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart,
+                        Math.min(Math.max(MAP_BYTES, recordBytes), MAX_FILE_BYTES - windowStart));
+            }
+            window.putInt(size).putLong(nanos).put(data, 0, size);
+        } catch (IOException e) {
+            error = e;
+            return false;
+        }
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            receivedNanos = Arrays.copyOf(receivedNanos, count * 2);
+        }
+        offsets[count] = position;
+        receivedNanos[count] = nanos;
+        count++;
+        position += recordBytes;
+        payloadBytes += size;
+        return true;
+    }
+
+    /** 索引と末尾を書いてファイルを閉じる。マップで伸びた分は切り詰める。 */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (window != null) {
+                window.force();
+                window = null;
+            }
+            ByteBuffer index = ByteBuffer.allocate(count * INDEX_ENTRY_BYTES + FOOTER_BYTES);
+            for (int i = 0; i < count; i++) {
+                index.putLong(offsets[i]).putLong(receivedNanos[i]);
+            }
+            index.putLong(position).putInt(count).putInt(INDEX_MAGIC).flip();
+            long indexPosition = position;
+            while (index.hasRemaining()) {
+                indexPosition += channel.write(index, indexPosition);
+            }
+            channel.truncate(indexPosition);
+            channel.force(true);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** 書いたパケットの数。 */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /** 書いたパケットの中身の合計（ヘッダを除く）。 */
+    public synchronized long getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    /** ファイルの大きさの上限に達して録るのをやめたなら true。 */
+    public synchronized boolean isFull() {
+        return full;
+    }
+
+    /** 書き込みのエラー。なければ null。 */
+    public synchronized IOException getError() {
+        return error;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "rec " + count + " pkts " + payloadBytes / 1024 + " KiB"
+                + (full ? " FULL" : "") + (error != null ? " ERROR " + error.getMessage() : "");
+    }
+}
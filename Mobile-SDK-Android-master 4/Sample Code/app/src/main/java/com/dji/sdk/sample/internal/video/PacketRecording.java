@@ -0,0 +1,178 @@
+package com.dji.sdk.sample.internal.video;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * {@link PacketRecorder} で録ったファイル。ファイル全体を読み取り専用でマップし、索引でパケットを取り出す。
+ * 索引がない（録っている途中で終わった）ファイルは、先頭からパケットをたどって索引を作り直す。
+ * 読み出しは複数のスレッドから呼んでよい（{@link #read} はメモリを確保しない）。
+ */
+public final class PacketRecording implements Closeable {
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    // read() で位置を動かして読むための複製（共有のバッファの位置は動かさない）
+    private final ByteBuffer view;
+    private final long[] offsets;
+    private final long[] receivedNanos;
+    private final int count;
+    private final boolean complete;
+    private final int maxSize;
+
+    private PacketRecording(File file, RandomAccessFile randomAccessFile, MappedByteBuffer buffer,
+                            long[] offsets, long[] receivedNanos, int count, boolean complete) {
+        this.file = file;
+        this.randomAccessFile = randomAccessFile;
+        this.buffer = buffer;
+        view = buffer.duplicate();
+        this.offsets = offsets;
+        this.receivedNanos = receivedNanos;
+        this.count = count;
+        this.complete = complete;
+        int max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, buffer.getInt((int) offsets[i]));
+        }
+        maxSize = max;
+    }
+
+    public static PacketRecording open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long length = channel.size();
+            if (length > PacketRecorder.MAX_FILE_BYTES) {
+                throw new IOException("Recording is too large: " + file);
+            }
+            if (length < PacketRecorder.HEADER_BYTES) {
+                throw new IOException("Not a packet recording: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (buffer.getInt(0) != PacketRecorder.MAGIC) {
+                throw new IOException("Not a packet recording: " + file);
+            }
+            if (buffer.getInt(4) != PacketRecorder.VERSION) {
+                throw new IOException("Unsupported recording version " + buffer.getInt(4) + ": " + file);
+            }
+            PacketRecording recording = readIndex(file, randomAccessFile, buffer, (int) length);
+            if (recording == null) {
+                recording = scan(file, randomAccessFile, buffer, (int) length);
+            }
+            return recording;
+        } catch (IOException | RuntimeException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    // 末尾の索引を読む。なければ null
+    private static PacketRecording readIndex(File file, RandomAccessFile randomAccessFile,
+                                             MappedByteBuffer buffer, int length) {
+        int footer = length - PacketRecorder.FOOTER_BYTES;
+        if (footer < PacketRecorder.HEADER_BYTES
+                || buffer.getInt(footer + 12) != PacketRecorder.INDEX_MAGIC) {
+            return null;
+        }
+        long indexPosition = buffer.getLong(footer);
+        int count = buffer.getInt(footer + 8);
+        if (count < 0 || indexPosition < PacketRecorder.HEADER_BYTES
+                || indexPosition + (long) count * PacketRecorder.INDEX_ENTRY_BYTES != footer) {
+            return null;
+        }
+        long[] offsets = new long[count];
+        long[] receivedNanos = new long[count];
+        for (int i = 0; i < count; i++) {
+            int entry = (int) indexPosition + i * PacketRecorder.INDEX_ENTRY_BYTES;
+            offsets[i] = buffer.getLong(entry);
+            receivedNanos[i] = buffer.getLong(entry + 8);
+            if (offsets[i] < PacketRecorder.HEADER_BYTES
+                    || offsets[i] + PacketRecorder.RECORD_HEADER_BYTES > indexPosition) {
+                return null;
+            }
+        }
+        return new PacketRecording(file, randomAccessFile, buffer, offsets, receivedNanos, count, true);
+    }
+
+    // 先頭からパケットをたどる。大きさが 0 以下か、ファイルの終わりを越えるところで終わる
+    private static PacketRecording scan(File file, RandomAccessFile randomAccessFile,
+                                        MappedByteBuffer buffer, int length) {
+        long[] offsets = new long[1024];
+        long[] receivedNanos = new long[1024];
+        int count = 0;
+        long position = PacketRecorder.HEADER_BYTES;
+        while (position + PacketRecorder.RECORD_HEADER_BYTES <= length) {
+            int size = buffer.getInt((int) position);
+            if (size <= 0 || position + PacketRecorder.RECORD_HEADER_BYTES + size > length) {
+                break;
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                receivedNanos = Arrays.copyOf(receivedNanos, count * 2);
+            }
+            offsets[count] = position;
+            receivedNanos[count] = buffer.getLong((int) position + 4);
+            count++;
+            position += PacketRecorder.RECORD_HEADER_BYTES + size;
+        }
+        return new PacketRecording(file, randomAccessFile, buffer, offsets, receivedNanos, count, false);
+    }
+
+    /** パケット i を dst の先頭に写し、大きさを返す。dst は {@link #getMaxSize()} 以上にすること。 */
+    public synchronized int read(int i, byte[] dst) {
+        int offset = (int) offsets[i];
+        int size = buffer.getInt(offset);
+        view.position(offset + PacketRecorder.RECORD_HEADER_BYTES);
+        view.get(dst, 0, size);
+        return size;
+    }
+
+    public int getSize(int i) {
+        return buffer.getInt((int) offsets[i]);
+    }
+
+    /** パケット i を録ったときの受信時刻（System.nanoTime()）。 */
+    public long getReceivedNanos(int i) {
+        return receivedNanos[i];
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /** 一番大きいパケットの大きさ。 */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** 最初のパケットから最後のパケットまでの時間。 */
+    public long getDurationNanos() {
+        return count > 1 ? receivedNanos[count - 1] - receivedNanos[0] : 0;
+    }
+
+    /** 索引まで書いて閉じたファイルなら true（false なら途中で終わったものをたどって読んだ）。 */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + ": " + count + " pkts " + getDurationNanos() / 1_000_000L + " ms"
+                + (complete ? "" : " (no index)");
+    }
+}
@@ -0,0 +1,97 @@
+package com.dji.sdk.sample.internal.video;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link PacketRecording} のパケットを録ったときと同じ順に流し直す（機体なしでパイプラインを動かすため）。
+ * 録ったときの受信の間隔どおりに流すか、待たずにできるだけ速く流すかを選べる。
+ * 流すときの受信時刻は流した時刻にするので、後段の遅延の計測はそのまま使える。
+ * {@link #run()} を専用のスレッドで呼び、{@link #stop()} で途中で止める。
+ */
+public final class PacketReplay implements Runnable {
+    /** パケットの流し先（{@link PacketRing#publish} と同じ形）。 */
+    public interface Sink {
+        void publish(byte[] data, int size, long receivedNanos);
+    }
+
+    private final PacketRecording recording;
+    private final Sink sink;
+    private final boolean realTime;
+    private final int loops;
+    private final byte[] packet;
+    private volatile boolean stopped;
+    private volatile int published;
+    // 録ったときの間隔から遅れた最大の時間（realTime のとき）
+    private volatile long maxLateNanos;
+    private volatile long elapsedNanos;
+
+    /**
+     * @param realTime 録ったときの間隔どおりに流すなら true、待たずに流すなら false
+     * @param loops    繰り返す回数（1 以上）
+     */
+    public PacketReplay(PacketRecording recording, Sink sink, boolean realTime, int loops) {
+        this.recording = recording;
+        this.sink = sink;
+        this.realTime = realTime;
+        this.loops = Math.max(1, loops);
+        packet = new byte[Math.max(1, recording.getMaxSize())];
+    }
+
+    @Override
+    public void run() {
+        int count = recording.getCount();
+        if (count == 0) {
+            return;
+        }
+        long firstNanos = recording.getReceivedNanos(0);
+        // 繰り返すときは、最後のパケットから最初のパケットまで平均の間隔だけ空ける
+        long lapNanos = recording.getDurationNanos() + recording.getDurationNanos() / Math.max(1, count - 1);
+        long startNanos = System.nanoTime();
+        for (int loop = 0; loop < loops && !stopped; loop++) {
+            for (int i = 0; i < count && !stopped; i++) {
+                long now = System.nanoTime();
+                if (realTime) {
+                    long due = startNanos + loop * lapNanos + recording.getReceivedNanos(i) - firstNanos;
+                    while (now < due && !stopped) {
+                        LockSupport.parkNanos(due - now);
+                        now = System.nanoTime();
+                    }
+                    maxLateNanos = Math.max(maxLateNanos, now - due);
+                }
+                int size = recording.read(i, packet);
+                sink.publish(packet, size, now);
+                published++;
+            }
+        }
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    /** 流したパケットの数。 */
+    public int getPublished() {
+        return published;
+    }
+
+    /** 録ったときの間隔から遅れた最大の時間。待たずに流したときは 0。 */
+    public long getMaxLateNanos() {
+        return maxLateNanos;
+    }
+
+    /** 流し終えるまでにかかった時間。流している間は 0。 */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public PacketRecording getRecording() {
+        return recording;
+    }
+
+    @Override
+    public String toString() {
+        return "replay " + published + "/" + (long) recording.getCount() * loops
+                + (realTime ? " late " + maxLateNanos / 1_000_000L + " ms" : " max speed");
+    }
+}
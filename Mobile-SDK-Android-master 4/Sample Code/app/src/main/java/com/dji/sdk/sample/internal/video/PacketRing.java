@@ -0,0 +1,293 @@
+package com.dji.sdk.sample.internal.video;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 1つの映像の受信データを1回だけコピーして、複数の読み手（デコーダ、録画、解析、配信）に配るリングバッファ。
+ * 書き手（SDK の受信スレッド）は {@link #publish} でコピーして読み手を起こすだけで、読み手を待たない。
+ * 読み手はそれぞれの Executor で自分の速さで読み、リングの一周より遅れた分は飛ばして
+ * 飛ばした数を {@link Reader#getOverruns()} に数える。
+ * <p>
+ * パケットは参照カウントで管理し、リングから押し出されても読み手が読み終わるまでは使い回さない。
+ * 空きがないとき（読み手が多くのパケットを持ったまま）は新しく確保するので、書き手は止まらない。
+ */
+public final class PacketRing {
+    /** 読み手の処理（読み手の Executor で呼ばれる）。packet は戻った後で離されるので、残すならコピーすること。 */
+    public interface Consumer {
+        /**
+         * @param gap 直前に読んだパケットとの間を読み飛ばした（遅れてリングに追い越された）なら true。
+         *            デコーダは次のキーフレームまで待つなどして立て直す
+         */
+        void onPacket(VideoPacket packet, boolean gap);
+    }
+
+    private final Object lock = new Object();
+    private final VideoPacket[] slots;
+    private final int initialCapacity;
+    // 読み手が離したパケット。溢れた分は捨てる
+    private final ArrayBlockingQueue<VideoPacket> freePackets;
+    private final CopyOnWriteArrayList<Reader> readers = new CopyOnWriteArrayList<>();
+    // 次に入れるパケットの通し番号（lock で守る）
+    private long published;
+    private volatile long publishedBytes;
+    private final AtomicLong allocated = new AtomicLong();
+
+    /**
+     * @param slotCount       保持するパケットの数（読み手がこれだけ遅れると読み飛ばす）
+     * @param initialCapacity 新しく確保するパケットの最初の大きさ（バイト）
+     */
+    public PacketRing(int slotCount, int initialCapacity) {
+        slots = new VideoPacket[slotCount];
+        this.initialCapacity = initialCapacity;
+        freePackets = new ArrayBlockingQueue<>(slotCount * 2);
+    }
+
+    /**
+     * 受信したデータをコピーしてリングに入れ、読み手を起こす。書き手は1スレッドだけにすること。
+     *
+     * @param receivedNanos 受信した時刻（System.nanoTime()）
+     */
+    public void publish(byte[] src, int size, long receivedNanos) {
+        VideoPacket packet = freePackets.poll();
+        if (packet == null) {
+            packet = new VideoPacket(this, Math.max(initialCapacity, size));
+            allocated.incrementAndGet();
+        }
+        packet.fill(src, size, receivedNanos);
+        VideoPacket replaced;
+        synchronized (lock) {
+            packet.setSequence(published);
+            int index = (int) (published % slots.length);
+            replaced = slots[index];
+            slots[index] = packet;
+            published++;
+        }
+        publishedBytes += size;
+        if (replaced != null) {
+            replaced.release();
+        }
+        for (Reader reader : readers) {
+            reader.signal();
+        }
+    }
+
+    // リングに入れずに使うパケットを空きから取る（参照は1つ、中身は空）。離すとこのリングの空きに戻る
+    VideoPacket obtain(long receivedNanos) {
+        VideoPacket packet = freePackets.poll();
+        if (packet == null) {
+            packet = new VideoPacket(this, initialCapacity);
+            allocated.incrementAndGet();
+        }
+        packet.reset(receivedNanos);
+        return packet;
+    }
+
+    void recycle(VideoPacket packet) {
+        freePackets.offer(packet);
+    }
+
+    /**
+     * 読み手を加える。加えた後に入ったパケットから読む。
+     *
+     * @param executor 読み手の処理を動かす Executor（読み手ごとに1スレッドにすること）
+     */
+    public Reader openReader(String name, Executor executor, Consumer consumer) {
+        Reader reader = new Reader(name, executor, consumer);
+        synchronized (lock) {
+            reader.next = published;
+        }
+        readers.add(reader);
+        return reader;
+    }
+
+    /** リングが持っているパケットを離す（映像から外したとき）。読み手が持っているものはそのまま。 */
+    public void clear() {
+        for (int i = 0; i < slots.length; i++) {
+            VideoPacket packet;
+            synchronized (lock) {
+                packet = slots[i];
+                slots[i] = null;
+            }
+            if (packet != null) {
+                packet.release();
+            }
+        }
+    }
+
+    /** 入れたパケットの数。 */
+    public long getPublished() {
+        synchronized (lock) {
+            return published;
+        }
+    }
+
+    public long getPublishedBytes() {
+        return publishedBytes;
+    }
+
+    /** パケットを新しく確保した回数。定常状態では増えない。 */
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    public int getSlotCount() {
+        return slots.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder()
+                .append("ring ").append(getPublished()).append(" pkts ")
+                .append(publishedBytes / 1024).append(" KiB alloc ").append(allocated.get());
+        for (Reader reader : readers) {
+            text.append(", ").append(reader);
+        }
+        return text.toString();
+    }
+
+    /** リングの読み手。{@link #close()} で読むのをやめる。 */
+    public final class Reader {
+        private final String name;
+        private final Executor executor;
+        private final Consumer consumer;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+        // 次に読む通し番号（lock で守る）
+        private long next;
+        private volatile long delivered;
+        private volatile long overruns;
+        // 直前の poll で読み飛ばしたか（読み手のスレッドでのみ使う）
+        private boolean gap;
+
+        Reader(String name, Executor executor, Consumer consumer) {
+            this.name = name;
+            this.executor = executor;
+            this.consumer = consumer;
+        }
+
+        // 書き手のスレッドから。処理が積まれていなければ積む
+        void signal() {
+            if (closed || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // 閉じている途中の Executor。この読み手はもう読まない
+                scheduled.set(false);
+            }
+        }
+
+        private void drain() {
+            // 読む前に下ろすので、この後に入ったパケットでもう一度起こされる
+            scheduled.set(false);
+            VideoPacket packet;
+            while (!closed && (packet = poll()) != null) {
+                try {
+                    consumer.onPacket(packet, gap);
+                    delivered++;
+                } finally {
+                    packet.release();
+                }
+            }
+        }
+
+        /*
+         * 読み手のスレッドで packets（参照を1つずつ持ったもの）を先に読ませ、その後は nextSequence から読み続ける。
+         * packets は読ませた後で離す。最初のパケットは gap を立てて渡す（デコーダはそこから始め直す）。
+         */
+        void replay(VideoPacket[] packets, int count, long nextSequence) {
+            try {
+                executor.execute(() -> {
+                    synchronized (lock) {
+                        next = nextSequence;
+                    }
+                    int i = 0;
+                    try {
+                        for (; i < count && !closed; i++) {
+                            VideoPacket packet = packets[i];
+                            packets[i] = null;
+                            try {
+                                consumer.onPacket(packet, i == 0);
+                                delivered++;
+                            } finally {
+                                packet.release();
+                            }
+                        }
+                    } finally {
+                        for (; i < count; i++) {
+                            if (packets[i] != null) {
+                                packets[i].release();
+                            }
+                        }
+                    }
+                    drain();
+                });
+            } catch (RejectedExecutionException e) {
+                for (int i = 0; i < count; i++) {
+                    packets[i].release();
+                }
+            }
+        }
+
+        // 次のパケットを参照を増やして返す。なければ null
+        private VideoPacket poll() {
+            synchronized (lock) {
+                if (next >= published) {
+                    return null;
+                }
+                long oldest = Math.max(0, published - slots.length);
+                gap = next < oldest;
+                if (gap) {
+                    overruns += oldest - next;
+                    next = oldest;
+                }
+                VideoPacket packet = slots[(int) (next % slots.length)];
+                next++;
+                if (packet == null) {
+                    // clear() の後
+                    return null;
+                }
+                packet.retain();
+                return packet;
+            }
+        }
+
+        /** 読むのをやめる。処理中のパケットはそのまま読み終わる。 */
+        public void close() {
+            closed = true;
+            readers.remove(this);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** 読んだパケットの数。 */
+        public long getDelivered() {
+            return delivered;
+        }
+
+        /** 遅れて読み飛ばしたパケットの数。 */
+        public long getOverruns() {
+            return overruns;
+        }
+
+        /** まだ読んでいないパケットの数。 */
+        public long getLag() {
+            synchronized (lock) {
+                return published - next;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name + " lag " + getLag() + " overrun " + overruns;
+        }
+    }
+}
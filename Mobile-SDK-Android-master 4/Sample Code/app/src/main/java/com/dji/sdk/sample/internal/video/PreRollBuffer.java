@@ -0,0 +1,325 @@
+package com.dji.sdk.sample.internal.video;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 直近の圧縮済みのアクセスユニットを preRollNanos 分だけメモリに持っておき、{@link #trigger} で
+ * その前の分（プリロール）と後の postRollNanos 分（ポストロール）を1つの {@link Clip} にまとめて渡す
+ * （人を見つける直前の映像を残すため）。
+ * <p>
+ * 持っている分は必ず IDR から始まる。古い方は GOP ごとに捨て、preRollNanos を下回らない範囲で短くする。
+ * 持っている分と作っているクリップの合計が maxBytes を超えたら、古い GOP を捨てるかクリップを早めに閉じる。
+ * <p>
+ * アクセスユニットを入れる {@link Unit} は使い回すので、クリップを書き終えたら {@link Clip#recycle()} で返すこと。
+ * バッファは2のべき乗の大きさごとに分けて使い回す（小さいフレームが IDR 用の大きいバッファを抱えたままにならないように）。
+ * maxBytes もこのバッファの大きさで数えるので、実際に使うメモリの上限になる。
+ * 大きさごとのバッファが出そろった後は、メモリを確保しない（クリップの箱を除く）。
+ * <p>
+ * {@link #add} はアクセスユニットを切り出す読み手のスレッドから呼ぶ。{@link #trigger} はどのスレッドから呼んでもよく、
+ * 次の {@link #add} で反映する。
+ */
+public final class PreRollBuffer {
+    // 返されたユニットを大きさごとに持っておく数の上限（超えた分は捨てる）
+    private static final int MAX_FREE_UNITS = 1024;
+    // 一番小さいバッファ（1 KiB）と一番大きいバッファ（16 MiB）の大きさの2の指数
+    private static final int MIN_SHIFT = 10;
+    private static final int MAX_SHIFT = 24;
+
+    /** 1つのアクセスユニット。 */
+    public static final class Unit {
+        private final byte[] data;
+        private int size;
+        private long receivedNanos;
+        private boolean keyFrame;
+
+        private Unit(int capacity) {
+            data = new byte[capacity];
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getReceivedNanos() {
+            return receivedNanos;
+        }
+
+        public boolean isKeyFrame() {
+            return keyFrame;
+        }
+    }
+
+    /** プリロールとポストロールのアクセスユニット。先頭は IDR。 */
+    public final class Clip {
+        private final List<Unit> units = new ArrayList<>();
+        private final String reason;
+        private final long triggerNanos;
+        private long bytes;
+        // ユニットのバッファの大きさの合計
+        private long memory;
+
+        private Clip(String reason, long triggerNanos) {
+            this.reason = reason;
+            this.triggerNanos = triggerNanos;
+        }
+
+        public List<Unit> getUnits() {
+            return units;
+        }
+
+        /** {@link #trigger} に渡した理由（ファイル名に使う）。 */
+        public String getReason() {
+            return reason;
+        }
+
+        /** きっかけの後で最初に届いたアクセスユニットの受信時刻。 */
+        public long getTriggerNanos() {
+            return triggerNanos;
+        }
+
+        /** きっかけより前の時間。 */
+        public long getPreRollNanos() {
+            return units.isEmpty() ? 0 : triggerNanos - units.get(0).receivedNanos;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /** 書き終えたらユニットを返す（どのスレッドからでもよい）。 */
+        public void recycle() {
+            for (int i = 0; i < units.size(); i++) {
+                release(units.get(i));
+            }
+            units.clear();
+        }
+    }
+
+    /** 閉じたクリップの受け取り先（{@link #add} のスレッド）。 */
+    public interface ClipListener {
+        void onClip(Clip clip);
+    }
+
+    private final long preRollNanos;
+    private final long postRollNanos;
+    private final long maxBytes;
+    private final ClipListener listener;
+    // 添え字は (バッファの大きさの2の指数) - MIN_SHIFT
+    private final List<ArrayBlockingQueue<Unit>> freeUnits = new ArrayList<>();
+    private volatile String pendingReason;
+
+    // add() のスレッドでのみ使う。持っている分の環状の配列
+    private Unit[] units = new Unit[256];
+    private int head;
+    private int count;
+    // 持っているユニットのバッファの大きさの合計
+    private long heldBytes;
+    private Clip clip;
+    private long postRollEndNanos;
+
+    // 表示用
+    private volatile long heldNanos;
+    private volatile long reportedBytes;
+    private volatile boolean capturing;
+    private volatile int clips;
+    private volatile int truncatedClips;
+
+    /**
+     * @param preRollNanos  きっかけより前に残す時間
+     * @param postRollNanos きっかけより後に残す時間
+     * @param maxBytes      持っている分と作っているクリップのバッファの合計の上限
+     */
+    public PreRollBuffer(long preRollNanos, long postRollNanos, long maxBytes, ClipListener listener) {
+        this.preRollNanos = preRollNanos;
+        this.postRollNanos = postRollNanos;
+        this.maxBytes = maxBytes;
+        this.listener = listener;
+        for (int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++) {
+            freeUnits.add(new ArrayBlockingQueue<>(MAX_FREE_UNITS));
+        }
+    }
+
+    /**
+     * クリップを作る。作っている途中なら、ポストロールをここから延ばす。
+     *
+     * @param reason ファイル名に使う理由（"person"、"manual" など）
+     */
+    public void trigger(String reason) {
+        pendingReason = reason;
+    }
+
+    /**
+     * アクセスユニットを1つ入れる。data は写し取るので、呼び出しの後で書き換えてよい。
+     * 空のものと 16 MiB を超えるものは捨てる。
+     */
+    public void add(byte[] data, int size, long receivedNanos, boolean keyFrame) {
+        String reason = pendingReason;
+        if (reason != null) {
+            pendingReason = null;
+            startClip(reason, receivedNanos);
+        }
+        if (!keyFrame && (clip != null ? clip.units.isEmpty() : count == 0)) {
+            // 持っている分もクリップも IDR から始める
+            return;
+        }
+        if (size <= 0 || size > 1 << MAX_SHIFT) {
+            return;
+        }
+        Unit unit = obtain(size);
+        System.arraycopy(data, 0, unit.data, 0, size);
+        unit.size = size;
+        unit.receivedNanos = receivedNanos;
+        unit.keyFrame = keyFrame;
+
+        if (clip != null) {
+            clip.units.add(unit);
+            clip.bytes += size;
+            clip.memory += unit.data.length;
+            if (receivedNanos >= postRollEndNanos || clip.memory >= maxBytes) {
+                if (receivedNanos < postRollEndNanos) {
+                    truncatedClips++;
+                }
+                finishClip();
+            }
+        } else {
+            push(unit);
+            trim(receivedNanos);
+        }
+        if (clip != null) {
+            reportedBytes = clip.memory;
+            heldNanos = receivedNanos - clip.units.get(0).receivedNanos;
+        } else {
+            reportedBytes = heldBytes;
+            heldNanos = count > 0 ? receivedNanos - units[head].receivedNanos : 0;
+        }
+    }
+
+    private void startClip(String reason, long nowNanos) {
+        if (clip != null) {
+            postRollEndNanos = nowNanos + postRollNanos;
+            return;
+        }
+        clip = new Clip(reason, nowNanos);
+        capturing = true;
+        // 持っている分をそのままプリロールにする（IDR から始まっている）
+        for (int i = 0; i < count; i++) {
+            int index = (head + i) % units.length;
+            clip.units.add(units[index]);
+            clip.bytes += units[index].size;
+            clip.memory += units[index].data.length;
+            units[index] = null;
+        }
+        head = 0;
+        count = 0;
+        heldBytes = 0;
+        postRollEndNanos = nowNanos + postRollNanos;
+    }
+
+    private void finishClip() {
+        Clip finished = clip;
+        clip = null;
+        capturing = false;
+        clips++;
+        listener.onClip(finished);
+    }
+
+    /** 作っている途中のクリップがあれば、ここまでで閉じて渡す（止めるとき）。 */
+    public void flush() {
+        if (clip != null) {
+            truncatedClips++;
+            finishClip();
+        }
+    }
+
+    /** 持っている分を返す。作っている途中のクリップは捨てる。 */
+    public void clear() {
+        pendingReason = null;
+        while (count > 0) {
+            release(pop());
+        }
+        heldBytes = 0;
+        if (clip != null) {
+            clip.recycle();
+            clip = null;
+            capturing = false;
+        }
+        heldNanos = 0;
+        reportedBytes = 0;
+    }
+
+    private Unit obtain(int size) {
+        int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(size - 1));
+        Unit unit = freeUnits.get(shift - MIN_SHIFT).poll();
+        return unit != null ? unit : new Unit(1 << shift);
+    }
+
+    private void release(Unit unit) {
+        freeUnits.get(Integer.numberOfTrailingZeros(unit.data.length) - MIN_SHIFT).offer(unit);
+    }
+
+    private void push(Unit unit) {
+        if (count == units.length) {
+            Unit[] grown = new Unit[units.length * 2];
+            for (int i = 0; i < count; i++) {
+                grown[i] = units[(head + i) % units.length];
+            }
+            units = grown;
+            head = 0;
+        }
+        units[(head + count) % units.length] = unit;
+        count++;
+        heldBytes += unit.data.length;
+    }
+
+    private Unit pop() {
+        Unit unit = units[head];
+        units[head] = null;
+        head = (head + 1) % units.length;
+        count--;
+        heldBytes -= unit.data.length;
+        return unit;
+    }
+
+    // 2つ目の IDR からでも preRollNanos 分あるなら、先頭の GOP を捨てる。大きすぎるときも先頭の GOP を捨てる
+    private void trim(long nowNanos) {
+        while (count > 0) {
+            int next = nextKeyFrame();
+            boolean longEnough = next >= 0 && units[(head + next) % units.length].receivedNanos <= nowNanos - preRollNanos;
+            if (!longEnough && heldBytes <= maxBytes) {
+                return;
+            }
+            int drop = next >= 0 ? next : count;
+            for (int i = 0; i < drop; i++) {
+                release(pop());
+            }
+        }
+    }
+
+    // 先頭の次の IDR の位置（先頭からの数）。なければ -1
+    private int nextKeyFrame() {
+        for (int i = 1; i < count; i++) {
+            if (units[(head + i) % units.length].keyFrame) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** 作っている途中のクリップがあれば true。 */
+    public boolean isCapturing() {
+        return capturing;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "preroll %.1f s %d KiB%s, clips %d (%d cut short)",
+                heldNanos / 1e9, reportedBytes / 1024, capturing ? " REC" : "", clips, truncatedClips);
+    }
+}
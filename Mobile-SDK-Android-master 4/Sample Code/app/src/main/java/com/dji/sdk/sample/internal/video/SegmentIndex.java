@@ -0,0 +1,168 @@
+package com.dji.sdk.sample.internal.video;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 録画のセグメントの一覧（ディレクトリの segments.csv）。セグメントごとに開始時刻・長さ・フレーム数・大きさを残し、
+ * 合計が上限を超えたら古いものから消す。アプリを起動し直しても一覧を読み直して続ける。
+ * <p>
+ * 形式: 1行目は見出し、以降は1行1セグメントで {@code ファイル名,開始時刻（エポックミリ秒）,長さ（ミリ秒）,フレーム数,バイト数}。
+ * 書き換えは一時ファイルに書いてから置き換えるので、途中で落ちても前の一覧が残る。
+ */
+public final class SegmentIndex {
+    public static final String FILE_NAME = "segments.csv";
+    private static final String HEADER = "file,start_millis,duration_millis,frames,bytes";
+
+    /** 1つのセグメント。 */
+    public static final class Segment {
+        private final String name;
+        private final long startMillis;
+        private final long durationMillis;
+        private final int frames;
+        private final long bytes;
+
+        public Segment(String name, long startMillis, long durationMillis, int frames, long bytes) {
+            this.name = name;
+            this.startMillis = startMillis;
+            this.durationMillis = durationMillis;
+            this.frames = frames;
+            this.bytes = bytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** 最初のフレームを受信した時刻（System.currentTimeMillis()）。 */
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public int getFrames() {
+            return frames;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    private final File directory;
+    private final long quotaBytes;
+    // 開始時刻の順
+    private final List<Segment> segments = new ArrayList<>();
+    private long totalBytes;
+    private int evicted;
+
+    /**
+     * 一覧を読み込む。一覧にあってもファイルがないセグメントは除く。
+     *
+     * @param quotaBytes セグメントの合計の上限
+     */
+    public SegmentIndex(File directory, long quotaBytes) throws IOException {
+        this.directory = directory;
+        this.quotaBytes = quotaBytes;
+        File file = new File(directory, FILE_NAME);
+        if (!file.isFile()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length != 5 || !new File(directory, fields[0]).isFile()) {
+                    continue;
+                }
+                try {
+                    Segment segment = new Segment(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                            Integer.parseInt(fields[3]), Long.parseLong(fields[4]));
+                    segments.add(segment);
+                    totalBytes += segment.bytes;
+                } catch (NumberFormatException e) {
+                    // 壊れた行は読み飛ばす
+                }
+            }
+        }
+    }
+
+    /**
+     * 書き終えたセグメントを加え、合計が上限を超えていれば古いものから消して一覧を書き直す。
+     * 加えたセグメント自身は消さない。
+     */
+    public synchronized void add(Segment segment) throws IOException {
+        segments.add(segment);
+        totalBytes += segment.bytes;
+        while (totalBytes > quotaBytes && segments.size() > 1) {
+            Segment oldest = segments.remove(0);
+            totalBytes -= oldest.bytes;
+            File file = new File(directory, oldest.name);
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Cannot delete " + file);
+            }
+            evicted++;
+        }
+        write();
+    }
+
+    private void write() throws IOException {
+        File temporary = new File(directory, FILE_NAME + ".tmp");
+        try (Writer writer = new BufferedWriter(new FileWriter(temporary))) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Segment segment : segments) {
+                writer.write(segment.name + "," + segment.startMillis + "," + segment.durationMillis
+                        + "," + segment.frames + "," + segment.bytes + "\n");
+            }
+        }
+        if (!temporary.renameTo(new File(directory, FILE_NAME))) {
+            throw new IOException("Cannot replace " + FILE_NAME + " in " + directory);
+        }
+    }
+
+    /** timeMillis を含むセグメント。なければ null。 */
+    public synchronized Segment find(long timeMillis) {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment segment = segments.get(i);
+            if (segment.startMillis <= timeMillis) {
+                return timeMillis < segment.startMillis + segment.durationMillis ? segment : null;
+            }
+        }
+        return null;
+    }
+
+    /** 残っているセグメント（開始時刻の順）のコピー。 */
+    public synchronized List<Segment> getSegments() {
+        return new ArrayList<>(segments);
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /** 上限を超えて消したセグメントの数（この起動の間）。 */
+    public synchronized int getEvicted() {
+        return evicted;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return segments.size() + " segs " + totalBytes / (1024 * 1024) + "/" + quotaBytes / (1024 * 1024) + " MiB"
+                + (evicted > 0 ? " evicted " + evicted : "");
+    }
+}
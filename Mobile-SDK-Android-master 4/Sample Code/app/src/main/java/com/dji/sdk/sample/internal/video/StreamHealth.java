@@ -0,0 +1,199 @@
+package com.dji.sdk.sample.internal.video;
+
+import java.util.Locale;
+
+/**
+ * 映像の受信の健全性。受信のたびに {@link #onPacket} で統計を更新し、途切れの判定は期限の時刻で行う。
+ * 受信側は受信ごとに数値を足すだけで、判定する側は {@link #getDeadlineNanos()} の時刻に1回だけ
+ * {@link #checkStall} を呼べばよい（期限までに受信があれば、次の期限まで起きる必要はない）。
+ * <p>
+ * 統計は受信の間隔（平均と直近の窓の最大）、パケット数とビットレート（直近の窓）、キーフレームの間隔。
+ * 時刻はすべて System.nanoTime()。受信と判定は別のスレッドから呼んでよい。
+ */
+public final class StreamHealth {
+    // パケット数とビットレートを集計する窓
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+    // 受信間隔の平均の係数
+    private static final float GAP_SMOOTHING = 0.05f;
+    // キーフレームを探す先頭のバイト数（SPS・PPS・IDR はアクセスユニットの先頭に並ぶ）
+    private static final int KEY_FRAME_SCAN_BYTES = 256;
+
+    private final long stallNanos;
+
+    private long packets;
+    private long bytes;
+    private long keyFrames;
+    private long lastPacketNanos;
+    private long lastKeyFrameNanos;
+    private float meanGapNanos;
+    private long keyFrameIntervalNanos;
+
+    private long windowStartNanos;
+    private long windowPackets;
+    private long windowBytes;
+    private long windowMaxGapNanos;
+    private float packetRate;
+    private float bitrate;
+    private long maxGapNanos;
+
+    // 最初の受信までは途切れている扱い
+    private boolean stalled = true;
+    private long stallStartNanos;
+    private long stalls;
+    private long stalledNanosTotal;
+    private long lastStallNanos;
+
+    /** @param stallNanos これだけ受信がなければ途切れたとみなす */
+    public StreamHealth(long stallNanos) {
+        this.stallNanos = stallNanos;
+    }
+
+    /**
+     * 受信ごとに呼ぶ（受信スレッド）。
+     *
+     * @return 途切れていた映像がこの受信で戻ったなら true
+     */
+    public synchronized boolean onPacket(long nowNanos, int size, boolean keyFrame) {
+        if (packets > 0) {
+            long gap = nowNanos - lastPacketNanos;
+            meanGapNanos += (gap - meanGapNanos) * GAP_SMOOTHING;
+            windowMaxGapNanos = Math.max(windowMaxGapNanos, gap);
+        } else {
+            windowStartNanos = nowNanos;
+        }
+        packets++;
+        bytes += size;
+        windowPackets++;
+        windowBytes += size;
+        lastPacketNanos = nowNanos;
+        if (keyFrame) {
+            if (keyFrames > 0) {
+                keyFrameIntervalNanos = nowNanos - lastKeyFrameNanos;
+            }
+            keyFrames++;
+            lastKeyFrameNanos = nowNanos;
+        }
+
+        long windowNanos = nowNanos - windowStartNanos;
+        if (windowNanos >= WINDOW_NANOS) {
+            packetRate = windowPackets * 1e9f / windowNanos;
+            bitrate = windowBytes * 8e9f / windowNanos;
+            maxGapNanos = windowMaxGapNanos;
+            windowStartNanos = nowNanos;
+            windowPackets = 0;
+            windowBytes = 0;
+            windowMaxGapNanos = 0;
+        }
+
+        if (!stalled) {
+            return false;
+        }
+        stalled = false;
+        if (stallStartNanos != 0) {
+            lastStallNanos = nowNanos - stallStartNanos;
+            stalledNanosTotal += lastStallNanos;
+        }
+        return true;
+    }
+
+    /**
+     * 期限の時刻に呼ぶ（判定側のスレッド）。
+     *
+     * @return 期限までに受信がなく、今途切れたと判定したなら true
+     */
+    public synchronized boolean checkStall(long nowNanos) {
+        if (stalled || nowNanos - lastPacketNanos < stallNanos) {
+            return false;
+        }
+        stalled = true;
+        stallStartNanos = lastPacketNanos;
+        stalls++;
+        return true;
+    }
+
+    /** 次に {@link #checkStall} を呼ぶ時刻。途切れている間は Long.MAX_VALUE（次の受信で戻る）。 */
+    public synchronized long getDeadlineNanos() {
+        return stalled ? Long.MAX_VALUE : lastPacketNanos + stallNanos;
+    }
+
+    public synchronized boolean isStalled() {
+        return stalled;
+    }
+
+    /** 今の途切れの長さ。途切れていなければ 0。 */
+    public synchronized long getStalledNanos(long nowNanos) {
+        return stalled && stallStartNanos != 0 ? nowNanos - stallStartNanos : 0;
+    }
+
+    public synchronized long getPackets() {
+        return packets;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /** 直近の窓の1秒あたりのパケット数。 */
+    public synchronized float getPacketRate() {
+        return packetRate;
+    }
+
+    /** 直近の窓のビットレート（bps）。 */
+    public synchronized float getBitrate() {
+        return bitrate;
+    }
+
+    public synchronized float getMeanGapNanos() {
+        return meanGapNanos;
+    }
+
+    /** 直近の窓の最大の受信間隔。 */
+    public synchronized long getMaxGapNanos() {
+        return maxGapNanos;
+    }
+
+    /** 直前のキーフレームの間隔。2回受信するまでは 0。 */
+    public synchronized long getKeyFrameIntervalNanos() {
+        return keyFrameIntervalNanos;
+    }
+
+    /** 途切れた回数（最初の受信の前は数えない）。 */
+    public synchronized long getStalls() {
+        return stalls;
+    }
+
+    /** 直前に戻った途切れの長さ（最後の受信から戻った受信まで）。 */
+    public synchronized long getLastStallNanos() {
+        return lastStallNanos;
+    }
+
+    /** 戻るまでにかかった時間の合計。 */
+    public synchronized long getStalledNanosTotal() {
+        return stalledNanosTotal;
+    }
+
+    /**
+     * Annex-B の H.264 データの先頭に SPS か IDR スライスがあれば true（キーフレームの始まり）。
+     * 先頭の {@value #KEY_FRAME_SCAN_BYTES} バイトだけを見る。
+     */
+    public static boolean isKeyFrame(byte[] data, int size) {
+        int end = Math.min(size, KEY_FRAME_SCAN_BYTES) - 3;
+        for (int i = 0; i < end; i++) {
+            if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 1) {
+                int nalType = data[i + 3] & 0x1F;
+                if (nalType == 5 || nalType == 7) {
+                    return true;
+                }
+                i += 2;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%s %.0f pkt/s %.0f kbps gap %.0f/%d ms key %d ms stalls %d",
+                stalled ? "STALL" : "ok", packetRate, bitrate / 1000, meanGapNanos / 1e6f,
+                maxGapNanos / 1_000_000L, keyFrameIntervalNanos / 1_000_000L, stalls);
+    }
+}
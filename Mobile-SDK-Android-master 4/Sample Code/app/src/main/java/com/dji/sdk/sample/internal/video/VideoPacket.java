@@ -0,0 +1,95 @@
+package com.dji.sdk.sample.internal.video;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 映像の1回の受信分（H.264 のデータ）のコピー。バッファは {@link PacketRing} が所有して使い回す。
+ * 同じパケットを複数の読み手が同時に読むので、中身は書き換えないこと。
+ * 参照カウントで管理し、リングと読み手がすべて離すとリングの空きに戻る。
+ */
+public final class VideoPacket {
+    // 再確保の回数を抑えるため、この単位で切り上げて確保する
+    private static final int CAPACITY_STEP = 4096;
+
+    private final PacketRing ring;
+    private final AtomicInteger references = new AtomicInteger();
+    private byte[] data;
+    private int size;
+    private long receivedNanos;
+    private long sequence;
+
+    VideoPacket(PacketRing ring, int capacity) {
+        this.ring = ring;
+        data = new byte[roundUp(capacity)];
+    }
+
+    // 書き手のスレッドで、リングに入れる前に呼ぶ（参照はリングの1つ）
+    void fill(byte[] src, int size, long receivedNanos) {
+        if (data.length < size) {
+            // キーフレームなどで大きいデータが来たときだけ再確保する
+            data = new byte[roundUp(size)];
+        }
+        System.arraycopy(src, 0, data, 0, size);
+        this.size = size;
+        this.receivedNanos = receivedNanos;
+        references.set(1);
+    }
+
+    // 空にして参照を1つにする（{@link #append} で組み立てるとき）
+    void reset(long receivedNanos) {
+        size = 0;
+        this.receivedNanos = receivedNanos;
+        references.set(1);
+    }
+
+    // 後ろに足す。足りなければ中身を残して大きくする
+    void append(byte[] src, int offset, int length) {
+        if (data.length < size + length) {
+            data = Arrays.copyOf(data, roundUp(size + length));
+        }
+        System.arraycopy(src, offset, data, size, length);
+        size += length;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    void retain() {
+        references.incrementAndGet();
+    }
+
+    /** 読み終わったら呼ぶ。 */
+    public void release() {
+        int remaining = references.decrementAndGet();
+        if (remaining == 0) {
+            ring.recycle(this);
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Packet " + sequence + " released too many times");
+        }
+    }
+
+    /** データ。先頭から {@link #getSize()} バイトが有効。 */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /** 受信した時刻（System.nanoTime()）。 */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    /** リングに入った順の通し番号（0 から）。 */
+    public long getSequence() {
+        return sequence;
+    }
+
+    private static int roundUp(int size) {
+        return Math.max(CAPACITY_STEP, (size + CAPACITY_STEP - 1) / CAPACITY_STEP * CAPACITY_STEP);
+    }
+}
@@ -9,7 +9,9 @@ import android.view.LayoutInflater;
 import android.view.TextureView;
 import android.widget.FrameLayout;
 import com.dji.sdk.sample.R;
-import dji.sdk.camera.VideoFeeder;
+import com.dji.sdk.sample.internal.utils.VideoFeedHub;
+import com.dji.sdk.sample.internal.video.PacketRing;
+import com.dji.sdk.sample.internal.video.VideoPacket;
 import dji.sdk.codec.DJICodecManager;
 
 /**
@@ -17,8 +19,9 @@ import dji.sdk.codec.DJICodecManager;
  */
 public class BaseCameraView extends FrameLayout implements TextureView.SurfaceTextureListener {
 
-    private VideoFeeder.VideoDataListener videoDataListener = null;
-    private DJICodecManager codecManager = null;
+    private PacketRing.Consumer videoConsumer = null;
+    private PacketRing.Reader videoReader = null;
+    private volatile DJICodecManager codecManager = null;
 
     public BaseCameraView(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -40,22 +43,45 @@ public class BaseCameraView extends FrameLayout implements TextureView.SurfaceTe
 
             // This callback is for
 
-            videoDataListener = new VideoFeeder.VideoDataListener() {
+            videoConsumer = new PacketRing.Consumer() {
                 @Override
-                public void onReceive(byte[] bytes, int size) {
-                    if (null != codecManager) {
-                        codecManager.sendDataToDecoder(bytes, size);
+                public void onPacket(VideoPacket packet, boolean gap) {
+                    DJICodecManager manager = codecManager;
+                    if (null != manager) {
+                        if (gap) {
+                            manager.resetKeyFrame();
+                        }
+                        manager.sendDataToDecoder(packet.getData(), packet.getSize());
                     }
                 }
             };
         }
+    }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
         initSDKCallback();
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        if (videoReader != null) {
+            VideoFeedHub.getPrimary().close(videoReader);
+            videoReader = null;
+        }
+        super.onDetachedFromWindow();
+    }
+
     private void initSDKCallback() {
+        if (videoConsumer == null || videoReader != null) {
+            return;
+        }
         try {
-            VideoFeeder.getInstance().getPrimaryVideoFeed().addVideoDataListener(videoDataListener);
+            videoReader = VideoFeedHub.getPrimary().open("camera-view", videoConsumer);
+            if (codecManager != null) {
+                VideoFeedHub.getPrimary().startFromKeyFrame(videoReader);
+            }
         } catch (Exception ignored) {
         }
     }
@@ -64,6 +90,10 @@ public class BaseCameraView extends FrameLayout implements TextureView.SurfaceTe
     public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
         if (codecManager == null) {
             codecManager = new DJICodecManager(getContext(), surface, width, height);
+            if (videoReader != null) {
+                // Start from the last key frame instead of waiting for the next one.
+                VideoFeedHub.getPrimary().startFromKeyFrame(videoReader);
+            }
         }
     }
 
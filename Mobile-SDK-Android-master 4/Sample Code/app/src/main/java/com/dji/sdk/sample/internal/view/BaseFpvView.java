@@ -8,16 +8,19 @@ import android.view.LayoutInflater;
 import android.view.TextureView;
 import android.widget.FrameLayout;
 import com.dji.sdk.sample.R;
+import com.dji.sdk.sample.internal.utils.VideoFeedHub;
+import com.dji.sdk.sample.internal.video.PacketRing;
+import com.dji.sdk.sample.internal.video.VideoPacket;
 import dji.midware.usb.P3.UsbAccessoryService;
-import dji.sdk.camera.VideoFeeder;
 import dji.sdk.codec.DJICodecManager;
 
 /**
  * This class is designed for showing the fpv video feed from the camera or Lightbridge 2.
  */
 public class BaseFpvView extends FrameLayout implements TextureView.SurfaceTextureListener{
-    private VideoFeeder.VideoDataListener videoDataListener = null;
-    private DJICodecManager codecManager = null;
+    private PacketRing.Consumer videoConsumer = null;
+    private PacketRing.Reader videoReader = null;
+    private volatile DJICodecManager codecManager = null;
 
     public BaseFpvView(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -35,24 +38,47 @@ public class BaseFpvView extends FrameLayout implements TextureView.SurfaceTextu
         if (null != mVideoSurface) {
             mVideoSurface.setSurfaceTextureListener(this);
 
-            videoDataListener = new VideoFeeder.VideoDataListener() {
+            videoConsumer = new PacketRing.Consumer() {
                 @Override
-                public void onReceive(byte[] bytes, int size) {
-                    if (null != codecManager) {
-                        codecManager.sendDataToDecoder(bytes,
-                                                       size,
-                                                       UsbAccessoryService.VideoStreamSource.Fpv.getIndex());
+                public void onPacket(VideoPacket packet, boolean gap) {
+                    DJICodecManager manager = codecManager;
+                    if (null != manager) {
+                        if (gap) {
+                            manager.resetKeyFrame();
+                        }
+                        manager.sendDataToDecoder(packet.getData(),
+                                                  packet.getSize(),
+                                                  UsbAccessoryService.VideoStreamSource.Fpv.getIndex());
                     }
                 }
             };
         }
+    }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
         initSDKCallback();
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        if (videoReader != null) {
+            VideoFeedHub.getSecondary().close(videoReader);
+            videoReader = null;
+        }
+        super.onDetachedFromWindow();
+    }
+
     private void initSDKCallback() {
+        if (videoConsumer == null || videoReader != null) {
+            return;
+        }
         try {
-            VideoFeeder.getInstance().getSecondaryVideoFeed().addVideoDataListener(videoDataListener);
+            videoReader = VideoFeedHub.getSecondary().open("fpv-view", videoConsumer);
+            if (codecManager != null) {
+                VideoFeedHub.getSecondary().startFromKeyFrame(videoReader);
+            }
         } catch (Exception ignored) {
         }
     }
@@ -65,6 +91,10 @@ public class BaseFpvView extends FrameLayout implements TextureView.SurfaceTextu
                                                width,
                                                height,
                                                UsbAccessoryService.VideoStreamSource.Fpv);
+            if (videoReader != null) {
+                // Start from the last key frame instead of waiting for the next one.
+                VideoFeedHub.getSecondary().startFromKeyFrame(videoReader);
+            }
         }
     }
 
@@ -0,0 +1,212 @@
+package com.dji.sdk.sample.internal.view;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Looper;
+import android.view.View;
+
+import com.dji.sdk.sample.internal.overlay.OverlayBuffer;
+import com.dji.sdk.sample.internal.overlay.OverlayFrame;
+
+/**
+ * 映像に重ねる枠・点・文字列を、描画のたびにオブジェクトを作らずに描く。
+ * 作る側は {@link #beginFrame} / {@link #endFrame} の間に {@link OverlayFrame} へ書く。
+ * 書き終えるとUIスレッドで新しい面を表に出し、前に描いた範囲と合わせて変わった範囲だけを無効化する。
+ * ビューの onDraw からは {@link #draw} を呼ぶ。
+ * <p>
+ * スタイルは番号で指定し、番号ごとの Paint を {@link #setPaint} で設定する
+ * （矩形と点は Paint の線の太さで、文字列は文字の大きさで描く）。
+ */
+public final class OverlayRenderer {
+    private final View view;
+    private final OverlayBuffer buffer;
+    private final Paint[] paints;
+    private final Paint.FontMetrics[] fontMetrics;
+    // 最後に描いた範囲と、次に描く範囲（ビューのピクセル）
+    private final RectF drawnBounds = new RectF();
+    private final RectF nextBounds = new RectF();
+    private final RectF itemBounds = new RectF();
+    private final Rect dirty = new Rect();
+    private int drawnWidth;
+    private int drawnHeight;
+
+    private final Runnable applyRunnable = this::apply;
+
+    /**
+     * @param styles       スタイルの数
+     * @param itemCapacity 1回に描く項目の最大数
+     * @param textCapacity 1回に描く文字の最大数
+     */
+    public OverlayRenderer(View view, int styles, int itemCapacity, int textCapacity) {
+        this.view = view;
+        buffer = new OverlayBuffer(itemCapacity, textCapacity);
+        paints = new Paint[styles];
+        fontMetrics = new Paint.FontMetrics[styles];
+    }
+
+    /** 文字の大きさなどを設定し終えた Paint を渡す（文字の高さはここで読み取る）。 */
+    public void setPaint(int style, Paint paint) {
+        paints[style] = paint;
+        fontMetrics[style] = paint.getFontMetrics();
+    }
+
+    /** 次に描く内容を書き始める（作る側のスレッド）。 */
+    public OverlayFrame beginFrame() {
+        return buffer.beginWrite();
+    }
+
+    /** 書き終えた。UIスレッドならすぐに、それ以外なら次のフレームで表に出す。 */
+    public void endFrame() {
+        buffer.endWrite();
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            apply();
+        } else {
+            view.postOnAnimation(applyRunnable);
+        }
+    }
+
+    // UIスレッドで、書き終わった内容を表に出し、前に描いた範囲と新しく描く範囲を合わせて無効化する。
+    // 内容もビューの大きさも変わっていなければ何もしない
+    @SuppressWarnings("deprecation")
+    private void apply() {
+        int width = view.getWidth();
+        int height = view.getHeight();
+        boolean resized = width != drawnWidth || height != drawnHeight;
+        if (!buffer.swap() && !resized) {
+            return;
+        }
+        measure(buffer.getFront(), width, height, nextBounds);
+        if (resized) {
+            view.invalidate();
+        } else {
+            nextBounds.union(drawnBounds);
+            if (nextBounds.isEmpty()) {
+                return;
+            }
+            nextBounds.roundOut(dirty);
+            // ハードウェア描画ではビュー全体を描き直すが、ソフトウェア描画ではこの範囲だけになる
+            view.invalidate(dirty);
+        }
+    }
+
+    /** ビューの onDraw から呼ぶ。 */
+    public void draw(Canvas canvas) {
+        OverlayFrame frame = buffer.getFront();
+        int width = view.getWidth();
+        int height = view.getHeight();
+        float scaleX = width / frame.getSourceWidth();
+        float scaleY = height / frame.getSourceHeight();
+        char[] text = frame.getText();
+        for (int i = 0; i < frame.getCount(); i++) {
+            Paint paint = paints[frame.getStyle(i)];
+            switch (frame.getKind(i)) {
+                case OverlayFrame.KIND_RECT:
+                    canvas.drawRect(frame.getX0(i) * scaleX, frame.getY0(i) * scaleY,
+                            frame.getX1(i) * scaleX, frame.getY1(i) * scaleY, paint);
+                    break;
+                case OverlayFrame.KIND_POINT:
+                    canvas.drawPoint(frame.getX0(i) * scaleX, frame.getY0(i) * scaleY, paint);
+                    break;
+                default:
+                    drawText(canvas, frame, i, text, scaleX, scaleY, paint);
+                    break;
+            }
+        }
+        measure(frame, width, height, drawnBounds);
+        drawnWidth = width;
+        drawnHeight = height;
+    }
+
+    private void drawText(Canvas canvas, OverlayFrame frame, int index, char[] text, float scaleX, float scaleY,
+                          Paint paint) {
+        float x = frame.getX0(index) * scaleX;
+        float y = frame.getY0(index) * scaleY + frame.getOffsetY(index);
+        int start = frame.getTextStart(index);
+        int end = start + frame.getTextLength(index);
+        if (frame.getAlign(index) == OverlayFrame.ALIGN_LEFT) {
+            // 1行目のベースラインを y に合わせる
+            for (int lineStart = start; lineStart < end; ) {
+                int lineEnd = lineEnd(text, lineStart, end);
+                canvas.drawText(text, lineStart, lineEnd - lineStart, x, y, paint);
+                y += paint.getFontSpacing();
+                lineStart = lineEnd + 1;
+            }
+            return;
+        }
+        // 行ごとに中央に揃え、塊の中心を y に合わせる
+        Paint.FontMetrics metrics = fontMetrics[frame.getStyle(index)];
+        float spacing = paint.getFontSpacing();
+        float baseline = y - lineCount(text, start, end) * spacing / 2 - metrics.ascent;
+        for (int lineStart = start; lineStart < end; ) {
+            int lineEnd = lineEnd(text, lineStart, end);
+            int count = lineEnd - lineStart;
+            float lineX = x - paint.measureText(text, lineStart, count) / 2;
+            canvas.drawText(text, lineStart, count, lineX, baseline, paint);
+            baseline += spacing;
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    // 各項目を描く範囲（ビューのピクセル、線の太さと文字の大きさを含む）を合わせる
+    private void measure(OverlayFrame frame, int width, int height, RectF out) {
+        out.setEmpty();
+        float scaleX = width / frame.getSourceWidth();
+        float scaleY = height / frame.getSourceHeight();
+        char[] text = frame.getText();
+        for (int i = 0; i < frame.getCount(); i++) {
+            Paint paint = paints[frame.getStyle(i)];
+            float x = frame.getX0(i) * scaleX;
+            float y = frame.getY0(i) * scaleY;
+            if (frame.getKind(i) == OverlayFrame.KIND_TEXT) {
+                measureText(frame, i, text, x, y + frame.getOffsetY(i), paint, itemBounds);
+            } else {
+                float half = paint.getStrokeWidth() / 2 + 1;
+                float x1 = frame.getX1(i) * scaleX;
+                float y1 = frame.getY1(i) * scaleY;
+                itemBounds.set(Math.min(x, x1) - half, Math.min(y, y1) - half,
+                        Math.max(x, x1) + half, Math.max(y, y1) + half);
+            }
+            out.union(itemBounds);
+        }
+    }
+
+    private void measureText(OverlayFrame frame, int index, char[] text, float x, float y, Paint paint, RectF out) {
+        int start = frame.getTextStart(index);
+        int end = start + frame.getTextLength(index);
+        float maxWidth = 0;
+        for (int lineStart = start; lineStart < end; ) {
+            int lineEnd = lineEnd(text, lineStart, end);
+            maxWidth = Math.max(maxWidth, paint.measureText(text, lineStart, lineEnd - lineStart));
+            lineStart = lineEnd + 1;
+        }
+        Paint.FontMetrics metrics = fontMetrics[frame.getStyle(index)];
+        float spacing = paint.getFontSpacing();
+        float blockHeight = lineCount(text, start, end) * spacing;
+        if (frame.getAlign(index) == OverlayFrame.ALIGN_LEFT) {
+            out.set(x, y + metrics.top, x + maxWidth, y + blockHeight - spacing + metrics.bottom);
+        } else {
+            out.set(x - maxWidth / 2, y - blockHeight / 2, x + maxWidth / 2, y + blockHeight / 2 + metrics.bottom);
+        }
+        out.inset(-1, -1);
+    }
+
+    private static int lineEnd(char[] text, int start, int end) {
+        int i = start;
+        while (i < end && text[i] != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int lineCount(char[] text, int start, int end) {
+        int lines = 1;
+        for (int i = start; i < end; i++) {
+            if (text[i] == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+}
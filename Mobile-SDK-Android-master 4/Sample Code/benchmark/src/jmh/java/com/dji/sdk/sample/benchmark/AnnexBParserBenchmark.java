@@ -0,0 +1,79 @@
+package com.dji.sdk.sample.benchmark;
+
+import com.dji.sdk.sample.internal.video.AccessUnitSplitter;
+import com.dji.sdk.sample.internal.video.AnnexBParser;
+import com.dji.sdk.sample.internal.video.PreRollBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 受信1回分の H.264 を {@link AnnexBParser} で読む（VideoFeedHub の index の読み手の処理）。
+ * 合成の 1080p30 のストリームを受信の大きさに区切って順に流す。gc.alloc.rate.norm が 0 であることを確かめる。
+ * split は MP4 の録画の読み手の処理（{@link AccessUnitSplitter} でアクセスユニットに切り出すまで）。
+ * preRoll はイベントのクリップの読み手の処理（切り出したものを {@link PreRollBuffer} に入れ、古い GOP を返すまで）。
+ */
+@State(Scope.Thread)
+public class AnnexBParserBenchmark {
+    @Param({"1500", "16384"})
+    public int packetSize;
+
+    private AnnexBParser parser;
+    private AccessUnitSplitter splitter;
+    private AccessUnitSplitter preRollSplitter;
+    private PreRollBuffer preRoll;
+    private long unitBytes;
+    private byte[] stream;
+    private int offset;
+    private long receivedNanos;
+
+    @Setup
+    public void setUp() {
+        parser = new AnnexBParser();
+        splitter = new AccessUnitSplitter(256 * 1024, 8 * 1024 * 1024,
+                (data, size, nanos, keyFrame) -> unitBytes += size);
+        // 受信1回を 1ms として、2秒分を持っておく
+        preRoll = new PreRollBuffer(2_000_000_000L, 1_000_000_000L, 64L * 1024 * 1024, PreRollBuffer.Clip::recycle);
+        preRollSplitter = new AccessUnitSplitter(256 * 1024, 8 * 1024 * 1024, preRoll::add);
+        stream = new SyntheticH264(1920, 1080, 30, 30, true, 1).generate(300, 4000);
+    }
+
+    @Benchmark
+    public int parse() {
+        if (offset >= stream.length) {
+            offset = 0;
+            parser.reset();
+        }
+        int length = Math.min(packetSize, stream.length - offset);
+        int flags = parser.parse(stream, offset, length, receivedNanos += 1_000_000L);
+        offset += length;
+        return flags;
+    }
+
+    @Benchmark
+    public long split() {
+        if (offset >= stream.length) {
+            offset = 0;
+            splitter.reset();
+        }
+        int length = Math.min(packetSize, stream.length - offset);
+        splitter.push(stream, offset, length, receivedNanos += 1_000_000L);
+        offset += length;
+        return unitBytes;
+    }
+
+    @Benchmark
+    public long preRoll() {
+        if (offset >= stream.length) {
+            offset = 0;
+            preRollSplitter.reset();
+        }
+        int length = Math.min(packetSize, stream.length - offset);
+        preRollSplitter.push(stream, offset, length, receivedNanos += 1_000_000L);
+        offset += length;
+        return preRollSplitter.getUnits();
+    }
+}
@@ -0,0 +1,164 @@
+package com.dji.sdk.sample.benchmark;
+
+import com.dji.sdk.sample.internal.video.AccessUnitSplitter;
+import com.dji.sdk.sample.internal.video.AnnexBParser;
+import com.dji.sdk.sample.internal.video.KeyFrameIndex;
+import com.dji.sdk.sample.internal.video.PacketRing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * H.264 の Annex-B のストリームを {@link AnnexBParser} と {@link KeyFrameIndex} に流して確かめる
+ * （./gradlew :benchmark:annexBReplay [-Pfixtures=a.h264,b.h264]）。
+ * 録画した .h264（機体の映像を VideoDataListener のまま保存したもの）を渡せばそれを、なければ合成のストリームを使う。
+ * <p>
+ * ストリームを受信の大きさを変えて（1バイトずつから数十 KiB まで）区切って流し、
+ * 解像度・フレームレート・GOP の長さ・フレーム数が区切り方によらず同じであることと、
+ * 途中でつないだ読み手が {@link KeyFrameIndex#replay} で最後の IDR のアクセスユニットの先頭から
+ * 元のストリームと同じバイト列を受け取ることを確かめる。
+ * {@link AccessUnitSplitter} が区切り方によらずピクチャと同じ数のアクセスユニットを切り出し（最後の1つは
+ * {@link AccessUnitSplitter#flush} で渡る）、つなげると元のストリームに戻ることも確かめる。
+ */
+public final class AnnexBReplay {
+    private static final int[] MAX_CHUNKS = {1, 7, 1500, 16 * 1024, 64 * 1024};
+    private static final long FRAME_NANOS = 33_333_333L;
+
+    private AnnexBReplay() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean ok = true;
+        if (args.length > 0 && !args[0].isEmpty()) {
+            for (String path : args[0].split(",")) {
+                ok &= run(path, Files.readAllBytes(Paths.get(path)));
+            }
+        } else {
+            ok &= run("synthetic 1080p30 gop30", new SyntheticH264(1920, 1080, 30, 30, true, 1).generate(300, 4000));
+            ok &= run("synthetic 720p no VUI gop60", new SyntheticH264(1280, 720, 25, 60, false, 2).generate(300, 2000));
+            ok &= run("synthetic 4K60 gop12", new SyntheticH264(3840, 2160, 60, 12, true, 3).generate(300, 12000));
+        }
+        if (!ok) {
+            throw new IllegalStateException("Annex-B replay found mismatches");
+        }
+    }
+
+    private static boolean run(String name, byte[] stream) {
+        String reference = null;
+        boolean ok = true;
+        for (int maxChunk : MAX_CHUNKS) {
+            AnnexBParser parser = new AnnexBParser();
+            Random random = new Random(maxChunk);
+            long start = System.nanoTime();
+            for (int offset = 0; offset < stream.length; ) {
+                int length = Math.min(stream.length - offset, 1 + random.nextInt(maxChunk));
+                parser.parse(stream, offset, length, offset);
+                offset += length;
+            }
+            long elapsed = System.nanoTime() - start;
+            String summary = String.format(Locale.US, "%dx%d %.2f fps gop %d, %d pictures, %d IDR",
+                    parser.getWidth(), parser.getHeight(), parser.getFrameRate(), parser.getGopLength(),
+                    parser.getPictures(), parser.getKeyFrames());
+            if (reference == null) {
+                reference = summary;
+            } else if (!reference.equals(summary)) {
+                ok = false;
+                System.out.println(name + ": chunks up to " + maxChunk + " B differ: " + summary);
+            }
+            System.out.println(String.format(Locale.US, "%-28s chunks <= %6d B  %s  %.0f MB/s",
+                    name, maxChunk, summary, stream.length * 1e3 / Math.max(1, elapsed)));
+        }
+        for (int maxChunk : MAX_CHUNKS) {
+            ok &= checkSplit(name, stream, maxChunk);
+        }
+        ok &= checkReplay(name, stream, stream.length / 3);
+        ok &= checkReplay(name, stream, stream.length * 2 / 3);
+        return ok;
+    }
+
+    // 最後に flush すると、ピクチャと同じ数のアクセスユニットが渡り、つなげると最初のフレームの始まりから
+    // ストリームの終わりまでと同じになることを確かめる
+    private static boolean checkSplit(String name, byte[] stream, int maxChunk) {
+        ByteArrayOutputStream joined = new ByteArrayOutputStream(stream.length);
+        int[] keyFrames = new int[1];
+        AccessUnitSplitter splitter = new AccessUnitSplitter(1024, stream.length, (data, size, receivedNanos, keyFrame) -> {
+            joined.write(data, 0, size);
+            if (keyFrame) {
+                keyFrames[0]++;
+            }
+        });
+        Random random = new Random(maxChunk);
+        long start = System.nanoTime();
+        for (int offset = 0; offset < stream.length; ) {
+            int length = Math.min(stream.length - offset, 1 + random.nextInt(maxChunk));
+            splitter.push(stream, offset, length, offset);
+            offset += length;
+        }
+        splitter.flush();
+        long elapsed = System.nanoTime() - start;
+        AnnexBParser parser = new AnnexBParser();
+        parser.parseToPicture(stream, 0, stream.length, 0);
+        int first = (int) parser.getPictureStart();
+        byte[] actual = joined.toByteArray();
+        AnnexBParser reference = splitter.getParser();
+        boolean ok = first >= 0 && first + actual.length == stream.length
+                && splitter.getUnits() == reference.getPictures()
+                && keyFrames[0] == reference.getKeyFrames()
+                && Arrays.equals(actual, Arrays.copyOfRange(stream, first, first + actual.length));
+        System.out.println(String.format(Locale.US,
+                "%-28s split chunks <= %6d B  %d units of %d pictures, %d IDR  %.0f MB/s  %s",
+                name, maxChunk, splitter.getUnits(), reference.getPictures(), keyFrames[0], stream.length * 1e3 / Math.max(1, elapsed),
+                ok ? "ok" : "MISMATCH"));
+        return ok;
+    }
+
+    // cut バイトまで流したところで読み手をつなぎ、最後の IDR から今までを受け取れることを確かめる
+    private static boolean checkReplay(String name, byte[] stream, int cut) {
+        PacketRing ring = new PacketRing(256, 16 * 1024);
+        KeyFrameIndex index = new KeyFrameIndex(ring, 1024);
+        ring.openReader("index", Runnable::run, index);
+        Random random = new Random(cut);
+        int offset = publish(ring, stream, 0, cut, random);
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        PacketRing.Reader reader = ring.openReader("late", Runnable::run,
+                (packet, gap) -> received.write(packet.getData(), 0, packet.getSize()));
+        boolean replayed = index.replay(reader);
+        publish(ring, stream, offset, stream.length, random);
+
+        AnnexBParser parser = new AnnexBParser();
+        parser.parse(stream, 0, cut, 0);
+        long keyFrameStart = parser.getKeyFrameStart();
+        boolean ok;
+        if (!replayed || keyFrameStart < 0) {
+            ok = !replayed && keyFrameStart < 0;
+        } else {
+            byte[] expected = Arrays.copyOfRange(stream, (int) keyFrameStart, stream.length);
+            byte[] actual = received.toByteArray();
+            // IDR のアクセスユニットに SPS・PPS がなければ、前に付けた分だけ長い
+            ok = actual.length >= expected.length && Arrays.equals(
+                    Arrays.copyOfRange(actual, actual.length - expected.length, actual.length), expected);
+        }
+        System.out.println(String.format(Locale.US, "%-28s join at %d B: replayed %b from IDR at %d B, %s",
+                name, cut, replayed, keyFrameStart, ok ? "ok" : "MISMATCH"));
+        return ok;
+    }
+
+    private static int publish(PacketRing ring, byte[] stream, int from, int to, Random random) {
+        int offset = from;
+        byte[] packet = new byte[MAX_CHUNKS[MAX_CHUNKS.length - 1]];
+        long receivedNanos = 0;
+        while (offset < to) {
+            int length = Math.min(to - offset, 1 + random.nextInt(packet.length));
+            System.arraycopy(stream, offset, packet, 0, length);
+            ring.publish(packet, length, receivedNanos += FRAME_NANOS);
+            offset += length;
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,98 @@
+package com.dji.sdk.sample.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * fixtures/ 以下の検出列（SSD の生の出力をフレームごとに並べたもの）を読み込む。
+ * 形式はファイル先頭のコメントを参照。
+ */
+final class DetectionFixture {
+    final int imageWidth;
+    final int imageHeight;
+    final Frame[] frames;
+
+    /** 1フレーム分の SSD 出力。配列の並びは InterpreterDetector が受け取る出力テンソルと同じ。 */
+    static final class Frame {
+        final long timestampNanos;
+        final float[] locations;
+        final float[] classes;
+        final float[] scores;
+        final int count;
+
+        Frame(long timestampNanos, List<float[]> rows) {
+            this.timestampNanos = timestampNanos;
+            count = rows.size();
+            locations = new float[count * 4];
+            classes = new float[count];
+            scores = new float[count];
+            for (int i = 0; i < count; i++) {
+                float[] row = rows.get(i);
+                System.arraycopy(row, 0, locations, i * 4, 4);
+                classes[i] = row[4];
+                scores[i] = row[5];
+            }
+        }
+    }
+
+    private DetectionFixture(int imageWidth, int imageHeight, Frame[] frames) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.frames = frames;
+    }
+
+    static DetectionFixture load(String name) throws IOException {
+        InputStream in = DetectionFixture.class.getResourceAsStream("/fixtures/" + name);
+        if (in == null) {
+            throw new IOException("Fixture not found: " + name);
+        }
+        int width = 0;
+        int height = 0;
+        List<Frame> frames = new ArrayList<>();
+        long timestampNanos = -1;
+        List<float[]> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields[0].equals("image")) {
+                    width = Integer.parseInt(fields[1]);
+                    height = Integer.parseInt(fields[2]);
+                } else if (fields[0].equals("frame")) {
+                    if (timestampNanos >= 0) {
+                        frames.add(new Frame(timestampNanos, rows));
+                        rows.clear();
+                    }
+                    timestampNanos = Long.parseLong(fields[1]) * 1_000_000L;
+                } else {
+                    float[] row = new float[6];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = Float.parseFloat(fields[i]);
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        if (timestampNanos >= 0) {
+            frames.add(new Frame(timestampNanos, rows));
+        }
+        if (width <= 0 || height <= 0 || frames.isEmpty()) {
+            throw new IOException("Invalid fixture: " + name);
+        }
+        return new DetectionFixture(width, height, frames.toArray(new Frame[0]));
+    }
+
+    /** 記録の長さ。繰り返し再生するときにタイムスタンプをずらすのに使う。 */
+    long getDurationNanos() {
+        return frames[frames.length - 1].timestampNanos - frames[0].timestampNanos + 100_000_000L;
+    }
+}
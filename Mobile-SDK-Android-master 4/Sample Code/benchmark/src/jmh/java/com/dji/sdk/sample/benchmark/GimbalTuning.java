@@ -0,0 +1,46 @@
+package com.dji.sdk.sample.benchmark;
+
+import com.dji.sdk.sample.demo.flightcontroller.control.GimbalSimulation;
+import com.dji.sdk.sample.demo.flightcontroller.control.GimbalTrackingController;
+import com.dji.sdk.sample.demo.flightcontroller.control.PidController;
+import com.dji.sdk.sample.demo.flightcontroller.control.SimulatedGimbal;
+
+import java.util.Locale;
+
+/**
+ * ジンバル追従のゲインを模擬ジンバルで評価する（./gradlew :benchmark:gimbalTuning）。
+ * 引数なしなら既定のゲイン、"kp,ki,kd,kff" を渡すとそのゲインで、ステップと等速移動の対象を追わせる。
+ */
+public final class GimbalTuning {
+    private static final long DURATION_NANOS = 6_000_000_000L;
+    // {最初のずれ [度], 対象の角速度 [度/秒]}
+    private static final float[][] SCENARIOS = {
+            {5, 0}, {20, 0}, {0, 10}, {10, 20},
+    };
+
+    private GimbalTuning() {
+    }
+
+    public static void main(String[] args) {
+        GimbalSimulation simulation = new GimbalSimulation();
+        for (float[] scenario : SCENARIOS) {
+            GimbalTrackingController controller = args.length > 0
+                    ? withGains(args[0]) : GimbalTrackingController.withDefaultGains();
+            GimbalSimulation.Result result = simulation.run(controller, SimulatedGimbal.withDefaults(),
+                    scenario[0], scenario[1], DURATION_NANOS);
+            System.out.println(String.format(Locale.US, "step=%5.1f° rate=%5.1f°/s  %s",
+                    scenario[0], scenario[1], result));
+        }
+    }
+
+    private static GimbalTrackingController withGains(String spec) {
+        String[] parts = spec.split(",");
+        float kp = Float.parseFloat(parts[0]);
+        float ki = Float.parseFloat(parts[1]);
+        float kd = Float.parseFloat(parts[2]);
+        float kff = parts.length > 3 ? Float.parseFloat(parts[3]) : 1.0f;
+        return new GimbalTrackingController(
+                new PidController(kp, ki, kd).feedForward(kff).integralLimit(15.0f).integralZone(3.0f),
+                new PidController(kp, ki, kd).feedForward(kff).integralLimit(15.0f).integralZone(3.0f));
+    }
+}
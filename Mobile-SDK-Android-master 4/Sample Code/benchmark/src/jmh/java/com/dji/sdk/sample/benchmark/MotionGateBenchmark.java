@@ -0,0 +1,58 @@
+package com.dji.sdk.sample.benchmark;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.MotionGate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 推論前の動き判定の段（Yプレーンの縮小と差分）。
+ * 静止した場面（差分だけ）と、毎回変化がある場面（全体の動きの推定まで）を 1080p と 4K で計測する。
+ */
+@State(Scope.Thread)
+public class MotionGateBenchmark {
+    @Param({"1920x1080", "3840x2160"})
+    public String source;
+
+    @Param({"false", "true"})
+    public boolean moving;
+
+    private int width;
+    private int height;
+    private final ByteBuffer[] frames = new ByteBuffer[2];
+    private MotionGate gate;
+    private long timestampNanos;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        String[] size = source.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        SyntheticScene scene = new SyntheticScene(width, height, 16);
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = ByteBuffer.allocateDirect(width * height);
+            // 動く場面は2枚を交互に流し、毎回ずれが見つかるようにする
+            scene.render(frames[i], moving ? i * 8 : 0, 0, 0, -1, 0, 0, 0, 3);
+        }
+        gate = new MotionGate();
+        gate.hasMotion(frames[0], width, height, width, 0);
+    }
+
+    @Benchmark
+    public boolean hasMotion() {
+        timestampNanos += 100_000_000L;
+        next ^= 1;
+        // 変化がなくても一定時間ごとに推論に回す分を除いて計測する
+        if (timestampNanos >= 1_000_000_000L) {
+            timestampNanos = 0;
+            gate.reset();
+        }
+        return gate.hasMotion(frames[next], width, height, width, timestampNanos);
+    }
+}
@@ -0,0 +1,100 @@
+package com.dji.sdk.sample.benchmark;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.MotionGate;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 合成映像で {@link MotionGate} が省く推論の数と判定時間を確かめる（./gradlew :benchmark:motionGateReplay）。
+ * 30fps の映像のうち3フレームに1回（10Hz）を判定に回したとして、場面ごとに10秒ずつ流す。
+ * 推論を省いたフレームのうち、動くものが最後に推論したフレームから LAG_TOLERANCE を超えて
+ * ずれていたものを見逃しとして数え、省いている間の最大のずれも表示する。
+ */
+public final class MotionGateReplay {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int FPS = 30;
+    private static final int DETECT_EVERY = 3;
+    private static final int SECONDS = 10;
+    private static final int MARGIN = 64;
+    private static final int NOISE = 3;
+    private static final int LAG_TOLERANCE = 4;
+
+    private interface Scenario {
+        /** フレーム i の内容を書き込み、動くもの（人やカメラ）の位置 [px] を返す。 */
+        int render(SyntheticScene scene, ByteBuffer out, int i);
+    }
+
+    private MotionGateReplay() {
+    }
+
+    public static void main(String[] args) {
+        SyntheticScene scene = new SyntheticScene(WIDTH, HEIGHT, MARGIN);
+        ByteBuffer frame = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        run("hover (noise only)", scene, frame, (s, out, i) -> {
+            s.render(out, 0, 0, 0, -1, 0, 0, 0, NOISE);
+            return 0;
+        });
+        run("exposure drift", scene, frame, (s, out, i) -> {
+            s.render(out, 0, 0, i / 10, -1, 0, 0, 0, NOISE);
+            return 0;
+        });
+        run("standing person", scene, frame, (s, out, i) -> {
+            s.render(out, 0, 0, 0, 900, 500, 30, 80, NOISE);
+            return 0;
+        });
+        run("walking person 1px/frame", scene, frame, (s, out, i) -> {
+            s.render(out, 0, 0, 0, 600 + i, 500, 30, 80, NOISE);
+            return i;
+        });
+        run("person walks 2s, stops", scene, frame, (s, out, i) -> {
+            int x = 3 * Math.min(i, 2 * FPS);
+            s.render(out, 0, 0, 0, 600 + x, 500, 30, 80, NOISE);
+            return x;
+        });
+        run("slow pan 1px/frame", scene, frame, (s, out, i) -> {
+            int x = i % (2 * MARGIN) - MARGIN;
+            s.render(out, x, 0, 0, -1, 0, 0, 0, NOISE);
+            return x;
+        });
+    }
+
+    private static void run(String name, SyntheticScene scene, ByteBuffer frame, Scenario scenario) {
+        MotionGate gate = new MotionGate();
+        int frames = SECONDS * FPS;
+        long[] costs = new long[frames / DETECT_EVERY + 1];
+        int evaluated = 0;
+        int missed = 0;
+        int maxLag = 0;
+        int referencePosition = 0;
+        int lastShiftX = 0;
+        for (int i = 0; i < frames; i++) {
+            int position = scenario.render(scene, frame, i);
+            if (i % DETECT_EVERY != 0) {
+                continue;
+            }
+            long timestampNanos = i * 1_000_000_000L / FPS;
+            long start = System.nanoTime();
+            boolean motion = gate.hasMotion(frame, WIDTH, HEIGHT, WIDTH, timestampNanos);
+            costs[evaluated++] = System.nanoTime() - start;
+            int lag = Math.abs(position - referencePosition);
+            if (motion) {
+                referencePosition = position;
+                lastShiftX = gate.getGlobalShiftX();
+            } else {
+                maxLag = Math.max(maxLag, lag);
+                if (lag > LAG_TOLERANCE) {
+                    missed++;
+                }
+            }
+        }
+        long[] sorted = Arrays.copyOf(costs, evaluated);
+        Arrays.sort(sorted);
+        System.out.println(String.format(Locale.US,
+                "%-26s inferences %3d/%3d (saved %3d)  missed=%d maxLag=%dpx  median=%4dus p99=%4dus  shiftX=%d",
+                name, gate.getEvaluated() - gate.getSkipped(), gate.getEvaluated(), gate.getSkipped(), missed,
+                maxLag, sorted[evaluated / 2] / 1000L, sorted[evaluated * 99 / 100] / 1000L, lastShiftX));
+    }
+}
@@ -0,0 +1,51 @@
+package com.dji.sdk.sample.benchmark;
+
+import com.dji.sdk.sample.internal.video.PacketRing;
+import com.dji.sdk.sample.internal.video.VideoPacket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 受信1回分をリングにコピーして全読み手に配り、読み手が読み終わるまで（VideoFeedHub と同じ構成）。
+ * 読み手は受信と同じスレッドで動かし、コピー・参照カウント・配る処理だけを計測する。
+ * 定常状態ではパケットを使い回すので、gc.alloc.rate.norm が 0 に近いことを確かめる。
+ */
+@State(Scope.Thread)
+public class PacketRingBenchmark {
+    @Param({"1", "4"})
+    public int readers;
+
+    @Param({"4096", "65536"})
+    public int packetSize;
+
+    private PacketRing ring;
+    private byte[] packet;
+    private long checksum;
+    private long receivedNanos;
+
+    @Setup
+    public void setUp() {
+        ring = new PacketRing(256, 16 * 1024);
+        packet = new byte[packetSize];
+        for (int i = 0; i < packetSize; i++) {
+            packet[i] = (byte) i;
+        }
+        for (int i = 0; i < readers; i++) {
+            ring.openReader("reader" + i, Runnable::run, this::consume);
+        }
+    }
+
+    private void consume(VideoPacket videoPacket, boolean gap) {
+        checksum += videoPacket.getData()[videoPacket.getSize() - 1] + (gap ? 1 : 0);
+    }
+
+    @Benchmark
+    public long publish() {
+        ring.publish(packet, packetSize, ++receivedNanos);
+        return checksum;
+    }
+}
@@ -0,0 +1,265 @@
+package com.dji.sdk.sample.benchmark;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.BoxTracker;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectionResults;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectionScheduler;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectorStats;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.FrameMailbox;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.FrameTimeline;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.PipelineLatency;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.SsdPostProcessor;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.TargetGeometry;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.Track;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvFrame;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvFramePool;
+import com.dji.sdk.sample.internal.video.AnnexBParser;
+import com.dji.sdk.sample.internal.video.PacketRecorder;
+import com.dji.sdk.sample.internal.video.PacketRecording;
+import com.dji.sdk.sample.internal.video.PacketReplay;
+import com.dji.sdk.sample.internal.video.PacketRing;
+import com.dji.sdk.sample.internal.video.VideoPacket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 録画した映像（{@link PacketRecorder} の形式）を {@link PacketReplay} で流し直し、
+ * 受信 → デコード → 検出 → 操縦のパイプラインを JVM 上で動かして段ごとの遅延とスループットを出す
+ * （./gradlew :benchmark:pipelineReplay [-Precording=feed.djvr] [-Pspeed=realtime|max] [-PinferenceMs=20]）。
+ * 録画を渡さなければ、合成の 1080p30 のストリームをいったん録ってから流す（録画と読み出しの往復も確かめる）。
+ * <p>
+ * デコーダは {@link AnnexBParser} でピクチャの区切りを見つけるだけの代わりで、ピクチャごとに
+ * 1080p の NV12 を {@link YuvFramePool} のフレームへコピーする。推論は inferenceMs だけ待つ代わりで、
+ * 結果は fixtures/ssd_person_walk.txt の SSD 出力を映像の時刻に合わせて使う。
+ * それ以外（リング、メールボックス、後処理、トラッカー、検出の間隔、操縦量の計算、遅延の集計）はアプリと同じものを使う。
+ * speed=max では受信側を読み手の遅れで待たせて、読み飛ばさずに流せる上限を測る
+ * （検出の間隔は実時間で決まるので、検出に回るフレームは少ない）。
+ */
+public final class PipelineReplay {
+    private static final int PERSON = 0;
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int FPS = 30;
+    private static final int SECONDS = 15;
+    // SDK の VideoDataListener が渡す大きさの目安
+    private static final int MAX_PACKET = 8 * 1024;
+
+    private final DetectionFixture fixture;
+    private final long inferenceNanos;
+    private final PacketRing ring = new PacketRing(256, 16 * 1024);
+    private final AnnexBParser parser = new AnnexBParser();
+    // デコーダの出力の代わり（中身は使わない）
+    private final ByteBuffer decoded = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 / 2);
+    private final YuvFramePool framePool = new YuvFramePool(3, WIDTH * HEIGHT * 3 / 2);
+    private final DetectorStats detectorStats = new DetectorStats();
+    private final FrameMailbox mailbox = new FrameMailbox(detectorStats);
+    private final ExecutorService detectExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "detect"));
+    private final SsdPostProcessor postProcessor = new SsdPostProcessor(100)
+            .scoreThreshold(0.5f)
+            .maxResults(5)
+            .allowClasses(PERSON);
+    private final DetectionResults results = new DetectionResults(5);
+    private final BoxTracker tracker = new BoxTracker(0.3f, 1_000_000_000L);
+    private final DetectionScheduler scheduler;
+    private final PipelineLatency pipelineLatency = new PipelineLatency();
+
+    // デコードのスレッドでのみ使う
+    private long frameId;
+    private long firstPictureNanos = -1;
+    private long pictures;
+    private long commands;
+    private final float[] angles = new float[2];
+    private final float[] stickCommand = new float[4];
+
+    private PipelineReplay(DetectionFixture fixture, long inferenceNanos) {
+        this.fixture = fixture;
+        this.inferenceNanos = inferenceNanos;
+        scheduler = new DetectionScheduler(System.nanoTime());
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean realTime = args.length < 1 || !args[0].equals("max");
+        long inferenceNanos = args.length > 1 ? Long.parseLong(args[1]) * 1_000_000L : 20_000_000L;
+        File file;
+        boolean temporary = args.length < 3 || args[2].isEmpty();
+        if (temporary) {
+            file = File.createTempFile("pipeline", ".djvr");
+            recordSynthetic(file);
+        } else {
+            file = new File(args[2]);
+        }
+        try (PacketRecording recording = PacketRecording.open(file)) {
+            System.out.println("recording " + recording + ", max packet " + recording.getMaxSize() + " B");
+            new PipelineReplay(DetectionFixture.load("ssd_person_walk.txt"), inferenceNanos)
+                    .run(recording, realTime);
+        } finally {
+            if (temporary && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    // 合成のストリームを受信の大きさに区切り、ビットレートどおりの受信時刻を付けて録る。読み戻して元と同じか確かめる
+    private static void recordSynthetic(File file) throws IOException {
+        byte[] stream = new SyntheticH264(WIDTH, HEIGHT, FPS, FPS, true, 1).generate(FPS * SECONDS, 20_000);
+        double nanosPerByte = (double) SECONDS * 1_000_000_000L / stream.length;
+        Random random = new Random(1);
+        long start = System.nanoTime();
+        try (PacketRecorder recorder = new PacketRecorder(file)) {
+            for (int offset = 0; offset < stream.length; ) {
+                int length = Math.min(stream.length - offset, 1 + random.nextInt(MAX_PACKET));
+                recorder.append(Arrays.copyOfRange(stream, offset, offset + length), length,
+                        (long) (offset * nanosPerByte));
+                offset += length;
+            }
+            System.out.println(String.format(Locale.US, "recorded %s in %.1f ms", recorder,
+                    (System.nanoTime() - start) / 1e6));
+        }
+        try (PacketRecording recording = PacketRecording.open(file)) {
+            ByteArrayOutputStream readBack = new ByteArrayOutputStream(stream.length);
+            byte[] packet = new byte[recording.getMaxSize()];
+            for (int i = 0; i < recording.getCount(); i++) {
+                readBack.write(packet, 0, recording.read(i, packet));
+            }
+            if (!recording.isComplete() || !Arrays.equals(readBack.toByteArray(), stream)) {
+                throw new IllegalStateException("Recording does not read back as written: " + recording);
+            }
+        }
+    }
+
+    private void run(PacketRecording recording, boolean realTime) throws InterruptedException {
+        ExecutorService decodeExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "decode"));
+        PacketRing.Reader reader = ring.openReader("decode", decodeExecutor, this::decode);
+        // 待たずに流すときは、読み手がリングの半分より遅れたら待つ（読み飛ばさせずにパイプラインの上限を測る）
+        int maxLag = ring.getSlotCount() / 2;
+        PacketReplay replay = new PacketReplay(recording, (data, size, receivedNanos) -> {
+            while (!realTime && reader.getLag() >= maxLag) {
+                LockSupport.parkNanos(50_000L);
+            }
+            ring.publish(data, size, receivedNanos);
+        }, realTime, 1);
+        replay.run();
+        // 流し終えたら、読み手と検出が残りを片付けるのを待つ
+        while (reader.getLag() > 0) {
+            Thread.sleep(1);
+        }
+        reader.close();
+        decodeExecutor.shutdown();
+        detectExecutor.shutdown();
+        detectExecutor.awaitTermination(10, TimeUnit.SECONDS);
+
+        double seconds = replay.getElapsedNanos() / 1e9;
+        System.out.println(String.format(Locale.US, "%s: %d pkts, %d pictures (%dx%d) in %.2f s = %.1f fps, %.0f MB/s",
+                replay, replay.getPublished(), pictures, parser.getWidth(), parser.getHeight(), seconds,
+                pictures / seconds, ring.getPublishedBytes() / 1e6 / seconds));
+        System.out.println(ring + ", decode " + reader);
+        System.out.println("detect " + detectorStats + ", scheduler " + scheduler + ", commands " + commands
+                + ", pool exhausted " + framePool.getExhaustedCount());
+        System.out.println(pipelineLatency.formatSummary());
+    }
+
+    // デコードのスレッド。ピクチャが揃ったらデコードが終わったことにして、操縦量を出し、必要なら検出に回す
+    private void decode(VideoPacket packet, boolean gap) {
+        if (gap) {
+            parser.reset();
+        }
+        int flags = parser.parse(packet.getData(), 0, packet.getSize(), packet.getReceivedNanos());
+        if ((flags & AnnexBParser.FOUND_PICTURE) == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        pictures++;
+        if (firstPictureNanos < 0) {
+            firstPictureNanos = now;
+        }
+        steer(now);
+        if (!scheduler.shouldDetect(now)) {
+            return;
+        }
+        YuvFrame frame = framePool.acquire(decoded.capacity());
+        if (frame == null) {
+            return;
+        }
+        FrameTimeline timeline = frame.getTimeline();
+        timeline.reset(frameId++);
+        timeline.mark(FrameTimeline.RECEIVE, packet.getReceivedNanos());
+        timeline.mark(FrameTimeline.DECODE, now);
+        // 映像の時刻は最初のピクチャからの経過で、検出列の時刻と合わせる
+        frame.copyFrom(decoded, decoded.capacity(), WIDTH, HEIGHT, YuvFrame.FORMAT_NV12, now - firstPictureNanos);
+        timeline.mark(FrameTimeline.CAPTURE);
+        if (mailbox.offer(frame)) {
+            detectExecutor.execute(this::detect);
+        }
+    }
+
+    // 検出のスレッド。推論の代わりに待ち、記録した SSD 出力を後処理してトラッカーに入れる
+    private void detect() {
+        YuvFrame frame;
+        while ((frame = mailbox.poll()) != null) {
+            FrameTimeline timeline = frame.getTimeline();
+            long start = timeline.get(FrameTimeline.CAPTURE);
+            timeline.mark(FrameTimeline.PREPROCESS);
+            long due = System.nanoTime() + inferenceNanos;
+            for (long now = System.nanoTime(); now < due; now = System.nanoTime()) {
+                LockSupport.parkNanos(due - now);
+            }
+            timeline.mark(FrameTimeline.INFERENCE);
+            DetectionFixture.Frame output = fixtureFrame(frame.getTimestampNanos());
+            results.setFrame(frame.getTimestampNanos(), fixture.imageWidth, fixture.imageHeight);
+            postProcessor.process(output.locations, output.classes, output.scores, output.count, results);
+            long now = System.nanoTime();
+            timeline.mark(FrameTimeline.POSTPROCESS, now);
+            scheduler.onInferenceTime(now - start);
+            synchronized (tracker) {
+                tracker.predict(frame.getTimestampNanos());
+                tracker.update(results.getBoxes(), results.getScores(), results.getCount(), frame.getTimestampNanos());
+                Track primary = tracker.getPrimaryTrack();
+                scheduler.onDetection(results.getCount(), primary, tracker.isMatched(primary), now);
+            }
+            detectorStats.onInferred();
+            pipelineLatency.onResultsApplied(timeline);
+            frame.release();
+        }
+    }
+
+    // 映像のフレームごとの操縦（アプリではメインスレッドの制御ループ）。送信と同時に完了したことにする
+    private void steer(long now) {
+        long videoNanos = now - firstPictureNanos;
+        Track track;
+        synchronized (tracker) {
+            tracker.predict(videoNanos);
+            track = tracker.getPrimaryTrack();
+            if (track == null) {
+                return;
+            }
+            float distance = TargetGeometry.distanceToBox(track.getWidth(), fixture.imageWidth);
+            TargetGeometry.angleToBox((track.getLeft() + track.getRight()) / 2,
+                    (track.getTop() + track.getBottom()) / 2, fixture.imageWidth, fixture.imageHeight, angles);
+            TargetGeometry.stickCommand(angles, distance, stickCommand);
+        }
+        pipelineLatency.onCommandSent(now);
+        pipelineLatency.onCommandCompleted(System.nanoTime());
+        commands++;
+    }
+
+    // 映像の時刻に対応する検出列のフレーム（記録より長く流すときは繰り返す）
+    private DetectionFixture.Frame fixtureFrame(long videoNanos) {
+        DetectionFixture.Frame[] frames = fixture.frames;
+        long t = frames[0].timestampNanos + videoNanos % fixture.getDurationNanos();
+        int i = 0;
+        while (i + 1 < frames.length && frames[i + 1].timestampNanos <= t) {
+            i++;
+        }
+        return frames[i];
+    }
+}
@@ -0,0 +1,44 @@
+package com.dji.sdk.sample.benchmark;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectionResults;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.SsdPostProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * 検出結果の絞り込みの段（スコア閾値、person への限定、NMS、上位 k 件）。
+ * 記録した SSD 出力を1フレームずつ順に処理する。
+ */
+@State(Scope.Thread)
+public class PostProcessBenchmark {
+    private static final int PERSON = 0;
+
+    private DetectionFixture fixture;
+    private SsdPostProcessor postProcessor;
+    private DetectionResults results;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        fixture = DetectionFixture.load("ssd_person_walk.txt");
+        postProcessor = new SsdPostProcessor(100)
+                .scoreThreshold(0.5f)
+                .maxResults(5)
+                .allowClasses(PERSON);
+        results = new DetectionResults(5);
+        results.setFrame(0, fixture.imageWidth, fixture.imageHeight);
+    }
+
+    @Benchmark
+    public int process() {
+        DetectionFixture.Frame frame = fixture.frames[next];
+        next = (next + 1) % fixture.frames.length;
+        postProcessor.process(frame.locations, frame.classes, frame.scores, frame.count, results);
+        return results.getCount();
+    }
+}
@@ -0,0 +1,125 @@
+package com.dji.sdk.sample.benchmark;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.BoxTracker;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectionScheduler;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.Track;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * {@link DetectionScheduler} をトラッカー越しに模擬の時計で動かし、検出の間隔の切り替えを確かめる
+ * （./gradlew :benchmark:schedulerReplay）。TrackingService と同じ順で、30fps のフレームごとに予測を進め、
+ * 検出に回したフレームの結果は推論の分だけ遅れて届き、{@link BoxTracker#update} の後に
+ * {@link BoxTracker#isMatched} と一緒にスケジューラへ渡す。
+ * ゆっくり歩く人では TRACK で間隔が推論時間より十分に空くこと、速く動く人では TRACK でも推論時間の近くに
+ * 留まること、いなくなったら SCAN の間隔に戻ることを確かめる。1つでも食い違えば例外で終わる。
+ */
+public final class SchedulerReplay {
+    private static final long MS = 1_000_000L;
+    private static final long FRAME_NANOS = 1_000_000_000L / 30;
+    private static final long INFERENCE_NANOS = 60 * MS;
+    private static final float BOX_WIDTH = 60;
+    private static final float BOX_HEIGHT = 160;
+    // DetectionScheduler の既定値（TRACK で最も空けるのは 400ms、SCAN は 1 秒ごと、3 秒見えなければ SCAN）
+    private static final long MAX_TRACK_INTERVAL_NANOS = 400 * MS;
+    private static final long SCAN_INTERVAL_NANOS = 1000 * MS;
+
+    // RELAXED: TRACK で間隔を空ける、FAST: TRACK でも最短に近い、SCAN_AFTER_LEAVING: いなくなったら SCAN
+    private enum TrackExpectation {
+        RELAXED, FAST, SCAN_AFTER_LEAVING
+    }
+
+    private static final class Result {
+        final long frameNanos;
+        final long deliverNanos;
+        final int count;
+        final float x;
+
+        Result(long frameNanos, long deliverNanos, int count, float x) {
+            this.frameNanos = frameNanos;
+            this.deliverNanos = deliverNanos;
+            this.count = count;
+            this.x = x;
+        }
+    }
+
+    private SchedulerReplay() {
+    }
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        ok &= run("slow walker", 20, 10_000 * MS, -1, TrackExpectation.RELAXED);
+        ok &= run("fast runner", 400, 3_000 * MS, -1, TrackExpectation.FAST);
+        ok &= run("person leaves", 20, 8_000 * MS, 3_000 * MS, TrackExpectation.SCAN_AFTER_LEAVING);
+        if (!ok) {
+            throw new IllegalStateException("Scheduler replay found mismatches");
+        }
+    }
+
+    /**
+     * @param speed    人の横方向の速さ [px/s]
+     * @param leavesAt この時刻から検出されなくなる（負ならずっと見える）
+     */
+    private static boolean run(String name, float speed, long durationNanos, long leavesAt,
+                               TrackExpectation expectation) {
+        BoxTracker tracker = new BoxTracker(0.3f, 1_000_000_000L);
+        DetectionScheduler scheduler = new DetectionScheduler(0);
+        float[] boxes = new float[4];
+        float[] scores = {0.8f};
+        ArrayDeque<Result> inFlight = new ArrayDeque<>();
+        int results = 0;
+        int trackResults = 0;
+        long trackIntervalSum = 0;
+        int personResults = 0;
+        for (long now = FRAME_NANOS; now <= durationNanos; now += FRAME_NANOS) {
+            // 届いた結果を先に反映する（アプリではメインスレッドに post される）
+            while (!inFlight.isEmpty() && inFlight.peek().deliverNanos <= now) {
+                Result result = inFlight.poll();
+                float x = result.x;
+                boxes[0] = x - BOX_WIDTH / 2;
+                boxes[1] = 360 - BOX_HEIGHT / 2;
+                boxes[2] = x + BOX_WIDTH / 2;
+                boxes[3] = 360 + BOX_HEIGHT / 2;
+                tracker.update(boxes, scores, result.count, result.frameNanos);
+                scheduler.onInferenceTime(INFERENCE_NANOS);
+                Track primary = tracker.getPrimaryTrack();
+                scheduler.onDetection(result.count, primary, tracker.isMatched(primary), now);
+                results++;
+                if (result.count > 0) {
+                    personResults++;
+                }
+                if (scheduler.getMode() == DetectionScheduler.MODE_TRACK) {
+                    trackResults++;
+                    trackIntervalSum += scheduler.getIntervalNanos();
+                }
+            }
+            tracker.predict(now);
+            if (scheduler.shouldDetect(now)) {
+                boolean visible = leavesAt < 0 || now < leavesAt;
+                inFlight.add(new Result(now, now + INFERENCE_NANOS, visible ? 1 : 0, 200 + speed * now / 1e9f));
+            }
+        }
+        long meanTrackInterval = trackResults > 0 ? trackIntervalSum / trackResults : 0;
+        boolean ok;
+        switch (expectation) {
+            case RELAXED:
+                // 最初の数回の検出で TRACK に入り、その後は間隔を推論時間の2倍より空ける
+                ok = trackResults >= results * 3 / 4 && meanTrackInterval >= 2 * INFERENCE_NANOS
+                        && meanTrackInterval <= MAX_TRACK_INTERVAL_NANOS;
+                break;
+            case FAST:
+                ok = trackResults >= results * 3 / 4 && meanTrackInterval <= INFERENCE_NANOS * 3 / 2;
+                break;
+            default:
+                ok = personResults > 0 && trackResults > 0
+                        && scheduler.getMode() == DetectionScheduler.MODE_SCAN
+                        && scheduler.getIntervalNanos() == SCAN_INTERVAL_NANOS;
+                break;
+        }
+        System.out.println(String.format(Locale.US,
+                "%-16s results %3d, TRACK %3d, mean TRACK interval %3d ms, final %-40s %s",
+                name, results, trackResults, meanTrackInterval / MS, scheduler, ok ? "ok" : "MISMATCH"));
+        return ok;
+    }
+}
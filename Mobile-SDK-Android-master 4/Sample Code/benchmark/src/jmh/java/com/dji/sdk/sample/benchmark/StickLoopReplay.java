@@ -0,0 +1,167 @@
+package com.dji.sdk.sample.benchmark;
+
+import com.dji.sdk.sample.demo.flightcontroller.control.StickSetpoints;
+
+import java.util.Locale;
+
+/**
+ * 仮想スティックの制御ループが送る値を、模擬の時計で {@link StickSetpoints} を周期ごとに読んで確かめる
+ * （./gradlew :benchmark:stickLoopReplay）。VirtualStickLoop と同じ 25Hz・保持 500ms・ランプ 500ms で、
+ * 軸ごとの書き込みが他の軸を変えないこと、更新が止まった軸が保持時間の後に直線的に 0 へ戻ること、
+ * {@link StickSetpoints#HOLD_UNTIL_CHANGED} の軸は時間で戻らないこと、
+ * 止めるとき（clear の後の最後の送信）は全軸が 0 になることを確かめる。1つでも食い違えば例外で終わる。
+ */
+public final class StickLoopReplay {
+    private static final long MS = 1_000_000L;
+    private static final long PERIOD_NANOS = 1_000_000_000L / 25;
+    private static final long HOLD_NANOS = 500 * MS;
+    private static final long RAMP_NANOS = 500 * MS;
+    private static final float EPSILON = 1e-4f;
+
+    private static boolean ok = true;
+
+    private StickLoopReplay() {
+    }
+
+    public static void main(String[] args) {
+        checkMaskedMerge();
+        checkTimeoutRamp();
+        checkHoldUntilChanged();
+        checkLoopWithProducers();
+        checkStop();
+        if (!ok) {
+            throw new IllegalStateException("Stick loop replay found mismatches");
+        }
+    }
+
+    // 軸を指定した書き込みは、指定していない軸の値も保持時間も変えない
+    private static void checkMaskedMerge() {
+        StickSetpoints setpoints = new StickSetpoints(RAMP_NANOS);
+        float[] command = new float[4];
+        setpoints.set(StickSetpoints.AXES_PITCH_ROLL, 3, -2, 99, 99, 0, HOLD_NANOS);
+        setpoints.set(StickSetpoints.AXIS_YAW, 99, 99, 15, 99, 0, HOLD_NANOS);
+        setpoints.set(StickSetpoints.AXIS_THROTTLE, 99, 99, 99, 1, 0, StickSetpoints.HOLD_UNTIL_CHANGED);
+        setpoints.sample(0, command);
+        expect("merge: each axis keeps its own writer", command, 3, -2, 15, 1);
+        // ヨーだけ書き直しても、ピッチ・ロールの保持時間は延びない
+        setpoints.set(StickSetpoints.AXIS_YAW, 0, 0, 20, 0, 400 * MS, HOLD_NANOS);
+        setpoints.sample(HOLD_NANOS + RAMP_NANOS, command);
+        // ヨーは 400ms に書き直したので、まだランプの 1/5 のところ
+        expect("merge: yaw refresh does not refresh pitch/roll", command, 0, 0, 20 * 0.8f, 1);
+    }
+
+    // 保持時間の間は値のまま、その後ランプ時間をかけて単調に 0 まで下がり、以降は 0
+    private static void checkTimeoutRamp() {
+        StickSetpoints setpoints = new StickSetpoints(RAMP_NANOS);
+        float[] command = new float[4];
+        setpoints.set(StickSetpoints.AXES_ALL, 10, -10, 30, 2, 0, HOLD_NANOS);
+        setpoints.sample(HOLD_NANOS, command);
+        expect("ramp: held until the timeout", command, 10, -10, 30, 2);
+        setpoints.sample(HOLD_NANOS + RAMP_NANOS / 4, command);
+        expect("ramp: 1/4 of the way down", command, 7.5f, -7.5f, 22.5f, 1.5f);
+        float previous = 10;
+        boolean monotonic = true;
+        for (long t = HOLD_NANOS; t <= HOLD_NANOS + RAMP_NANOS; t += PERIOD_NANOS) {
+            setpoints.sample(t, command);
+            monotonic &= command[StickSetpoints.PITCH] <= previous + EPSILON && command[StickSetpoints.PITCH] >= 0;
+            previous = command[StickSetpoints.PITCH];
+        }
+        report("ramp: monotonic towards zero", monotonic, String.format(Locale.US, "last %.3f", previous));
+        setpoints.sample(HOLD_NANOS + RAMP_NANOS, command);
+        expect("ramp: zero at the end of the ramp", command, 0, 0, 0, 0);
+        setpoints.sample(60_000 * MS, command);
+        expect("ramp: stays zero", command, 0, 0, 0, 0);
+    }
+
+    // 次に書き込まれるまで値を保つ。時間付きで書き直せば、そこからは時間で戻る
+    private static void checkHoldUntilChanged() {
+        StickSetpoints setpoints = new StickSetpoints(RAMP_NANOS);
+        float[] command = new float[4];
+        setpoints.set(StickSetpoints.AXES_YAW_THROTTLE, 0, 0, 12, -1, 0, StickSetpoints.HOLD_UNTIL_CHANGED);
+        setpoints.sample(3_600_000 * MS, command);
+        expect("hold until changed: kept after an hour", command, 0, 0, 12, -1);
+        setpoints.set(StickSetpoints.AXES_YAW_THROTTLE, 0, 0, 12, -1, 1000 * MS, HOLD_NANOS);
+        setpoints.sample(1000 * MS + HOLD_NANOS + RAMP_NANOS, command);
+        expect("hold until changed: timed rewrite ramps out", command, 0, 0, 0, 0);
+    }
+
+    // 25Hz で送るループに、10Hz の追跡（全軸）と 2 秒保持の前進（ピッチ）を重ねる。
+    // TrackingService と同じく、前進を保持している間は追跡がピッチを書かない
+    private static void checkLoopWithProducers() {
+        StickSetpoints setpoints = new StickSetpoints(RAMP_NANOS);
+        float[] command = new float[4];
+        long trackingStopsAt = 1000 * MS;
+        long forwardAt = 200 * MS;
+        long forwardHold = 2000 * MS;
+        int manualAxes = 0;
+        long manualUntil = 0;
+        boolean pitchOk = true;
+        boolean yawOk = true;
+        long yawZeroAt = -1;
+        for (long now = 0; now <= 4000 * MS; now += PERIOD_NANOS) {
+            if (now == forwardAt) {
+                manualAxes = StickSetpoints.AXIS_PITCH;
+                manualUntil = now + forwardHold;
+                setpoints.set(StickSetpoints.AXIS_PITCH, 4, 0, 0, 0, now, forwardHold);
+            }
+            if (now < trackingStopsAt && now % (100 * MS) < PERIOD_NANOS) {
+                int axes = StickSetpoints.AXES_ALL & (now < manualUntil ? ~manualAxes : ~0);
+                setpoints.set(axes, -1, 0, 8, 0.5f, now, HOLD_NANOS);
+            }
+            setpoints.sample(now, command);
+            float expectedPitch = now < forwardAt ? -1 : rampScale(now - forwardAt, forwardHold) * 4;
+            pitchOk &= Math.abs(command[StickSetpoints.PITCH] - expectedPitch) < EPSILON;
+            if (now < trackingStopsAt) {
+                yawOk &= Math.abs(command[StickSetpoints.YAW] - 8) < EPSILON;
+            } else if (yawZeroAt < 0 && command[StickSetpoints.YAW] == 0) {
+                yawZeroAt = now;
+            }
+        }
+        report("loop: tracking keeps off the forward pitch", pitchOk, "");
+        // 最後の更新は 1000ms の手前の 10Hz の書き込み。そこから保持とランプの後に 0
+        long lastWrite = 960 * MS;
+        boolean zeroInTime = yawZeroAt >= lastWrite + HOLD_NANOS + RAMP_NANOS - PERIOD_NANOS
+                && yawZeroAt <= lastWrite + HOLD_NANOS + RAMP_NANOS + PERIOD_NANOS;
+        report("loop: lost tracking times out to zero", yawOk && zeroInTime,
+                String.format(Locale.US, "yaw zero at %d ms", yawZeroAt / MS));
+    }
+
+    // 止めるときは clear してから最後の1回を送る。保持中・ランプ中・保持し続ける軸のどれも 0 になる
+    private static void checkStop() {
+        StickSetpoints setpoints = new StickSetpoints(RAMP_NANOS);
+        float[] command = new float[4];
+        setpoints.set(StickSetpoints.AXIS_PITCH, 5, 0, 0, 0, 0, HOLD_NANOS);
+        setpoints.set(StickSetpoints.AXIS_ROLL, 0, -5, 0, 0, 0, StickSetpoints.HOLD_UNTIL_CHANGED);
+        setpoints.set(StickSetpoints.AXES_YAW_THROTTLE, 0, 0, 20, 1, -HOLD_NANOS - RAMP_NANOS / 2, HOLD_NANOS);
+        setpoints.sample(0, command);
+        expect("stop: before stop", command, 5, -5, 10, 0.5f);
+        setpoints.clear();
+        setpoints.sample(PERIOD_NANOS, command);
+        expect("stop: final command is zero", command, 0, 0, 0, 0);
+        setpoints.sample(3_600_000 * MS, command);
+        expect("stop: stays zero after stop", command, 0, 0, 0, 0);
+    }
+
+    private static float rampScale(long sinceWrite, long hold) {
+        long overdue = sinceWrite - hold;
+        if (overdue <= 0) {
+            return 1;
+        }
+        return overdue >= RAMP_NANOS ? 0 : 1 - overdue / (float) RAMP_NANOS;
+    }
+
+    private static void expect(String name, float[] command, float pitch, float roll, float yaw, float throttle) {
+        float[] expected = {pitch, roll, yaw, throttle};
+        boolean match = true;
+        for (int axis = 0; axis < expected.length; axis++) {
+            match &= Math.abs(command[axis] - expected[axis]) < EPSILON;
+        }
+        report(name, match, String.format(Locale.US, "pitch %.2f roll %.2f yaw %.2f throttle %.2f",
+                command[0], command[1], command[2], command[3]));
+    }
+
+    private static void report(String name, boolean match, String detail) {
+        ok &= match;
+        System.out.println(String.format(Locale.US, "%-48s %-50s %s", name, detail, match ? "ok" : "MISMATCH"));
+    }
+}
@@ -0,0 +1,168 @@
+package com.dji.sdk.sample.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * {@link com.dji.sdk.sample.internal.video.AnnexBParser} を確かめるための合成の H.264（Annex-B）。
+ * SPS・PPS とスライスのヘッダの先頭だけが正しく、スライスの中身は乱数（デコードはできない）。
+ * GOP ごとに AUD・SPS・PPS・IDR を並べ、続けて P スライスを並べる。
+ */
+final class SyntheticH264 {
+    private final int width;
+    private final int height;
+    private final int fps;
+    private final int gopLength;
+    private final boolean vui;
+    private final Random random;
+
+    /**
+     * @param vui SPS にフレームレート（timing_info）を入れるなら true
+     */
+    SyntheticH264(int width, int height, int fps, int gopLength, boolean vui, long seed) {
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.gopLength = gopLength;
+        this.vui = vui;
+        random = new Random(seed);
+    }
+
+    /** frames フレーム分のストリーム。 */
+    byte[] generate(int frames, int sliceBytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < frames; i++) {
+            boolean key = i % gopLength == 0;
+            writeNal(out, 0x09, new byte[]{(byte) (key ? 0x10 : 0x30)});
+            if (key) {
+                writeNal(out, 0x67, sps());
+                writeNal(out, 0x68, new byte[]{(byte) 0xCE, 0x38, (byte) 0x80});
+            }
+            writeNal(out, key ? 0x65 : 0x41, slice(key ? sliceBytes * 4 : sliceBytes));
+        }
+        return out.toByteArray();
+    }
+
+    // High プロファイル、4:2:0、フレームのみ。高さが16の倍数でなければ下をクロップする
+    private byte[] sps() {
+        BitWriter bits = new BitWriter();
+        bits.write(100, 8); // profile_idc
+        bits.write(0, 8); // constraint_set フラグ
+        bits.write(40, 8); // level_idc
+        bits.writeUe(0); // seq_parameter_set_id
+        bits.writeUe(1); // chroma_format_idc
+        bits.writeUe(0); // bit_depth_luma_minus8
+        bits.writeUe(0); // bit_depth_chroma_minus8
+        bits.write(0, 1); // qpprime_y_zero_transform_bypass_flag
+        bits.write(0, 1); // seq_scaling_matrix_present_flag
+        bits.writeUe(0); // log2_max_frame_num_minus4
+        bits.writeUe(0); // pic_order_cnt_type
+        bits.writeUe(2); // log2_max_pic_order_cnt_lsb_minus4
+        bits.writeUe(1); // max_num_ref_frames
+        bits.write(0, 1); // gaps_in_frame_num_value_allowed_flag
+        int widthInMbs = (width + 15) / 16;
+        int heightInMbs = (height + 15) / 16;
+        bits.writeUe(widthInMbs - 1);
+        bits.writeUe(heightInMbs - 1);
+        bits.write(1, 1); // frame_mbs_only_flag
+        bits.write(1, 1); // direct_8x8_inference_flag
+        int cropRight = (widthInMbs * 16 - width) / 2;
+        int cropBottom = (heightInMbs * 16 - height) / 2;
+        boolean crop = cropRight != 0 || cropBottom != 0;
+        bits.write(crop ? 1 : 0, 1);
+        if (crop) {
+            bits.writeUe(0);
+            bits.writeUe(cropRight);
+            bits.writeUe(0);
+            bits.writeUe(cropBottom);
+        }
+        bits.write(vui ? 1 : 0, 1);
+        if (vui) {
+            bits.write(1, 1); // aspect_ratio_info_present_flag
+            bits.write(1, 8); // aspect_ratio_idc（1:1）
+            bits.write(0, 1); // overscan_info_present_flag
+            bits.write(1, 1); // video_signal_type_present_flag
+            bits.write(5, 3); // video_format
+            bits.write(0, 1); // video_full_range_flag
+            bits.write(1, 1); // colour_description_present_flag
+            bits.write(0x010101, 24);
+            bits.write(0, 1); // chroma_loc_info_present_flag
+            bits.write(1, 1); // timing_info_present_flag
+            bits.write(1001, 32); // num_units_in_tick
+            bits.write(fps * 2 * 1001, 32); // time_scale
+            bits.write(1, 1); // fixed_frame_rate_flag
+            bits.write(0, 4); // nal_hrd・vcl_hrd・pic_struct・bitstream_restriction のフラグ
+        }
+        bits.write(1, 1); // rbsp_stop_one_bit
+        return bits.toEscapedBytes();
+    }
+
+    private byte[] slice(int size) {
+        byte[] payload = new byte[size];
+        random.nextBytes(payload);
+        // first_mb_in_slice = 0 の ue(v) は '1'
+        payload[0] |= (byte) 0x80;
+        // 最後の 0x00 は NAL の終わりと区別できないので避ける
+        if (payload[size - 1] == 0) {
+            payload[size - 1] = 1;
+        }
+        return escape(payload, size);
+    }
+
+    private static void writeNal(ByteArrayOutputStream out, int header, byte[] payload) {
+        out.write(0);
+        out.write(0);
+        out.write(0);
+        out.write(1);
+        out.write(header);
+        out.write(payload, 0, payload.length);
+    }
+
+    // 00 00 0x（x <= 3）の並びにエミュレーション防止バイトを入れる
+    private static byte[] escape(byte[] rbsp, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + length / 64);
+        int zeros = 0;
+        for (int i = 0; i < length; i++) {
+            int b = rbsp[i] & 0xFF;
+            if (zeros >= 2 && b <= 3) {
+                out.write(3);
+                zeros = 0;
+            }
+            out.write(b);
+            zeros = b == 0 ? zeros + 1 : 0;
+        }
+        return out.toByteArray();
+    }
+
+    private static final class BitWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int current;
+        private int count;
+
+        void write(long value, int bits) {
+            for (int i = bits - 1; i >= 0; i--) {
+                current = (current << 1) | (int) ((value >> i) & 1);
+                if (++count == 8) {
+                    out.write(current);
+                    current = 0;
+                    count = 0;
+                }
+            }
+        }
+
+        void writeUe(int value) {
+            int code = value + 1;
+            int length = 32 - Integer.numberOfLeadingZeros(code);
+            write(0, length - 1);
+            write(code, length);
+        }
+
+        byte[] toEscapedBytes() {
+            if (count > 0) {
+                write(0, 8 - count);
+            }
+            byte[] bytes = out.toByteArray();
+            return escape(bytes, bytes.length);
+        }
+    }
+}
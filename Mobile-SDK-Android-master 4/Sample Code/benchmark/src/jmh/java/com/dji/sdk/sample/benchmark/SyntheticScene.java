@@ -0,0 +1,63 @@
+package com.dji.sdk.sample.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * 動き判定の評価用に、Yプレーンだけの合成映像を作る。
+ * 背景は滑らかな模様で、毎フレームにセンサー雑音（±noise）を足す。
+ * カメラのずれ（パン）、全体の明るさ、人ほどの大きさの矩形の位置をフレームごとに変えられる。
+ */
+final class SyntheticScene {
+    final int width;
+    final int height;
+    private final byte[] background;
+    private final int backgroundWidth;
+    private final int margin;
+    private final byte[] row;
+    private final Random random = new Random(7);
+
+    SyntheticScene(int width, int height, int margin) {
+        this.width = width;
+        this.height = height;
+        this.margin = margin;
+        backgroundWidth = width + 2 * margin;
+        int backgroundHeight = height + 2 * margin;
+        background = new byte[backgroundWidth * backgroundHeight];
+        for (int y = 0; y < backgroundHeight; y++) {
+            for (int x = 0; x < backgroundWidth; x++) {
+                double value = 128 + 50 * Math.sin(x / 37.0) * Math.cos(y / 23.0) + 30 * Math.sin((x + y) / 91.0);
+                background[y * backgroundWidth + x] = (byte) value;
+            }
+        }
+        row = new byte[width];
+    }
+
+    /**
+     * 1フレームを書き込む。
+     *
+     * @param panX       カメラのずれ（px、|panX| は margin 以下）
+     * @param brightness 全体の明るさの加算量
+     * @param boxX       矩形の左端（負なら矩形なし）
+     */
+    void render(ByteBuffer out, int panX, int panY, int brightness, int boxX, int boxY, int boxWidth,
+                int boxHeight, int noise) {
+        out.clear();
+        for (int y = 0; y < height; y++) {
+            int source = (y + margin + panY) * backgroundWidth + margin + panX;
+            boolean boxRow = boxX >= 0 && y >= boxY && y < boxY + boxHeight;
+            for (int x = 0; x < width; x++) {
+                int value = (background[source + x] & 0xff) + brightness;
+                if (boxRow && x >= boxX && x < boxX + boxWidth) {
+                    value = 40;
+                }
+                if (noise > 0) {
+                    value += random.nextInt(2 * noise + 1) - noise;
+                }
+                row[x] = (byte) Math.max(0, Math.min(255, value));
+            }
+            out.put(row);
+        }
+        out.flip();
+    }
+}
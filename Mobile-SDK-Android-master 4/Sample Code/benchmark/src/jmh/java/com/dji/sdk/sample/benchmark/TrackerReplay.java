@@ -0,0 +1,238 @@
+package com.dji.sdk.sample.benchmark;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.BoxTracker;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.Track;
+
+import java.util.Locale;
+
+/**
+ * 合成の検出の並びで {@link BoxTracker} の振る舞いを確かめる（./gradlew :benchmark:trackerReplay）。
+ * 30fps で毎フレーム予測し、10Hz で検出を渡す（TrackingService と同じ IoU の閾値と見失うまでの時間）。
+ * すれ違う2人・前を横切る人に隠される人で追跡IDが入れ替わらないこと、検出が途切れても
+ * トラックが残って等速で進むこと、見えなくなったトラックが消えて次は別のIDになることを確かめる。
+ * TrackingService と同じく毎フレーム予測を進めたまま、推論の分だけ遅れて検出を渡す場合も、
+ * 各検出が {@link BoxTracker#isMatched} で対応付いたと分かり、元フレームの時刻が
+ * {@link Track#getLastMeasurementNanos} に残ることを確かめる。
+ * 1つでも食い違えば例外で終わる。
+ */
+public final class TrackerReplay {
+    private static final int FPS = 30;
+    private static final int DETECT_EVERY = 3;
+    private static final long FRAME_NANOS = 1_000_000_000L / FPS;
+    private static final float IOU_THRESHOLD = 0.3f;
+    private static final long MAX_MISS_NANOS = 1_000_000_000L;
+    private static final float BOX_WIDTH = 60;
+    private static final float BOX_HEIGHT = 160;
+    // 検出が途切れている間の予測の誤差の許容 [px]
+    private static final float PREDICTION_TOLERANCE = 15;
+    // 推論にかかるフレーム数（検出の元フレームから、結果を渡すまで）
+    private static final int INFERENCE_LAG_FRAMES = 2;
+
+    /** 合成の人。x・y は中心、速さは px/s。hiddenFrom から hiddenUntil の前までのフレームでは検出しない。 */
+    private static final class Person {
+        final float startX;
+        final float startY;
+        final float speedX;
+        final float score;
+        int hiddenFrom = Integer.MAX_VALUE;
+        int hiddenUntil = Integer.MIN_VALUE;
+        int id = -1;
+
+        Person(float startX, float startY, float speedX, float score) {
+            this.startX = startX;
+            this.startY = startY;
+            this.speedX = speedX;
+            this.score = score;
+        }
+
+        float x(int frame) {
+            return startX + speedX * frame / FPS;
+        }
+
+        boolean detected(int frame) {
+            return frame < hiddenFrom || frame >= hiddenUntil;
+        }
+    }
+
+    private TrackerReplay() {
+    }
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        // 少し上下にずれた2人が 150px/s ですれ違う
+        ok &= run("crossing", 120, new Person[]{
+                new Person(300, 360, 150, 0.9f), new Person(980, 390, -150, 0.8f)}, -1);
+        // 奥の人が止まっている人の後ろを通り、重なっている 0.5 秒は見えなくなる
+        Person walker = new Person(400, 360, 120, 0.7f);
+        walker.hiddenFrom = 22;
+        walker.hiddenUntil = 37;
+        ok &= run("occluded by standing person", 120, new Person[]{
+                walker, new Person(520, 370, 0, 0.9f)}, -1);
+        // 検出器が 0.6 秒続けて見落とす。予測が等速で進むことも確かめる
+        Person missed = new Person(200, 360, 200, 0.8f);
+        missed.hiddenFrom = 30;
+        missed.hiddenUntil = 48;
+        ok &= run("missed detections", 90, new Person[]{missed}, -1);
+        // 1.5秒いなくなってから戻る。見失うまでの時間を過ぎたら消え、戻ったら別のIDになる
+        Person leaving = new Person(600, 360, 0, 0.8f);
+        leaving.hiddenFrom = 30;
+        leaving.hiddenUntil = 75;
+        ok &= run("stale track dropped", 120, new Person[]{leaving}, 30);
+        // 毎フレームの予測に、推論で遅れた検出を混ぜる
+        ok &= runLagged("lagged detections", 120, new Person[]{
+                new Person(300, 360, 150, 0.9f), new Person(980, 390, -150, 0.8f)});
+        if (!ok) {
+            throw new IllegalStateException("Tracker replay found mismatches");
+        }
+    }
+
+    /**
+     * @param lostFrom この番号のフレームから見えなくなる人がいれば、そのフレーム。見失った後に戻ったら新しいIDを期待する
+     */
+    private static boolean run(String name, int frames, Person[] people, int lostFrom) {
+        BoxTracker tracker = new BoxTracker(IOU_THRESHOLD, MAX_MISS_NANOS);
+        float[] boxes = new float[people.length * 4];
+        float[] scores = new float[people.length];
+        int[] indices = new int[people.length];
+        int idChanges = 0;
+        int lostTracks = 0;
+        float maxPredictionError = 0;
+        int droppedAt = -1;
+        for (int frame = 0; frame < frames; frame++) {
+            long now = frame * FRAME_NANOS;
+            tracker.predict(now);
+            // 検出が途切れている間も、対応するトラックが残って真の位置の近くにあること
+            for (Person person : people) {
+                if (person.id < 0 || person.detected(frame)) {
+                    continue;
+                }
+                Track track = find(tracker, person.id);
+                if (track == null) {
+                    if (droppedAt < 0 && lostFrom >= 0) {
+                        droppedAt = frame;
+                    }
+                    if (lostFrom < 0) {
+                        lostTracks++;
+                    }
+                } else if (lostFrom < 0) {
+                    maxPredictionError = Math.max(maxPredictionError, Math.abs(track.getCenterX() - person.x(frame)));
+                }
+            }
+            if (frame % DETECT_EVERY != 0) {
+                continue;
+            }
+            int count = 0;
+            for (int i = 0; i < people.length; i++) {
+                Person person = people[i];
+                if (!person.detected(frame)) {
+                    continue;
+                }
+                float x = person.x(frame);
+                boxes[count * 4] = x - BOX_WIDTH / 2;
+                boxes[count * 4 + 1] = person.startY - BOX_HEIGHT / 2;
+                boxes[count * 4 + 2] = x + BOX_WIDTH / 2;
+                boxes[count * 4 + 3] = person.startY + BOX_HEIGHT / 2;
+                scores[count] = person.score;
+                indices[count] = i;
+                count++;
+            }
+            tracker.update(boxes, scores, count, now);
+            for (int d = 0; d < count; d++) {
+                Person person = people[indices[d]];
+                Track track = tracker.getTrackForDetection(d);
+                int id = track != null ? track.getId() : -1;
+                if (person.id >= 0 && id != person.id) {
+                    idChanges++;
+                }
+                person.id = id;
+            }
+        }
+
+        boolean ok;
+        String detail;
+        if (lostFrom >= 0) {
+            // 見えなくなってから見失うまでの時間の後、次のフレームで消えていること。戻った人は別のIDを1回だけ受け取る
+            long lostAfterNanos = droppedAt < 0 ? -1 : (droppedAt - lostFrom) * FRAME_NANOS;
+            ok = droppedAt >= 0 && lostAfterNanos > MAX_MISS_NANOS - FRAME_NANOS * DETECT_EVERY
+                    && lostAfterNanos <= MAX_MISS_NANOS + FRAME_NANOS * DETECT_EVERY && idChanges == 1
+                    && tracker.getTracks().size() == 1;
+            detail = String.format(Locale.US, "dropped after %.2f s, id changes %d, tracks %d",
+                    lostAfterNanos / 1e9, idChanges, tracker.getTracks().size());
+        } else {
+            ok = idChanges == 0 && lostTracks == 0 && maxPredictionError <= PREDICTION_TOLERANCE
+                    && tracker.getTracks().size() == people.length;
+            detail = String.format(Locale.US, "id changes %d, lost %d, max prediction error %.1f px, tracks %d",
+                    idChanges, lostTracks, maxPredictionError, tracker.getTracks().size());
+        }
+        System.out.println(String.format(Locale.US, "%-28s %s  %s", name, detail, ok ? "ok" : "MISMATCH"));
+        return ok;
+    }
+
+    /**
+     * 毎フレーム予測し、元フレームから {@link #INFERENCE_LAG_FRAMES} 遅れて検出を渡す。予測はもう先に進んでいるので、
+     * 補正したトラックの推定時刻は検出の元フレームの時刻と一致しない。対応付けの結果と観測の時刻で確かめる。
+     */
+    private static boolean runLagged(String name, int frames, Person[] people) {
+        BoxTracker tracker = new BoxTracker(IOU_THRESHOLD, MAX_MISS_NANOS);
+        float[] boxes = new float[people.length * 4];
+        float[] scores = new float[people.length];
+        int idChanges = 0;
+        int delivered = 0;
+        int matched = 0;
+        int measured = 0;
+        int sameEstimateTime = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            tracker.predict(frame * FRAME_NANOS);
+            int source = frame - INFERENCE_LAG_FRAMES;
+            if (source < 0 || source % DETECT_EVERY != 0) {
+                continue;
+            }
+            long sourceNanos = source * FRAME_NANOS;
+            for (int i = 0; i < people.length; i++) {
+                float x = people[i].x(source);
+                boxes[i * 4] = x - BOX_WIDTH / 2;
+                boxes[i * 4 + 1] = people[i].startY - BOX_HEIGHT / 2;
+                boxes[i * 4 + 2] = x + BOX_WIDTH / 2;
+                boxes[i * 4 + 3] = people[i].startY + BOX_HEIGHT / 2;
+                scores[i] = people[i].score;
+            }
+            tracker.update(boxes, scores, people.length, sourceNanos);
+            for (int d = 0; d < people.length; d++) {
+                Person person = people[d];
+                Track track = tracker.getTrackForDetection(d);
+                int id = track != null ? track.getId() : -1;
+                if (person.id >= 0 && id != person.id) {
+                    idChanges++;
+                }
+                person.id = id;
+                delivered++;
+                if (tracker.isMatched(track)) {
+                    matched++;
+                }
+                if (track != null && track.getLastMeasurementNanos() == sourceNanos) {
+                    measured++;
+                }
+                if (track != null && track.getLastUpdateNanos() == sourceNanos) {
+                    sameEstimateTime++;
+                }
+            }
+        }
+        boolean ok = idChanges == 0 && delivered > 0 && matched == delivered && measured == delivered
+                && tracker.getTracks().size() == people.length;
+        // 推定時刻が検出の元フレームと一致するのは最初の検出だけ（時刻の比較では対応付けを判定できない）
+        String detail = String.format(Locale.US,
+                "id changes %d, matched %d/%d, measured %d/%d (estimate time equal %d), tracks %d",
+                idChanges, matched, delivered, measured, delivered, sameEstimateTime, tracker.getTracks().size());
+        System.out.println(String.format(Locale.US, "%-28s %s  %s", name, detail, ok ? "ok" : "MISMATCH"));
+        return ok;
+    }
+
+    private static Track find(BoxTracker tracker, int id) {
+        for (Track track : tracker.getTracks()) {
+            if (track.getId() == id) {
+                return track;
+            }
+        }
+        return null;
+    }
+}
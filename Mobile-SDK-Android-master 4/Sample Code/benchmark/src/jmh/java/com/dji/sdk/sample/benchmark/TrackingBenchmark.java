@@ -0,0 +1,108 @@
+package com.dji.sdk.sample.benchmark;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.BoxTracker;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.DetectionResults;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.SsdPostProcessor;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.TargetGeometry;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.Track;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+
+/**
+ * VirtualStickView が検出結果と映像フレームごとに行う処理。
+ * <ul>
+ *     <li>detectionFrame: 後処理 → トラッカーの更新（検出が届くたび）</li>
+ *     <li>videoFrame: トラッカーの予測 → 距離・角度・移動量・操縦量の計算（映像フレームごと）。
+ *     実機と同じく、記録の時刻に達した検出結果はその都度トラッカーに入れる（約3フレームに1回）</li>
+ *     <li>geometry: 距離・角度・移動量・操縦量の計算だけ</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+public class TrackingBenchmark {
+    private static final int PERSON = 0;
+    private static final long VIDEO_FRAME_NANOS = 33_333_333L;
+
+    private DetectionFixture fixture;
+    private SsdPostProcessor postProcessor;
+    private DetectionResults results;
+    private BoxTracker tracker;
+    private int next;
+    private long lapOffsetNanos;
+    private long videoClockNanos;
+
+    private final float[] angles = new float[2];
+    private final float[] movements = new float[2];
+    private final float[] stickCommand = new float[4];
+
+    @Setup
+    public void setUp() throws IOException {
+        fixture = DetectionFixture.load("ssd_person_walk.txt");
+        postProcessor = new SsdPostProcessor(100)
+                .scoreThreshold(0.5f)
+                .maxResults(5)
+                .allowClasses(PERSON);
+        results = new DetectionResults(5);
+        tracker = new BoxTracker(0.3f, 1_000_000_000L);
+        // videoFrame で予測するトラックを用意しておく
+        for (int i = 0; i < 10; i++) {
+            detectionFrame();
+        }
+        videoClockNanos = fixture.frames[next].timestampNanos;
+    }
+
+    @Benchmark
+    public int detectionFrame() {
+        DetectionFixture.Frame frame = fixture.frames[next];
+        long timestampNanos = frame.timestampNanos + lapOffsetNanos;
+        next++;
+        if (next == fixture.frames.length) {
+            // 繰り返し再生しても時刻が戻らないようにずらす
+            next = 0;
+            lapOffsetNanos += fixture.getDurationNanos();
+        }
+        results.setFrame(timestampNanos, fixture.imageWidth, fixture.imageHeight);
+        postProcessor.process(frame.locations, frame.classes, frame.scores, frame.count, results);
+        // 実機では映像フレームごとの predict で見失ったトラックが消えるので、ここでも進めておく
+        tracker.predict(timestampNanos);
+        tracker.update(results.getBoxes(), results.getScores(), results.getCount(), timestampNanos);
+        return results.getCount();
+    }
+
+    @Benchmark
+    public void videoFrame(Blackhole blackhole) {
+        videoClockNanos += VIDEO_FRAME_NANOS;
+        if (fixture.frames[next].timestampNanos + lapOffsetNanos <= videoClockNanos) {
+            detectionFrame();
+        }
+        tracker.predict(videoClockNanos);
+        Track track = tracker.getPrimaryTrack();
+        if (track == null) {
+            return;
+        }
+        steer(track.getLeft(), track.getTop(), track.getRight(), track.getBottom(), blackhole);
+    }
+
+    @Benchmark
+    public void geometry(Blackhole blackhole) {
+        steer(800, 300, 980, 760, blackhole);
+    }
+
+    private void steer(float left, float top, float right, float bottom, Blackhole blackhole) {
+        int width = fixture.imageWidth;
+        int height = fixture.imageHeight;
+        float distance = TargetGeometry.distanceToBox(right - left, width);
+        TargetGeometry.angleToBox((left + right) / 2, (top + bottom) / 2, width, height, angles);
+        TargetGeometry.movement(angles, distance, movements);
+        TargetGeometry.stickCommand(angles, distance, stickCommand);
+        blackhole.consume(TargetGeometry.horizontalDirection(angles, distance));
+        blackhole.consume(TargetGeometry.verticalDirection(angles, distance));
+        blackhole.consume(movements);
+        blackhole.consume(stickCommand);
+    }
+}
@@ -0,0 +1,72 @@
+package com.dji.sdk.sample.benchmark;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvFrame;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvFramePool;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvToTensor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 色変換・縮小・正規化の段（YUV フレーム → 300x300 のモデル入力）。
+ * 1080p と 4K、uint8 と float32、単一スレッドと ForkJoin の組み合わせで計測する。
+ */
+@State(Scope.Thread)
+public class YuvToTensorBenchmark {
+    private static final int INPUT_SIZE = 300;
+
+    @Param({"1920x1080", "3840x2160"})
+    public String source;
+
+    @Param({"NV12", "I420"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean floatOutput;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private YuvFrame frame;
+    private YuvToTensor converter;
+    private ByteBuffer output;
+
+    @Setup
+    public void setUp() {
+        String[] size = source.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+        int frameSize = width * height * 3 / 2;
+
+        // 中身は色変換の速さに影響しないので乱数で埋める
+        ByteBuffer data = ByteBuffer.allocateDirect(frameSize);
+        Random random = new Random(42);
+        byte[] row = new byte[width];
+        while (data.hasRemaining()) {
+            random.nextBytes(row);
+            data.put(row, 0, Math.min(row.length, data.remaining()));
+        }
+        data.flip();
+        frame = new YuvFramePool(1, frameSize).acquire(frameSize);
+        int colorFormat = format.equals("I420") ? YuvFrame.FORMAT_I420 : YuvFrame.FORMAT_NV12;
+        frame.copyFrom(data, frameSize, width, height, colorFormat, System.nanoTime());
+
+        converter = new YuvToTensor(INPUT_SIZE, INPUT_SIZE, floatOutput, 127.5f, 127.5f)
+                .parallel(parallel ? ForkJoinPool.commonPool() : null);
+        output = ByteBuffer.allocateDirect(converter.getOutputSize()).order(ByteOrder.nativeOrder());
+    }
+
+    @Benchmark
+    public ByteBuffer convert() {
+        converter.convert(frame, output);
+        return output;
+    }
+}
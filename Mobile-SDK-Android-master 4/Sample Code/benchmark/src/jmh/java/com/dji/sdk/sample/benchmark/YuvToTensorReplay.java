@@ -0,0 +1,238 @@
+package com.dji.sdk.sample.benchmark;
+
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvFrame;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvFramePool;
+import com.dji.sdk.sample.demo.flightcontroller.tracking.YuvToTensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@link YuvToTensor} の出力を1画素ずつ計算した参照と比べる（./gradlew :benchmark:yuvToTensorReplay）。
+ * NV12・NV21・I420、パディングのある Y プレーン、フレーム全体と {@link YuvToTensor#setCrop} の範囲、
+ * uint8 と float32、単一スレッドとプールの組み合わせで、乱数のフレームが参照とビット単位で一致することを確かめる。
+ * カラーバーのフレームでは、各色が BT.601 の理想の RGB から COLOR_TOLERANCE 以内になることも確かめる。
+ * 1つでも食い違えば例外で終わる。
+ */
+public final class YuvToTensorReplay {
+    private static final int OUT_SIZE = 300;
+    private static final float MEAN = 127.5f;
+    private static final float STD = 127.5f;
+    private static final int COLOR_TOLERANCE = 3;
+    private static final String[] FORMAT_NAMES = {"NV12", "NV21", "I420"};
+    // {幅, 高さ, Y プレーンの行数}
+    private static final int[][] SOURCES = {{1920, 1080, 1088}, {1280, 720, 720}, {642, 362, 368}};
+    // {left, top, right, bottom}。奇数の左上は偶数に切り下げられ、はみ出した分は切り詰められる
+    private static final int[][] CROPS = {{480, 270, 1440, 810}, {1, 3, 301, 203}, {600, 300, 5000, 5000}};
+
+    // 参照の計算に使う、取り出した画素の位置
+    private static final class Region {
+        final int left;
+        final int top;
+        final int width;
+        final int height;
+
+        Region(int left, int top, int right, int bottom) {
+            this.left = left;
+            this.top = top;
+            this.width = right - left;
+            this.height = bottom - top;
+        }
+    }
+
+    private YuvToTensorReplay() {
+    }
+
+    public static void main(String[] args) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        boolean ok = true;
+        try {
+            for (int[] source : SOURCES) {
+                for (int format = YuvFrame.FORMAT_NV12; format <= YuvFrame.FORMAT_I420; format++) {
+                    YuvFrame frame = randomFrame(source[0], source[1], source[2], format, source[0] * 31L + format);
+                    for (boolean floatOutput : new boolean[]{false, true}) {
+                        ok &= run(frame, floatOutput, pool);
+                    }
+                }
+            }
+            for (int format = YuvFrame.FORMAT_NV12; format <= YuvFrame.FORMAT_I420; format++) {
+                ok &= checkColorBars(format);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        if (!ok) {
+            throw new IllegalStateException("YUV to tensor replay found mismatches");
+        }
+    }
+
+    // 同じ変換器で全体 → 範囲 → 全体と切り替え、単一スレッドとプールのどちらも参照と一致することを確かめる
+    private static boolean run(YuvFrame frame, boolean floatOutput, ForkJoinPool pool) {
+        boolean ok = true;
+        YuvToTensor serial = new YuvToTensor(OUT_SIZE, OUT_SIZE, floatOutput, MEAN, STD);
+        YuvToTensor pooled = new YuvToTensor(OUT_SIZE, OUT_SIZE, floatOutput, MEAN, STD).parallel(pool);
+        ByteBuffer serialOut = ByteBuffer.allocateDirect(serial.getOutputSize()).order(ByteOrder.nativeOrder());
+        ByteBuffer pooledOut = ByteBuffer.allocateDirect(pooled.getOutputSize()).order(ByteOrder.nativeOrder());
+        int[][] crops = new int[CROPS.length + 2][];
+        System.arraycopy(CROPS, 0, crops, 1, CROPS.length);
+        for (int[] crop : crops) {
+            Region region;
+            if (crop == null) {
+                serial.clearCrop();
+                pooled.clearCrop();
+                region = new Region(0, 0, frame.getWidth(), frame.getHeight());
+            } else {
+                serial.setCrop(crop[0], crop[1], crop[2], crop[3]);
+                pooled.setCrop(crop[0], crop[1], crop[2], crop[3]);
+                region = clampedRegion(frame, crop);
+            }
+            byte[] expected = reference(frame, region);
+            serial.convert(frame, serialOut);
+            pooled.convert(frame, pooledOut);
+            int serialMismatch = firstMismatch(expected, serialOut, floatOutput);
+            int pooledMismatch = firstMismatch(expected, pooledOut, floatOutput);
+            boolean match = serialMismatch < 0 && pooledMismatch < 0;
+            ok &= match;
+            System.out.println(String.format(Locale.US, "%4dx%-4d (slice %4d) %s %-7s %-22s serial %s, pooled %s",
+                    frame.getWidth(), frame.getHeight(), frame.getSliceHeight(), FORMAT_NAMES[frame.getColorFormat()],
+                    floatOutput ? "float32" : "uint8",
+                    crop == null ? "whole frame" : "crop " + crop[0] + "," + crop[1] + "-" + crop[2] + "," + crop[3],
+                    describe(serialMismatch), describe(pooledMismatch)));
+        }
+        return ok;
+    }
+
+    // 8色のカラーバー（BT.601 の限定範囲）を変換し、各帯の中央が理想の色に近いことを確かめる
+    private static boolean checkColorBars(int format) {
+        // {Y, U, V, R, G, B}
+        int[][] bars = {
+                {235, 128, 128, 255, 255, 255}, {210, 16, 146, 255, 255, 0}, {170, 166, 16, 0, 255, 255},
+                {145, 54, 34, 0, 255, 0}, {106, 202, 222, 255, 0, 255}, {81, 90, 240, 255, 0, 0},
+                {41, 240, 110, 0, 0, 255}, {16, 128, 128, 0, 0, 0},
+        };
+        int width = 640;
+        int height = 360;
+        byte[] data = new byte[width * height * 3 / 2];
+        int ySize = width * height;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int[] bar = bars[x * bars.length / width];
+                data[y * width + x] = (byte) bar[0];
+                if ((x & 1) == 0 && (y & 1) == 0) {
+                    int u = bar[1];
+                    int v = bar[2];
+                    if (format == YuvFrame.FORMAT_I420) {
+                        data[ySize + (y / 2) * (width / 2) + x / 2] = (byte) u;
+                        data[ySize + ySize / 4 + (y / 2) * (width / 2) + x / 2] = (byte) v;
+                    } else {
+                        int offset = ySize + (y / 2) * width + x;
+                        data[offset] = (byte) (format == YuvFrame.FORMAT_NV21 ? v : u);
+                        data[offset + 1] = (byte) (format == YuvFrame.FORMAT_NV21 ? u : v);
+                    }
+                }
+            }
+        }
+        YuvFrame frame = toFrame(data, width, height, format);
+        YuvToTensor converter = new YuvToTensor(OUT_SIZE, OUT_SIZE, false, MEAN, STD);
+        ByteBuffer out = ByteBuffer.allocateDirect(converter.getOutputSize());
+        converter.convert(frame, out);
+        int worst = 0;
+        for (int i = 0; i < bars.length; i++) {
+            int ox = (2 * i + 1) * OUT_SIZE / (2 * bars.length);
+            int offset = ((OUT_SIZE / 2) * OUT_SIZE + ox) * 3;
+            for (int c = 0; c < 3; c++) {
+                worst = Math.max(worst, Math.abs((out.get(offset + c) & 0xff) - bars[i][3 + c]));
+            }
+        }
+        boolean ok = worst <= COLOR_TOLERANCE;
+        System.out.println(String.format(Locale.US, "color bars %s  max error %d  %s",
+                FORMAT_NAMES[format], worst, ok ? "ok" : "MISMATCH"));
+        return ok;
+    }
+
+    // 変換器と同じく、左上を偶数に切り下げてフレームの中に収める
+    private static Region clampedRegion(YuvFrame frame, int[] crop) {
+        int left = Math.max(0, Math.min(crop[0] & ~1, frame.getWidth() - 1));
+        int top = Math.max(0, Math.min(crop[1] & ~1, frame.getHeight() - 1));
+        int right = Math.max(left + 1, Math.min(crop[2], frame.getWidth()));
+        int bottom = Math.max(top + 1, Math.min(crop[3], frame.getHeight()));
+        return new Region(left, top, right, bottom);
+    }
+
+    // 出力の画素ごとに、最近傍の入力の Y・U・V を形式どおりに読んで BT.601 で RGB にする
+    private static byte[] reference(YuvFrame frame, Region region) {
+        ByteBuffer data = frame.getData();
+        int width = frame.getWidth();
+        int ySize = width * frame.getSliceHeight();
+        int format = frame.getColorFormat();
+        byte[] rgb = new byte[OUT_SIZE * OUT_SIZE * 3];
+        for (int oy = 0; oy < OUT_SIZE; oy++) {
+            int y = region.top + Math.min(region.height - 1, (int) ((oy + 0.5f) * region.height / OUT_SIZE));
+            for (int ox = 0; ox < OUT_SIZE; ox++) {
+                int x = region.left + Math.min(region.width - 1, (int) ((ox + 0.5f) * region.width / OUT_SIZE));
+                int u;
+                int v;
+                if (format == YuvFrame.FORMAT_I420) {
+                    int chroma = (y / 2) * (width / 2) + x / 2;
+                    u = data.get(ySize + chroma) & 0xff;
+                    v = data.get(ySize + (width / 2) * (frame.getSliceHeight() / 2) + chroma) & 0xff;
+                } else {
+                    int pair = ySize + (y / 2) * width + (x / 2) * 2;
+                    int first = data.get(pair) & 0xff;
+                    int second = data.get(pair + 1) & 0xff;
+                    u = format == YuvFrame.FORMAT_NV21 ? second : first;
+                    v = format == YuvFrame.FORMAT_NV21 ? first : second;
+                }
+                int c = 298 * Math.max(0, (data.get(y * width + x) & 0xff) - 16);
+                int i = (oy * OUT_SIZE + ox) * 3;
+                rgb[i] = (byte) clamp((c + 409 * (v - 128) + 128) >> 8);
+                rgb[i + 1] = (byte) clamp((c - 100 * (u - 128) - 208 * (v - 128) + 128) >> 8);
+                rgb[i + 2] = (byte) clamp((c + 516 * (u - 128) + 128) >> 8);
+            }
+        }
+        return rgb;
+    }
+
+    // 一致しない最初の値の位置。すべて一致すれば -1
+    private static int firstMismatch(byte[] expected, ByteBuffer actual, boolean floatOutput) {
+        for (int i = 0; i < expected.length; i++) {
+            int value = expected[i] & 0xff;
+            boolean equal = floatOutput
+                    ? Float.floatToIntBits(actual.getFloat(i * 4)) == Float.floatToIntBits((value - MEAN) / STD)
+                    : (actual.get(i) & 0xff) == value;
+            if (!equal) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String describe(int mismatch) {
+        if (mismatch < 0) {
+            return "ok";
+        }
+        int pixel = mismatch / 3;
+        return "MISMATCH at (" + pixel % OUT_SIZE + "," + pixel / OUT_SIZE + ") channel " + mismatch % 3;
+    }
+
+    private static YuvFrame randomFrame(int width, int height, int sliceHeight, int format, long seed) {
+        byte[] data = new byte[width * sliceHeight * 3 / 2];
+        new Random(seed).nextBytes(data);
+        return toFrame(data, width, height, format);
+    }
+
+    private static YuvFrame toFrame(byte[] data, int width, int height, int format) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+        YuvFrame frame = new YuvFramePool(1, data.length).acquire(data.length);
+        frame.copyFrom(buffer, data.length, width, height, format, 0);
+        return frame;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}